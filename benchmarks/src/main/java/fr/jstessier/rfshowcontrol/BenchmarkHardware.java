@@ -0,0 +1,49 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import fr.jstessier.rf24.exceptions.RF24Exception;
+import fr.jstessier.rf24.hardware.RF24Hardware;
+
+/**
+ * RF24 hardware answering every SPI transfer with zeros (empty FIFOs, free TX FIFO), without allocation,
+ * so the benchmarks only measure the library.
+ */
+public class BenchmarkHardware implements RF24Hardware {
+
+	/** Shared response, longer than any SPI transfer. */
+	private static final byte[] RESPONSE = new byte[64];
+
+	@Override
+	public void setPinChipEnableHigh() {
+		// NOP
+	}
+
+	@Override
+	public void setPinChipEnableLow() {
+		// NOP
+	}
+
+	@Override
+	public byte[] spiWrite(byte... data) throws RF24Exception {
+		return RESPONSE;
+	}
+
+}
@@ -0,0 +1,124 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Channel updates of a shared controller by 1 to 8 writer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ChannelUpdateBenchmark {
+
+	private RFShowControlController controller;
+
+	@Setup
+	public void setup() throws RFShowControlException {
+		controller = new RFShowControlControllerImpl(new BenchmarkHardware(), RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL);
+	}
+
+	/**
+	 * Values and channel of a writer thread: each writer updates its own RGB fixture.
+	 */
+	@State(Scope.Thread)
+	public static class Writer {
+
+		private static int nextChannelNumber = 1;
+
+		private final byte[] rgb = new byte[] { (byte) 255, (byte) 128, (byte) 0 };
+
+		private int channelNumber;
+
+		@Setup
+		public void setup() {
+			synchronized (Writer.class) {
+				channelNumber = nextChannelNumber;
+				nextChannelNumber = (nextChannelNumber + 3) % (RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL - 3);
+			}
+		}
+
+	}
+
+	@Benchmark
+	@Threads(1)
+	public RFShowControlController updateChannelValue_1(final Writer writer) {
+		return controller.updateChannelValue(writer.rgb[0], writer.channelNumber);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public RFShowControlController updateChannelValue_2(final Writer writer) {
+		return controller.updateChannelValue(writer.rgb[0], writer.channelNumber);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public RFShowControlController updateChannelValue_4(final Writer writer) {
+		return controller.updateChannelValue(writer.rgb[0], writer.channelNumber);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public RFShowControlController updateChannelValue_8(final Writer writer) {
+		return controller.updateChannelValue(writer.rgb[0], writer.channelNumber);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public RFShowControlController updateChannelValues_1(final Writer writer) {
+		return controller.updateChannelValues(writer.rgb, writer.channelNumber);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public RFShowControlController updateChannelValues_2(final Writer writer) {
+		return controller.updateChannelValues(writer.rgb, writer.channelNumber);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public RFShowControlController updateChannelValues_4(final Writer writer) {
+		return controller.updateChannelValues(writer.rgb, writer.channelNumber);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public RFShowControlController updateChannelValues_8(final Writer writer) {
+		return controller.updateChannelValues(writer.rgb, writer.channelNumber);
+	}
+
+}
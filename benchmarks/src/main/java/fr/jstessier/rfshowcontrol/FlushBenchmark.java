@@ -0,0 +1,80 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+
+/**
+ * Update and flush of a controller, end to end down to the SPI transfers of a mock radio.
+ * The controller is configured without starting its frame scheduler, so only the benchmark thread sends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FlushBenchmark {
+
+	@Param({ "20", "60", "512" })
+	private int numberOfChannel;
+
+	@Param({ "SERIAL", "PIPELINED" })
+	private RFShowControlRF24Adapter.SendMode sendMode;
+
+	private RFShowControlControllerImpl controller;
+
+	private byte[] datas;
+
+	private int value;
+
+	@Setup(Level.Trial)
+	public void setup() throws RFShowControlException {
+		controller = new RFShowControlControllerImpl(new BenchmarkHardware(), numberOfChannel);
+		controller.configure((byte) 76, new byte[] { (byte) 0xD2, (byte) 0xF2, (byte) 0xF2, (byte) 0xF2, (byte) 0xF2 }, Mode.TX);
+		controller.getAdapter().setSendMode(sendMode);
+		controller.setKeyframeInterval(1);
+		datas = new byte[numberOfChannel];
+	}
+
+	/**
+	 * Full frame update and flush, every packet is sent.
+	 */
+	@Benchmark
+	public RFShowControlController updateAndFlushChannelValues() throws RFShowControlException {
+		datas[0] = (byte) value++;
+		return controller.updateAndFlushChannelValues(datas);
+	}
+
+}
@@ -0,0 +1,86 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Splitting and encoding of channel values in RFShowControl packets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class PacketEncodingBenchmark {
+
+	@Param({ "20", "60", "512" })
+	private int numberOfChannel;
+
+	private byte[] datas;
+
+	private RFShowControlRF24Adapter adapter;
+
+	private RFShowControlPacketEncoder encoder;
+
+	@Setup
+	public void setup() throws RFShowControlException {
+		datas = new byte[numberOfChannel];
+		for (int index = 0; index < datas.length; index++) {
+			datas[index] = (byte) index;
+		}
+		adapter = new RFShowControlRF24Adapter(new BenchmarkHardware(), numberOfChannel);
+		encoder = new RFShowControlPacketEncoder(numberOfChannel);
+	}
+
+	/**
+	 * Allocating split, one array per packet.
+	 */
+	@Benchmark
+	public byte[][] splitDatasInRFShowControlPackets() {
+		return adapter.splitDatasInRFShowControlPackets(datas);
+	}
+
+	/**
+	 * Encoding in the reusable packet buffers.
+	 */
+	@Benchmark
+	public void encode(final Blackhole blackhole) {
+		final int numberOfPacket = encoder.encode(datas);
+		for (int index = 0; index < numberOfPacket; index++) {
+			blackhole.consume(encoder.getPacket(index));
+		}
+	}
+
+}
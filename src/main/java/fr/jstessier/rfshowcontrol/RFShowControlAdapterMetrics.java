@@ -0,0 +1,114 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transmit metrics of a RFShowControlRF24Adapter, cheap enough to be always on (no allocation, striped counters).
+ */
+public class RFShowControlAdapterMetrics implements RFShowControlAdapterMetricsMBean {
+
+	private final LongAdder packetsSent = new LongAdder();
+
+	private final LongAdder framesSent = new LongAdder();
+
+	private final LongAdder spiTimeNanos = new LongAdder();
+
+	private final LongAdder spiErrors = new LongAdder();
+
+	/** Window of the packets sent per second. */
+	private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/** Packets sent at the start of the rate window (sending thread only, the frames are sent under a lock). */
+	private long windowStartPackets;
+
+	/** Start of the rate window (sending thread only). */
+	private long windowStartNanos = System.nanoTime();
+
+	/** Packets sent per second in the last complete window, computed by the sending thread. */
+	private volatile double packetsSentPerSecond;
+
+	/** End of the last complete window. */
+	private volatile long rateNanos = windowStartNanos;
+
+	/**
+	 * Record a frame sent.
+	 *
+	 * @param numberOfPacket	Number of packets sent.
+	 * @param durationNanos		Time spent sending the packets.
+	 */
+	void frameSent(final int numberOfPacket, final long durationNanos) {
+		framesSent.increment();
+		packetsSent.add(numberOfPacket);
+		spiTimeNanos.add(durationNanos);
+		final long now = System.nanoTime();
+		if (now - windowStartNanos >= RATE_WINDOW_NANOS) {
+			// The readers only read the rate: any number of JMX clients get the same value
+			final long packets = packetsSent.sum();
+			packetsSentPerSecond = (packets - windowStartPackets) * 1e9 / (now - windowStartNanos);
+			rateNanos = now;
+			windowStartPackets = packets;
+			windowStartNanos = now;
+		}
+	}
+
+	/**
+	 * Record a SPI communication error.
+	 */
+	void spiError() {
+		spiErrors.increment();
+	}
+
+	@Override
+	public long getPacketsSent() {
+		return packetsSent.sum();
+	}
+
+	@Override
+	public double getPacketsSentPerSecond() {
+		final double rate = packetsSentPerSecond;
+		// No frame sent to close a window since: idle
+		return System.nanoTime() - rateNanos > 2 * RATE_WINDOW_NANOS ? 0 : rate;
+	}
+
+	@Override
+	public long getFramesSent() {
+		return framesSent.sum();
+	}
+
+	@Override
+	public long getSpiTimeNanos() {
+		return spiTimeNanos.sum();
+	}
+
+	@Override
+	public double getSpiTimePerFrameMicros() {
+		final long frames = framesSent.sum();
+		return frames == 0 ? 0 : spiTimeNanos.sum() / 1e3 / frames;
+	}
+
+	@Override
+	public long getSpiErrors() {
+		return spiErrors.sum();
+	}
+
+}
@@ -0,0 +1,63 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+/**
+ * JMX view of the transmit metrics of a RFShowControlRF24Adapter.
+ */
+public interface RFShowControlAdapterMetricsMBean {
+
+	/**
+	 * Return the number of packets sent.
+	 * @return	The number of packets sent.
+	 */
+	long getPacketsSent();
+
+	/**
+	 * Return the number of packets sent per second over the last complete second of transmissions, 0 when idle.
+	 * @return	The number of packets sent per second.
+	 */
+	double getPacketsSentPerSecond();
+
+	/**
+	 * Return the number of frames sent.
+	 * @return	The number of frames sent.
+	 */
+	long getFramesSent();
+
+	/**
+	 * Return the total time spent in SPI transfers while sending frames.
+	 * @return	The SPI time in nanoseconds.
+	 */
+	long getSpiTimeNanos();
+
+	/**
+	 * Return the average time spent in SPI transfers per frame.
+	 * @return	The SPI time per frame in microseconds.
+	 */
+	double getSpiTimePerFrameMicros();
+
+	/**
+	 * Return the number of SPI communication errors.
+	 * @return	The number of SPI errors.
+	 */
+	long getSpiErrors();
+
+}
@@ -0,0 +1,116 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.SendMode;
+
+/**
+ * Air time budget of the RFShowControl frames for a radio profile.
+ *
+ * A frame is planned as a keyframe (all its packets sent), the worst case of the transmissions.
+ * In SERIAL mode the driver pulses CE for each packet, which pays the TX settling time for each packet,
+ * in PIPELINED mode the settling time is paid once per frame.
+ */
+public class RFShowControlCapacityPlanner {
+
+	/** TX settling time of the RF24 module (standby to TX). */
+	public static final long TX_SETTLING_NANOS = 130000;
+
+	/** The radio profile. */
+	private final RFShowControlRadioProfile radioProfile;
+
+	/** The send mode. */
+	private final SendMode sendMode;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param radioProfile	The radio profile.
+	 * @param sendMode		The send mode.
+	 */
+	public RFShowControlCapacityPlanner(final RFShowControlRadioProfile radioProfile, final SendMode sendMode) {
+		if (radioProfile == null) {
+			throw new IllegalArgumentException("radioProfile is mandatory");
+		}
+		else if (sendMode == null) {
+			throw new IllegalArgumentException("sendMode is mandatory");
+		}
+		this.radioProfile = radioProfile;
+		this.sendMode = sendMode;
+	}
+
+	/**
+	 * Return the air time of a keyframe.
+	 *
+	 * @param numberOfChannel	Number of channel [1-512].
+	 * @return	The air time in nanoseconds, TX settling included.
+	 */
+	public long getFrameAirNanos(final int numberOfChannel) {
+		if (numberOfChannel < 1 || numberOfChannel > RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL) {
+			throw new IllegalArgumentException("numberOfChannel must be in range [1-"
+					+ RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL + "]");
+		}
+		final int numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(numberOfChannel);
+		final long packetAirNanos = radioProfile.getPacketAirNanos();
+		if (SendMode.PIPELINED.equals(sendMode)) {
+			return TX_SETTLING_NANOS + numberOfPacket * packetAirNanos;
+		}
+		return numberOfPacket * (TX_SETTLING_NANOS + packetAirNanos);
+	}
+
+	/**
+	 * Return the highest frame rate the link can carry.
+	 *
+	 * @param numberOfChannel	Number of channel [1-512].
+	 * @return	The number of keyframes per second.
+	 */
+	public int getMaxFramesPerSecond(final int numberOfChannel) {
+		return (int) (1000000000L / getFrameAirNanos(numberOfChannel));
+	}
+
+	/**
+	 * Return the part of the air time used at a frame rate.
+	 *
+	 * @param numberOfChannel	Number of channel [1-512].
+	 * @param framesPerSecond	Number of frames per second.
+	 * @return	The link utilization, greater than 1 if the frames do not fit.
+	 */
+	public double getLinkUtilization(final int numberOfChannel, final int framesPerSecond) {
+		return getFrameAirNanos(numberOfChannel) * (double) framesPerSecond / 1e9;
+	}
+
+	/**
+	 * Check the frames fit at a frame rate, throw an exception telling the reachable frame rate otherwise.
+	 *
+	 * @param numberOfChannel	Number of channel [1-512].
+	 * @param framesPerSecond	Number of frames per second.
+	 * @return	The current RFShowControlCapacityPlanner instance.
+	 */
+	public RFShowControlCapacityPlanner checkCapacity(final int numberOfChannel, final int framesPerSecond) {
+		final int maxFramesPerSecond = getMaxFramesPerSecond(numberOfChannel);
+		if (framesPerSecond > maxFramesPerSecond) {
+			throw new IllegalArgumentException(numberOfChannel + " channels can not be sent at " + framesPerSecond
+					+ " frames per second with " + radioProfile + " in " + sendMode + " mode, "
+					+ maxFramesPerSecond + " frames per second max");
+		}
+		return this;
+	}
+
+}
@@ -0,0 +1,291 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Double buffered channel values store.
+ *
+ * Writers update a back buffer concurrently: they share the lock and never wait for each other.
+ * {@link #publish()} takes the lock exclusively only for the time of copying the back buffer into a free frame,
+ * then hands the frame to the transmitter with an atomic swap (triple buffering), so writers never wait for the radio.
+ * A single transmitter reads the newest published frame with {@link #acquire()}.
+ */
+public class RFShowControlChannelBuffer {
+
+	/** Flag set on the ready frame index when it has not been acquired yet. */
+	private static final int FRESH = 0x4;
+
+	/** Mask of the frame index. */
+	private static final int INDEX_MASK = 0x3;
+
+	/** Lock shared by the writers and taken exclusively to publish. */
+	private final StampedLock lock = new StampedLock();
+
+	/** The back buffer updated by the writers. */
+	private final byte[] backValues;
+
+	/** The published frames. */
+	private final byte[][] frames;
+
+	/** Index of the frame owned by the publisher (guarded by the exclusive lock). */
+	private int publisherIndex = 0;
+
+	/** Index of the frame owned by the transmitter. */
+	private int transmitterIndex = 1;
+
+	/** Index of the last published frame, with the FRESH flag until acquired. */
+	private final AtomicInteger readyIndex = new AtomicInteger(2);
+
+	/** Time spent waiting for the lock. */
+	private final LongAdder lockWaitNanos = new LongAdder();
+
+	/** Number of lock acquisitions which had to wait. */
+	private final LongAdder contendedLockCount = new LongAdder();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numberOfChannel	Number of channel.
+	 */
+	public RFShowControlChannelBuffer(final int numberOfChannel) {
+		backValues = new byte[numberOfChannel];
+		frames = new byte[3][numberOfChannel];
+	}
+
+	/**
+	 * Return the number of channel.
+	 * @return	The number of channel.
+	 */
+	public int getNumberOfChannel() {
+		return backValues.length;
+	}
+
+	/**
+	 * Update one value of the back buffer.
+	 *
+	 * @param value		The new value.
+	 * @param index		The index of the value [0-numberOfChannel[.
+	 */
+	public void update(final byte value, final int index) {
+		final long stamp = readLock();
+		try {
+			backValues[index] = value;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Update a range of the back buffer.
+	 *
+	 * @param values		The new values.
+	 * @param valuesOffset	Index of the first value to copy.
+	 * @param index			Index of the first value to update.
+	 * @param length		Number of values to copy.
+	 */
+	public void update(final byte[] values, final int valuesOffset, final int index, final int length) {
+		final long stamp = readLock();
+		try {
+			System.arraycopy(values, valuesOffset, backValues, index, length);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Update a range of the back buffer from the remaining bytes of a buffer.
+	 *
+	 * @param values	The new values, from the position to the limit of the buffer (the position is moved to the limit).
+	 * @param index		Index of the first value to update.
+	 */
+	public void update(final ByteBuffer values, final int index) {
+		final long stamp = readLock();
+		try {
+			values.get(backValues, index, values.remaining());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Update the back buffer from packed 0xRRGGBB colours, each component written at its index of a table.
+	 *
+	 * @param colours			The packed colours.
+	 * @param coloursOffset		Index of the first colour.
+	 * @param indexes			Indexes of the red, green and blue values of each pixel.
+	 * @param indexesOffset		Index in the table of the red value of the first pixel.
+	 * @param numberOfPixel		Number of pixels to update.
+	 */
+	public void updatePixels(final int[] colours, final int coloursOffset, final int[] indexes, final int indexesOffset,
+			final int numberOfPixel) {
+		final long stamp = readLock();
+		try {
+			int index = indexesOffset;
+			for (int pixel = coloursOffset; pixel < coloursOffset + numberOfPixel; pixel++) {
+				final int colour = colours[pixel];
+				backValues[indexes[index++]] = (byte) (colour >> 16);
+				backValues[indexes[index++]] = (byte) (colour >> 8);
+				backValues[indexes[index++]] = (byte) colour;
+			}
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Apply a batch of updates to the back buffer under a single acquisition of the lock.
+	 *
+	 * @param batch	The updates.
+	 */
+	public void update(final RFShowControlUpdateBatch batch) {
+		final long stamp = readLock();
+		try {
+			batch.applyTo(backValues);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Fill the back buffer with a value.
+	 *
+	 * @param value	The value.
+	 */
+	public void fill(final byte value) {
+		final long stamp = readLock();
+		try {
+			Arrays.fill(backValues, value);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Return a copy of the back buffer.
+	 * @return	The values.
+	 */
+	public byte[] copyValues() {
+		final long stamp = readLock();
+		try {
+			return Arrays.copyOf(backValues, backValues.length);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copy a range of the back buffer.
+	 *
+	 * @param index			Index of the first value to copy.
+	 * @param values		The destination.
+	 * @param valuesOffset	Index of the first value of the destination.
+	 * @param length		Number of values to copy.
+	 */
+	public void copyValues(final int index, final byte[] values, final int valuesOffset, final int length) {
+		final long stamp = readLock();
+		try {
+			System.arraycopy(backValues, index, values, valuesOffset, length);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Publish the back buffer as the newest frame.
+	 * A frame published but not acquired yet is replaced.
+	 */
+	public void publish() {
+		final long stamp = writeLock();
+		try {
+			System.arraycopy(backValues, 0, frames[publisherIndex], 0, backValues.length);
+			publisherIndex = readyIndex.getAndSet(publisherIndex | FRESH) & INDEX_MASK;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Return the time spent waiting for the lock.
+	 * @return	The lock wait time in nanoseconds.
+	 */
+	public long getLockWaitNanos() {
+		return lockWaitNanos.sum();
+	}
+
+	/**
+	 * Return the number of lock acquisitions which had to wait.
+	 * @return	The number of contended acquisitions.
+	 */
+	public long getContendedLockCount() {
+		return contendedLockCount.sum();
+	}
+
+	/**
+	 * Acquire the lock shared by the writers, measuring the wait only when the lock is not free.
+	 *
+	 * @return	The lock stamp.
+	 */
+	private long readLock() {
+		long stamp = lock.tryReadLock();
+		if (stamp == 0) {
+			final long start = System.nanoTime();
+			stamp = lock.readLock();
+			lockWaitNanos.add(System.nanoTime() - start);
+			contendedLockCount.increment();
+		}
+		return stamp;
+	}
+
+	/**
+	 * Acquire the lock exclusively, measuring the wait only when the lock is not free.
+	 *
+	 * @return	The lock stamp.
+	 */
+	private long writeLock() {
+		long stamp = lock.tryWriteLock();
+		if (stamp == 0) {
+			final long start = System.nanoTime();
+			stamp = lock.writeLock();
+			lockWaitNanos.add(System.nanoTime() - start);
+			contendedLockCount.increment();
+		}
+		return stamp;
+	}
+
+	/**
+	 * Return the newest published frame, to be called by a single transmitter.
+	 * The frame is owned by the transmitter until the next call.
+	 *
+	 * @return	The newest published frame.
+	 */
+	public byte[] acquire() {
+		if ((readyIndex.get() & FRESH) != 0) {
+			transmitterIndex = readyIndex.getAndSet(transmitterIndex) & INDEX_MASK;
+		}
+		return frames[transmitterIndex];
+	}
+
+}
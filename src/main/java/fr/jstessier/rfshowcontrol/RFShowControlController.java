@@ -1,8 +1,12 @@
 package fr.jstessier.rfshowcontrol;
 
-public interface RFShowControlController {
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+public interface RFShowControlController extends AutoCloseable {
 
 	/**
+	 * Configure the RF module and start sending the channel values at the default frame rate.
 	 *
 	 * @param rfChannel
 	 * @param pipeAddress
@@ -13,6 +17,48 @@ public interface RFShowControlController {
 	RFShowControlController start(byte rfChannel, byte[] pipeAddress,
 								  RFShowControlRF24Adapter.Mode mode) throws RFShowControlException;
 
+	/**
+	 * Configure the RF module and start sending the channel values at a given frame rate.
+	 *
+	 * @param rfChannel
+	 * @param pipeAddress
+	 * @param mode
+	 * @param framesPerSecond	Number of frames sent per second.
+	 * @return	The current RFShowControlControllerImpl instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	RFShowControlController start(byte rfChannel, byte[] pipeAddress,
+								  RFShowControlRF24Adapter.Mode mode, int framesPerSecond) throws RFShowControlException;
+
+	/**
+	 * Configure the RF module with a radio profile and start sending the channel values at a given frame rate.
+	 * In TX mode, the frames must fit in the air time of the profile at this frame rate.
+	 *
+	 * @param rfChannel
+	 * @param pipeAddress
+	 * @param mode
+	 * @param framesPerSecond	Number of frames sent per second.
+	 * @param radioProfile		Data rate, output power and CRC length.
+	 * @return	The current RFShowControlControllerImpl instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 * @throws IllegalArgumentException	If the frames do not fit at this frame rate, see {@link RFShowControlCapacityPlanner}.
+	 */
+	RFShowControlController start(byte rfChannel, byte[] pipeAddress, RFShowControlRF24Adapter.Mode mode,
+								  int framesPerSecond, RFShowControlRadioProfile radioProfile) throws RFShowControlException;
+
+	/**
+	 * Stop sending the channel values and wait for the end of the current frame.
+	 *
+	 * @return	The current RFShowControlControllerImpl instance.
+	 */
+	RFShowControlController stop();
+
+	/**
+	 * Same as {@link #stop()}.
+	 */
+	@Override
+	void close();
+
 	/**
 	 * Reset all channels to 0.
 	 *
@@ -35,6 +81,12 @@ public interface RFShowControlController {
 	 */
 	byte[] getChannelValues();
 
+	/**
+	 * Return the number of channel.
+	 * @return	The number of channel.
+	 */
+	int getNumberOfChannel();
+
 	/**
 	 *
 	 *
@@ -43,6 +95,46 @@ public interface RFShowControlController {
 	 */
 	RFShowControlController flushChannelValues() throws RFShowControlException;
 
+	/**
+	 * Publish the channel values and return without waiting for the radio: a single flush thread sends the newest
+	 * published frame, the frames published again before it is sent are skipped.
+	 *
+	 * @return	Completed when a frame containing these channel values has been sent, or with the transmission error.
+	 */
+	CompletableFuture<Void> flushChannelValuesAsync();
+
+	/**
+	 * Set the number of flushes between two full frames, the other flushes only send the packets which changed.
+	 *
+	 * @param keyframeInterval	Number of flushes between two keyframes (1 means every flush sends all the packets).
+	 * @return	The current RFShowControlControllerImpl instance.
+	 */
+	RFShowControlController setKeyframeInterval(int keyframeInterval);
+
+	/**
+	 * Number the transmissions in the TBD byte of the packets, see {@link RFShowControlRF24Adapter#setSequenceNumbering(boolean)}.
+	 *
+	 * @param sequenceNumbering	true to number the transmissions.
+	 * @return	The current RFShowControlController instance.
+	 */
+	RFShowControlController setSequenceNumbering(boolean sequenceNumbering);
+
+	/**
+	 * Return the transform (lookup tables, master dimmer, limits) applied to the channel values while they are
+	 * encoded in the packets, the channel values themselves are not changed.
+	 *
+	 * @return	The output transform.
+	 */
+	RFShowControlOutputTransform getOutputTransform();
+
+	/**
+	 * Record the packets sent over the air, see {@link RFShowControlRecorder} and {@link RFShowControlRecording}.
+	 *
+	 * @param recorder	The recorder, not shared with another controller, null to stop recording.
+	 * @return	The current RFShowControlController instance.
+	 */
+	RFShowControlController setRecorder(RFShowControlRecorder recorder);
+
 	/**
 	 *
 	 *
@@ -61,6 +153,15 @@ public interface RFShowControlController {
 	 */
 	RFShowControlController updateChannelValues(byte[] newChannelValues, int startChannelNumber);
 
+	/**
+	 * Update channels from the remaining bytes of a buffer, without intermediate copy.
+	 *
+	 * @param newChannelValues		The new values, from the position to the limit (the position is moved to the limit).
+	 * @param startChannelNumber
+	 * @return	The current RFShowControlControllerImpl instance.
+	 */
+	RFShowControlController updateChannelValues(ByteBuffer newChannelValues, int startChannelNumber);
+
 	/**
 	 *
 	 *
@@ -78,4 +179,34 @@ public interface RFShowControlController {
 	 */
 	RFShowControlController updateAndFlushChannelValues(byte[] newChannelValues) throws RFShowControlException;
 
+	/**
+	 * Update pixels from packed 0xRRGGBB colours under a single acquisition of the channel values lock,
+	 * usually with the index table of a {@link RFShowControlPatchTable}.
+	 *
+	 * @param colours			The packed colours.
+	 * @param coloursOffset		Index of the first colour.
+	 * @param channelIndexes	Channel indexes (channel number - 1) of the red, green and blue values of each pixel,
+	 * 							checked before any pixel is updated.
+	 * @param indexesOffset		Index in the table of the red channel of the first pixel.
+	 * @param numberOfPixel		Number of pixels to update.
+	 * @return	The current RFShowControlControllerImpl instance.
+	 */
+	RFShowControlController updatePixelValues(int[] colours, int coloursOffset, int[] channelIndexes, int indexesOffset,
+								  int numberOfPixel);
+
+	/**
+	 * Begin a batch of updates, applied at once by {@link RFShowControlUpdateBatch#commit()}.
+	 *
+	 * @return	A new batch, reusable after its commit.
+	 */
+	RFShowControlUpdateBatch beginUpdate();
+
+	/**
+	 * Apply a batch of updates under a single acquisition of the channel values lock.
+	 *
+	 * @param batch	The batch, created by {@link #beginUpdate()} of this controller.
+	 * @return	The current RFShowControlControllerImpl instance.
+	 */
+	RFShowControlController commitUpdate(RFShowControlUpdateBatch batch);
+
 }
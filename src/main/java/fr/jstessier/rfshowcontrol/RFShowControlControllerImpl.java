@@ -19,28 +19,65 @@ package fr.jstessier.rfshowcontrol;
  * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
  */
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import fr.jstessier.rf24.hardware.RF24Hardware;
 import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
 
-import java.util.Arrays;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class RFShowControlControllerImpl implements RFShowControlController {
 
-    private static final int SEND_CHANNEL_VALUES_PERIOD_MS = 500;
-
 	private final RFShowControlRF24Adapter rf24;
 
-	private final byte[] channelTempValues;
+	private final RFShowControlChannelBuffer channelValues;
+
+    private final Object synchroSendValues = new Object();
 
-	private byte[] channelActiveValues;
+    private RFShowControlFrameScheduler scheduler;
 
-    private final Object synchroTempValues = new Object();
+    private final RFShowControlControllerMetrics metrics;
 
-    private final Object synchroSendValues = new Object();
+    private final RFShowControlTransmitSupervisor supervisor;
+
+    /** Parameters of the last configuration, to configure the RF module again. */
+    private byte rfChannel;
+
+    private byte[] pipeAddress;
+
+    private Mode mode;
+
+    private RFShowControlRadioProfile radioProfile;
 
-    private final Timer timer = new Timer(true);
+    /** Flush requested and not taken by the flush thread yet, null if none. */
+    private final AtomicReference<CompletableFuture<Void>> pendingFlush = new AtomicReference<CompletableFuture<Void>>();
+
+    /** Lock of the flush requests and of the start and stop of the flush thread. */
+    private final Object flushLock = new Object();
+
+    /** Thread sending the asynchronous flushes, null until the first one (guarded by flushLock). */
+    private Thread flushThread;
+
+    /** The flush thread is running ? */
+    private volatile boolean flushRunning;
+
+    /** Renderers run on each scheduler frame. */
+    private volatile RFShowControlFrameRenderer[] renderers = new RFShowControlFrameRenderer[0];
+
+    /** Names of the registered MBeans, null if not registered. */
+    private ObjectName[] mbeanNames;
 
 	/**
 	 * Constructor.
@@ -61,118 +98,572 @@ public class RFShowControlControllerImpl implements RFShowControlController {
 	 */
 	public RFShowControlControllerImpl(final RF24Hardware rf24Hardware, final int numberOfChannel) throws RFShowControlException {
 		rf24 = new RFShowControlRF24Adapter(rf24Hardware, numberOfChannel);
-		channelTempValues = new byte[numberOfChannel];
-		channelActiveValues = new byte[numberOfChannel];
+		channelValues = new RFShowControlChannelBuffer(numberOfChannel);
+		metrics = new RFShowControlControllerMetrics(this, channelValues);
+		supervisor = new RFShowControlTransmitSupervisor(this);
 	}
 
 	@Override
 	public RFShowControlController start(final byte rfChannel, final byte[] pipeAddress,
                                          final Mode mode) throws RFShowControlException {
-		rf24.configure(rfChannel, pipeAddress, mode);
-        synchronized (synchroTempValues) {
-            Arrays.fill(channelTempValues, (byte) 0);
-            flushChannelValues();
+		return start(rfChannel, pipeAddress, mode, RFShowControlFrameScheduler.DEFAULT_FRAMES_PER_SECOND);
+	}
+
+	@Override
+	public RFShowControlController start(final byte rfChannel, final byte[] pipeAddress,
+                                         final Mode mode, final int framesPerSecond) throws RFShowControlException {
+		return start(rfChannel, pipeAddress, mode, framesPerSecond, RFShowControlRadioProfile.DEFAULT);
+	}
+
+	@Override
+	public synchronized RFShowControlController start(final byte rfChannel, final byte[] pipeAddress, final Mode mode,
+                                         final int framesPerSecond, final RFShowControlRadioProfile radioProfile) throws RFShowControlException {
+        if (scheduler != null) {
+            throw new IllegalStateException("RFShowControlController is already started");
+        }
+        if (Mode.TX.equals(mode)) {
+            checkCapacity(framesPerSecond, radioProfile);
         }
-        // Send channelValue every 500ms
-        timer.scheduleAtFixedRate(new TimerTask() {
+        final RFShowControlFrameScheduler frameScheduler = new RFShowControlFrameScheduler("rfshowcontrol-scheduler",
+                framesPerSecond, new RFShowControlFrameScheduler.FrameTask() {
             @Override
-            public void run() {
-                try {
-                    sendChannelValues();
-                } catch (RFShowControlException e) {
-                    e.printStackTrace();
-                }
+            public void onFrame(final long frameNumber) {
+                // Changed packets and periodic keyframes, errors are handled by the supervisor
+                supervisor.runFrame(System.nanoTime());
             }
-        }, 0, SEND_CHANNEL_VALUES_PERIOD_MS);
+        });
+		configure(rfChannel, pipeAddress, mode, radioProfile);
+        scheduler = frameScheduler.start();
 		return this;
 	}
 
+    /**
+     * Configure the RF module and send all channels to 0, without starting the frame scheduler.
+     *
+     * @param rfChannel
+     * @param pipeAddress
+     * @param mode
+     * @throws RFShowControlException	In case of communication error with RF Module.
+     */
+    void configure(final byte rfChannel, final byte[] pipeAddress, final Mode mode) throws RFShowControlException {
+        configure(rfChannel, pipeAddress, mode, RFShowControlRadioProfile.DEFAULT);
+    }
+
+    /**
+     * Configure the RF module with a radio profile and send all channels to 0, without starting the frame scheduler.
+     *
+     * @param rfChannel
+     * @param pipeAddress
+     * @param mode
+     * @param radioProfile
+     * @throws RFShowControlException	In case of communication error with RF Module.
+     */
+    void configure(final byte rfChannel, final byte[] pipeAddress, final Mode mode,
+            final RFShowControlRadioProfile radioProfile) throws RFShowControlException {
+        synchronized (synchroSendValues) {
+            rf24.configure(rfChannel, pipeAddress, mode, radioProfile);
+            this.rfChannel = rfChannel;
+            this.pipeAddress = Arrays.copyOf(pipeAddress, pipeAddress.length);
+            this.mode = mode;
+            this.radioProfile = radioProfile;
+        }
+        resetAndFlushChannelValues();
+    }
+
+    /**
+     * Configure the RF module again with the parameters of the last configuration, the channel values are kept.
+     *
+     * @throws RFShowControlException	In case of communication error with RF Module.
+     */
+    void reconfigure() throws RFShowControlException {
+        synchronized (synchroSendValues) {
+            if (mode == null) {
+                throw new IllegalStateException("RFShowControlController has never been configured");
+            }
+            rf24.configure(rfChannel, pipeAddress, mode, radioProfile);
+        }
+    }
+
+    /**
+     * Return true if the last configuration of the RF module succeeded.
+     * @return	true if the RF module is configured.
+     */
+    boolean isConfigured() {
+        synchronized (synchroSendValues) {
+            return rf24.isConfigured();
+        }
+    }
+
+    /**
+     * Check the frames of the controller fit in the air time at a frame rate.
+     *
+     * @param framesPerSecond	Number of frames sent per second.
+     * @param radioProfile		The radio profile.
+     * @throws IllegalArgumentException	With the reachable frame rate, if the frames do not fit.
+     */
+    void checkCapacity(final int framesPerSecond, final RFShowControlRadioProfile radioProfile) {
+        new RFShowControlCapacityPlanner(radioProfile, rf24.getSendMode())
+                .checkCapacity(channelValues.getNumberOfChannel(), framesPerSecond);
+    }
+
+    /**
+     * Return the highest frame rate the link can carry with the current radio profile and send mode.
+     * @return	The number of keyframes per second.
+     */
+    public int getMaxFramesPerSecond() {
+        return new RFShowControlCapacityPlanner(rf24.getRadioProfile(), rf24.getSendMode())
+                .getMaxFramesPerSecond(channelValues.getNumberOfChannel());
+    }
 
     @Override
-    public RFShowControlController resetChannelValues() throws RFShowControlException {
-        synchronized (synchroTempValues) {
-            Arrays.fill(channelTempValues, (byte) 0);
+    public synchronized RFShowControlController stop() {
+        if (scheduler != null) {
+            scheduler.stop();
+            scheduler = null;
+        }
+        stopFlushThread();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        stop();
+        unregisterMBeans();
+    }
+
+    /**
+     * Return the controller metrics.
+     * @return	The metrics.
+     */
+    public RFShowControlControllerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Register the controller and adapter metrics in the platform MBean server, under
+     * fr.jstessier.rfshowcontrol:type=Controller,name=... and fr.jstessier.rfshowcontrol:type=Adapter,name=...
+     *
+     * @param name	The name of the controller.
+     * @return	The current RFShowControlControllerImpl instance.
+     * @throws RFShowControlException	If the MBeans can not be registered.
+     */
+    public synchronized RFShowControlControllerImpl registerMBeans(final String name) throws RFShowControlException {
+        if (mbeanNames != null) {
+            throw new IllegalStateException("MBeans are already registered");
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName controllerName = new ObjectName("fr.jstessier.rfshowcontrol:type=Controller,name=" + ObjectName.quote(name));
+            final ObjectName adapterName = new ObjectName("fr.jstessier.rfshowcontrol:type=Adapter,name=" + ObjectName.quote(name));
+            server.registerMBean(metrics, controllerName);
+            try {
+                server.registerMBean(rf24.getMetrics(), adapterName);
+            } catch (JMException e) {
+                server.unregisterMBean(controllerName);
+                throw e;
+            }
+            mbeanNames = new ObjectName[] { controllerName, adapterName };
+        } catch (JMException e) {
+            throw new RFShowControlException("An error occured during MBeans registration", e);
+        }
+        return this;
+    }
+
+    /**
+     * Unregister the controller and adapter metrics from the platform MBean server.
+     *
+     * @return	The current RFShowControlControllerImpl instance.
+     */
+    public synchronized RFShowControlControllerImpl unregisterMBeans() {
+        if (mbeanNames != null) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName mbeanName : mbeanNames) {
+                try {
+                    server.unregisterMBean(mbeanName);
+                } catch (InstanceNotFoundException e) {
+                    // Already unregistered from the server
+                } catch (MBeanRegistrationException e) {
+                    // Not thrown: the metrics do not implement MBeanRegistration
+                    throw new IllegalStateException("An error occured during MBeans unregistration", e);
+                }
+            }
+            mbeanNames = null;
+        }
+        return this;
+    }
+
+    /**
+     * Add a renderer run on each scheduler frame, before the channel values are published and sent.
+     *
+     * @param renderer	The renderer.
+     * @return	The current RFShowControlControllerImpl instance.
+     */
+    public synchronized RFShowControlControllerImpl addFrameRenderer(final RFShowControlFrameRenderer renderer) {
+        if (renderer == null) {
+            throw new IllegalArgumentException("renderer is mandatory");
+        }
+        final RFShowControlFrameRenderer[] newRenderers = Arrays.copyOf(renderers, renderers.length + 1);
+        newRenderers[renderers.length] = renderer;
+        renderers = newRenderers;
+        return this;
+    }
+
+    /**
+     * Share the channel values with other local processes through a memory-mapped file, see
+     * {@link RFShowControlSharedChannelBuffer}: the values written in the file are sent by the scheduler.
+     *
+     * @param path	The file, for example under /dev/shm, created if it does not exist.
+     * @return	The shared channel values, added as a frame renderer.
+     * @throws IOException	If the file can't be mapped.
+     */
+    public RFShowControlSharedChannelBuffer shareChannelValues(final Path path) throws IOException {
+        final RFShowControlSharedChannelBuffer sharedValues = new RFShowControlSharedChannelBuffer(path,
+                channelValues.getNumberOfChannel());
+        addFrameRenderer(sharedValues);
+        return sharedValues;
+    }
+
+    /**
+     * Remove a frame renderer.
+     *
+     * @param renderer	The renderer.
+     * @return	The current RFShowControlControllerImpl instance.
+     */
+    public synchronized RFShowControlControllerImpl removeFrameRenderer(final RFShowControlFrameRenderer renderer) {
+        for (int index = 0; index < renderers.length; index++) {
+            if (renderers[index] == renderer) {
+                final RFShowControlFrameRenderer[] newRenderers = new RFShowControlFrameRenderer[renderers.length - 1];
+                System.arraycopy(renderers, 0, newRenderers, 0, index);
+                System.arraycopy(renderers, index + 1, newRenderers, index, renderers.length - index - 1);
+                renderers = newRenderers;
+                break;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Run the frame renderers and publish the channel values, nothing if there is no renderer.
+     *
+     * @param frameNanos	The frame time.
+     */
+    void renderFrame(final long frameNanos) {
+        final RFShowControlFrameRenderer[] currentRenderers = renderers;
+        if (currentRenderers.length == 0) {
+            return;
+        }
+        for (RFShowControlFrameRenderer renderer : currentRenderers) {
+            renderer.renderFrame(frameNanos, channelValues);
         }
+        channelValues.publish();
+    }
+
+    /**
+     * Return the supervisor of the frames sent by the scheduler.
+     * @return	The supervisor.
+     */
+    public RFShowControlTransmitSupervisor getTransmitSupervisor() {
+        return supervisor;
+    }
+
+    /**
+     * Return the frame scheduler, null if the controller is not started.
+     * @return	The frame scheduler.
+     */
+    public synchronized RFShowControlFrameScheduler getFrameScheduler() {
+        return scheduler;
+    }
+
+
+    @Override
+    public RFShowControlController resetChannelValues() throws RFShowControlException {
+        channelValues.fill((byte) 0);
         return this;
     }
 
 	@Override
 	public RFShowControlController resetAndFlushChannelValues() throws RFShowControlException {
-        synchronized (synchroTempValues) {
-            Arrays.fill(channelTempValues, (byte) 0);
-            flushChannelValues();
-        }
+        channelValues.fill((byte) 0);
+        flushChannelValues();
 		return this;
 	}
 
 	@Override
 	public byte[] getChannelValues() {
-        synchronized (synchroTempValues) {
-            return Arrays.copyOf(channelTempValues, channelTempValues.length);
-        }
+        return channelValues.copyValues();
 	}
 
-	private RFShowControlController sendChannelValues() throws RFShowControlException {
+    @Override
+    public int getNumberOfChannel() {
+        return channelValues.getNumberOfChannel();
+    }
+
+    /**
+     * Return the RF24 adapter.
+     * @return	The adapter.
+     */
+    RFShowControlRF24Adapter getAdapter() {
+        return rf24;
+    }
+
+    /**
+     * Return the channel values buffer.
+     * @return	The channel values.
+     */
+    RFShowControlChannelBuffer getChannelBuffer() {
+        return channelValues;
+    }
+
+    /**
+     * Publish the channel values as the next frame to send, without sending it.
+     */
+    void publishChannelValues() {
+        channelValues.publish();
+    }
+
+    /**
+     * Send the last published frame.
+     *
+     * @param forceKeyframe	true to send all the packets.
+     * @return	The current RFShowControlControllerImpl instance.
+     * @throws RFShowControlException	In case of communication error with RF Module.
+     */
+	RFShowControlController sendChannelValues(final boolean forceKeyframe) throws RFShowControlException {
         synchronized (synchroSendValues) {
-            rf24.sendChannelValues(channelActiveValues);
+            rf24.sendChannelValues(channelValues.acquire(), forceKeyframe);
         }
 		return this;
 	}
 
+    /**
+     * Send pre-encoded packets, see {@link RFShowControlRF24Adapter#sendPackets(ByteBuffer, boolean)}.
+     *
+     * @param packets	The packets, from the position to the limit of the buffer.
+     * @param keyframe	true if the packets are all the packets of the frame.
+     * @return	The number of packets sent.
+     * @throws RFShowControlException	In case of communication error with RF Module.
+     */
+    int sendPackets(final ByteBuffer packets, final boolean keyframe) throws RFShowControlException {
+        synchronized (synchroSendValues) {
+            return rf24.sendPackets(packets, keyframe);
+        }
+    }
+
     @Override
-    public RFShowControlController flushChannelValues() throws RFShowControlException {
-        synchronized (synchroTempValues) {
-            channelActiveValues = Arrays.copyOf(channelTempValues, channelTempValues.length);
+    public RFShowControlController setKeyframeInterval(final int keyframeInterval) {
+        synchronized (synchroSendValues) {
+            rf24.setKeyframeInterval(keyframeInterval);
         }
-        sendChannelValues();
         return this;
     }
 
+    @Override
+    public RFShowControlController setSequenceNumbering(final boolean sequenceNumbering) {
+        synchronized (synchroSendValues) {
+            rf24.setSequenceNumbering(sequenceNumbering);
+        }
+        return this;
+    }
+
+    @Override
+    public RFShowControlOutputTransform getOutputTransform() {
+        return rf24.getOutputTransform();
+    }
+
+    @Override
+    public RFShowControlController setRecorder(final RFShowControlRecorder recorder) {
+        synchronized (synchroSendValues) {
+            rf24.setRecorder(recorder);
+        }
+        return this;
+    }
+
+    @Override
+    public RFShowControlController flushChannelValues() throws RFShowControlException {
+        final long start = System.nanoTime();
+        channelValues.publish();
+        sendChannelValues(false);
+        metrics.frameFlushed(System.nanoTime() - start);
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Void> flushChannelValuesAsync() {
+        channelValues.publish();
+        // Under the lock of stopFlushThread: a request is never left to a flush thread that is exiting
+        synchronized (flushLock) {
+            if (flushThread == null) {
+                startFlushThread();
+            }
+            final CompletableFuture<Void> future = pendingFlush.get();
+            if (future != null) {
+                // Not taken by the flush thread yet: it will send this frame or a newer one
+                return future;
+            }
+            final CompletableFuture<Void> newFuture = new CompletableFuture<Void>();
+            pendingFlush.set(newFuture);
+            LockSupport.unpark(flushThread);
+            return newFuture;
+        }
+    }
+
+    /**
+     * Start the thread sending the asynchronous flushes, with the flush lock held.
+     */
+    private void startFlushThread() {
+        flushRunning = true;
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    final CompletableFuture<Void> future = pendingFlush.getAndSet(null);
+                    if (future == null) {
+                        if (!flushRunning) {
+                            break;
+                        }
+                        LockSupport.park(this);
+                        continue;
+                    }
+                    try {
+                        sendChannelValues(false);
+                        future.complete(null);
+                    } catch (RFShowControlException | RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            }
+        }, "rfshowcontrol-flush");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+        flushThread = thread;
+    }
+
+    /**
+     * Stop the thread sending the asynchronous flushes, after sending the pending flush.
+     */
+    private void stopFlushThread() {
+        // The flush thread never takes the flush lock: joined with the lock held, no request comes in meanwhile
+        synchronized (flushLock) {
+            final Thread thread = flushThread;
+            if (thread == null) {
+                return;
+            }
+            flushRunning = false;
+            LockSupport.unpark(thread);
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            flushThread = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
 	@Override
 	public RFShowControlController updateChannelValue(byte newChannelValue, int channelNumber) {
-        synchronized (synchroTempValues) {
-            if (channelNumber < 1 || channelNumber > channelTempValues.length) {
-                throw new IllegalArgumentException("channelNumber must be in range [1-" + channelTempValues.length + "]");
-            }
-            channelTempValues[channelNumber - 1] = newChannelValue;
+        if (channelNumber < 1 || channelNumber > channelValues.getNumberOfChannel()) {
+            throw new IllegalArgumentException("channelNumber must be in range [1-" + channelValues.getNumberOfChannel() + "]");
         }
+        channelValues.update(newChannelValue, channelNumber - 1);
 		return this;
 	}
 
 	@Override
 	public RFShowControlController updateChannelValues(byte[] newChannelValues, int startChannelNumber) {
-        synchronized (synchroTempValues) {
-            if (newChannelValues == null || newChannelValues.length == 0) {
-                return this;
-            }
-            else if (startChannelNumber < 1 || startChannelNumber > channelTempValues.length) {
-                throw new IllegalArgumentException("startChannelNumber must be in range [1-" + channelTempValues.length + "]");
-            }
-            else if ((startChannelNumber - 1) > (channelTempValues.length - newChannelValues.length)) {
-                throw new IllegalArgumentException("startChannelNumber + newChannelValues.length must not exceed " + channelTempValues.length);
+        if (newChannelValues == null || newChannelValues.length == 0) {
+            return this;
+        }
+        else if (startChannelNumber < 1 || startChannelNumber > channelValues.getNumberOfChannel()) {
+            throw new IllegalArgumentException("startChannelNumber must be in range [1-" + channelValues.getNumberOfChannel() + "]");
+        }
+        else if ((startChannelNumber - 1) > (channelValues.getNumberOfChannel() - newChannelValues.length)) {
+            throw new IllegalArgumentException("startChannelNumber + newChannelValues.length must not exceed " + channelValues.getNumberOfChannel());
+        }
+        channelValues.update(newChannelValues, 0, startChannelNumber - 1, newChannelValues.length);
+		return this;
+	}
+
+	@Override
+	public RFShowControlController updateChannelValues(ByteBuffer newChannelValues, int startChannelNumber) {
+        if (newChannelValues == null || !newChannelValues.hasRemaining()) {
+            return this;
+        }
+        else if (startChannelNumber < 1 || startChannelNumber > channelValues.getNumberOfChannel()) {
+            throw new IllegalArgumentException("startChannelNumber must be in range [1-" + channelValues.getNumberOfChannel() + "]");
+        }
+        else if ((startChannelNumber - 1) > (channelValues.getNumberOfChannel() - newChannelValues.remaining())) {
+            throw new IllegalArgumentException("startChannelNumber + newChannelValues.remaining() must not exceed " + channelValues.getNumberOfChannel());
+        }
+        channelValues.update(newChannelValues, startChannelNumber - 1);
+		return this;
+	}
+
+	@Override
+	public RFShowControlController updatePixelValues(final int[] colours, final int coloursOffset, final int[] channelIndexes,
+			final int indexesOffset, final int numberOfPixel) {
+        if (numberOfPixel < 0 || coloursOffset < 0 || coloursOffset > colours.length - numberOfPixel) {
+            throw new IllegalArgumentException("coloursOffset + numberOfPixel must not exceed " + colours.length);
+        }
+        else if (indexesOffset < 0 || indexesOffset > channelIndexes.length - 3 * numberOfPixel) {
+            throw new IllegalArgumentException("indexesOffset + 3 * numberOfPixel must not exceed " + channelIndexes.length);
+        }
+        // Checked before the update: a bad index must not leave a partial frame
+        for (int index = indexesOffset; index < indexesOffset + 3 * numberOfPixel; index++) {
+            if (channelIndexes[index] < 0 || channelIndexes[index] >= channelValues.getNumberOfChannel()) {
+                throw new IllegalArgumentException("channelIndexes must be in range [0-"
+                        + (channelValues.getNumberOfChannel() - 1) + "]");
             }
-            System.arraycopy(newChannelValues, 0, channelTempValues, startChannelNumber - 1, newChannelValues.length);
         }
+        channelValues.updatePixels(colours, coloursOffset, channelIndexes, indexesOffset, numberOfPixel);
+		return this;
+	}
+
+	@Override
+	public RFShowControlUpdateBatch beginUpdate() {
+		return new RFShowControlUpdateBatch(this, channelValues.getNumberOfChannel());
+	}
+
+	@Override
+	public RFShowControlController commitUpdate(final RFShowControlUpdateBatch batch) {
+        if (batch == null || batch.getController() != this) {
+            throw new IllegalArgumentException("batch must be created by this controller");
+        }
+        channelValues.update(batch);
 		return this;
 	}
 
+    /**
+     * Update a range of channels from a part of an array, the range must be valid.
+     *
+     * @param newChannelValues		The new values.
+     * @param valuesOffset			Index of the first value to copy.
+     * @param length				Number of values to copy.
+     * @param startChannelNumber	The first channel to update.
+     */
+    void updateChannelValues(final byte[] newChannelValues, final int valuesOffset, final int length, final int startChannelNumber) {
+        channelValues.update(newChannelValues, valuesOffset, startChannelNumber - 1, length);
+    }
+
 	@Override
 	public RFShowControlController updateChannelValues(byte[] newChannelValues) {
-        synchronized (synchroTempValues) {
-            if (newChannelValues.length != channelTempValues.length) {
-                throw new IllegalArgumentException("newChannelValues length must be equal to " + channelTempValues.length);
-            }
-            System.arraycopy(newChannelValues, 0, channelTempValues, 0, newChannelValues.length);
+        if (newChannelValues.length != channelValues.getNumberOfChannel()) {
+            throw new IllegalArgumentException("newChannelValues length must be equal to " + channelValues.getNumberOfChannel());
         }
+        channelValues.update(newChannelValues, 0, 0, newChannelValues.length);
 		return this;
 	}
 
 	@Override
 	public RFShowControlController updateAndFlushChannelValues(byte[] newChannelValues) throws RFShowControlException {
-        synchronized (synchroTempValues) {
-            updateChannelValues(newChannelValues);
-            flushChannelValues();
-        }
+        updateChannelValues(newChannelValues);
+        flushChannelValues();
 		return this;
 	}
 
@@ -0,0 +1,139 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a RFShowControlControllerImpl, cheap enough to be always on (no allocation, striped counters).
+ */
+public class RFShowControlControllerMetrics implements RFShowControlControllerMetricsMBean {
+
+	/** Number of buckets of the flush latency histogram, the last one holds latencies >= 2^20 us (~1 s). */
+	private static final int NUMBER_OF_LATENCY_BUCKETS = 22;
+
+	/** The controller. */
+	private final RFShowControlControllerImpl controller;
+
+	/** The channel buffer of the controller. */
+	private final RFShowControlChannelBuffer channelBuffer;
+
+	private final LongAdder framesFlushed = new LongAdder();
+
+	private final LongAdder flushLatencyNanos = new LongAdder();
+
+	private final LongAdder[] flushLatencyHistogram = new LongAdder[NUMBER_OF_LATENCY_BUCKETS];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param controller		The controller.
+	 * @param channelBuffer		The channel buffer of the controller.
+	 */
+	RFShowControlControllerMetrics(final RFShowControlControllerImpl controller, final RFShowControlChannelBuffer channelBuffer) {
+		this.controller = controller;
+		this.channelBuffer = channelBuffer;
+		for (int index = 0; index < flushLatencyHistogram.length; index++) {
+			flushLatencyHistogram[index] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Record a flush.
+	 *
+	 * @param latencyNanos	Duration of the flush.
+	 */
+	void frameFlushed(final long latencyNanos) {
+		framesFlushed.increment();
+		flushLatencyNanos.add(latencyNanos);
+		// Bucket of the power of 2 of the latency in microseconds
+		final long micros = latencyNanos / 1000;
+		flushLatencyHistogram[Math.min(NUMBER_OF_LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+	}
+
+	@Override
+	public long getFramesFlushed() {
+		return framesFlushed.sum();
+	}
+
+	@Override
+	public long[] getFlushLatencyHistogram() {
+		final long[] histogram = new long[flushLatencyHistogram.length];
+		for (int index = 0; index < histogram.length; index++) {
+			histogram[index] = flushLatencyHistogram[index].sum();
+		}
+		return histogram;
+	}
+
+	@Override
+	public double getAverageFlushLatencyMicros() {
+		final long frames = framesFlushed.sum();
+		return frames == 0 ? 0 : flushLatencyNanos.sum() / 1e3 / frames;
+	}
+
+	@Override
+	public long getSchedulerLateFrames() {
+		final RFShowControlFrameScheduler scheduler = controller.getFrameScheduler();
+		return scheduler == null ? 0 : scheduler.getLateFrameCount();
+	}
+
+	@Override
+	public long getSchedulerMissedFrames() {
+		final RFShowControlFrameScheduler scheduler = controller.getFrameScheduler();
+		return scheduler == null ? 0 : scheduler.getMissedFrameCount();
+	}
+
+	@Override
+	public long getTransmitErrors() {
+		return controller.getTransmitSupervisor().getErrorCount();
+	}
+
+	@Override
+	public String getLastTransmitError() {
+		final Exception lastError = controller.getTransmitSupervisor().getLastError();
+		return lastError == null ? null : lastError.toString();
+	}
+
+	@Override
+	public long getRadioReinitializations() {
+		return controller.getTransmitSupervisor().getReinitCount();
+	}
+
+	@Override
+	public long getMaxRecoveryTimeNanos() {
+		return controller.getTransmitSupervisor().getMaxRecoveryNanos();
+	}
+
+	@Override
+	public long getLockWaitTimeNanos() {
+		return channelBuffer.getLockWaitNanos();
+	}
+
+	@Override
+	public long getContendedLockAcquisitions() {
+		return channelBuffer.getContendedLockCount();
+	}
+
+	@Override
+	public int getMaxFramesPerSecond() {
+		return controller.getMaxFramesPerSecond();
+	}
+
+}
@@ -0,0 +1,100 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+/**
+ * JMX view of the metrics of a RFShowControlController.
+ */
+public interface RFShowControlControllerMetricsMBean {
+
+	/**
+	 * Return the number of frames flushed.
+	 * @return	The number of frames flushed.
+	 */
+	long getFramesFlushed();
+
+	/**
+	 * Return the flush latency histogram: bucket i counts the flushes which lasted less than 2^i microseconds
+	 * (and at least 2^(i-1)), the last bucket counts the longer ones.
+	 * @return	The flush latency histogram.
+	 */
+	long[] getFlushLatencyHistogram();
+
+	/**
+	 * Return the average flush latency.
+	 * @return	The average flush latency in microseconds.
+	 */
+	double getAverageFlushLatencyMicros();
+
+	/**
+	 * Return the number of frames started late by the frame scheduler.
+	 * @return	The number of late frames.
+	 */
+	long getSchedulerLateFrames();
+
+	/**
+	 * Return the number of frames skipped by the overloaded frame scheduler.
+	 * @return	The number of missed frames.
+	 */
+	long getSchedulerMissedFrames();
+
+	/**
+	 * Return the number of errors of the frame scheduler transmissions.
+	 * @return	The number of transmit errors.
+	 */
+	long getTransmitErrors();
+
+	/**
+	 * Return the last error of the frame scheduler transmissions.
+	 * @return	The error description, null if none.
+	 */
+	String getLastTransmitError();
+
+	/**
+	 * Return the number of re-initialisations of the RF module by the transmit supervisor.
+	 * @return	The number of re-initialisations.
+	 */
+	long getRadioReinitializations();
+
+	/**
+	 * Return the duration of the longest recovery, from a transmit error to the next successful transmission.
+	 * @return	The duration in nanoseconds.
+	 */
+	long getMaxRecoveryTimeNanos();
+
+	/**
+	 * Return the time spent waiting for the channel buffer lock.
+	 * @return	The lock wait time in nanoseconds.
+	 */
+	long getLockWaitTimeNanos();
+
+	/**
+	 * Return the number of channel buffer lock acquisitions which had to wait.
+	 * @return	The number of contended acquisitions.
+	 */
+	long getContendedLockAcquisitions();
+
+	/**
+	 * Return the highest frame rate the link can carry with the radio profile and send mode of the controller.
+	 * @return	The number of keyframes per second.
+	 */
+	int getMaxFramesPerSecond();
+
+}
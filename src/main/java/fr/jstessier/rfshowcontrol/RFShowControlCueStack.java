@@ -0,0 +1,304 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.NUMBER_OF_CHANNEL_PER_PACKET;
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named cues of a controller, stored with their RFShowControl packets already encoded.
+ *
+ * The cues are kept in a bounded cache, the least recently stored or recalled cue is evicted first.
+ * A recall copies the values of the cue in the channel values of the controller (so the next frames keep the cue)
+ * and sends its cached packets straight to the adapter, without encoding. A crossfade mixes the values of two cues
+ * and writes the packets in the same pass.
+ * The cost of a recall only depends on the number of channel (512 max), not on the number of cues.
+ * The packets are encoded again, once, when the output transform of the controller changed since they were encoded.
+ */
+public class RFShowControlCueStack {
+
+	/** Default number of cues kept. */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/** The controller. */
+	private final RFShowControlControllerImpl controller;
+
+	/** Number of channel of the controller. */
+	private final int numberOfChannel;
+
+	/** Number of packets of a cue. */
+	private final int numberOfPacket;
+
+	/** The cues, least recently used first. */
+	private final Map<String, Cue> cues;
+
+	/** Reusable values of a crossfade. */
+	private final byte[] mixedValues;
+
+	/** Reusable packets of a crossfade. */
+	private final byte[] mixedPackets;
+
+	/** View of the packets of a crossfade. */
+	private final ByteBuffer mixedBuffer;
+
+	private long evictionCount;
+
+	/**
+	 * Constructor with the default capacity.
+	 *
+	 * @param controller	The controller, configured in TX mode.
+	 */
+	public RFShowControlCueStack(final RFShowControlControllerImpl controller) {
+		this(controller, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param controller	The controller, configured in TX mode.
+	 * @param capacity		Number of cues kept.
+	 */
+	public RFShowControlCueStack(final RFShowControlControllerImpl controller, final int capacity) {
+		if (controller == null) {
+			throw new IllegalArgumentException("controller is mandatory");
+		}
+		else if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		}
+		this.controller = controller;
+		this.numberOfChannel = controller.getNumberOfChannel();
+		this.numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(numberOfChannel);
+		this.mixedValues = new byte[numberOfChannel];
+		this.mixedPackets = new byte[numberOfPacket * PACKET_SIZE];
+		this.mixedBuffer = ByteBuffer.wrap(mixedPackets);
+		// Access order: a recall moves the cue to the end
+		this.cues = new LinkedHashMap<String, Cue>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Cue> eldest) {
+				if (size() > capacity) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Store the current channel values of the controller as a cue.
+	 *
+	 * @param name	Name of the cue, replaced if it exists.
+	 * @return	The current RFShowControlCueStack instance.
+	 */
+	public RFShowControlCueStack store(final String name) {
+		return store(name, controller.getChannelValues());
+	}
+
+	/**
+	 * Store channel values as a cue.
+	 *
+	 * @param name			Name of the cue, replaced if it exists.
+	 * @param channelValues	The value of every channel of the controller.
+	 * @return	The current RFShowControlCueStack instance.
+	 */
+	public synchronized RFShowControlCueStack store(final String name, final byte[] channelValues) {
+		if (name == null) {
+			throw new IllegalArgumentException("name is mandatory");
+		}
+		else if (channelValues == null || channelValues.length != numberOfChannel) {
+			throw new IllegalArgumentException("channelValues must contain " + numberOfChannel + " values");
+		}
+		final Cue cue = new Cue(Arrays.copyOf(channelValues, numberOfChannel), new byte[numberOfPacket * PACKET_SIZE]);
+		encode(cue, controller.getOutputTransform().getTables());
+		cues.put(name, cue);
+		return this;
+	}
+
+	/**
+	 * Send the packets of a cue and make its values the channel values of the controller.
+	 *
+	 * @param name	Name of the cue.
+	 * @return	The current RFShowControlCueStack instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public synchronized RFShowControlCueStack recall(final String name) throws RFShowControlException {
+		final Cue cue = getCue(name);
+		cue.packetBuffer.clear();
+		send(cue.values, cue.packetBuffer);
+		return this;
+	}
+
+	/**
+	 * Send a mix of two cues and make it the channel values of the controller.
+	 *
+	 * @param fromName	Name of the cue faded out.
+	 * @param toName	Name of the cue faded in.
+	 * @param level		Level of the cue faded in [0-255], 0 sends the first cue and 255 the second one.
+	 * @return	The current RFShowControlCueStack instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public synchronized RFShowControlCueStack crossfade(final String fromName, final String toName, final int level)
+			throws RFShowControlException {
+		if (level < 0 || level > 255) {
+			throw new IllegalArgumentException("level must be in range [0-255]");
+		}
+		final byte[] from = getCue(fromName).values;
+		final byte[] to = getCue(toName).values;
+		final byte[][] tables = controller.getOutputTransform().getTables();
+		// Mix, transform and write the payloads in one pass
+		for (int index = 0; index < numberOfPacket; index++) {
+			final int packet = index * PACKET_SIZE;
+			final int first = index * NUMBER_OF_CHANNEL_PER_PACKET;
+			final int last = Math.min(first + NUMBER_OF_CHANNEL_PER_PACKET, numberOfChannel);
+			for (int channel = first; channel < last; channel++) {
+				final int value = ((from[channel] & 0xFF) * (255 - level) + (to[channel] & 0xFF) * level + 127) / 255;
+				mixedValues[channel] = (byte) value;
+				mixedPackets[packet + channel - first] = tables == null ? (byte) value : tables[channel][value];
+			}
+			for (int channel = last; channel < first + NUMBER_OF_CHANNEL_PER_PACKET; channel++) {
+				mixedPackets[packet + channel - first] = 0;
+			}
+			mixedPackets[packet + RFShowControlPacketEncoder.OFFSET_INDEX] = (byte) index;
+			mixedPackets[packet + RFShowControlPacketEncoder.TBD_INDEX] = 0;
+		}
+		mixedBuffer.clear();
+		send(mixedValues, mixedBuffer);
+		return this;
+	}
+
+	/**
+	 * Return true if a cue is in the stack.
+	 *
+	 * @param name	Name of the cue.
+	 * @return	true if the cue is stored and not evicted.
+	 */
+	public synchronized boolean contains(final String name) {
+		return cues.containsKey(name);
+	}
+
+	/**
+	 * Remove a cue.
+	 *
+	 * @param name	Name of the cue.
+	 * @return	true if the cue was in the stack.
+	 */
+	public synchronized boolean remove(final String name) {
+		return cues.remove(name) != null;
+	}
+
+	/**
+	 * Return the number of cues in the stack.
+	 * @return	The number of cues.
+	 */
+	public synchronized int size() {
+		return cues.size();
+	}
+
+	/**
+	 * Return the number of cues evicted to keep the capacity.
+	 * @return	The number of evicted cues.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Return a cue, its packets encoded with the current output transform.
+	 *
+	 * @param name	Name of the cue.
+	 * @return	The cue.
+	 */
+	private Cue getCue(final String name) {
+		final Cue cue = cues.get(name);
+		if (cue == null) {
+			throw new IllegalArgumentException("cue " + name + " is not in the stack");
+		}
+		final byte[][] tables = controller.getOutputTransform().getTables();
+		if (cue.tables != tables) {
+			encode(cue, tables);
+		}
+		return cue;
+	}
+
+	/**
+	 * Encode the packets of a cue.
+	 *
+	 * @param cue		The cue.
+	 * @param tables	The output transform tables, null for the identity.
+	 */
+	private void encode(final Cue cue, final byte[][] tables) {
+		final byte[] packet = new byte[PACKET_SIZE];
+		for (int index = 0; index < numberOfPacket; index++) {
+			final int from = index * NUMBER_OF_CHANNEL_PER_PACKET;
+			RFShowControlPacketEncoder.encodePacket(cue.values, from, from + NUMBER_OF_CHANNEL_PER_PACKET, (byte) index,
+					packet, tables);
+			System.arraycopy(packet, 0, cue.packets, index * PACKET_SIZE, PACKET_SIZE);
+		}
+		cue.tables = tables;
+	}
+
+	/**
+	 * Publish values as the channel values of the controller and send their packets.
+	 *
+	 * @param values	The value of every channel.
+	 * @param packets	The packets of the values.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	private void send(final byte[] values, final ByteBuffer packets) throws RFShowControlException {
+		controller.getChannelBuffer().update(values, 0, 0, numberOfChannel);
+		controller.publishChannelValues();
+		// All the packets of the channels
+		controller.sendPackets(packets, true);
+	}
+
+	/**
+	 * A cue: its values and their packets.
+	 */
+	private static final class Cue {
+
+		/** The channel values. */
+		private final byte[] values;
+
+		/** The packets of all the channels. */
+		private final byte[] packets;
+
+		/** View of the packets sent. */
+		private final ByteBuffer packetBuffer;
+
+		/** The output transform tables the packets were encoded with. */
+		private byte[][] tables;
+
+		private Cue(final byte[] values, final byte[] packets) {
+			this.values = values;
+			this.packets = packets;
+			this.packetBuffer = ByteBuffer.wrap(packets);
+		}
+
+	}
+
+}
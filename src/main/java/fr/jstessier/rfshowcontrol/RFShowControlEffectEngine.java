@@ -0,0 +1,344 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engine of time-based effects (fades, chases and pulses) rendered on each frame of the controller scheduler.
+ *
+ * Effects are submitted once and interpolated on every frame into the channel values, just before they are sent.
+ * Each channel runs at most one effect: a new effect on a channel replaces the previous one.
+ * The state of the effects is held per channel in primitive arrays, rendering a frame does not allocate.
+ * An effect starts on the first frame rendered after its submission. A fade starts from the channel value
+ * of that frame and leaves the channel at its target value; chases and pulses run until stopped.
+ * While an effect runs on a channel, it overrides the updates of that channel.
+ *
+ * Register the engine with {@link RFShowControlControllerImpl#addFrameRenderer(RFShowControlFrameRenderer)}.
+ */
+public class RFShowControlEffectEngine implements RFShowControlFrameRenderer {
+
+	/** Easing of the fades. */
+	public enum Easing {
+		LINEAR, EASE_IN, EASE_OUT, EASE_IN_OUT
+	}
+
+	private static final byte NONE = 0;
+
+	private static final byte FADE = 1;
+
+	private static final byte CHASE = 2;
+
+	private static final byte PULSE = 3;
+
+	private static final Easing[] EASINGS = Easing.values();
+
+	/** Effect type of each channel. */
+	private final byte[] types;
+
+	/** The effect waits for its first frame ? */
+	private final boolean[] pending;
+
+	/** Easing ordinal of each fade. */
+	private final byte[] easings;
+
+	/** First frame time of each effect. */
+	private final long[] startNanos;
+
+	/** Fade duration, chase step or pulse period. */
+	private final long[] durationNanos;
+
+	/** Fade start value or chase and pulse low value. */
+	private final int[] lows;
+
+	/** Fade target value or chase and pulse high value. */
+	private final int[] highs;
+
+	/** Position of the channel in its chase. */
+	private final int[] phases;
+
+	/** Number of channel of the chase. */
+	private final int[] lengths;
+
+	/** Rendered values. */
+	private final byte[] output;
+
+	/** Number of channel running an effect. */
+	private int numberOfActiveChannel;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numberOfChannel	Number of channel of the controller.
+	 */
+	public RFShowControlEffectEngine(final int numberOfChannel) {
+		if (numberOfChannel < 1) {
+			throw new IllegalArgumentException("numberOfChannel must be greater than 0");
+		}
+		types = new byte[numberOfChannel];
+		pending = new boolean[numberOfChannel];
+		easings = new byte[numberOfChannel];
+		startNanos = new long[numberOfChannel];
+		durationNanos = new long[numberOfChannel];
+		lows = new int[numberOfChannel];
+		highs = new int[numberOfChannel];
+		phases = new int[numberOfChannel];
+		lengths = new int[numberOfChannel];
+		output = new byte[numberOfChannel];
+	}
+
+	/**
+	 * Fade a range of channels from their current value to a target value.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param numberOfChannel		Number of channel.
+	 * @param target				Target value [0-255].
+	 * @param durationMillis		Fade duration.
+	 * @param easing				Easing of the fade.
+	 * @return	The current RFShowControlEffectEngine instance.
+	 */
+	public synchronized RFShowControlEffectEngine fade(final int startChannelNumber, final int numberOfChannel,
+			final int target, final long durationMillis, final Easing easing) {
+		checkRange(startChannelNumber, numberOfChannel);
+		checkValue(target, "target");
+		if (durationMillis < 0) {
+			throw new IllegalArgumentException("durationMillis must not be negative");
+		}
+		else if (easing == null) {
+			throw new IllegalArgumentException("easing is mandatory");
+		}
+		for (int index = startChannelNumber - 1; index < startChannelNumber - 1 + numberOfChannel; index++) {
+			start(index, FADE, TimeUnit.MILLISECONDS.toNanos(durationMillis), -1, target);
+			easings[index] = (byte) easing.ordinal();
+		}
+		return this;
+	}
+
+	/**
+	 * Chase a range of channels: one channel after the other is set to the high value, the others to the low value.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param numberOfChannel		Number of channel.
+	 * @param low					Low value [0-255].
+	 * @param high					High value [0-255].
+	 * @param stepMillis			Time on each channel.
+	 * @return	The current RFShowControlEffectEngine instance.
+	 */
+	public synchronized RFShowControlEffectEngine chase(final int startChannelNumber, final int numberOfChannel,
+			final int low, final int high, final long stepMillis) {
+		checkRange(startChannelNumber, numberOfChannel);
+		checkValue(low, "low");
+		checkValue(high, "high");
+		if (stepMillis < 1) {
+			throw new IllegalArgumentException("stepMillis must be greater than 0");
+		}
+		for (int phase = 0; phase < numberOfChannel; phase++) {
+			final int index = startChannelNumber - 1 + phase;
+			start(index, CHASE, TimeUnit.MILLISECONDS.toNanos(stepMillis), low, high);
+			phases[index] = phase;
+			lengths[index] = numberOfChannel;
+		}
+		return this;
+	}
+
+	/**
+	 * Pulse a range of channels between a low and a high value, following a sine wave.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param numberOfChannel		Number of channel.
+	 * @param low					Low value [0-255].
+	 * @param high					High value [0-255].
+	 * @param periodMillis			Period of the pulse.
+	 * @return	The current RFShowControlEffectEngine instance.
+	 */
+	public synchronized RFShowControlEffectEngine pulse(final int startChannelNumber, final int numberOfChannel,
+			final int low, final int high, final long periodMillis) {
+		checkRange(startChannelNumber, numberOfChannel);
+		checkValue(low, "low");
+		checkValue(high, "high");
+		if (periodMillis < 1) {
+			throw new IllegalArgumentException("periodMillis must be greater than 0");
+		}
+		for (int index = startChannelNumber - 1; index < startChannelNumber - 1 + numberOfChannel; index++) {
+			start(index, PULSE, TimeUnit.MILLISECONDS.toNanos(periodMillis), low, high);
+		}
+		return this;
+	}
+
+	/**
+	 * Stop the effects of a range of channels, which keep their last rendered value.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param numberOfChannel		Number of channel.
+	 * @return	The current RFShowControlEffectEngine instance.
+	 */
+	public synchronized RFShowControlEffectEngine stop(final int startChannelNumber, final int numberOfChannel) {
+		checkRange(startChannelNumber, numberOfChannel);
+		for (int index = startChannelNumber - 1; index < startChannelNumber - 1 + numberOfChannel; index++) {
+			if (types[index] != NONE) {
+				types[index] = NONE;
+				numberOfActiveChannel--;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Stop all the effects.
+	 *
+	 * @return	The current RFShowControlEffectEngine instance.
+	 */
+	public RFShowControlEffectEngine stopAll() {
+		return stop(1, types.length);
+	}
+
+	/**
+	 * Return a channel runs an effect ?
+	 *
+	 * @param channelNumber	The channel number.
+	 * @return	true if an effect runs on the channel.
+	 */
+	public synchronized boolean isActive(final int channelNumber) {
+		checkRange(channelNumber, 1);
+		return types[channelNumber - 1] != NONE;
+	}
+
+	/**
+	 * Return the number of channel running an effect.
+	 * @return	The number of channel.
+	 */
+	public synchronized int getNumberOfActiveChannel() {
+		return numberOfActiveChannel;
+	}
+
+	@Override
+	public synchronized void renderFrame(final long frameNanos, final RFShowControlChannelBuffer channelValues) {
+		if (numberOfActiveChannel == 0) {
+			return;
+		}
+		final int numberOfChannel = Math.min(types.length, channelValues.getNumberOfChannel());
+		int runStart = -1;
+		for (int index = 0; index < numberOfChannel; index++) {
+			final byte type = types[index];
+			if (type == NONE) {
+				if (runStart >= 0) {
+					channelValues.update(output, runStart, runStart, index - runStart);
+					runStart = -1;
+				}
+				continue;
+			}
+			if (pending[index]) {
+				pending[index] = false;
+				startNanos[index] = frameNanos;
+				if (type == FADE) {
+					channelValues.copyValues(index, output, index, 1);
+					lows[index] = output[index] & 0xFF;
+				}
+			}
+			output[index] = (byte) render(index, type, frameNanos - startNanos[index]);
+			if (runStart < 0) {
+				runStart = index;
+			}
+		}
+		if (runStart >= 0) {
+			channelValues.update(output, runStart, runStart, numberOfChannel - runStart);
+		}
+	}
+
+	/**
+	 * Compute the value of a channel, ending the fade when it is complete.
+	 *
+	 * @param index			Index of the channel.
+	 * @param type			Effect type of the channel.
+	 * @param elapsedNanos	Time since the first frame of the effect.
+	 * @return	The value [0-255].
+	 */
+	private int render(final int index, final byte type, final long elapsedNanos) {
+		final int low = lows[index];
+		final int high = highs[index];
+		final long duration = durationNanos[index];
+		switch (type) {
+		case FADE:
+			if (elapsedNanos >= duration) {
+				types[index] = NONE;
+				numberOfActiveChannel--;
+				return high;
+			}
+			final double progress = ease(EASINGS[easings[index]], (double) Math.max(0, elapsedNanos) / duration);
+			return (int) Math.round(low + (high - low) * progress);
+		case CHASE:
+			final long step = Math.max(0, elapsedNanos) / duration;
+			return step % lengths[index] == phases[index] ? high : low;
+		default:
+			final double phase = (double) (Math.max(0, elapsedNanos) % duration) / duration;
+			return (int) Math.round(low + (high - low) * (0.5 - 0.5 * Math.cos(2 * Math.PI * phase)));
+		}
+	}
+
+	/**
+	 * Apply an easing to a progress.
+	 *
+	 * @param easing	The easing.
+	 * @param t			The linear progress [0-1].
+	 * @return	The eased progress [0-1].
+	 */
+	private static double ease(final Easing easing, final double t) {
+		switch (easing) {
+		case EASE_IN:
+			return t * t;
+		case EASE_OUT:
+			return 1 - (1 - t) * (1 - t);
+		case EASE_IN_OUT:
+			return t * t * (3 - 2 * t);
+		default:
+			return t;
+		}
+	}
+
+	/**
+	 * Start an effect on a channel, replacing its current effect.
+	 */
+	private void start(final int index, final byte type, final long duration, final int low, final int high) {
+		if (types[index] == NONE) {
+			numberOfActiveChannel++;
+		}
+		types[index] = type;
+		pending[index] = true;
+		durationNanos[index] = duration;
+		lows[index] = low;
+		highs[index] = high;
+	}
+
+	private void checkRange(final int startChannelNumber, final int numberOfChannel) {
+		if (startChannelNumber < 1 || startChannelNumber > types.length) {
+			throw new IllegalArgumentException("startChannelNumber must be in range [1-" + types.length + "]");
+		}
+		else if (numberOfChannel < 1 || startChannelNumber - 1 + numberOfChannel > types.length) {
+			throw new IllegalArgumentException("startChannelNumber + numberOfChannel must not exceed " + types.length);
+		}
+	}
+
+	private static void checkValue(final int value, final String name) {
+		if (value < 0 || value > 255) {
+			throw new IllegalArgumentException(name + " must be in range [0-255]");
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+/**
+ * Renderer of channel values run on each frame of the controller scheduler, just before the values are sent.
+ */
+public interface RFShowControlFrameRenderer {
+
+	/**
+	 * Render a frame into the channel values, on the scheduler thread.
+	 * Called on every frame: implementations must not block nor allocate.
+	 *
+	 * @param frameNanos	The frame time ({@link System#nanoTime()} time base).
+	 * @param channelValues	The channel values to update.
+	 */
+	void renderFrame(long frameNanos, RFShowControlChannelBuffer channelValues);
+
+}
@@ -0,0 +1,259 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed rate frame scheduler running on a dedicated thread.
+ *
+ * Frame deadlines are computed from the start time (frame n is due at start + n * period),
+ * so the rate does not drift with the execution time of the frames.
+ * When a frame ends after the deadline of one or more following frames, those frames are skipped and counted
+ * as missed instead of being run late one after the other.
+ */
+public class RFShowControlFrameScheduler {
+
+	/** Default number of frames per second. */
+	public static final int DEFAULT_FRAMES_PER_SECOND = 25;
+
+	/** Max number of frames per second. */
+	public static final int MAX_FRAMES_PER_SECOND = 1000;
+
+	/** Part of the period a frame may start after its deadline without being counted as late. */
+	private static final int LATE_TOLERANCE_DIVISOR = 10;
+
+	/** Name of the scheduler thread. */
+	private final String name;
+
+	/** The task run for each frame. */
+	private final FrameTask task;
+
+	/** Number of frames per second. */
+	private final int framesPerSecond;
+
+	/** Period between two frames in nanoseconds. */
+	private final long periodNanos;
+
+	/** The scheduler thread. */
+	private Thread thread;
+
+	/** The scheduler is running ? */
+	private volatile boolean running;
+
+	/** Number of frames run. */
+	private volatile long frameCount;
+
+	/** Number of frames started after their deadline (plus tolerance). */
+	private volatile long lateFrameCount;
+
+	/** Number of frames skipped because the scheduler was overloaded. */
+	private volatile long missedFrameCount;
+
+	/** Number of frames which ended with an error. */
+	private volatile long errorCount;
+
+	/** Error of the last frame which ended with an error, null if none. */
+	private volatile Exception lastError;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name				Name of the scheduler thread.
+	 * @param framesPerSecond	Number of frames per second [1-1000].
+	 * @param task				The task run for each frame.
+	 */
+	public RFShowControlFrameScheduler(final String name, final int framesPerSecond, final FrameTask task) {
+		if (framesPerSecond < 1 || framesPerSecond > MAX_FRAMES_PER_SECOND) {
+			throw new IllegalArgumentException("framesPerSecond must be in range [1-" + MAX_FRAMES_PER_SECOND + "]");
+		}
+		else if (task == null) {
+			throw new IllegalArgumentException("task is mandatory");
+		}
+		this.name = name;
+		this.task = task;
+		this.framesPerSecond = framesPerSecond;
+		this.periodNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+	}
+
+	/**
+	 * Start the scheduler thread.
+	 *
+	 * @return	The current RFShowControlFrameScheduler instance.
+	 */
+	public synchronized RFShowControlFrameScheduler start() {
+		if (thread != null) {
+			throw new IllegalStateException("RFShowControlFrameScheduler is already started");
+		}
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runFrames();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * Stop the scheduler thread and wait for the end of the current frame.
+	 *
+	 * @return	The current RFShowControlFrameScheduler instance.
+	 */
+	public synchronized RFShowControlFrameScheduler stop() {
+		running = false;
+		if (thread != null && thread != Thread.currentThread()) {
+			LockSupport.unpark(thread);
+			boolean interrupted = false;
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			thread = null;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Return true if the scheduler is running.
+	 * @return	true if the scheduler is running.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Return the number of frames per second.
+	 * @return	The number of frames per second.
+	 */
+	public int getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * Return the period between two frames in nanoseconds.
+	 * @return	The period.
+	 */
+	public long getPeriodNanos() {
+		return periodNanos;
+	}
+
+	/**
+	 * Return the number of frames run.
+	 * @return	The number of frames run.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Return the number of frames started after their deadline.
+	 * @return	The number of late frames.
+	 */
+	public long getLateFrameCount() {
+		return lateFrameCount;
+	}
+
+	/**
+	 * Return the number of frames skipped because the previous frames ended after their deadline.
+	 * @return	The number of missed frames.
+	 */
+	public long getMissedFrameCount() {
+		return missedFrameCount;
+	}
+
+	/**
+	 * Return the number of frames which ended with an error.
+	 * @return	The number of errors.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Return the error of the last frame which ended with an error.
+	 * @return	The error, null if none.
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Scheduler loop.
+	 */
+	private void runFrames() {
+		final long lateToleranceNanos = periodNanos / LATE_TOLERANCE_DIVISOR;
+		long frameNumber = 0;
+		long deadline = System.nanoTime();
+		while (running) {
+			final long now = System.nanoTime();
+			if (deadline - now > 0) {
+				LockSupport.parkNanos(this, deadline - now);
+				continue;
+			}
+			final long lateness = now - deadline;
+			if (lateness >= periodNanos) {
+				// Overloaded: skip the frames whose deadline is already over
+				final long missed = lateness / periodNanos;
+				missedFrameCount += missed;
+				frameNumber += missed;
+				deadline += missed * periodNanos;
+			}
+			if (lateness > lateToleranceNanos) {
+				lateFrameCount++;
+			}
+			try {
+				task.onFrame(frameNumber);
+			} catch (RFShowControlException | RuntimeException e) {
+				lastError = e;
+				errorCount++;
+			}
+			frameCount++;
+			frameNumber++;
+			deadline += periodNanos;
+		}
+	}
+
+	/**
+	 * Task run for each frame.
+	 */
+	public interface FrameTask {
+
+		/**
+		 * Run a frame.
+		 *
+		 * @param frameNumber	The frame number since the start, skipped frames included.
+		 * @throws RFShowControlException	In case of communication error with RF Module.
+		 */
+		void onFrame(long frameNumber) throws RFShowControlException;
+
+	}
+
+}
@@ -1,5 +1,9 @@
 package fr.jstessier.rfshowcontrol;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
 import fr.jstessier.rf24.exceptions.RF24Exception;
 import fr.jstessier.rf24.hardware.RF24Hardware;
 import fr.jstessier.rf24.hardware.RF24HardwarePi4j;
@@ -15,8 +19,30 @@ public class RFShowControlMain {
 	private static final byte[][] LED1 = new byte[][] { WHITE, RED, GREEN, BLUE };
 	private static final byte[][] LED2 = new byte[][] { RED, GREEN, BLUE, WHITE };
 
+	private static final Function<Throwable, Void> PRINT_ERROR = new Function<Throwable, Void>() {
+		@Override
+		public Void apply(Throwable e) {
+			e.printStackTrace();
+			return null;
+		}
+	};
+
+	/**
+	 * Play the sequence file given as first argument in loop, or the RGB demo without argument.
+	 *
+	 * @param args	The optional sequence file.
+	 */
 	public static void main(String[] args) throws RFShowControlException {
 
+		RFShowControlSequence sequence = null;
+		if (args.length > 0) {
+			try {
+				sequence = new RFShowControlSequence(Paths.get(args[0]));
+			} catch (IOException e) {
+				throw new RFShowControlException("An error occured during sequence opening", e);
+			}
+		}
+
 		RF24Hardware rf24Hardware;
 		try {
 			rf24Hardware = new RF24HardwarePi4j((byte) 0, (byte) 3);
@@ -24,23 +50,31 @@ public class RFShowControlMain {
 			throw new RFShowControlException("An error occured during RF24 Hardware instanciation", e);
 		}
 
-		final RFShowControlController controller = new RFShowControlControllerImpl(rf24Hardware, 60);
+		final RFShowControlController controller = new RFShowControlControllerImpl(rf24Hardware,
+				sequence != null ? sequence.getNumberOfChannel() : 60);
 		controller.start(
 				(byte) 76, 
 				new byte[] { (byte) 0xD2, (byte) 0xF2, (byte) 0xF2, (byte) 0xF2, (byte) 0xF2 },
 				Mode.TX);
-		
+
+		if (sequence != null) {
+			final RFShowControlSequencePlayer player = new RFShowControlSequencePlayer(controller, sequence, 1);
+			player.setLoop(true).start();
+			try {
+				player.awaitEnd();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
 		int index = 0;
 		while (true) {
 			byte[] led1 = LED1[index];
 			byte[] led2 = LED2[index];
 			controller.updateChannelValues(led1, 1);
 			controller.updateChannelValues(led2, 4);
-			try {
-				controller.flushChannelValues();
-			} catch (RFShowControlException e) {
-				e.printStackTrace();
-			}
+			controller.flushChannelValuesAsync().exceptionally(PRINT_ERROR);
 			try {
 				Thread.sleep(1000);
 			} catch (InterruptedException e) {
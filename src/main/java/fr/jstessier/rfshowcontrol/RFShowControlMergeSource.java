@@ -0,0 +1,196 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+/**
+ * Channel layer of a producer merged by a {@link RFShowControlMerger}.
+ *
+ * A source only takes part in the merge of the channels it updated, until it releases them.
+ * Updates record the changed range, only this range is merged again on the next frame.
+ */
+public class RFShowControlMergeSource {
+
+	/** The merger. */
+	private final RFShowControlMerger merger;
+
+	/** Name of the source. */
+	private final String name;
+
+	/** Priority of the source, for the channels merged by priority. */
+	private volatile int priority;
+
+	/** The channel values of the source. */
+	final byte[] values;
+
+	/** Channels updated by the source and not released. */
+	final boolean[] claimed;
+
+	/** Stamp of the last update of each channel, for the channels merged by latest takes precedence. */
+	final long[] stamps;
+
+	/** First channel index changed since the last merge. */
+	private int dirtyFrom;
+
+	/** Channel index following the last channel changed since the last merge, 0 if none. */
+	private int dirtyTo;
+
+	/**
+	 * Constructor, see {@link RFShowControlMerger#addSource(String, int)}.
+	 *
+	 * @param merger			The merger.
+	 * @param name				Name of the source.
+	 * @param priority			Priority of the source.
+	 * @param numberOfChannel	Number of channel.
+	 */
+	RFShowControlMergeSource(final RFShowControlMerger merger, final String name, final int priority, final int numberOfChannel) {
+		this.merger = merger;
+		this.name = name;
+		this.priority = priority;
+		this.values = new byte[numberOfChannel];
+		this.claimed = new boolean[numberOfChannel];
+		this.stamps = new long[numberOfChannel];
+		this.dirtyFrom = numberOfChannel;
+	}
+
+	/**
+	 * Return the name of the source.
+	 * @return	The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the priority of the source.
+	 * @return	The priority.
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Set the priority of the source.
+	 *
+	 * @param priority	The priority, the highest wins.
+	 * @return	The current RFShowControlMergeSource instance.
+	 */
+	public synchronized RFShowControlMergeSource setPriority(final int priority) {
+		this.priority = priority;
+		markDirty(0, values.length);
+		return this;
+	}
+
+	/**
+	 * Update one channel.
+	 *
+	 * @param value			The new value.
+	 * @param channelNumber	The channel number.
+	 * @return	The current RFShowControlMergeSource instance.
+	 */
+	public synchronized RFShowControlMergeSource update(final byte value, final int channelNumber) {
+		checkRange(channelNumber, 1);
+		final int index = channelNumber - 1;
+		values[index] = value;
+		claimed[index] = true;
+		stamps[index] = merger.nextStamp();
+		markDirty(index, index + 1);
+		return this;
+	}
+
+	/**
+	 * Update a range of channels.
+	 *
+	 * @param newValues				The new values.
+	 * @param startChannelNumber	First channel number.
+	 * @return	The current RFShowControlMergeSource instance.
+	 */
+	public synchronized RFShowControlMergeSource update(final byte[] newValues, final int startChannelNumber) {
+		if (newValues == null || newValues.length == 0) {
+			return this;
+		}
+		checkRange(startChannelNumber, newValues.length);
+		final int from = startChannelNumber - 1;
+		final int to = from + newValues.length;
+		final long stamp = merger.nextStamp();
+		System.arraycopy(newValues, 0, values, from, newValues.length);
+		for (int index = from; index < to; index++) {
+			claimed[index] = true;
+			stamps[index] = stamp;
+		}
+		markDirty(from, to);
+		return this;
+	}
+
+	/**
+	 * Stop taking part in the merge of a range of channels.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param numberOfChannel		Number of channel.
+	 * @return	The current RFShowControlMergeSource instance.
+	 */
+	public synchronized RFShowControlMergeSource release(final int startChannelNumber, final int numberOfChannel) {
+		checkRange(startChannelNumber, numberOfChannel);
+		final int from = startChannelNumber - 1;
+		final int to = from + numberOfChannel;
+		for (int index = from; index < to; index++) {
+			claimed[index] = false;
+		}
+		markDirty(from, to);
+		return this;
+	}
+
+	/**
+	 * Stop taking part in the merge of all channels.
+	 *
+	 * @return	The current RFShowControlMergeSource instance.
+	 */
+	public RFShowControlMergeSource releaseAll() {
+		return release(1, values.length);
+	}
+
+	/**
+	 * Add the range changed since the last merge to a range and reset it.
+	 *
+	 * @param range	The range [from, to[ to extend.
+	 */
+	synchronized void collectDirtyRange(final int[] range) {
+		if (dirtyTo > dirtyFrom) {
+			range[0] = Math.min(range[0], dirtyFrom);
+			range[1] = Math.max(range[1], dirtyTo);
+			dirtyFrom = values.length;
+			dirtyTo = 0;
+		}
+	}
+
+	private void markDirty(final int from, final int to) {
+		dirtyFrom = Math.min(dirtyFrom, from);
+		dirtyTo = Math.max(dirtyTo, to);
+	}
+
+	private void checkRange(final int startChannelNumber, final int numberOfChannel) {
+		if (startChannelNumber < 1 || startChannelNumber > values.length) {
+			throw new IllegalArgumentException("startChannelNumber must be in range [1-" + values.length + "]");
+		}
+		else if (numberOfChannel < 1 || startChannelNumber - 1 + numberOfChannel > values.length) {
+			throw new IllegalArgumentException("startChannelNumber + numberOfChannel must not exceed " + values.length);
+		}
+	}
+
+}
@@ -0,0 +1,229 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merger of the channel layers of several producers ({@link RFShowControlMergeSource}), rendered on each frame
+ * of the controller scheduler.
+ *
+ * Each channel is merged with its policy: highest takes precedence (HTP), latest takes precedence (LTP)
+ * or highest source priority (PRIORITY, latest first between sources of the same priority).
+ * The merge is lazy: on each frame, only the channels changed by a source since the previous frame are merged again,
+ * a frame without change costs one check per source. A channel claimed by no source is merged to 0.
+ * The merger owns the channels it merges: direct updates of the controller on these channels are overwritten.
+ *
+ * Register the merger with {@link RFShowControlControllerImpl#addFrameRenderer(RFShowControlFrameRenderer)}.
+ */
+public class RFShowControlMerger implements RFShowControlFrameRenderer {
+
+	/** Merge policies. */
+	public enum Policy {
+		HTP, LTP, PRIORITY
+	}
+
+	private static final Policy[] POLICIES = Policy.values();
+
+	/** Number of channel. */
+	private final int numberOfChannel;
+
+	/** Policy ordinal of each channel. */
+	private final byte[] policies;
+
+	/** The sources. */
+	private volatile RFShowControlMergeSource[] sources = new RFShowControlMergeSource[0];
+
+	/** Stamps of the updates, for the latest takes precedence policy. */
+	private final AtomicLong stampCounter = new AtomicLong();
+
+	/** Merged values. */
+	private final byte[] output;
+
+	/** Reusable range [from, to[ of the channels to merge (scheduler thread only). */
+	private final int[] dirtyRange = new int[2];
+
+	/** First channel index to merge because of a policy or a source change, guarded by this. */
+	private int dirtyFrom;
+
+	/** Channel index following the last channel to merge because of a policy or a source change, guarded by this. */
+	private int dirtyTo;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numberOfChannel	Number of channel of the controller.
+	 * @param defaultPolicy		Policy of all the channels.
+	 */
+	public RFShowControlMerger(final int numberOfChannel, final Policy defaultPolicy) {
+		if (numberOfChannel < 1) {
+			throw new IllegalArgumentException("numberOfChannel must be greater than 0");
+		}
+		else if (defaultPolicy == null) {
+			throw new IllegalArgumentException("defaultPolicy is mandatory");
+		}
+		this.numberOfChannel = numberOfChannel;
+		this.policies = new byte[numberOfChannel];
+		this.output = new byte[numberOfChannel];
+		Arrays.fill(policies, (byte) defaultPolicy.ordinal());
+		this.dirtyFrom = numberOfChannel;
+	}
+
+	/**
+	 * Add a source.
+	 *
+	 * @param name		Name of the source.
+	 * @param priority	Priority of the source, the highest wins on the channels merged by priority.
+	 * @return	The new source.
+	 */
+	public synchronized RFShowControlMergeSource addSource(final String name, final int priority) {
+		final RFShowControlMergeSource source = new RFShowControlMergeSource(this, name, priority, numberOfChannel);
+		final RFShowControlMergeSource[] newSources = Arrays.copyOf(sources, sources.length + 1);
+		newSources[sources.length] = source;
+		sources = newSources;
+		return source;
+	}
+
+	/**
+	 * Remove a source, its channels are merged again without it.
+	 *
+	 * @param source	The source.
+	 * @return	The current RFShowControlMerger instance.
+	 */
+	public synchronized RFShowControlMerger removeSource(final RFShowControlMergeSource source) {
+		for (int index = 0; index < sources.length; index++) {
+			if (sources[index] == source) {
+				final RFShowControlMergeSource[] newSources = new RFShowControlMergeSource[sources.length - 1];
+				System.arraycopy(sources, 0, newSources, 0, index);
+				System.arraycopy(sources, index + 1, newSources, index, sources.length - index - 1);
+				sources = newSources;
+				markDirty(0, numberOfChannel);
+				break;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Set the policy of a range of channels.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param numberOfChannel		Number of channel.
+	 * @param policy				The policy.
+	 * @return	The current RFShowControlMerger instance.
+	 */
+	public synchronized RFShowControlMerger setPolicy(final int startChannelNumber, final int numberOfChannel, final Policy policy) {
+		if (startChannelNumber < 1 || startChannelNumber > this.numberOfChannel) {
+			throw new IllegalArgumentException("startChannelNumber must be in range [1-" + this.numberOfChannel + "]");
+		}
+		else if (numberOfChannel < 1 || startChannelNumber - 1 + numberOfChannel > this.numberOfChannel) {
+			throw new IllegalArgumentException("startChannelNumber + numberOfChannel must not exceed " + this.numberOfChannel);
+		}
+		else if (policy == null) {
+			throw new IllegalArgumentException("policy is mandatory");
+		}
+		Arrays.fill(policies, startChannelNumber - 1, startChannelNumber - 1 + numberOfChannel, (byte) policy.ordinal());
+		markDirty(startChannelNumber - 1, startChannelNumber - 1 + numberOfChannel);
+		return this;
+	}
+
+	/**
+	 * Return the policy of a channel.
+	 *
+	 * @param channelNumber	The channel number.
+	 * @return	The policy.
+	 */
+	public synchronized Policy getPolicy(final int channelNumber) {
+		return POLICIES[policies[channelNumber - 1]];
+	}
+
+	@Override
+	public void renderFrame(final long frameNanos, final RFShowControlChannelBuffer channelValues) {
+		final int[] range = dirtyRange;
+		synchronized (this) {
+			range[0] = dirtyFrom;
+			range[1] = dirtyTo;
+			dirtyFrom = numberOfChannel;
+			dirtyTo = 0;
+		}
+		final RFShowControlMergeSource[] currentSources = sources;
+		for (RFShowControlMergeSource source : currentSources) {
+			source.collectDirtyRange(range);
+		}
+		final int from = range[0];
+		final int to = Math.min(range[1], channelValues.getNumberOfChannel());
+		if (to <= from) {
+			return;
+		}
+		merge(currentSources, from, to);
+		channelValues.update(output, from, from, to - from);
+	}
+
+	/**
+	 * Merge a range of channels into the output.
+	 *
+	 * @param currentSources	The sources.
+	 * @param from				First channel index.
+	 * @param to				Channel index following the last channel.
+	 */
+	private void merge(final RFShowControlMergeSource[] currentSources, final int from, final int to) {
+		final int htp = Policy.HTP.ordinal();
+		final int ltp = Policy.LTP.ordinal();
+		for (int index = from; index < to; index++) {
+			final int policy = policies[index];
+			int value = 0;
+			long bestStamp = Long.MIN_VALUE;
+			int bestPriority = Integer.MIN_VALUE;
+			for (RFShowControlMergeSource source : currentSources) {
+				if (!source.claimed[index]) {
+					continue;
+				}
+				final int sourceValue = source.values[index] & 0xFF;
+				if (policy == htp) {
+					value = Math.max(value, sourceValue);
+					continue;
+				}
+				final int priority = policy == ltp ? 0 : source.getPriority();
+				final long stamp = source.stamps[index];
+				if (priority > bestPriority || (priority == bestPriority && stamp > bestStamp)) {
+					bestPriority = priority;
+					bestStamp = stamp;
+					value = sourceValue;
+				}
+			}
+			output[index] = (byte) value;
+		}
+	}
+
+	/**
+	 * Return the stamp of an update.
+	 * @return	A stamp greater than the previous ones.
+	 */
+	long nextStamp() {
+		return stampCounter.incrementAndGet();
+	}
+
+	private void markDirty(final int from, final int to) {
+		dirtyFrom = Math.min(dirtyFrom, from);
+		dirtyTo = Math.max(dirtyTo, to);
+	}
+
+}
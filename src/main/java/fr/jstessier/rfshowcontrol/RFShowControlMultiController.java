@@ -0,0 +1,445 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import fr.jstessier.rf24.hardware.RF24Hardware;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+
+/**
+ * Controller of several universes, each one sent by its own RF24 module on its own RF channel and pipe address.
+ *
+ * The universes are mapped one after the other on a global channel space: the first universe holds the channels
+ * [1-n1], the second one [n1+1-n1+n2], etc. On each frame, all the universes are sent concurrently, one transmit
+ * thread per additional radio, so the air time of the radios overlaps. Modules sharing a SPI bus still serialize
+ * their SPI transfers, only the air time overlaps.
+ * The universes are added before starting the controller and sharing it between threads.
+ *
+ * Unlike {@link RFShowControlControllerImpl}, the universes have no transmit supervisor: a transmission error is
+ * thrown to the caller of {@link #flushChannelValues()} or counted by the frame scheduler, nothing retries,
+ * reconfigures or restarts a failed radio or transmit thread.
+ */
+public class RFShowControlMultiController implements AutoCloseable {
+
+	/** The universe controllers. */
+	private RFShowControlControllerImpl[] universes = new RFShowControlControllerImpl[0];
+
+	/** The universe RF channels. */
+	private byte[] rfChannels = new byte[0];
+
+	/** The universe pipe addresses. */
+	private byte[][] pipeAddresses = new byte[0][];
+
+	/** The universe radio profiles. */
+	private RFShowControlRadioProfile[] radioProfiles = new RFShowControlRadioProfile[0];
+
+	/** First global channel number of each universe. */
+	private int[] firstChannelNumbers = new int[0];
+
+	/** Total number of channel. */
+	private int numberOfChannel;
+
+	/** Transmit threads of the universes, except the first one sent by the scheduler thread (guarded by synchroSendValues). */
+	private UniverseTransmitter[] transmitters;
+
+	/** The frame scheduler. */
+	private RFShowControlFrameScheduler scheduler;
+
+	/** The controller is started ? */
+	private volatile boolean started;
+
+	private final Object synchroSendValues = new Object();
+
+	/**
+	 * Add a universe after the previous ones with the default radio profile, before starting the controller.
+	 *
+	 * @param rf24Hardware		Interface with hardware of the universe RF module.
+	 * @param numberOfChannel	Number of channel of the universe [1-512].
+	 * @param rfChannel			The radio frequency channel of the universe.
+	 * @param pipeAddress		The pipe address of the universe.
+	 * @return	The current RFShowControlMultiController instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public RFShowControlMultiController addUniverse(final RF24Hardware rf24Hardware, final int numberOfChannel,
+			final byte rfChannel, final byte[] pipeAddress) throws RFShowControlException {
+		return addUniverse(rf24Hardware, numberOfChannel, rfChannel, pipeAddress, RFShowControlRadioProfile.DEFAULT);
+	}
+
+	/**
+	 * Add a universe after the previous ones, before starting the controller.
+	 *
+	 * @param rf24Hardware		Interface with hardware of the universe RF module.
+	 * @param numberOfChannel	Number of channel of the universe [1-512].
+	 * @param rfChannel			The radio frequency channel of the universe.
+	 * @param pipeAddress		The pipe address of the universe.
+	 * @param radioProfile		The radio profile of the universe.
+	 * @return	The current RFShowControlMultiController instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public synchronized RFShowControlMultiController addUniverse(final RF24Hardware rf24Hardware, final int numberOfChannel,
+			final byte rfChannel, final byte[] pipeAddress, final RFShowControlRadioProfile radioProfile)
+			throws RFShowControlException {
+		if (started) {
+			throw new IllegalStateException("RFShowControlMultiController is already started");
+		}
+		else if (radioProfile == null) {
+			throw new IllegalArgumentException("radioProfile is mandatory");
+		}
+		final int index = universes.length;
+		universes = Arrays.copyOf(universes, index + 1);
+		rfChannels = Arrays.copyOf(rfChannels, index + 1);
+		pipeAddresses = Arrays.copyOf(pipeAddresses, index + 1);
+		radioProfiles = Arrays.copyOf(radioProfiles, index + 1);
+		firstChannelNumbers = Arrays.copyOf(firstChannelNumbers, index + 1);
+		universes[index] = new RFShowControlControllerImpl(rf24Hardware, numberOfChannel);
+		rfChannels[index] = rfChannel;
+		pipeAddresses[index] = Arrays.copyOf(pipeAddress, pipeAddress.length);
+		radioProfiles[index] = radioProfile;
+		firstChannelNumbers[index] = this.numberOfChannel + 1;
+		this.numberOfChannel += numberOfChannel;
+		return this;
+	}
+
+	/**
+	 * Configure all the RF modules and start sending the universes at the default frame rate.
+	 *
+	 * @return	The current RFShowControlMultiController instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public RFShowControlMultiController start() throws RFShowControlException {
+		return start(RFShowControlFrameScheduler.DEFAULT_FRAMES_PER_SECOND);
+	}
+
+	/**
+	 * Configure all the RF modules and start sending the universes at a given frame rate.
+	 *
+	 * @param framesPerSecond	Number of frames sent per second.
+	 * @return	The current RFShowControlMultiController instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public synchronized RFShowControlMultiController start(final int framesPerSecond) throws RFShowControlException {
+		if (started) {
+			throw new IllegalStateException("RFShowControlMultiController is already started");
+		}
+		else if (universes.length == 0) {
+			throw new IllegalStateException("RFShowControlMultiController has no universe");
+		}
+		final RFShowControlFrameScheduler frameScheduler = new RFShowControlFrameScheduler("rfshowcontrol-multi-scheduler",
+				framesPerSecond, new RFShowControlFrameScheduler.FrameTask() {
+			@Override
+			public void onFrame(final long frameNumber) throws RFShowControlException {
+				sendChannelValues();
+			}
+		});
+		for (int index = 0; index < universes.length; index++) {
+			universes[index].checkCapacity(framesPerSecond, radioProfiles[index]);
+		}
+		for (int index = 0; index < universes.length; index++) {
+			universes[index].configure(rfChannels[index], pipeAddresses[index], Mode.TX, radioProfiles[index]);
+		}
+		final UniverseTransmitter[] newTransmitters = new UniverseTransmitter[universes.length - 1];
+		for (int index = 0; index < newTransmitters.length; index++) {
+			newTransmitters[index] = new UniverseTransmitter(universes[index + 1], "rfshowcontrol-transmitter-" + (index + 1));
+			newTransmitters[index].thread.start();
+		}
+		synchronized (synchroSendValues) {
+			transmitters = newTransmitters;
+		}
+		started = true;
+		scheduler = frameScheduler.start();
+		return this;
+	}
+
+	/**
+	 * Stop sending the universes.
+	 *
+	 * @return	The current RFShowControlMultiController instance.
+	 */
+	public synchronized RFShowControlMultiController stop() {
+		if (scheduler != null) {
+			scheduler.stop();
+			scheduler = null;
+		}
+		final UniverseTransmitter[] stoppedTransmitters;
+		// Once a flush in progress is sent
+		synchronized (synchroSendValues) {
+			stoppedTransmitters = transmitters;
+			transmitters = null;
+			started = false;
+		}
+		if (stoppedTransmitters != null) {
+			for (UniverseTransmitter transmitter : stoppedTransmitters) {
+				transmitter.stop();
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public void close() {
+		stop();
+	}
+
+	/**
+	 * Return the frame scheduler, null if the controller is not started.
+	 * @return	The frame scheduler.
+	 */
+	public synchronized RFShowControlFrameScheduler getFrameScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Return the total number of channel.
+	 * @return	The number of channel.
+	 */
+	public synchronized int getNumberOfChannel() {
+		return numberOfChannel;
+	}
+
+	/**
+	 * Return the number of universe.
+	 * @return	The number of universe.
+	 */
+	public synchronized int getNumberOfUniverse() {
+		return universes.length;
+	}
+
+	/**
+	 * Return the controller of a universe.
+	 *
+	 * @param universeIndex	The universe index, in the order they were added.
+	 * @return	The universe controller.
+	 */
+	public synchronized RFShowControlController getUniverse(final int universeIndex) {
+		return universes[universeIndex];
+	}
+
+	/**
+	 * Return the global channel values.
+	 * @return	The channel values.
+	 */
+	public byte[] getChannelValues() {
+		final byte[] channelValues = new byte[numberOfChannel];
+		for (int index = 0; index < universes.length; index++) {
+			final byte[] universeValues = universes[index].getChannelValues();
+			System.arraycopy(universeValues, 0, channelValues, firstChannelNumbers[index] - 1, universeValues.length);
+		}
+		return channelValues;
+	}
+
+	/**
+	 * Update a channel value.
+	 *
+	 * @param newChannelValue	The new value.
+	 * @param channelNumber		The global channel number.
+	 * @return	The current RFShowControlMultiController instance.
+	 */
+	public RFShowControlMultiController updateChannelValue(final byte newChannelValue, final int channelNumber) {
+		if (channelNumber < 1 || channelNumber > numberOfChannel) {
+			throw new IllegalArgumentException("channelNumber must be in range [1-" + numberOfChannel + "]");
+		}
+		final int universeIndex = findUniverse(channelNumber);
+		universes[universeIndex].updateChannelValue(newChannelValue, channelNumber - firstChannelNumbers[universeIndex] + 1);
+		return this;
+	}
+
+	/**
+	 * Update a range of channel values, possibly spanning several universes.
+	 *
+	 * @param newChannelValues		The new values.
+	 * @param startChannelNumber	The first global channel number.
+	 * @return	The current RFShowControlMultiController instance.
+	 */
+	public RFShowControlMultiController updateChannelValues(final byte[] newChannelValues, final int startChannelNumber) {
+		if (newChannelValues == null || newChannelValues.length == 0) {
+			return this;
+		}
+		else if (startChannelNumber < 1 || startChannelNumber > numberOfChannel) {
+			throw new IllegalArgumentException("startChannelNumber must be in range [1-" + numberOfChannel + "]");
+		}
+		else if ((startChannelNumber - 1) > (numberOfChannel - newChannelValues.length)) {
+			throw new IllegalArgumentException("startChannelNumber + newChannelValues.length must not exceed " + numberOfChannel);
+		}
+		int valuesOffset = 0;
+		int universeIndex = findUniverse(startChannelNumber);
+		int universeChannelNumber = startChannelNumber - firstChannelNumbers[universeIndex] + 1;
+		while (valuesOffset < newChannelValues.length) {
+			final RFShowControlControllerImpl universe = universes[universeIndex];
+			final int length = Math.min(newChannelValues.length - valuesOffset,
+					universe.getNumberOfChannel() - universeChannelNumber + 1);
+			universe.updateChannelValues(newChannelValues, valuesOffset, length, universeChannelNumber);
+			valuesOffset += length;
+			universeIndex++;
+			universeChannelNumber = 1;
+		}
+		return this;
+	}
+
+	/**
+	 * Publish the channel values of all universes and send them concurrently.
+	 *
+	 * @return	The current RFShowControlMultiController instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public RFShowControlMultiController flushChannelValues() throws RFShowControlException {
+		if (!started) {
+			throw new IllegalStateException("RFShowControlMultiController is not started");
+		}
+		for (RFShowControlControllerImpl universe : universes) {
+			universe.publishChannelValues();
+		}
+		sendChannelValues();
+		return this;
+	}
+
+	/**
+	 * Send the last published frame of all universes concurrently.
+	 *
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	private void sendChannelValues() throws RFShowControlException {
+		synchronized (synchroSendValues) {
+			final UniverseTransmitter[] currentTransmitters = transmitters;
+			if (currentTransmitters == null) {
+				// Stopped since the caller checked
+				throw new IllegalStateException("RFShowControlMultiController is not started");
+			}
+			for (UniverseTransmitter transmitter : currentTransmitters) {
+				transmitter.request();
+			}
+			RFShowControlException error = null;
+			try {
+				universes[0].sendChannelValues(false);
+			} catch (RFShowControlException e) {
+				error = e;
+			}
+			for (UniverseTransmitter transmitter : currentTransmitters) {
+				final RFShowControlException transmitterError = transmitter.await();
+				if (error == null) {
+					error = transmitterError;
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+
+	/**
+	 * Return the universe index of a global channel number.
+	 *
+	 * @param channelNumber	The global channel number.
+	 * @return	The universe index.
+	 */
+	private int findUniverse(final int channelNumber) {
+		final int index = Arrays.binarySearch(firstChannelNumbers, channelNumber);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	/**
+	 * Transmit thread of a universe, sending a frame on each request.
+	 * The errors are only reported to the requester, the thread is not restarted if it dies.
+	 */
+	private static final class UniverseTransmitter implements Runnable {
+
+		private final RFShowControlControllerImpl universe;
+
+		private final Thread thread;
+
+		/** Thread waiting for the end of the transmission. */
+		private volatile Thread requester;
+
+		private volatile long requestedFrames;
+
+		private volatile long sentFrames;
+
+		private volatile RFShowControlException error;
+
+		private volatile boolean running = true;
+
+		UniverseTransmitter(final RFShowControlControllerImpl universe, final String name) {
+			this.universe = universe;
+			this.thread = new Thread(this, name);
+			this.thread.setDaemon(true);
+			this.thread.setPriority(Thread.MAX_PRIORITY);
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				if (sentFrames == requestedFrames) {
+					LockSupport.park(this);
+					continue;
+				}
+				try {
+					universe.sendChannelValues(false);
+				} catch (RFShowControlException e) {
+					error = e;
+				} catch (RuntimeException e) {
+					error = new RFShowControlException("An error occured during universe transmission", e);
+				}
+				sentFrames = requestedFrames;
+				LockSupport.unpark(requester);
+			}
+		}
+
+		/**
+		 * Request the transmission of the last published frame.
+		 */
+		void request() {
+			requester = Thread.currentThread();
+			error = null;
+			requestedFrames++;
+			LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Wait for the end of the requested transmission.
+		 *
+		 * @return	The error of the transmission, null if none.
+		 */
+		RFShowControlException await() {
+			while (sentFrames != requestedFrames && thread.isAlive()) {
+				LockSupport.park(this);
+			}
+			return error;
+		}
+
+		void stop() {
+			running = false;
+			LockSupport.unpark(thread);
+			boolean interrupted = false;
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,617 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bridge receiving DMX universes over E1.31 (sACN) and Art-Net and writing them into controllers.
+ *
+ * Datagrams are received on non-blocking channels into a single reused direct buffer and the DMX slots are copied
+ * from a view of this buffer straight into the controller channel buffers: no allocation per packet.
+ * Universes are E1.31 universe numbers, or the 15 bits port address (net, sub-net and universe) for Art-Net.
+ *
+ * With auto flush, each universe is sent when its DMX packet is received, or on the synchronization packet when
+ * the source uses E1.31 synchronization or Art-Net ArtSync. The universes are sent on reception again when the
+ * synchronization packets stop for {@link #E131_SYNC_TIMEOUT_MILLIS} or {@link #ARTNET_SYNC_TIMEOUT_MILLIS}.
+ * Without auto flush, the values are only updated and sent by the controller scheduler.
+ * E1.31 priority is honoured per universe: packets below the current priority are dropped until the source of
+ * that priority is terminated or silent for {@link #SOURCE_TIMEOUT_MILLIS}. Art-Net packets have the default priority.
+ *
+ * Mappings and bindings are set before starting the bridge.
+ */
+public class RFShowControlNetworkBridge implements AutoCloseable {
+
+	/** Default E1.31 port. */
+	public static final int E131_PORT = 5568;
+
+	/** Default Art-Net port. */
+	public static final int ARTNET_PORT = 6454;
+
+	/** Default E1.31 priority, also given to Art-Net packets. */
+	public static final int DEFAULT_PRIORITY = 100;
+
+	/** Time without packet after which a source is lost. */
+	public static final long SOURCE_TIMEOUT_MILLIS = 2500;
+
+	/** Time without ArtSync after which Art-Net universes are sent on reception again. */
+	public static final long ARTNET_SYNC_TIMEOUT_MILLIS = 4000;
+
+	/** Time without E1.31 synchronization packet after which the universes are sent on reception again. */
+	public static final long E131_SYNC_TIMEOUT_MILLIS = 2500;
+
+	/** Max size of a datagram. */
+	private static final int MAX_DATAGRAM_SIZE = 1144;
+
+	/** Number of DMX slots of a universe. */
+	private static final int DMX_SLOTS = 512;
+
+	/** Art-Net packet identifier. */
+	private static final byte[] ARTNET_ID = { 'A', 'r', 't', '-', 'N', 'e', 't', 0 };
+
+	/** Art-Net OpDmx. */
+	private static final int ARTNET_OP_DMX = 0x5000;
+
+	/** Art-Net OpSync. */
+	private static final int ARTNET_OP_SYNC = 0x5200;
+
+	/** Offset of the DMX data of an ArtDmx packet. */
+	private static final int ARTNET_DMX_DATA_OFFSET = 18;
+
+	/** ACN packet identifier of E1.31 packets. */
+	private static final byte[] E131_ACN_ID = { 'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0, 0, 0 };
+
+	/** E1.31 root layer vector of data packets. */
+	private static final int E131_VECTOR_ROOT_DATA = 0x00000004;
+
+	/** E1.31 root layer vector of extended packets. */
+	private static final int E131_VECTOR_ROOT_EXTENDED = 0x00000008;
+
+	/** E1.31 framing layer vector of data packets. */
+	private static final int E131_VECTOR_DATA_PACKET = 0x00000002;
+
+	/** E1.31 framing layer vector of synchronization packets. */
+	private static final int E131_VECTOR_EXTENDED_SYNCHRONIZATION = 0x00000001;
+
+	/** E1.31 option: preview data, not to be output. */
+	private static final int E131_OPTION_PREVIEW = 0x80;
+
+	/** E1.31 option: the source stopped sending the universe. */
+	private static final int E131_OPTION_STREAM_TERMINATED = 0x40;
+
+	/** Offset of the DMX start code of an E1.31 data packet. */
+	private static final int E131_START_CODE_OFFSET = 125;
+
+	/** Pending synchronization of Art-Net universes. */
+	private static final int ARTNET_SYNC = -1;
+
+	/** Protocols of the bridge. */
+	public enum Protocol {
+		E131, ARTNET
+	}
+
+	/** Sorted mapped universe numbers. */
+	private int[] universeNumbers = new int[0];
+
+	/** Mappings of the universe numbers. */
+	private UniverseMapping[] mappings = new UniverseMapping[0];
+
+	/** The bound channels. */
+	private DatagramChannel[] channels = new DatagramChannel[0];
+
+	/** The protocols of the bound channels. */
+	private Protocol[] protocols = new Protocol[0];
+
+	/** The selector of the channels. */
+	private final Selector selector;
+
+	/** Reused receive buffer. */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+
+	/** Reused view of the DMX slots written into the controllers. */
+	private final ByteBuffer slots = buffer.duplicate();
+
+	/** Flush each universe on reception or synchronization ? */
+	private volatile boolean autoFlush = true;
+
+	/** Reception time of the last ArtSync, 0 if none. */
+	private long lastArtSyncNanos;
+
+	/** Number of DMX packets written into a controller. */
+	private volatile long packetCount;
+
+	/** Number of packets dropped: unknown universe, lower priority, invalid or unsupported. */
+	private volatile long droppedPacketCount;
+
+	/** Number of errors: packets which could not be written or flushed, receive errors. */
+	private volatile long errorCount;
+
+	/** The last error, null if none. */
+	private volatile Exception lastError;
+
+	/** The receive thread. */
+	private Thread thread;
+
+	/** The receive thread is running ? */
+	private volatile boolean running;
+
+	/**
+	 * Constructor.
+	 *
+	 * @throws IOException	If the selector can't be opened.
+	 */
+	public RFShowControlNetworkBridge() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Map a universe to a controller, before starting the bridge.
+	 *
+	 * @param universe				The universe number.
+	 * @param controller			The controller.
+	 * @param startChannelNumber	Channel number of the controller receiving the DMX slot 1.
+	 * @param numberOfChannel		Number of DMX slots written into the controller [1-512], within its channels.
+	 * @return	The current RFShowControlNetworkBridge instance.
+	 */
+	public synchronized RFShowControlNetworkBridge mapUniverse(final int universe, final RFShowControlController controller,
+			final int startChannelNumber, final int numberOfChannel) {
+		if (thread != null) {
+			throw new IllegalStateException("RFShowControlNetworkBridge is already started");
+		}
+		else if (universe < 0 || universe > 0xFFFF) {
+			throw new IllegalArgumentException("universe must be in range [0-65535]");
+		}
+		else if (controller == null) {
+			throw new IllegalArgumentException("controller is mandatory");
+		}
+		else if (startChannelNumber < 1) {
+			throw new IllegalArgumentException("startChannelNumber must be greater than 0");
+		}
+		else if (numberOfChannel < 1 || numberOfChannel > DMX_SLOTS) {
+			throw new IllegalArgumentException("numberOfChannel must be in range [1-" + DMX_SLOTS + "]");
+		}
+		else if (startChannelNumber - 1 > controller.getNumberOfChannel() - numberOfChannel) {
+			throw new IllegalArgumentException("startChannelNumber + numberOfChannel must not exceed "
+					+ (controller.getNumberOfChannel() + 1));
+		}
+		int index = Arrays.binarySearch(universeNumbers, universe);
+		if (index >= 0) {
+			throw new IllegalArgumentException("universe " + universe + " is already mapped");
+		}
+		index = -index - 1;
+		final int[] newUniverseNumbers = new int[universeNumbers.length + 1];
+		final UniverseMapping[] newMappings = new UniverseMapping[mappings.length + 1];
+		System.arraycopy(universeNumbers, 0, newUniverseNumbers, 0, index);
+		System.arraycopy(mappings, 0, newMappings, 0, index);
+		System.arraycopy(universeNumbers, index, newUniverseNumbers, index + 1, universeNumbers.length - index);
+		System.arraycopy(mappings, index, newMappings, index + 1, mappings.length - index);
+		newUniverseNumbers[index] = universe;
+		newMappings[index] = new UniverseMapping(controller, startChannelNumber, numberOfChannel);
+		universeNumbers = newUniverseNumbers;
+		mappings = newMappings;
+		return this;
+	}
+
+	/**
+	 * Listen to a protocol, before starting the bridge.
+	 *
+	 * @param protocol	The protocol.
+	 * @param address	The local address, port 0 for an ephemeral port.
+	 * @return	The bound local address.
+	 * @throws IOException	If the address can't be bound.
+	 */
+	public synchronized InetSocketAddress bind(final Protocol protocol, final InetSocketAddress address) throws IOException {
+		if (thread != null) {
+			throw new IllegalStateException("RFShowControlNetworkBridge is already started");
+		}
+		else if (protocol == null) {
+			throw new IllegalArgumentException("protocol is mandatory");
+		}
+		final DatagramChannel channel = DatagramChannel.open();
+		try {
+			channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, 256 * 1024);
+			channel.bind(address);
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		channels = Arrays.copyOf(channels, channels.length + 1);
+		channels[channels.length - 1] = channel;
+		protocols = Arrays.copyOf(protocols, protocols.length + 1);
+		protocols[protocols.length - 1] = protocol;
+		return (InetSocketAddress) channel.getLocalAddress();
+	}
+
+	/**
+	 * Flush each universe on reception or synchronization.
+	 *
+	 * @param autoFlush	true to flush the controllers, false to let their scheduler send the values.
+	 * @return	The current RFShowControlNetworkBridge instance.
+	 */
+	public RFShowControlNetworkBridge setAutoFlush(final boolean autoFlush) {
+		this.autoFlush = autoFlush;
+		return this;
+	}
+
+	/**
+	 * Start receiving on a dedicated thread.
+	 *
+	 * @return	The current RFShowControlNetworkBridge instance.
+	 */
+	public synchronized RFShowControlNetworkBridge start() {
+		if (thread != null) {
+			throw new IllegalStateException("RFShowControlNetworkBridge is already started");
+		}
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running) {
+					try {
+						if (selector.select(100) > 0) {
+							selector.selectedKeys().clear();
+							poll();
+						}
+					} catch (IOException | RuntimeException e) {
+						lastError = e;
+						errorCount++;
+					}
+				}
+			}
+		}, "rfshowcontrol-bridge");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * Stop the receive thread.
+	 *
+	 * @return	The current RFShowControlNetworkBridge instance.
+	 */
+	public synchronized RFShowControlNetworkBridge stop() {
+		running = false;
+		if (thread != null) {
+			selector.wakeup();
+			boolean interrupted = false;
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			thread = null;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Stop the bridge and close the channels.
+	 *
+	 * @throws IOException	If a channel can't be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		stop();
+		try {
+			for (DatagramChannel channel : channels) {
+				channel.close();
+			}
+		} finally {
+			selector.close();
+		}
+	}
+
+	/**
+	 * Receive and process the pending datagrams of all the channels, to be called by a single thread.
+	 *
+	 * @return	The number of datagrams received.
+	 * @throws IOException	In case of network error.
+	 */
+	public int poll() throws IOException {
+		int numberOfDatagram = 0;
+		for (int index = 0; index < channels.length; index++) {
+			final DatagramChannel channel = channels[index];
+			final Protocol protocol = protocols[index];
+			buffer.clear();
+			while (channel.receive(buffer) != null) {
+				buffer.flip();
+				try {
+					if (Protocol.E131.equals(protocol)) {
+						processE131(buffer, System.nanoTime());
+					}
+					else {
+						processArtNet(buffer, System.nanoTime());
+					}
+				} catch (RFShowControlException | RuntimeException e) {
+					lastError = e;
+					errorCount++;
+				}
+				numberOfDatagram++;
+				buffer.clear();
+			}
+		}
+		return numberOfDatagram;
+	}
+
+	/**
+	 * Process an Art-Net packet.
+	 *
+	 * @param packet		The packet, from its position to its limit.
+	 * @param receptionNanos	The reception time.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	protected void processArtNet(final ByteBuffer packet, final long receptionNanos) throws RFShowControlException {
+		final int start = packet.position();
+		final int length = packet.remaining();
+		if (length < 10 || !startsWith(packet, start, ARTNET_ID)) {
+			droppedPacketCount++;
+			return;
+		}
+		final int opCode = (packet.get(start + 8) & 0xFF) | (packet.get(start + 9) & 0xFF) << 8;
+		if (opCode == ARTNET_OP_SYNC) {
+			lastArtSyncNanos = receptionNanos;
+			synchronize(ARTNET_SYNC);
+			return;
+		}
+		else if (opCode != ARTNET_OP_DMX || length < ARTNET_DMX_DATA_OFFSET) {
+			droppedPacketCount++;
+			return;
+		}
+		final int universe = (packet.get(start + 14) & 0xFF) | (packet.get(start + 15) & 0x7F) << 8;
+		final int dmxLength = (packet.get(start + 16) & 0xFF) << 8 | (packet.get(start + 17) & 0xFF);
+		if (dmxLength > DMX_SLOTS || ARTNET_DMX_DATA_OFFSET + dmxLength > length) {
+			droppedPacketCount++;
+			return;
+		}
+		final boolean waitArtSync = lastArtSyncNanos != 0
+				&& receptionNanos - lastArtSyncNanos < TimeUnit.MILLISECONDS.toNanos(ARTNET_SYNC_TIMEOUT_MILLIS);
+		writeUniverse(universe, DEFAULT_PRIORITY, false, waitArtSync ? ARTNET_SYNC : 0,
+				packet, start + ARTNET_DMX_DATA_OFFSET, dmxLength, receptionNanos);
+	}
+
+	/**
+	 * Process an E1.31 packet.
+	 *
+	 * @param packet		The packet, from its position to its limit.
+	 * @param receptionNanos	The reception time.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	protected void processE131(final ByteBuffer packet, final long receptionNanos) throws RFShowControlException {
+		final int start = packet.position();
+		final int length = packet.remaining();
+		if (length < 49 || !startsWith(packet, start + 4, E131_ACN_ID)) {
+			droppedPacketCount++;
+			return;
+		}
+		final int rootVector = packet.getInt(start + 18);
+		final int framingVector = packet.getInt(start + 40);
+		if (rootVector == E131_VECTOR_ROOT_EXTENDED && framingVector == E131_VECTOR_EXTENDED_SYNCHRONIZATION) {
+			final int syncUniverse = packet.getShort(start + 45) & 0xFFFF;
+			for (UniverseMapping mapping : mappings) {
+				if (mapping.syncUniverse == syncUniverse) {
+					mapping.syncNanos = receptionNanos;
+				}
+			}
+			synchronize(syncUniverse);
+			return;
+		}
+		else if (rootVector != E131_VECTOR_ROOT_DATA || framingVector != E131_VECTOR_DATA_PACKET
+				|| length <= E131_START_CODE_OFFSET) {
+			droppedPacketCount++;
+			return;
+		}
+		final int priority = packet.get(start + 108) & 0xFF;
+		final int syncUniverse = packet.getShort(start + 109) & 0xFFFF;
+		final int options = packet.get(start + 112) & 0xFF;
+		final int universe = packet.getShort(start + 113) & 0xFFFF;
+		final int valueCount = packet.getShort(start + 123) & 0xFFFF;
+		final int dmxLength = valueCount - 1;
+		if ((options & E131_OPTION_PREVIEW) != 0 || packet.get(start + E131_START_CODE_OFFSET) != 0
+				|| dmxLength < 0 || dmxLength > DMX_SLOTS || E131_START_CODE_OFFSET + valueCount > length) {
+			// Preview data and alternate start codes are not output
+			droppedPacketCount++;
+			return;
+		}
+		writeUniverse(universe, priority, (options & E131_OPTION_STREAM_TERMINATED) != 0, syncUniverse,
+				packet, start + E131_START_CODE_OFFSET + 1, dmxLength, receptionNanos);
+	}
+
+	/**
+	 * Write the DMX slots of a universe into its controller.
+	 *
+	 * @param universe			The universe number.
+	 * @param priority			The packet priority.
+	 * @param terminated		The source stopped sending the universe ?
+	 * @param syncUniverse		The E1.31 synchronization universe, {@link #ARTNET_SYNC} or 0 if not synchronized.
+	 * @param packet			The packet.
+	 * @param dmxOffset			Offset of the DMX slot 1 in the packet.
+	 * @param dmxLength			Number of DMX slots.
+	 * @param receptionNanos	The reception time.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	private void writeUniverse(final int universe, final int priority, final boolean terminated, final int syncUniverse,
+			final ByteBuffer packet, final int dmxOffset, final int dmxLength, final long receptionNanos) throws RFShowControlException {
+		final int index = Arrays.binarySearch(universeNumbers, universe);
+		if (index < 0) {
+			droppedPacketCount++;
+			return;
+		}
+		final UniverseMapping mapping = mappings[index];
+		if (priority < mapping.priority
+				&& receptionNanos - mapping.priorityNanos < TimeUnit.MILLISECONDS.toNanos(SOURCE_TIMEOUT_MILLIS)) {
+			droppedPacketCount++;
+			return;
+		}
+		if (terminated) {
+			// Let the other sources take over at any priority
+			mapping.priority = 0;
+			return;
+		}
+		mapping.priority = priority;
+		mapping.priorityNanos = receptionNanos;
+		boolean waitSync = syncUniverse == ARTNET_SYNC;
+		if (syncUniverse > 0) {
+			if (syncUniverse != mapping.syncUniverse) {
+				mapping.syncUniverse = syncUniverse;
+				mapping.syncNanos = receptionNanos;
+			}
+			// Sent on reception once the source stopped sending synchronization packets, like Art-Net
+			waitSync = receptionNanos - mapping.syncNanos < TimeUnit.MILLISECONDS.toNanos(E131_SYNC_TIMEOUT_MILLIS);
+		}
+		else if (syncUniverse == 0) {
+			mapping.syncUniverse = 0;
+		}
+
+		// The reused view of the receive buffer, a packet processed directly gets its own view
+		final ByteBuffer view = packet == buffer ? slots : packet.duplicate();
+		view.limit(dmxOffset + Math.min(dmxLength, mapping.numberOfChannel));
+		view.position(dmxOffset);
+		mapping.controller.updateChannelValues(view, mapping.startChannelNumber);
+		packetCount++;
+
+		if (waitSync) {
+			mapping.pendingSync = syncUniverse;
+		}
+		else {
+			mapping.pendingSync = 0;
+			if (autoFlush) {
+				mapping.controller.flushChannelValues();
+			}
+		}
+	}
+
+	/**
+	 * Flush the universes waiting for a synchronization.
+	 *
+	 * @param syncUniverse	The synchronization universe or {@link #ARTNET_SYNC}.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	private void synchronize(final int syncUniverse) throws RFShowControlException {
+		for (UniverseMapping mapping : mappings) {
+			if (mapping.pendingSync == syncUniverse) {
+				mapping.pendingSync = 0;
+				if (autoFlush) {
+					mapping.controller.flushChannelValues();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check the bytes of a packet.
+	 *
+	 * @param packet	The packet.
+	 * @param offset	Offset of the bytes.
+	 * @param expected	The expected bytes.
+	 * @return	true if the packet contains the expected bytes at the offset.
+	 */
+	private static boolean startsWith(final ByteBuffer packet, final int offset, final byte[] expected) {
+		for (int index = 0; index < expected.length; index++) {
+			if (packet.get(offset + index) != expected[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the number of DMX packets written into a controller.
+	 * @return	The number of packets.
+	 */
+	public long getPacketCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Return the number of packets dropped: unknown universe, lower priority, invalid or unsupported.
+	 * @return	The number of packets.
+	 */
+	public long getDroppedPacketCount() {
+		return droppedPacketCount;
+	}
+
+	/**
+	 * Return the number of errors: packets which could not be written or flushed, receive errors.
+	 * @return	The number of errors.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Return the last error.
+	 * @return	The error, null if none.
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Mapping of a universe to a controller.
+	 */
+	private static final class UniverseMapping {
+
+		private final RFShowControlController controller;
+
+		private final int startChannelNumber;
+
+		private final int numberOfChannel;
+
+		/** Priority of the current source. */
+		private int priority;
+
+		/** Reception time of the last packet of the current priority. */
+		private long priorityNanos;
+
+		/** Synchronization universe the values wait for, 0 if none. */
+		private int pendingSync;
+
+		/** E1.31 synchronization universe of the last packet, 0 if none. */
+		private int syncUniverse;
+
+		/** Reception time of the last E1.31 synchronization packet, or of the first packet of the synchronization universe. */
+		private long syncNanos;
+
+		private UniverseMapping(final RFShowControlController controller, final int startChannelNumber, final int numberOfChannel) {
+			this.controller = controller;
+			this.startChannelNumber = startChannelNumber;
+			this.numberOfChannel = numberOfChannel;
+		}
+
+	}
+
+}
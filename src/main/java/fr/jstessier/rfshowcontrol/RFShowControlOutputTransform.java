@@ -0,0 +1,236 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Transform of the channel values applied while they are encoded in the RFShowControl packets.
+ *
+ * Each channel value goes through its lookup table (gamma correction...), then the master dimmer,
+ * then the min / max limits of its channel. The three stages are composed into one 256 entries table
+ * per channel, shared by the consecutive channels with the same settings, so the encoder transforms
+ * a value with a single lookup and the sent frame is never copied.
+ * The setters are thread safe and take effect from the next transmission.
+ */
+public class RFShowControlOutputTransform {
+
+	/** Number of values of a channel. */
+	public static final int NUMBER_OF_VALUE = 256;
+
+	/** Max level of the master dimmer. */
+	public static final int MAX_MASTER_LEVEL = 255;
+
+	/** Lookup table of each channel, null for identity. */
+	private final byte[][] lookupTables;
+
+	/** Min value of each channel. */
+	private final int[] minValues;
+
+	/** Max value of each channel. */
+	private final int[] maxValues;
+
+	/** Master dimmer level [0-255]. */
+	private int masterLevel = MAX_MASTER_LEVEL;
+
+	/** Composed table of each channel, null when the transform is the identity. */
+	private volatile byte[][] tables;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numberOfChannel	Number of channel [1-512].
+	 */
+	public RFShowControlOutputTransform(final int numberOfChannel) {
+		if (numberOfChannel < 1 || numberOfChannel > RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL) {
+			throw new IllegalArgumentException("numberOfChannel must be in range [1-"
+					+ RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL + "]");
+		}
+		this.lookupTables = new byte[numberOfChannel][];
+		this.minValues = new int[numberOfChannel];
+		this.maxValues = new int[numberOfChannel];
+		Arrays.fill(maxValues, NUMBER_OF_VALUE - 1);
+	}
+
+	/**
+	 * Set the lookup table of a range of channels.
+	 *
+	 * @param startChannelNumber	First channel of the range.
+	 * @param numberOfChannel		Number of channel of the range.
+	 * @param lookupTable			The output value of each input value (256 entries, copied), null for identity.
+	 * @return	The current RFShowControlOutputTransform instance.
+	 */
+	public synchronized RFShowControlOutputTransform setLookupTable(final int startChannelNumber, final int numberOfChannel,
+			final byte[] lookupTable) {
+		checkRange(startChannelNumber, numberOfChannel);
+		if (lookupTable != null && lookupTable.length != NUMBER_OF_VALUE) {
+			throw new IllegalArgumentException("lookupTable must have " + NUMBER_OF_VALUE + " entries");
+		}
+		// The channels of the range share the same copy
+		final byte[] table = lookupTable == null ? null : Arrays.copyOf(lookupTable, NUMBER_OF_VALUE);
+		Arrays.fill(lookupTables, startChannelNumber - 1, startChannelNumber - 1 + numberOfChannel, table);
+		compile();
+		return this;
+	}
+
+	/**
+	 * Set a gamma correction lookup table on a range of channels.
+	 *
+	 * @param startChannelNumber	First channel of the range.
+	 * @param numberOfChannel		Number of channel of the range.
+	 * @param gamma					The gamma (greater than 0), 1 for identity.
+	 * @return	The current RFShowControlOutputTransform instance.
+	 */
+	public RFShowControlOutputTransform setGamma(final int startChannelNumber, final int numberOfChannel, final double gamma) {
+		if (!(gamma > 0)) {
+			throw new IllegalArgumentException("gamma must be greater than 0");
+		}
+		return setLookupTable(startChannelNumber, numberOfChannel, createGammaTable(gamma));
+	}
+
+	/**
+	 * Set the min and max values of a range of channels.
+	 *
+	 * @param startChannelNumber	First channel of the range.
+	 * @param numberOfChannel		Number of channel of the range.
+	 * @param minValue				Min value [0-255].
+	 * @param maxValue				Max value [minValue-255].
+	 * @return	The current RFShowControlOutputTransform instance.
+	 */
+	public synchronized RFShowControlOutputTransform setLimits(final int startChannelNumber, final int numberOfChannel,
+			final int minValue, final int maxValue) {
+		checkRange(startChannelNumber, numberOfChannel);
+		if (minValue < 0 || maxValue > NUMBER_OF_VALUE - 1 || minValue > maxValue) {
+			throw new IllegalArgumentException("limits must verify 0 <= minValue <= maxValue <= " + (NUMBER_OF_VALUE - 1));
+		}
+		Arrays.fill(minValues, startChannelNumber - 1, startChannelNumber - 1 + numberOfChannel, minValue);
+		Arrays.fill(maxValues, startChannelNumber - 1, startChannelNumber - 1 + numberOfChannel, maxValue);
+		compile();
+		return this;
+	}
+
+	/**
+	 * Set the master dimmer, applied to all the channels after their lookup table.
+	 *
+	 * @param masterLevel	The level [0-255], 255 for full.
+	 * @return	The current RFShowControlOutputTransform instance.
+	 */
+	public synchronized RFShowControlOutputTransform setMasterLevel(final int masterLevel) {
+		if (masterLevel < 0 || masterLevel > MAX_MASTER_LEVEL) {
+			throw new IllegalArgumentException("masterLevel must be in range [0-" + MAX_MASTER_LEVEL + "]");
+		}
+		this.masterLevel = masterLevel;
+		compile();
+		return this;
+	}
+
+	/**
+	 * Return the master dimmer level.
+	 * @return	The level [0-255].
+	 */
+	public synchronized int getMasterLevel() {
+		return masterLevel;
+	}
+
+	/**
+	 * Remove all the lookup tables and limits and set the master dimmer to full.
+	 * @return	The current RFShowControlOutputTransform instance.
+	 */
+	public synchronized RFShowControlOutputTransform reset() {
+		Arrays.fill(lookupTables, null);
+		Arrays.fill(minValues, 0);
+		Arrays.fill(maxValues, NUMBER_OF_VALUE - 1);
+		masterLevel = MAX_MASTER_LEVEL;
+		compile();
+		return this;
+	}
+
+	/**
+	 * Return the composed tables used by the encoder, see {@link RFShowControlPacketEncoder#encodePacket(byte[], int, byte[][])}.
+	 * @return	The table of each channel, null when the transform is the identity.
+	 */
+	byte[][] getTables() {
+		return tables;
+	}
+
+	/**
+	 * Transform a channel value.
+	 *
+	 * @param value			The channel value.
+	 * @param channelIndex	The channel index (channel number - 1).
+	 * @return	The transformed value.
+	 */
+	public byte transform(final byte value, final int channelIndex) {
+		final byte[][] currentTables = tables;
+		return currentTables == null ? value : currentTables[channelIndex][value & 0xFF];
+	}
+
+	/**
+	 * Create a gamma correction lookup table.
+	 *
+	 * @param gamma		The gamma.
+	 * @return	The lookup table.
+	 */
+	public static byte[] createGammaTable(final double gamma) {
+		final byte[] lookupTable = new byte[NUMBER_OF_VALUE];
+		for (int value = 0; value < NUMBER_OF_VALUE; value++) {
+			lookupTable[value] = (byte) Math.round(Math.pow(value / 255d, gamma) * 255d);
+		}
+		return lookupTable;
+	}
+
+	/**
+	 * Compose the stages into the tables of the channels, the consecutive channels with the same settings
+	 * share their table.
+	 */
+	private void compile() {
+		boolean identity = masterLevel == MAX_MASTER_LEVEL;
+		for (int index = 0; identity && index < lookupTables.length; index++) {
+			identity = lookupTables[index] == null && minValues[index] == 0 && maxValues[index] == NUMBER_OF_VALUE - 1;
+		}
+		if (identity) {
+			tables = null;
+			return;
+		}
+		final byte[][] newTables = new byte[lookupTables.length][];
+		for (int index = 0; index < lookupTables.length; index++) {
+			if (index > 0 && lookupTables[index] == lookupTables[index - 1] && minValues[index] == minValues[index - 1]
+					&& maxValues[index] == maxValues[index - 1]) {
+				newTables[index] = newTables[index - 1];
+				continue;
+			}
+			final byte[] table = new byte[NUMBER_OF_VALUE];
+			for (int value = 0; value < NUMBER_OF_VALUE; value++) {
+				int output = lookupTables[index] == null ? value : lookupTables[index][value] & 0xFF;
+				output = (output * masterLevel + MAX_MASTER_LEVEL / 2) / MAX_MASTER_LEVEL;
+				table[value] = (byte) Math.min(maxValues[index], Math.max(minValues[index], output));
+			}
+			newTables[index] = table;
+		}
+		tables = newTables;
+	}
+
+	private void checkRange(final int startChannelNumber, final int numberOfChannel) {
+		if (startChannelNumber < 1 || numberOfChannel < 1 || startChannelNumber - 1 + numberOfChannel > lookupTables.length) {
+			throw new IllegalArgumentException("channels must be in range [1-" + lookupTables.length + "]");
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.NUMBER_OF_CHANNEL_PER_PACKET;
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+/**
+ * Encoder of RFShowControl packets into preallocated buffers.
+ *
+ * The packet buffers are allocated once and reused by every encoding, so the returned packets
+ * are only valid until the next encoding of the same packet index. Not thread safe.
+ */
+public class RFShowControlPacketEncoder {
+
+	/** Index of the packet offset in a RFShowControl packet. */
+	public static final int OFFSET_INDEX = PACKET_SIZE - 2;
+
+	/** Index of the TBD byte in a RFShowControl packet. */
+	public static final int TBD_INDEX = PACKET_SIZE - 1;
+
+	/** Frame sequence number bits of the TBD byte, [1-127] rolling, 0 when the frames are not numbered. */
+	public static final int SEQUENCE_MASK = 0x7F;
+
+	/** Keyframe flag of the TBD byte, set when all the packets of the numbered frame are sent. */
+	public static final int KEYFRAME_FLAG = 0x80;
+
+	/** The reusable packet buffers. */
+	private final byte[][] packets;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numberOfChannel	Max number of channel to encode [1-512].
+	 */
+	public RFShowControlPacketEncoder(final int numberOfChannel) {
+		if (numberOfChannel < 1 || numberOfChannel > RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL) {
+			throw new IllegalArgumentException("numberOfChannel must be in range [1-"
+					+ RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL + "]");
+		}
+		packets = new byte[getNumberOfPacket(numberOfChannel)][PACKET_SIZE];
+	}
+
+	/**
+	 * Return the number of RFShowControl packets needed for a number of channel.
+	 *
+	 * @param numberOfChannel	The number of channel.
+	 * @return	The number of packets.
+	 */
+	public static int getNumberOfPacket(final int numberOfChannel) {
+		int numberOfPacket = numberOfChannel / NUMBER_OF_CHANNEL_PER_PACKET;
+		if (numberOfChannel % NUMBER_OF_CHANNEL_PER_PACKET > 0) {
+			numberOfPacket++;
+		}
+		return numberOfPacket;
+	}
+
+	/**
+	 * Return the max number of packets this encoder can hold.
+	 * @return	The max number of packets.
+	 */
+	public int getMaxNumberOfPacket() {
+		return packets.length;
+	}
+
+	/**
+	 * Encode all the packets of datas.
+	 *
+	 * @param datas	Datas to encode.
+	 * @return	The number of packets encoded, available with {@link #getPacket(int)}.
+	 */
+	public int encode(final byte[] datas) {
+		final int numberOfPacket = getNumberOfPacket(datas.length);
+		for (int index = 0; index < numberOfPacket; index++) {
+			encodePacket(datas, index);
+		}
+		return numberOfPacket;
+	}
+
+	/**
+	 * Encode one packet of datas in its reusable buffer.
+	 *
+	 * @param datas			Datas to encode.
+	 * @param packetIndex	The packet index / offset.
+	 * @return	The reusable buffer of the packet.
+	 */
+	public byte[] encodePacket(final byte[] datas, final int packetIndex) {
+		return encodePacket(datas, packetIndex, null);
+	}
+
+	/**
+	 * Encode one packet of datas in its reusable buffer, transforming the values on the way.
+	 *
+	 * @param datas			Datas to encode.
+	 * @param packetIndex	The packet index / offset.
+	 * @param tables		The table of each channel (see {@link RFShowControlOutputTransform}), null to copy the datas.
+	 * @return	The reusable buffer of the packet.
+	 */
+	public byte[] encodePacket(final byte[] datas, final int packetIndex, final byte[][] tables) {
+		final int from = packetIndex * NUMBER_OF_CHANNEL_PER_PACKET;
+		return encodePacket(datas, from, Math.min(from + NUMBER_OF_CHANNEL_PER_PACKET, datas.length),
+				(byte) packetIndex, packets[packetIndex], tables);
+	}
+
+	/**
+	 * Return the reusable buffer of a packet.
+	 *
+	 * @param packetIndex	The packet index / offset.
+	 * @return	The packet.
+	 */
+	public byte[] getPacket(final int packetIndex) {
+		return packets[packetIndex];
+	}
+
+	/**
+	 * Return the frame sequence number following another one.
+	 *
+	 * @param sequence	The sequence number [0-127], 0 if none.
+	 * @return	The next sequence number [1-127].
+	 */
+	public static int nextSequence(final int sequence) {
+		return sequence % SEQUENCE_MASK + 1;
+	}
+
+	/**
+	 * Return the number of frames from a sequence number to another one.
+	 *
+	 * @param from	The first sequence number [1-127].
+	 * @param to	The second sequence number [1-127].
+	 * @return	The distance [0-126], the second sequence number is newer for the small distances.
+	 */
+	public static int sequenceDistance(final int from, final int to) {
+		return (to - from + SEQUENCE_MASK) % SEQUENCE_MASK;
+	}
+
+	/**
+	 * Encode a RFShowControl packet from datas in a given buffer.
+	 *
+	 * @param datas				Datas to split in RFShowControl packet.
+	 * @param from				Begin index of data to copy in packet.
+	 * @param to				End index of data to copy in packet.
+	 * @param packetIndex		The packet index / offset.
+	 * @param packetPayload		The buffer receiving the packet (length = 32 bytes).
+	 * @return	The packet payload.
+	 */
+	public static byte[] encodePacket(final byte[] datas, final int from, final int to, final byte packetIndex,
+			final byte[] packetPayload) {
+		return encodePacket(datas, from, to, packetIndex, packetPayload, null);
+	}
+
+	/**
+	 * Encode a RFShowControl packet from datas in a given buffer, each value looked up in the table of its channel.
+	 *
+	 * @param datas				Datas to split in RFShowControl packet.
+	 * @param from				Begin index of data to copy in packet.
+	 * @param to				End index of data to copy in packet.
+	 * @param packetIndex		The packet index / offset.
+	 * @param packetPayload		The buffer receiving the packet (length = 32 bytes).
+	 * @param tables			The table of each channel, null to copy the datas.
+	 * @return	The packet payload.
+	 */
+	public static byte[] encodePacket(final byte[] datas, final int from, final int to, final byte packetIndex,
+			final byte[] packetPayload, final byte[][] tables) {
+		// Copy datas into packet payload
+		final int length = Math.max(0, Math.min(Math.min(to, datas.length) - from, NUMBER_OF_CHANNEL_PER_PACKET));
+		if (tables == null) {
+			if (length > 0) {
+				System.arraycopy(datas, from, packetPayload, 0, length);
+			}
+		}
+		else {
+			// Transform while copying, the frame is read once
+			for (int index = 0; index < length; index++) {
+				packetPayload[index] = tables[from + index][datas[from + index] & 0xFF];
+			}
+		}
+		for (int index = length; index < OFFSET_INDEX; index++) {
+			packetPayload[index] = (byte) 0;
+		}
+		// Add packet OFFSET
+		packetPayload[OFFSET_INDEX] = packetIndex;
+		// Add packet TBD
+		packetPayload[TBD_INDEX] = 0;
+		return packetPayload;
+	}
+
+}
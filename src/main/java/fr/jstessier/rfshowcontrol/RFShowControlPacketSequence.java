@@ -0,0 +1,222 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped sequence file of pre-encoded RFShowControl packets, compiled by {@link RFShowControlPacketSequenceCompiler}.
+ *
+ * The file starts with a header of {@link #HEADER_SIZE} bytes (big endian):
+ * <pre>
+ * 0	int		magic "RFSP"
+ * 4	short	version
+ * 6	short	header size
+ * 8	int		number of channel
+ * 12	int		frames per second
+ * 16	long	number of frame
+ * 24	int		keyframe interval
+ * 28	int		reserved
+ * </pre>
+ * followed by the frame index (number of frame + 1 longs: the file offset of each frame, then the end of the last frame)
+ * and the frames. A frame is the list of the 32 bytes packets to send: every packet for a keyframe,
+ * only the changed packets otherwise.
+ *
+ * An instance is not thread safe: it is meant to be read by a single player thread.
+ */
+public class RFShowControlPacketSequence implements Closeable {
+
+	/** Magic number of a packet sequence file ("RFSP"). */
+	public static final int MAGIC = 0x52465350;
+
+	/** Version of the packet sequence file format. */
+	public static final short VERSION = 1;
+
+	/** Size of the header. */
+	public static final int HEADER_SIZE = 32;
+
+	/** Size of the mapped window of frames. */
+	private static final int WINDOW_SIZE = 16 * 1024 * 1024;
+
+	/** The file channel. */
+	private final FileChannel fileChannel;
+
+	/** Number of channel of a frame. */
+	private final int numberOfChannel;
+
+	/** Frame rate of the sequence. */
+	private final int framesPerSecond;
+
+	/** Number of frames of the sequence. */
+	private final long numberOfFrame;
+
+	/** Number of frames between two keyframes. */
+	private final int keyframeInterval;
+
+	/** The mapped frame index. */
+	private final LongBuffer frameIndexes;
+
+	/** File offset of the mapped window. */
+	private long windowOffset = -1;
+
+	/** Size of the mapped window. */
+	private long windowSize;
+
+	/** Reusable view of the mapped window returned by {@link #getFrame(long)}. */
+	private ByteBuffer frame;
+
+	/**
+	 * Open a packet sequence file.
+	 *
+	 * @param path	The packet sequence file.
+	 * @throws IOException	If the file can't be read or is not a valid packet sequence file.
+	 */
+	public RFShowControlPacketSequence(final Path path) throws IOException {
+		fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (fileChannel.read(header, header.position()) < 0) {
+					throw new IOException("Truncated packet sequence header: " + path);
+				}
+			}
+			header.flip();
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not a packet sequence file: " + path);
+			}
+			final short version = header.getShort();
+			if (version != VERSION) {
+				throw new IOException("Unsupported packet sequence version " + version + ": " + path);
+			}
+			final short headerSize = header.getShort();
+			numberOfChannel = header.getInt();
+			framesPerSecond = header.getInt();
+			numberOfFrame = header.getLong();
+			keyframeInterval = header.getInt();
+			if (headerSize != HEADER_SIZE || numberOfChannel < 1 || numberOfChannel > RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL
+					|| framesPerSecond < 1 || framesPerSecond > RFShowControlFrameScheduler.MAX_FRAMES_PER_SECOND
+					|| numberOfFrame < 0 || keyframeInterval < 1) {
+				throw new IOException("Invalid packet sequence header: " + path);
+			}
+			final long indexSize = (numberOfFrame + 1) * 8;
+			if (fileChannel.size() < HEADER_SIZE + indexSize) {
+				throw new IOException("Truncated packet sequence index: " + path);
+			}
+			frameIndexes = fileChannel.map(MapMode.READ_ONLY, HEADER_SIZE, indexSize).asLongBuffer();
+			if (fileChannel.size() < frameIndexes.get((int) numberOfFrame)) {
+				throw new IOException("Truncated packet sequence frames: " + path);
+			}
+		} catch (IOException | RuntimeException e) {
+			fileChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Return the number of channel of a frame.
+	 * @return	The number of channel.
+	 */
+	public int getNumberOfChannel() {
+		return numberOfChannel;
+	}
+
+	/**
+	 * Return the frame rate of the sequence.
+	 * @return	The number of frames per second.
+	 */
+	public int getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * Return the number of frames of the sequence.
+	 * @return	The number of frames.
+	 */
+	public long getNumberOfFrame() {
+		return numberOfFrame;
+	}
+
+	/**
+	 * Return the number of frames between two keyframes.
+	 * @return	The keyframe interval.
+	 */
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * Return the frame is a keyframe, containing every packet ?
+	 *
+	 * @param frameIndex	The frame index.
+	 * @return	true for a keyframe.
+	 */
+	public boolean isKeyframe(final long frameIndex) {
+		return frameIndex % keyframeInterval == 0;
+	}
+
+	/**
+	 * Return the packets of a frame as a view of the mapped file, without copy.
+	 * The returned buffer is reused: it is only valid until the next call.
+	 *
+	 * @param frameIndex	The frame index [0-numberOfFrame[.
+	 * @return	The packets, positioned on the first packet and limited to the end of the last packet.
+	 * @throws IOException	If the file can't be mapped.
+	 */
+	public ByteBuffer getFrame(final long frameIndex) throws IOException {
+		if (frameIndex < 0 || frameIndex >= numberOfFrame) {
+			throw new IllegalArgumentException("frameIndex must be in range [0-" + (numberOfFrame - 1) + "]");
+		}
+		final long start = frameIndexes.get((int) frameIndex);
+		final long end = frameIndexes.get((int) frameIndex + 1);
+		if (end < start || (end - start) % PACKET_SIZE != 0) {
+			throw new IOException("Invalid packet sequence frame " + frameIndex);
+		}
+		if (start < windowOffset || end > windowOffset + windowSize) {
+			// Map a new window starting with the frame
+			final long size = Math.max(end - start, Math.min(WINDOW_SIZE, fileChannel.size() - start));
+			final MappedByteBuffer window = fileChannel.map(MapMode.READ_ONLY, start, size);
+			frame = window.duplicate();
+			windowOffset = start;
+			windowSize = size;
+		}
+		final int position = (int) (start - windowOffset);
+		frame.limit(position + (int) (end - start));
+		frame.position(position);
+		return frame;
+	}
+
+	@Override
+	public void close() throws IOException {
+		frame = null;
+		windowOffset = -1;
+		fileChannel.close();
+	}
+
+}
@@ -0,0 +1,155 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Offline compiler of a {@link RFShowControlSequence} into a {@link RFShowControlPacketSequence}:
+ * frames are encoded once into RFShowControl packets and only the packets which changed since the previous frame
+ * are kept, except on keyframes.
+ */
+public class RFShowControlPacketSequenceCompiler {
+
+	/** Default number of frames between two keyframes. */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 25;
+
+	/** Size of the write buffer. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private RFShowControlPacketSequenceCompiler() {
+	}
+
+	/**
+	 * Compile a sequence.
+	 *
+	 * @param source			The channel frames sequence.
+	 * @param target			The packet sequence file to create, replaced if it exists.
+	 * @param keyframeInterval	Number of frames between two keyframes.
+	 * @return	The number of packets written.
+	 * @throws IOException	If a file can't be read or written.
+	 */
+	public static long compile(final RFShowControlSequence source, final Path target, final int keyframeInterval) throws IOException {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException("keyframeInterval must be greater than 0");
+		}
+		final int numberOfChannel = source.getNumberOfChannel();
+		if (numberOfChannel > RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL) {
+			throw new IllegalArgumentException("sequence number of channel must not exceed "
+					+ RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL);
+		}
+		final long numberOfFrame = source.getNumberOfFrame();
+		final RFShowControlPacketEncoder encoder = new RFShowControlPacketEncoder(numberOfChannel);
+		final int numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(numberOfChannel);
+		final byte[][] lastPackets = new byte[numberOfPacket][PACKET_SIZE];
+		final byte[] datas = new byte[numberOfChannel];
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long numberOfPacketWritten = 0;
+
+		try (FileChannel fileChannel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			final ByteBuffer header = ByteBuffer.allocate(RFShowControlPacketSequence.HEADER_SIZE);
+			header.putInt(RFShowControlPacketSequence.MAGIC)
+					.putShort(RFShowControlPacketSequence.VERSION)
+					.putShort((short) RFShowControlPacketSequence.HEADER_SIZE)
+					.putInt(numberOfChannel)
+					.putInt(source.getFramesPerSecond())
+					.putLong(numberOfFrame)
+					.putInt(keyframeInterval)
+					.putInt(0);
+			header.flip();
+			write(fileChannel, header);
+
+			// The index is filled through a mapping while the frames are appended after it
+			final long indexSize = (numberOfFrame + 1) * 8;
+			final LongBuffer frameIndexes = fileChannel.map(MapMode.READ_WRITE,
+					RFShowControlPacketSequence.HEADER_SIZE, indexSize).asLongBuffer();
+			long offset = RFShowControlPacketSequence.HEADER_SIZE + indexSize;
+			fileChannel.position(offset);
+
+			for (long frameIndex = 0; frameIndex < numberOfFrame; frameIndex++) {
+				frameIndexes.put(offset);
+				source.getFrame(frameIndex).get(datas);
+				final boolean keyframe = frameIndex % keyframeInterval == 0;
+				for (int index = 0; index < numberOfPacket; index++) {
+					final byte[] packet = encoder.encodePacket(datas, index);
+					if (keyframe || !Arrays.equals(packet, lastPackets[index])) {
+						System.arraycopy(packet, 0, lastPackets[index], 0, PACKET_SIZE);
+						if (buffer.remaining() < PACKET_SIZE) {
+							buffer.flip();
+							write(fileChannel, buffer);
+							buffer.clear();
+						}
+						buffer.put(packet);
+						offset += PACKET_SIZE;
+						numberOfPacketWritten++;
+					}
+				}
+			}
+			frameIndexes.put(offset);
+			buffer.flip();
+			write(fileChannel, buffer);
+		}
+		return numberOfPacketWritten;
+	}
+
+	/**
+	 * Write a whole buffer at the current position of a file.
+	 *
+	 * @param fileChannel	The file.
+	 * @param buffer		The buffer.
+	 * @throws IOException	If the file can't be written.
+	 */
+	private static void write(final FileChannel fileChannel, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			fileChannel.write(buffer);
+		}
+	}
+
+	/**
+	 * Compile a sequence file.
+	 *
+	 * @param args	The source sequence file, the target packet sequence file and optionally the keyframe interval.
+	 * @throws IOException	If a file can't be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: RFShowControlPacketSequenceCompiler <sequence> <packet sequence> [keyframe interval]");
+			System.exit(1);
+		}
+		final int keyframeInterval = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_KEYFRAME_INTERVAL;
+		try (RFShowControlSequence source = new RFShowControlSequence(Paths.get(args[0]))) {
+			final long numberOfPacket = compile(source, Paths.get(args[1]), keyframeInterval);
+			System.out.println(source.getNumberOfFrame() + " frames compiled into " + numberOfPacket + " packets");
+		}
+	}
+
+}
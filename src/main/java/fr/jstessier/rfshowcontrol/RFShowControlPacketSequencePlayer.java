@@ -0,0 +1,132 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Player of a {@link RFShowControlPacketSequence}, pushing its pre-encoded packets straight to the adapter.
+ *
+ * When frames are not played consecutively (overload, seek or loop), the packets of the frames since the last
+ * played frame, or since the previous keyframe, are merged so the receivers still get every change.
+ * The adapter must be configured in TX mode and not used by another transmitter while playing.
+ */
+public class RFShowControlPacketSequencePlayer extends RFShowControlPlayer {
+
+	/** The RF24 adapter. */
+	private final RFShowControlRF24Adapter rf24;
+
+	/** The packet sequence. */
+	private final RFShowControlPacketSequence sequence;
+
+	/** Number of packets of a frame. */
+	private final int numberOfPacket;
+
+	/** Reusable merged packets, by offset. */
+	private final byte[] mergedPackets;
+
+	/** Packets of the merged packets set ? */
+	private final boolean[] merged;
+
+	/** View of the merged packets sent. */
+	private final ByteBuffer mergedBuffer;
+
+	/** Index of the last frame played, -1 if none. */
+	private long lastFrameIndex = -1;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rf24		The RF24 adapter, configured in TX mode.
+	 * @param sequence	The packet sequence.
+	 */
+	public RFShowControlPacketSequencePlayer(final RFShowControlRF24Adapter rf24, final RFShowControlPacketSequence sequence) {
+		super("rfshowcontrol-packet-player", sequence.getNumberOfFrame(), sequence.getFramesPerSecond());
+		if (rf24 == null) {
+			throw new IllegalArgumentException("rf24 is mandatory");
+		}
+		this.rf24 = rf24;
+		this.sequence = sequence;
+		this.numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(sequence.getNumberOfChannel());
+		this.mergedPackets = new byte[numberOfPacket * PACKET_SIZE];
+		this.merged = new boolean[numberOfPacket];
+		this.mergedBuffer = ByteBuffer.wrap(mergedPackets);
+	}
+
+	@Override
+	protected void playFrame(final long frameIndex) throws RFShowControlException {
+		try {
+			if (frameIndex == lastFrameIndex + 1 || sequence.isKeyframe(frameIndex)) {
+				rf24.sendPackets(sequence.getFrame(frameIndex), sequence.isKeyframe(frameIndex));
+			}
+			else {
+				rf24.sendPackets(mergeFrames(frameIndex), sequence.isKeyframe(frameIndex));
+			}
+		} catch (IOException e) {
+			throw new RFShowControlException("An error occured during packet sequence reading", e);
+		}
+		lastFrameIndex = frameIndex;
+	}
+
+	/**
+	 * Merge the packets of the frames leading to a frame, the last version of each packet wins.
+	 *
+	 * @param frameIndex	The frame index.
+	 * @return	The merged packets.
+	 * @throws IOException	If the file can't be mapped.
+	 */
+	private ByteBuffer mergeFrames(final long frameIndex) throws IOException {
+		long fromFrameIndex = frameIndex - frameIndex % sequence.getKeyframeInterval();
+		if (lastFrameIndex >= fromFrameIndex && lastFrameIndex < frameIndex) {
+			fromFrameIndex = lastFrameIndex + 1;
+		}
+		for (int index = 0; index < numberOfPacket; index++) {
+			merged[index] = false;
+		}
+		for (long index = fromFrameIndex; index <= frameIndex; index++) {
+			final ByteBuffer packets = sequence.getFrame(index);
+			while (packets.hasRemaining()) {
+				final int offset = packets.get(packets.position() + RFShowControlPacketEncoder.OFFSET_INDEX) & 0xFF;
+				if (offset >= numberOfPacket) {
+					throw new IOException("Invalid packet offset " + offset + " in frame " + index);
+				}
+				packets.get(mergedPackets, offset * PACKET_SIZE, PACKET_SIZE);
+				merged[offset] = true;
+			}
+		}
+		// Compact the merged packets
+		int length = 0;
+		for (int index = 0; index < numberOfPacket; index++) {
+			if (merged[index]) {
+				if (length != index * PACKET_SIZE) {
+					System.arraycopy(mergedPackets, index * PACKET_SIZE, mergedPackets, length, PACKET_SIZE);
+				}
+				length += PACKET_SIZE;
+			}
+		}
+		mergedBuffer.clear();
+		mergedBuffer.limit(length);
+		return mergedBuffer;
+	}
+
+}
@@ -0,0 +1,216 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Patch of the fixtures and RGB pixels on the channels of a controller.
+ *
+ * Fixtures have one channel per attribute, pixels have three channels in the order of their strip.
+ * The patch is compiled into a {@link RFShowControlPatchTable} of flat index tables used to write the channels.
+ */
+public class RFShowControlPatch {
+
+	/** Order of the colour channels of a pixel. */
+	public enum ColorOrder {
+
+		RGB(0, 1, 2), RBG(0, 2, 1), GRB(1, 0, 2), GBR(2, 0, 1), BRG(1, 2, 0), BGR(2, 1, 0);
+
+		/** Offsets of the red, green and blue channels. */
+		private final int[] offsets;
+
+		private ColorOrder(final int red, final int green, final int blue) {
+			this.offsets = new int[] { red, green, blue };
+		}
+
+	}
+
+	/** Number of channel of the controller. */
+	private final int numberOfChannel;
+
+	/** Name of the fixture patched on each channel, null if none. */
+	private final String[] channelFixtures;
+
+	/** Channel numbers of the attributes of each fixture. */
+	private final Map<String, Map<String, Integer>> fixtures = new HashMap<String, Map<String, Integer>>();
+
+	/** Pixel groups, in patch order. */
+	private final List<PixelGroup> pixelGroups = new ArrayList<PixelGroup>();
+
+	/** Number of pixels of all the groups. */
+	private int numberOfPixel;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numberOfChannel	Number of channel of the controller [1-512].
+	 */
+	public RFShowControlPatch(final int numberOfChannel) {
+		if (numberOfChannel < 1 || numberOfChannel > RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL) {
+			throw new IllegalArgumentException("numberOfChannel must be in range [1-"
+					+ RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL + "]");
+		}
+		this.numberOfChannel = numberOfChannel;
+		this.channelFixtures = new String[numberOfChannel];
+	}
+
+	/**
+	 * Patch a fixture, one channel per attribute from the start channel.
+	 *
+	 * @param name					Unique name of the fixture.
+	 * @param startChannelNumber	Channel of the first attribute.
+	 * @param attributes			Names of the attributes, in channel order.
+	 * @return	The current RFShowControlPatch instance.
+	 */
+	public synchronized RFShowControlPatch addFixture(final String name, final int startChannelNumber, final String... attributes) {
+		if (attributes == null || attributes.length == 0) {
+			throw new IllegalArgumentException("attributes are mandatory");
+		}
+		final Map<String, Integer> channelNumbers = new HashMap<String, Integer>();
+		for (int index = 0; index < attributes.length; index++) {
+			if (channelNumbers.put(attributes[index], startChannelNumber + index) != null) {
+				throw new IllegalArgumentException("attribute " + attributes[index] + " is defined twice");
+			}
+		}
+		reserve(name, startChannelNumber, attributes.length);
+		fixtures.put(name, channelNumbers);
+		return this;
+	}
+
+	/**
+	 * Patch a group of RGB pixels, three consecutive channels per pixel from the start channel.
+	 *
+	 * @param name					Unique name of the group.
+	 * @param startChannelNumber	First channel of the first pixel.
+	 * @param numberOfPixel			Number of pixels.
+	 * @param colorOrder			Order of the colour channels of the pixels.
+	 * @return	The current RFShowControlPatch instance.
+	 */
+	public synchronized RFShowControlPatch addPixels(final String name, final int startChannelNumber, final int numberOfPixel,
+			final ColorOrder colorOrder) {
+		if (numberOfPixel < 1) {
+			throw new IllegalArgumentException("numberOfPixel must be greater than 0");
+		}
+		else if (colorOrder == null) {
+			throw new IllegalArgumentException("colorOrder is mandatory");
+		}
+		reserve(name, startChannelNumber, 3 * numberOfPixel);
+		pixelGroups.add(new PixelGroup(name, startChannelNumber - 1, numberOfPixel, colorOrder, this.numberOfPixel));
+		this.numberOfPixel += numberOfPixel;
+		return this;
+	}
+
+	/**
+	 * Compile the patch into index tables.
+	 *
+	 * @return	The patch table.
+	 */
+	public synchronized RFShowControlPatchTable compile() {
+		final int[] pixelIndexes = new int[3 * numberOfPixel];
+		final Map<String, int[]> groups = new HashMap<String, int[]>();
+		for (PixelGroup group : pixelGroups) {
+			int index = 3 * group.firstPixel;
+			for (int pixel = 0; pixel < group.numberOfPixel; pixel++) {
+				final int pixelChannelIndex = group.startIndex + 3 * pixel;
+				for (int component = 0; component < 3; component++) {
+					pixelIndexes[index++] = pixelChannelIndex + group.colorOrder.offsets[component];
+				}
+			}
+			groups.put(group.name, new int[] { group.firstPixel, group.numberOfPixel });
+		}
+		final Map<String, Map<String, Integer>> fixtureChannels = new HashMap<String, Map<String, Integer>>();
+		for (Map.Entry<String, Map<String, Integer>> fixture : fixtures.entrySet()) {
+			fixtureChannels.put(fixture.getKey(), new HashMap<String, Integer>(fixture.getValue()));
+		}
+		return new RFShowControlPatchTable(numberOfChannel, pixelIndexes, groups, fixtureChannels);
+	}
+
+	/**
+	 * Reserve a range of channels for a fixture or a pixel group.
+	 *
+	 * @param name					Name of the fixture or group.
+	 * @param startChannelNumber	First channel number.
+	 * @param length				Number of channel.
+	 */
+	private void reserve(final String name, final int startChannelNumber, final int length) {
+		if (name == null) {
+			throw new IllegalArgumentException("name is mandatory");
+		}
+		else if (fixtures.containsKey(name) || isPixelGroup(name)) {
+			throw new IllegalArgumentException(name + " is already patched");
+		}
+		else if (startChannelNumber < 1 || startChannelNumber > numberOfChannel) {
+			throw new IllegalArgumentException("startChannelNumber must be in range [1-" + numberOfChannel + "]");
+		}
+		else if (startChannelNumber - 1 + length > numberOfChannel) {
+			throw new IllegalArgumentException(name + " must not exceed channel " + numberOfChannel);
+		}
+		for (int index = startChannelNumber - 1; index < startChannelNumber - 1 + length; index++) {
+			if (channelFixtures[index] != null) {
+				throw new IllegalArgumentException("channel " + (index + 1) + " is already patched to " + channelFixtures[index]);
+			}
+		}
+		for (int index = startChannelNumber - 1; index < startChannelNumber - 1 + length; index++) {
+			channelFixtures[index] = name;
+		}
+	}
+
+	private boolean isPixelGroup(final String name) {
+		for (PixelGroup group : pixelGroups) {
+			if (group.name.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Group of RGB pixels.
+	 */
+	private static final class PixelGroup {
+
+		private final String name;
+
+		/** Channel index of the first pixel. */
+		private final int startIndex;
+
+		private final int numberOfPixel;
+
+		private final ColorOrder colorOrder;
+
+		/** Index of the first pixel of the group among all the pixels. */
+		private final int firstPixel;
+
+		private PixelGroup(final String name, final int startIndex, final int numberOfPixel, final ColorOrder colorOrder,
+				final int firstPixel) {
+			this.name = name;
+			this.startIndex = startIndex;
+			this.numberOfPixel = numberOfPixel;
+			this.colorOrder = colorOrder;
+			this.firstPixel = firstPixel;
+		}
+
+	}
+
+}
@@ -0,0 +1,182 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compiled {@link RFShowControlPatch}, immutable and thread safe.
+ *
+ * All the pixels of the patch are numbered one after the other in patch order, their red, green and blue channel
+ * indexes are held in a single flat table: a packed colour array is written in one pass under a single lock
+ * acquisition, without per fixture call nor allocation.
+ */
+public class RFShowControlPatchTable {
+
+	/** Number of channel of the controller. */
+	private final int numberOfChannel;
+
+	/** Channel indexes of the red, green and blue values of each pixel. */
+	private final int[] pixelIndexes;
+
+	/** First pixel and number of pixels of each group. */
+	private final Map<String, int[]> pixelGroups;
+
+	/** Channel numbers of the attributes of each fixture. */
+	private final Map<String, Map<String, Integer>> fixtures;
+
+	/**
+	 * Constructor, see {@link RFShowControlPatch#compile()}.
+	 *
+	 * @param numberOfChannel	Number of channel of the controller.
+	 * @param pixelIndexes		Channel indexes of the red, green and blue values of each pixel.
+	 * @param pixelGroups		First pixel and number of pixels of each group.
+	 * @param fixtures			Channel numbers of the attributes of each fixture.
+	 */
+	RFShowControlPatchTable(final int numberOfChannel, final int[] pixelIndexes, final Map<String, int[]> pixelGroups,
+			final Map<String, Map<String, Integer>> fixtures) {
+		this.numberOfChannel = numberOfChannel;
+		this.pixelIndexes = pixelIndexes;
+		this.pixelGroups = pixelGroups;
+		this.fixtures = fixtures;
+	}
+
+	/**
+	 * Return the number of channel of the controller.
+	 * @return	The number of channel.
+	 */
+	public int getNumberOfChannel() {
+		return numberOfChannel;
+	}
+
+	/**
+	 * Return the number of pixels of all the groups.
+	 * @return	The number of pixels.
+	 */
+	public int getNumberOfPixel() {
+		return pixelIndexes.length / 3;
+	}
+
+	/**
+	 * Return the first pixel of a group among all the pixels.
+	 *
+	 * @param name	Name of the group.
+	 * @return	The pixel index.
+	 */
+	public int getFirstPixel(final String name) {
+		return getPixelGroup(name)[0];
+	}
+
+	/**
+	 * Return the number of pixels of a group.
+	 *
+	 * @param name	Name of the group.
+	 * @return	The number of pixels.
+	 */
+	public int getNumberOfPixel(final String name) {
+		return getPixelGroup(name)[1];
+	}
+
+	/**
+	 * Return the channel number of a fixture attribute.
+	 *
+	 * @param fixture	Name of the fixture.
+	 * @param attribute	Name of the attribute.
+	 * @return	The channel number.
+	 */
+	public int getChannelNumber(final String fixture, final String attribute) {
+		final Map<String, Integer> attributes = fixtures.get(fixture);
+		if (attributes == null) {
+			throw new IllegalArgumentException("fixture " + fixture + " is not patched");
+		}
+		final Integer channelNumber = attributes.get(attribute);
+		if (channelNumber == null) {
+			throw new IllegalArgumentException("fixture " + fixture + " has no attribute " + attribute);
+		}
+		return channelNumber;
+	}
+
+	/**
+	 * Return a copy of the pixel index table.
+	 * @return	The channel indexes (channel number - 1) of the red, green and blue values of each pixel.
+	 */
+	public int[] getPixelIndexes() {
+		return Arrays.copyOf(pixelIndexes, pixelIndexes.length);
+	}
+
+	/**
+	 * Write pixels to a controller.
+	 *
+	 * @param controller		The controller.
+	 * @param colours			The packed 0xRRGGBB colours.
+	 * @param coloursOffset		Index of the colour of the first pixel.
+	 * @param firstPixel		The first pixel.
+	 * @param numberOfPixel		Number of pixels to write.
+	 * @return	The current RFShowControlPatchTable instance.
+	 */
+	public RFShowControlPatchTable writePixels(final RFShowControlController controller, final int[] colours,
+			final int coloursOffset, final int firstPixel, final int numberOfPixel) {
+		checkPixels(firstPixel, numberOfPixel);
+		if (controller.getNumberOfChannel() < numberOfChannel) {
+			throw new IllegalArgumentException("controller must have " + numberOfChannel + " channels");
+		}
+		controller.updatePixelValues(colours, coloursOffset, pixelIndexes, 3 * firstPixel, numberOfPixel);
+		return this;
+	}
+
+	/**
+	 * Write pixels to a channel buffer, from a frame renderer.
+	 *
+	 * @param channelValues		The channel buffer.
+	 * @param colours			The packed 0xRRGGBB colours.
+	 * @param coloursOffset		Index of the colour of the first pixel.
+	 * @param firstPixel		The first pixel.
+	 * @param numberOfPixel		Number of pixels to write.
+	 * @return	The current RFShowControlPatchTable instance.
+	 */
+	public RFShowControlPatchTable writePixels(final RFShowControlChannelBuffer channelValues, final int[] colours,
+			final int coloursOffset, final int firstPixel, final int numberOfPixel) {
+		checkPixels(firstPixel, numberOfPixel);
+		if (channelValues.getNumberOfChannel() < numberOfChannel) {
+			throw new IllegalArgumentException("channelValues must have " + numberOfChannel + " channels");
+		}
+		else if (coloursOffset < 0 || coloursOffset > colours.length - numberOfPixel) {
+			throw new IllegalArgumentException("coloursOffset + numberOfPixel must not exceed " + colours.length);
+		}
+		channelValues.updatePixels(colours, coloursOffset, pixelIndexes, 3 * firstPixel, numberOfPixel);
+		return this;
+	}
+
+	private void checkPixels(final int firstPixel, final int numberOfPixel) {
+		if (firstPixel < 0 || numberOfPixel < 0 || firstPixel > getNumberOfPixel() - numberOfPixel) {
+			throw new IllegalArgumentException("firstPixel + numberOfPixel must not exceed " + getNumberOfPixel());
+		}
+	}
+
+	private int[] getPixelGroup(final String name) {
+		final int[] group = pixelGroups.get(name);
+		if (group == null) {
+			throw new IllegalArgumentException("pixel group " + name + " is not patched");
+		}
+		return group;
+	}
+
+}
@@ -0,0 +1,281 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base of the sequence players: plays the frames of a sequence at its frame rate, with seek, loop and pause.
+ *
+ * The played frame is derived from the scheduler frame number, skipped frames included,
+ * so an overloaded player drops frames instead of drifting from the show time.
+ */
+public abstract class RFShowControlPlayer {
+
+	/** Name of the scheduler thread. */
+	private final String name;
+
+	/** Number of frames of the sequence. */
+	private final long numberOfFrame;
+
+	/** Frame rate of the sequence. */
+	private final int framesPerSecond;
+
+	/** The frame scheduler, null when stopped. */
+	private RFShowControlFrameScheduler scheduler;
+
+	/** Frame index requested by {@link #seek(long)}, -1 if none. */
+	private final AtomicLong seekFrameIndex = new AtomicLong(-1);
+
+	/** Restart from the first frame at the end of the sequence ? */
+	private volatile boolean loop;
+
+	/** Playback paused ? */
+	private volatile boolean paused;
+
+	/** End of the sequence reached ? */
+	private volatile boolean ended;
+
+	/** Lock of the end of the sequence, the scheduler thread never takes the player lock. */
+	private final Object endLock = new Object();
+
+	/** Index of the next frame to play. */
+	private volatile long position;
+
+	/** Scheduler frame number of the anchor frame (scheduler thread only). */
+	private long anchorFrameNumber;
+
+	/** Frame index played at the anchor frame number (scheduler thread only). */
+	private long anchorFrameIndex;
+
+	/** The anchor must be set on the next played frame (scheduler thread only). */
+	private boolean reanchor = true;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name				Name of the scheduler thread.
+	 * @param numberOfFrame		Number of frames of the sequence.
+	 * @param framesPerSecond	Frame rate of the sequence.
+	 */
+	protected RFShowControlPlayer(final String name, final long numberOfFrame, final int framesPerSecond) {
+		this.name = name;
+		this.numberOfFrame = numberOfFrame;
+		this.framesPerSecond = framesPerSecond;
+	}
+
+	/**
+	 * Restart from the first frame at the end of the sequence.
+	 *
+	 * @param loop	Loop the sequence ?
+	 * @return	The current RFShowControlPlayer instance.
+	 */
+	public RFShowControlPlayer setLoop(final boolean loop) {
+		this.loop = loop;
+		return this;
+	}
+
+	/**
+	 * Start playing from the current position.
+	 *
+	 * @return	The current RFShowControlPlayer instance.
+	 */
+	public synchronized RFShowControlPlayer start() {
+		if (scheduler != null) {
+			throw new IllegalStateException("RFShowControlPlayer is already started");
+		}
+		ended = false;
+		reanchor = true;
+		scheduler = new RFShowControlFrameScheduler(name, framesPerSecond,
+				new RFShowControlFrameScheduler.FrameTask() {
+					@Override
+					public void onFrame(long frameNumber) throws RFShowControlException {
+						tick(frameNumber);
+					}
+				});
+		scheduler.start();
+		return this;
+	}
+
+	/**
+	 * Stop playing, the position is kept.
+	 *
+	 * @return	The current RFShowControlPlayer instance.
+	 */
+	public RFShowControlPlayer stop() {
+		final RFShowControlFrameScheduler stopped;
+		synchronized (this) {
+			stopped = scheduler;
+			scheduler = null;
+		}
+		// Joined out of the lock: the scheduler thread may be ending the sequence
+		if (stopped != null) {
+			stopped.stop();
+		}
+		return this;
+	}
+
+	/**
+	 * Pause the playback: the outputs keep the last played frame.
+	 *
+	 * @return	The current RFShowControlPlayer instance.
+	 */
+	public RFShowControlPlayer pause() {
+		paused = true;
+		return this;
+	}
+
+	/**
+	 * Resume the playback from the paused frame.
+	 *
+	 * @return	The current RFShowControlPlayer instance.
+	 */
+	public RFShowControlPlayer resume() {
+		paused = false;
+		return this;
+	}
+
+	/**
+	 * Move the playback to a frame, applied on the next frame.
+	 *
+	 * @param frameIndex	The frame index [0-numberOfFrame[.
+	 * @return	The current RFShowControlPlayer instance.
+	 */
+	public RFShowControlPlayer seek(final long frameIndex) {
+		if (frameIndex < 0 || frameIndex >= numberOfFrame) {
+			throw new IllegalArgumentException("frameIndex must be in range [0-" + (numberOfFrame - 1) + "]");
+		}
+		seekFrameIndex.set(frameIndex);
+		position = frameIndex;
+		ended = false;
+		return this;
+	}
+
+	/**
+	 * Wait for the end of the sequence (never returns while looping).
+	 *
+	 * @throws InterruptedException	If the current thread is interrupted.
+	 */
+	public void awaitEnd() throws InterruptedException {
+		synchronized (endLock) {
+			while (!ended) {
+				endLock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of frames of the sequence.
+	 * @return	The number of frames.
+	 */
+	public long getNumberOfFrame() {
+		return numberOfFrame;
+	}
+
+	/**
+	 * Return the frame rate of the sequence.
+	 * @return	The number of frames per second.
+	 */
+	public int getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * Return the index of the next frame to play.
+	 * @return	The frame index.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Return the playback paused ?
+	 * @return	true if paused.
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * Return the end of the sequence reached ?
+	 * @return	true if the last frame has been played and loop is disabled.
+	 */
+	public boolean isEnded() {
+		return ended;
+	}
+
+	/**
+	 * Play the frame matching a scheduler frame, on the scheduler thread.
+	 *
+	 * @param frameNumber	The scheduler frame number, skipped frames included.
+	 * @throws RFShowControlException	In case of reading or communication error.
+	 */
+	protected void tick(final long frameNumber) throws RFShowControlException {
+		final long seek = seekFrameIndex.getAndSet(-1);
+		if (seek >= 0) {
+			anchorFrameIndex = seek;
+			reanchor = true;
+		}
+		else if (reanchor) {
+			anchorFrameIndex = position;
+		}
+		if (paused || ended) {
+			reanchor = true;
+			return;
+		}
+		if (reanchor) {
+			anchorFrameNumber = frameNumber;
+			reanchor = false;
+		}
+
+		long frameIndex = anchorFrameIndex + (frameNumber - anchorFrameNumber);
+		if (frameIndex >= numberOfFrame) {
+			if (!loop || numberOfFrame == 0) {
+				position = numberOfFrame;
+				end();
+				return;
+			}
+			frameIndex %= numberOfFrame;
+		}
+
+		playFrame(frameIndex);
+		position = frameIndex + 1;
+	}
+
+	/**
+	 * Play a frame of the sequence, on the scheduler thread.
+	 * The frames are not always consecutive: frames are skipped on overload, seek and loop.
+	 *
+	 * @param frameIndex	The frame index [0-numberOfFrame[.
+	 * @throws RFShowControlException	In case of reading or communication error.
+	 */
+	protected abstract void playFrame(long frameIndex) throws RFShowControlException;
+
+	/**
+	 * Mark the end of the sequence and wake up the waiting threads.
+	 */
+	private void end() {
+		synchronized (endLock) {
+			ended = true;
+			endLock.notifyAll();
+		}
+	}
+
+}
@@ -19,11 +19,13 @@ package fr.jstessier.rfshowcontrol;
  * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
  */
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
 import fr.jstessier.rf24.RF24;
 import fr.jstessier.rf24.Registers;
 import fr.jstessier.rf24.enums.DataPipe;
-import fr.jstessier.rf24.enums.DataRates;
-import fr.jstessier.rf24.enums.OutputPower;
 import fr.jstessier.rf24.enums.WritePayloadType;
 import fr.jstessier.rf24.exceptions.RF24Exception;
 import fr.jstessier.rf24.hardware.RF24Hardware;
@@ -37,23 +39,92 @@ public class RFShowControlRF24Adapter {
 	public static final int MAX_MUNBER_OF_CHANNEL = 512;
 
 	/** Number of RFShowControl channel per RF24 packet. */
-	private static final int NUMBER_OF_CHANNEL_PER_PACKET = 30;
+	public static final int NUMBER_OF_CHANNEL_PER_PACKET = 30;
 
 	/** RF24 packet size. */
-	private static final int PACKET_SIZE = 32;
+	public static final int PACKET_SIZE = 32;
+
+	/** Default number of transmissions between two full frames (keyframes). */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 10;
+
+	/** Number of payloads of the RF24 TX FIFO. */
+	private static final int TX_FIFO_SIZE = 3;
+
+	/** Time between two polls of a full TX FIFO. */
+	private static final long TX_FIFO_POLL_NANOS = 20000;
+
+	/** Max time to wait for a free payload in the TX FIFO. */
+	private static final long TX_FIFO_TIMEOUT_NANOS = 50000000;
 
 	/** The RF24 module driver. */
 	private final RF24 rf24;
 
+	/** Interface with hardware, for the commands not provided by the driver. */
+	private final RF24Hardware rf24Hardware;
+
+	/** Reusable SPI command reading a RX payload. */
+	private final byte[] readPayloadCommand = new byte[PACKET_SIZE + 1];
+
+	/** Reusable SPI command reading or writing a register. */
+	private final byte[] registerCommand = new byte[2];
+
+	/** Reusable SPI command of one byte. */
+	private final byte[] singleCommand = new byte[1];
+
+	/** Reusable SPI command writing a TX payload. */
+	private final byte[] writePayloadCommand = new byte[PACKET_SIZE + 1];
+
+	/** Reusable packet of the pre-encoded packets sent. */
+	private final byte[] packet = new byte[PACKET_SIZE];
+
+	/** How the packets are written in the TX FIFO. */
+	private SendMode sendMode = SendMode.SERIAL;
+
+	/** Number of free payloads known in the TX FIFO, -1 if unknown. */
+	private int txFifoFreePayloads = -1;
+
+	/** Transmit metrics. */
+	private final RFShowControlAdapterMetrics metrics = new RFShowControlAdapterMetrics();
+
 	/** Number of channel [1-512]. */
 	private final int numberOfChannel;
 
 	/** TX or RX mode. */
 	private Mode mode;
 
+	/** Radio profile of the last configuration. */
+	private RFShowControlRadioProfile radioProfile = RFShowControlRadioProfile.DEFAULT;
+
 	/** The adapter is configured ? */
 	private boolean configured;
 
+	/** Number of transmissions between two full frames, 1 means every transmission is a full frame. */
+	private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+
+	/** Number of transmissions since the last full frame. */
+	private int transmissionsSinceKeyframe;
+
+	/** Encoder of the packets to send. */
+	private final RFShowControlPacketEncoder encoder;
+
+	/** Transform of the channel values applied by the encoder. */
+	private final RFShowControlOutputTransform outputTransform;
+
+	/** Last packets sent, used to detect changed packets. */
+	private final byte[][] lastSentPackets;
+
+	/** The transmissions are numbered in the TBD byte of the packets ? */
+	private boolean sequenceNumbering;
+
+	/** Sequence number of the last numbered transmission, 0 if none. */
+	private int sequence;
+
+	/** Recorder of the packets sent, null if none. */
+	private volatile RFShowControlRecorder recorder;
+
+	/** Length of the last datas sent, -1 if nothing has been sent yet. */
+	private int lastSentLength = -1;
+
 	/**
 	 * Constructor.
 	 * 
@@ -68,6 +139,10 @@ public class RFShowControlRF24Adapter {
 		}
 
 		this.numberOfChannel = numberOfChannel;
+		this.rf24Hardware = rf24Hardware;
+		this.encoder = new RFShowControlPacketEncoder(numberOfChannel);
+		this.outputTransform = new RFShowControlOutputTransform(numberOfChannel);
+		this.lastSentPackets = new byte[encoder.getMaxNumberOfPacket()][PACKET_SIZE];
 		try {
 			rf24 = new RF24(rf24Hardware);
 		} catch (RF24Exception e) {
@@ -86,11 +161,31 @@ public class RFShowControlRF24Adapter {
 	 */
 	public RFShowControlRF24Adapter configure(final byte rfChannel, final byte[] pipeAddress, 
 			final Mode mode) throws RFShowControlException {
+		return configure(rfChannel, pipeAddress, mode, RFShowControlRadioProfile.DEFAULT);
+	}
+
+	/**
+	 * Initialize the module RF24 with configuration and a radio profile and place it in standby mode 1.
+	 * 
+	 * @param rfChannel		The radio frequency channel (7 bit -> [0 - 127]).
+	 * @param pipeAddress	The address of the pipe.
+	 * @param mode			Transmitter or receiver mode.
+	 * @param radioProfile	Data rate, output power and CRC length.
+	 * @return	The current RFShowControlRF24Controller instance.
+	 * @throws RF24Exception	In case of communication error with RF Module.
+	 */
+	public RFShowControlRF24Adapter configure(final byte rfChannel, final byte[] pipeAddress, 
+			final Mode mode, final RFShowControlRadioProfile radioProfile) throws RFShowControlException {
 
 		if (mode == null) {
 			throw new IllegalArgumentException("mode is mandatory");
 		}
+		else if (radioProfile == null) {
+			throw new IllegalArgumentException("radioProfile is mandatory");
+		}
 
+		// Not configured until the whole configuration succeeded
+		configured = false;
 		try {
 			// Power down the module
 			rf24.powerDown();
@@ -98,14 +193,17 @@ public class RFShowControlRF24Adapter {
 			// Reset CONFIG to default value.
 			rf24.writeRegisterValue(Registers.CONFIG, Registers.CONFIG.getResetValue());
 	
-			// Enable 16-bits CRC
+			// Enable CRC, 16-bits unless the profile asks for 8-bits (CONFIG is still at its reset value)
 			rf24.enableCRC2bytes();
+			if (RFShowControlRadioProfile.CrcLength.ONE_BYTE.equals(radioProfile.getCrcLength())) {
+				writeRegister(RFShowControlRF24Commands.CONFIG, RFShowControlRF24Commands.CONFIG_EN_CRC);
+			}
 	
 			// Set frequency channel
 			rf24.setFrequencyChannel(rfChannel);
 	
-			// Set data rates to a slowest and most reliable speed
-			rf24.setDataRatesAndOutputPower(DataRates.DR_250_KBPS, OutputPower.RF_0_DBM);
+			// Set data rates and output power of the profile
+			rf24.setDataRatesAndOutputPower(radioProfile.getDataRate(), radioProfile.getOutputPower());
 	
 			// Enables the W_TX_PAYLOAD_NOACK command
 			rf24.enableWritePayloadNoAckCommand();
@@ -130,14 +228,32 @@ public class RFShowControlRF24Adapter {
 				rf24.openReadingPipe(DataPipe.P1, pipeAddress);
 			}
 	
+			this.radioProfile = radioProfile;
 			configured = true;
 		} catch (RF24Exception e) {
+			metrics.spiError();
 			throw new RFShowControlException("An error occured during RF24 configuration", e);
 		}
 
 		return this;
 	}
 
+	/**
+	 * Return the radio profile of the last configuration.
+	 * @return	The radio profile.
+	 */
+	public RFShowControlRadioProfile getRadioProfile() {
+		return radioProfile;
+	}
+
+	/**
+	 * Return true if the last configuration of the adapter succeeded.
+	 * @return	true if the adapter is configured.
+	 */
+	public boolean isConfigured() {
+		return configured;
+	}
+
 	/**
 	 * Return the number of active channel.
 	 * @return	The number of active channel.
@@ -146,6 +262,14 @@ public class RFShowControlRF24Adapter {
 		return numberOfChannel;
 	}
 
+	/**
+	 * Return the transmit metrics.
+	 * @return	The metrics.
+	 */
+	public RFShowControlAdapterMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Return the mode.
 	 * @return	The mode.
@@ -155,12 +279,125 @@ public class RFShowControlRF24Adapter {
 	}
 
 	/**
-	 * Send datas.
+	 * Return the number of transmissions between two full frames.
+	 * @return	The keyframe interval.
+	 */
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * Set the number of transmissions between two full frames (keyframes).
+	 * Between keyframes, only the packets whose channel values changed since the last transmission are sent.
+	 * 
+	 * @param keyframeInterval	Number of transmissions between two keyframes (1 means every transmission is a keyframe).
+	 * @return	The current RFShowControlRF24Adapter instance.
+	 */
+	public RFShowControlRF24Adapter setKeyframeInterval(final int keyframeInterval) {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException("keyframeInterval must be greater than 0");
+		}
+		this.keyframeInterval = keyframeInterval;
+		return this;
+	}
+
+	/**
+	 * Return true if the transmissions are numbered.
+	 * @return	true if the frame sequence number is sent in the TBD byte.
+	 */
+	public boolean isSequenceNumbering() {
+		return sequenceNumbering;
+	}
+
+	/**
+	 * Number the transmissions with a rolling frame sequence number and a keyframe flag in the TBD byte of the packets,
+	 * so receivers can drop duplicate and stale packets and measure the loss (see {@link RFShowControlReceiver}).
+	 *
+	 * @param sequenceNumbering	true to number the transmissions, false to send 0 in the TBD byte.
+	 * @return	The current RFShowControlRF24Adapter instance.
+	 */
+	public RFShowControlRF24Adapter setSequenceNumbering(final boolean sequenceNumbering) {
+		this.sequenceNumbering = sequenceNumbering;
+		return this;
+	}
+
+	/**
+	 * Return the transform of the channel values, applied while the packets are encoded.
+	 * @return	The output transform.
+	 */
+	public RFShowControlOutputTransform getOutputTransform() {
+		return outputTransform;
+	}
+
+	/**
+	 * Return the recorder of the packets sent.
+	 * @return	The recorder, null if none.
+	 */
+	public RFShowControlRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Record the packets sent from the next transmission, see {@link RFShowControlRecorder}.
+	 * The recorder must not be shared with another adapter.
+	 *
+	 * @param recorder	The recorder, null to stop recording.
+	 * @return	The current RFShowControlRF24Adapter instance.
+	 */
+	public RFShowControlRF24Adapter setRecorder(final RFShowControlRecorder recorder) {
+		this.recorder = recorder;
+		return this;
+	}
+
+	/**
+	 * Return how the packets are written in the TX FIFO.
+	 * @return	The send mode.
+	 */
+	public SendMode getSendMode() {
+		return sendMode;
+	}
+
+	/**
+	 * Set how the packets are written in the TX FIFO.
+	 * 
+	 * @param sendMode	The send mode.
+	 * @return	The current RFShowControlRF24Adapter instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public RFShowControlRF24Adapter setSendMode(final SendMode sendMode) throws RFShowControlException {
+		if (sendMode == null) {
+			throw new IllegalArgumentException("sendMode is mandatory");
+		}
+		if (SendMode.PIPELINED.equals(this.sendMode) && !sendMode.equals(this.sendMode) && configured) {
+			// Let the driver handle CE again
+			try {
+				awaitTxFifoEmpty();
+			} finally {
+				rf24Hardware.setPinChipEnableLow();
+			}
+		}
+		this.sendMode = sendMode;
+		return this;
+	}
+
+	/**
+	 * Send datas, only the packets which changed since the last transmission are sent unless a keyframe is due.
 	 * 
 	 * @param datas		Datas to send (max length = 512 bytes)
 	 * @throws RFShowControlException
 	 */
 	public RFShowControlRF24Adapter sendChannelValues(final byte[] datas) throws RFShowControlException {
+		return sendChannelValues(datas, false);
+	}
+
+	/**
+	 * Send datas.
+	 * 
+	 * @param datas				Datas to send (max length = 512 bytes)
+	 * @param forceKeyframe		true to send all the packets, even if they did not change.
+	 * @throws RFShowControlException
+	 */
+	public RFShowControlRF24Adapter sendChannelValues(final byte[] datas, final boolean forceKeyframe) throws RFShowControlException {
 		if (!configured) {
 			throw new IllegalStateException("RFShowControlRF24Adapter is not configured");
 		}
@@ -171,37 +408,376 @@ public class RFShowControlRF24Adapter {
 			throw new IllegalArgumentException("datas length must not exceed " + numberOfChannel);
 		}
 
-		final byte[][] packets = splitDatasInRFShowControlPackets(datas);
-		for (int index = 0; index < packets.length; index++) {
-			try {
-				rf24.sendPayload(WritePayloadType.W_TX_PAYLOAD_NO_ACK, packets[index]);
-			} catch (RF24Exception e) {
-				throw new RFShowControlException("An error occured during RF24 communication", e);
+		sendRFShowControlPackets(datas, forceKeyframe);
+		return this;
+	}
+
+	/**
+	 * Send the RFShowControl packets of datas which changed since the last transmission, or all of them for a keyframe.
+	 * 
+	 * @param datas				Datas to send.
+	 * @param forceKeyframe		true to send all the packets.
+	 * @return	The number of packets sent.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	protected int sendRFShowControlPackets(final byte[] datas, final boolean forceKeyframe) throws RFShowControlException {
+		final boolean keyframe = forceKeyframe || isKeyframeDue(datas.length);
+		final int numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(datas.length);
+		final long start = System.nanoTime();
+		int numberOfPacketSent = 0;
+		byte sequenceTag = 0;
+		// The same tables for all the packets of the frame
+		final byte[][] tables = outputTransform.getTables();
+		final RFShowControlRecorder currentRecorder = recorder;
+		if (currentRecorder != null) {
+			currentRecorder.beginFrame();
+		}
+		txFifoFreePayloads = -1;
+		try {
+			for (int index = 0; index < numberOfPacket; index++) {
+				final byte[] packet = encoder.encodePacket(datas, index, tables);
+				if (keyframe || isPacketChanged(packet, lastSentPackets[index])) {
+					if (sequenceNumbering && numberOfPacketSent == 0) {
+						// Only the transmissions sending packets are numbered, a gap means lost frames
+						sequence = RFShowControlPacketEncoder.nextSequence(sequence);
+						sequenceTag = (byte) (sequence | (keyframe ? RFShowControlPacketEncoder.KEYFRAME_FLAG : 0));
+					}
+					packet[RFShowControlPacketEncoder.TBD_INDEX] = sequenceTag;
+					sendRFShowControlPacket(packet);
+					// Only remember packets really sent, a failed transmission is resent next time
+					System.arraycopy(packet, 0, lastSentPackets[index], 0, PACKET_SIZE);
+					if (currentRecorder != null) {
+						currentRecorder.recordPacket(packet);
+					}
+					numberOfPacketSent++;
+				}
+			}
+		} finally {
+			// The packets sent before a failure are recorded too
+			if (currentRecorder != null) {
+				currentRecorder.endFrame();
+			}
+		}
+		lastSentLength = datas.length;
+		transmissionsSinceKeyframe = keyframe ? 0 : transmissionsSinceKeyframe + 1;
+		metrics.frameSent(numberOfPacketSent, System.nanoTime() - start);
+		return numberOfPacketSent;
+	}
+
+	/**
+	 * Send pre-encoded RFShowControl packets, bypassing the encoding and the changed packets detection.
+	 * With the sequence numbering, the packets are numbered (the buffer is not modified) and flagged as a keyframe
+	 * if they hold every packet of the frame.
+	 * The next channel values transmission is a keyframe.
+	 *
+	 * @param packets	The packets, from the position to the limit of the buffer (the position is moved to the limit).
+	 * @param keyframe	true if the packets are all the packets of the frame, false for the changed packets only.
+	 * @return	The number of packets sent.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public int sendPackets(final ByteBuffer packets, final boolean keyframe) throws RFShowControlException {
+		if (!configured) {
+			throw new IllegalStateException("RFShowControlRF24Adapter is not configured");
+		}
+		else if (packets.remaining() % PACKET_SIZE != 0) {
+			throw new IllegalArgumentException("packets length must be a multiple of " + PACKET_SIZE);
+		}
+		return sendRFShowControlPackets(packets, keyframe);
+	}
+
+	/**
+	 * Send pre-encoded RFShowControl packets.
+	 *
+	 * @param packets	The packets, from the position to the limit of the buffer.
+	 * @param keyframe	true if the packets are all the packets of the frame.
+	 * @return	The number of packets sent.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	protected int sendRFShowControlPackets(final ByteBuffer packets, final boolean keyframe) throws RFShowControlException {
+		final long start = System.nanoTime();
+		int numberOfPacketSent = 0;
+		byte sequenceTag = 0;
+		if (sequenceNumbering && packets.hasRemaining()) {
+			sequence = RFShowControlPacketEncoder.nextSequence(sequence);
+			sequenceTag = (byte) (sequence | (keyframe ? RFShowControlPacketEncoder.KEYFRAME_FLAG : 0));
+		}
+		txFifoFreePayloads = -1;
+		// The receivers no longer match the last channel values sent
+		lastSentLength = -1;
+		final RFShowControlRecorder currentRecorder = recorder;
+		if (currentRecorder != null) {
+			currentRecorder.beginFrame();
+		}
+		try {
+			while (packets.hasRemaining()) {
+				packets.get(packet);
+				if (sequenceNumbering) {
+					// Numbered in the reusable copy, the packets of the caller are kept
+					packet[RFShowControlPacketEncoder.TBD_INDEX] = sequenceTag;
+				}
+				sendRFShowControlPacket(packet);
+				if (currentRecorder != null) {
+					currentRecorder.recordPacket(packet);
+				}
+				numberOfPacketSent++;
+			}
+		} finally {
+			if (currentRecorder != null) {
+				currentRecorder.endFrame();
+			}
+		}
+		metrics.frameSent(numberOfPacketSent, System.nanoTime() - start);
+		return numberOfPacketSent;
+	}
+
+	/**
+	 * Send one RFShowControl packet.
+	 *
+	 * @param packet	The RFShowControl packet.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	protected void sendRFShowControlPacket(final byte[] packet) throws RFShowControlException {
+		try {
+			if (SendMode.PIPELINED.equals(sendMode)) {
+				writePipelinedPayload(packet);
+			}
+			else {
+				rf24.sendPayload(WritePayloadType.W_TX_PAYLOAD_NO_ACK, packet);
+			}
+		} catch (RF24Exception e) {
+			metrics.spiError();
+			throw new RFShowControlException("An error occured during RF24 communication", e);
+		}
+	}
+
+	/**
+	 * Write a payload in the TX FIFO as soon as it has a free payload, CE is kept high so the module
+	 * sends the payloads one after the other while the next ones are written.
+	 * 
+	 * @param packet	The RFShowControl packet.
+	 * @throws RF24Exception	In case of communication error with RF Module.
+	 * @throws RFShowControlException	If the TX FIFO stays full.
+	 */
+	private void writePipelinedPayload(final byte[] packet) throws RF24Exception, RFShowControlException {
+		if (txFifoFreePayloads < 0) {
+			// First packet of the transmission: clear the sent flags and check the FIFO once
+			writeRegister(RFShowControlRF24Commands.STATUS,
+					(byte) (RFShowControlRF24Commands.STATUS_TX_DS | RFShowControlRF24Commands.STATUS_MAX_RT));
+			txFifoFreePayloads = (readRegister(RFShowControlRF24Commands.FIFO_STATUS)
+					& RFShowControlRF24Commands.FIFO_STATUS_TX_EMPTY) != 0 ? TX_FIFO_SIZE : 0;
+			rf24Hardware.setPinChipEnableHigh();
+		}
+		if (txFifoFreePayloads == 0) {
+			awaitTxFifoNotFull();
+		}
+		// The payload is written with its command in a single SPI transaction
+		writePayloadCommand[0] = RFShowControlRF24Commands.W_TX_PAYLOAD_NO_ACK;
+		System.arraycopy(packet, 0, writePayloadCommand, 1, PACKET_SIZE);
+		rf24Hardware.spiWrite(writePayloadCommand);
+		txFifoFreePayloads--;
+	}
+
+	/**
+	 * Wait until the TX FIFO has a free payload, watching the TX_FULL and TX_DS flags of the STATUS register.
+	 * 
+	 * @throws RF24Exception	In case of communication error with RF Module.
+	 * @throws RFShowControlException	If the TX FIFO stays full.
+	 */
+	private void awaitTxFifoNotFull() throws RF24Exception, RFShowControlException {
+		final long timeout = System.nanoTime() + TX_FIFO_TIMEOUT_NANOS;
+		while (true) {
+			singleCommand[0] = RFShowControlRF24Commands.NOP;
+			final byte status = rf24Hardware.spiWrite(singleCommand)[0];
+			if ((status & RFShowControlRF24Commands.STATUS_TX_FULL) == 0) {
+				txFifoFreePayloads = 1;
+				return;
+			}
+			else if ((status & RFShowControlRF24Commands.STATUS_TX_DS) != 0) {
+				// A payload has just been sent, clear the flag and check again immediately
+				writeRegister(RFShowControlRF24Commands.STATUS, RFShowControlRF24Commands.STATUS_TX_DS);
+				continue;
+			}
+			else if (System.nanoTime() - timeout > 0) {
+				flushTxFifo();
+				throw new RFShowControlException("RF24 TX FIFO stays full");
+			}
+			LockSupport.parkNanos(TX_FIFO_POLL_NANOS);
+		}
+	}
+
+	/**
+	 * Wait until all the payloads of the TX FIFO are sent.
+	 * 
+	 * @throws RFShowControlException	In case of communication error with RF Module or if the TX FIFO is not emptied.
+	 */
+	private void awaitTxFifoEmpty() throws RFShowControlException {
+		try {
+			final long timeout = System.nanoTime() + TX_FIFO_TIMEOUT_NANOS;
+			while ((readRegister(RFShowControlRF24Commands.FIFO_STATUS) & RFShowControlRF24Commands.FIFO_STATUS_TX_EMPTY) == 0) {
+				if (System.nanoTime() - timeout > 0) {
+					flushTxFifo();
+					throw new RFShowControlException("RF24 TX FIFO is not emptied");
+				}
+				LockSupport.parkNanos(TX_FIFO_POLL_NANOS);
+			}
+		} catch (RF24Exception e) {
+			metrics.spiError();
+			throw new RFShowControlException("An error occured during RF24 communication", e);
+		}
+	}
+
+	/**
+	 * Flush the TX FIFO.
+	 * 
+	 * @throws RF24Exception	In case of communication error with RF Module.
+	 */
+	private void flushTxFifo() throws RF24Exception {
+		singleCommand[0] = RFShowControlRF24Commands.FLUSH_TX;
+		rf24Hardware.spiWrite(singleCommand);
+		txFifoFreePayloads = -1;
+	}
+
+	/**
+	 * Check if the next transmission must be a full frame.
+	 * 
+	 * @param length	Length of the datas to send.
+	 * @return	true if all the packets must be sent.
+	 */
+	private boolean isKeyframeDue(final int length) {
+		return length != lastSentLength || transmissionsSinceKeyframe + 1 >= keyframeInterval;
+	}
+
+	/**
+	 * Check if the channel values of a packet changed since the last transmission.
+	 * 
+	 * @param packet		The packet to send.
+	 * @param lastSent		The same packet as it was last sent.
+	 * @return	true if at least one channel value changed.
+	 */
+	private static boolean isPacketChanged(final byte[] packet, final byte[] lastSent) {
+		for (int index = 0; index < RFShowControlPacketEncoder.OFFSET_INDEX; index++) {
+			if (packet[index] != lastSent[index]) {
+				return true;
 			}
 		}
+		return false;
+	}
+
+	/**
+	 * Start listening for RFShowControl packets (RX mode only).
+	 * 
+	 * @return	The current RFShowControlRF24Adapter instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public RFShowControlRF24Adapter startListening() throws RFShowControlException {
+		checkConfigured(Mode.RX);
+		try {
+			writeRegister(RFShowControlRF24Commands.RX_PW_P1, (byte) PACKET_SIZE);
+			writeRegister(RFShowControlRF24Commands.CONFIG, (byte) (readRegister(RFShowControlRF24Commands.CONFIG)
+					| RFShowControlRF24Commands.CONFIG_PWR_UP | RFShowControlRF24Commands.CONFIG_PRIM_RX));
+			writeRegister(RFShowControlRF24Commands.STATUS, RFShowControlRF24Commands.STATUS_RX_DR);
+			rf24Hardware.setPinChipEnableHigh();
+		} catch (RF24Exception e) {
+			metrics.spiError();
+			throw new RFShowControlException("An error occured during RF24 communication", e);
+		}
 		return this;
 	}
 
+	/**
+	 * Stop listening for RFShowControl packets (RX mode only).
+	 * 
+	 * @return	The current RFShowControlRF24Adapter instance.
+	 */
+	public RFShowControlRF24Adapter stopListening() {
+		checkConfigured(Mode.RX);
+		rf24Hardware.setPinChipEnableLow();
+		return this;
+	}
+
+	/**
+	 * Read the next RFShowControl packet of the RX FIFO (RX mode only).
+	 * 
+	 * @param packet	Buffer receiving the packet (length = 32 bytes).
+	 * @return	true if a packet has been read, false if the RX FIFO is empty.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public boolean readPacket(final byte[] packet) throws RFShowControlException {
+		checkConfigured(Mode.RX);
+		try {
+			// The STATUS register tells which pipe has a payload available, or none
+			singleCommand[0] = RFShowControlRF24Commands.NOP;
+			final byte status = rf24Hardware.spiWrite(singleCommand)[0];
+			if ((status & RFShowControlRF24Commands.STATUS_RX_P_NO_MASK) == RFShowControlRF24Commands.STATUS_RX_P_NO_EMPTY) {
+				if ((status & RFShowControlRF24Commands.STATUS_RX_DR) != 0) {
+					writeRegister(RFShowControlRF24Commands.STATUS, RFShowControlRF24Commands.STATUS_RX_DR);
+				}
+				return false;
+			}
+			readPayloadCommand[0] = RFShowControlRF24Commands.R_RX_PAYLOAD;
+			final byte[] response = rf24Hardware.spiWrite(readPayloadCommand);
+			System.arraycopy(response, 1, packet, 0, PACKET_SIZE);
+			return true;
+		} catch (RF24Exception e) {
+			metrics.spiError();
+			throw new RFShowControlException("An error occured during RF24 communication", e);
+		}
+	}
+
+	/**
+	 * Check the adapter is configured in a mode.
+	 * 
+	 * @param expectedMode	The expected mode.
+	 */
+	private void checkConfigured(final Mode expectedMode) {
+		if (!configured) {
+			throw new IllegalStateException("RFShowControlRF24Adapter is not configured");
+		}
+		else if (!expectedMode.equals(mode)) {
+			throw new IllegalStateException("RFShowControlRF24Adapter is not configured in " + expectedMode + " mode");
+		}
+	}
+
+	/**
+	 * Read a register of the RF module.
+	 * 
+	 * @param register	The register address.
+	 * @return	The register value.
+	 * @throws RF24Exception	In case of communication error with RF Module.
+	 */
+	private byte readRegister(final byte register) throws RF24Exception {
+		registerCommand[0] = (byte) (RFShowControlRF24Commands.R_REGISTER | (register & RFShowControlRF24Commands.REGISTER_MASK));
+		registerCommand[1] = RFShowControlRF24Commands.NOP;
+		return rf24Hardware.spiWrite(registerCommand)[1];
+	}
+
+	/**
+	 * Write a register of the RF module.
+	 * 
+	 * @param register	The register address.
+	 * @param value		The register value.
+	 * @return	The STATUS register.
+	 * @throws RF24Exception	In case of communication error with RF Module.
+	 */
+	private byte writeRegister(final byte register, final byte value) throws RF24Exception {
+		registerCommand[0] = (byte) (RFShowControlRF24Commands.W_REGISTER | (register & RFShowControlRF24Commands.REGISTER_MASK));
+		registerCommand[1] = value;
+		return rf24Hardware.spiWrite(registerCommand)[0];
+	}
+
 	/**
 	 * Split datas in RFShowControl packets.
+	 * The packets are copied out of the encoder buffers, the send path uses the encoder directly.
 	 * 
 	 * @param datas	Datas to split in RFShowControl packets
 	 * @return	The RFShowControl packets.
 	 */
 	protected byte[][] splitDatasInRFShowControlPackets(final byte[] datas) {
-		// compute number of packet to send
-		int numberOfPacket = datas.length / NUMBER_OF_CHANNEL_PER_PACKET;
-		if (datas.length % NUMBER_OF_CHANNEL_PER_PACKET > 0) {
-			numberOfPacket++;
-		}
-		// split datas in RFShowControl packets
+		final int numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(datas.length);
 		final byte[][] splitedDatas = new byte[numberOfPacket][];
-		for (byte index = 0; index < numberOfPacket; index++) {
-			splitedDatas[index] = createRFShowControlPacket(datas, 
-					index * NUMBER_OF_CHANNEL_PER_PACKET, 
-					(index + 1) * NUMBER_OF_CHANNEL_PER_PACKET, 
-					index);
-			
+		for (int index = 0; index < numberOfPacket; index++) {
+			final byte[] packet = encoder.encodePacket(datas, index);
+			splitedDatas[index] = Arrays.copyOf(packet, packet.length);
 		}
 		return splitedDatas;
 	}
@@ -216,19 +792,21 @@ public class RFShowControlRF24Adapter {
 	 * @return	The RFShowControl packet.
 	 */
 	protected byte[] createRFShowControlPacket(final byte[] datas, final int from, final int to, final byte packetIndex) {
-        // Copy datas into packet payload
-		final byte[] packetPayload = new byte[PACKET_SIZE];
-        final int length = Math.min(datas.length - from, PACKET_SIZE);
-        System.arraycopy(datas, from, packetPayload, 0, length);
-        for (int index = length; index < PACKET_SIZE - 2; index++) {
-        	packetPayload[index] = (byte) 0;
-        }
-        // Add packet OFFSET
-        packetPayload[PACKET_SIZE - 2] = packetIndex;
-        // Add packet TBD
-        packetPayload[PACKET_SIZE - 1] = 0;
-        return packetPayload;
-    }
+		return RFShowControlPacketEncoder.encodePacket(datas, from, to, packetIndex, new byte[PACKET_SIZE]);
+	}
+
+	/**
+	 * How the packets are written in the TX FIFO.
+	 */
+	public enum SendMode {
+
+		/** One payload at a time, sent by the RF24 driver. */
+		SERIAL,
+
+		/** The TX FIFO is kept filled while the module sends, overlapping SPI transfers with air time. */
+		PIPELINED;
+
+	}
 
 	/**
 	 * Controller mode (TX or RX).
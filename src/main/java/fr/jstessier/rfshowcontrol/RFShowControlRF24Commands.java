@@ -0,0 +1,163 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+/**
+ * nRF24L01+ SPI commands, registers and bits used directly on the hardware (see the nRF24L01+ datasheet).
+ */
+final class RFShowControlRF24Commands {
+
+	/** Read register command (OR with the register address). */
+	static final byte R_REGISTER = 0x00;
+
+	/** Write register command (OR with the register address). */
+	static final byte W_REGISTER = 0x20;
+
+	/** Read RX payload command. */
+	static final byte R_RX_PAYLOAD = 0x61;
+
+	/** Read RX payload width command. */
+	static final byte R_RX_PL_WID = 0x60;
+
+	/** Write TX payload command. */
+	static final byte W_TX_PAYLOAD = (byte) 0xA0;
+
+	/** Write TX payload without acknowledgment command. */
+	static final byte W_TX_PAYLOAD_NO_ACK = (byte) 0xB0;
+
+	/** Flush TX FIFO command. */
+	static final byte FLUSH_TX = (byte) 0xE1;
+
+	/** Flush RX FIFO command. */
+	static final byte FLUSH_RX = (byte) 0xE2;
+
+	/** Reuse last transmitted payload command. */
+	static final byte REUSE_TX_PL = (byte) 0xE3;
+
+	/** No operation command, returns the STATUS register. */
+	static final byte NOP = (byte) 0xFF;
+
+	/** Register mask of the register commands. */
+	static final byte REGISTER_MASK = 0x1F;
+
+	/** CONFIG register. */
+	static final byte CONFIG = 0x00;
+
+	/** EN_AA register (auto acknowledgment per pipe). */
+	static final byte EN_AA = 0x01;
+
+	/** EN_RXADDR register (enabled RX pipes). */
+	static final byte EN_RXADDR = 0x02;
+
+	/** SETUP_AW register (address width). */
+	static final byte SETUP_AW = 0x03;
+
+	/** SETUP_RETR register (auto retransmission delay and count). */
+	static final byte SETUP_RETR = 0x04;
+
+	/** RF_CH register (frequency channel). */
+	static final byte RF_CH = 0x05;
+
+	/** RF_SETUP register. */
+	static final byte RF_SETUP = 0x06;
+
+	/** STATUS register. */
+	static final byte STATUS = 0x07;
+
+	/** RX_ADDR_P0 register (address of pipe 0, the next pipes follow). */
+	static final byte RX_ADDR_P0 = 0x0A;
+
+	/** TX_ADDR register. */
+	static final byte TX_ADDR = 0x10;
+
+	/** RX_PW_P0 register (payload width of pipe 0, the next pipes follow). */
+	static final byte RX_PW_P0 = 0x11;
+
+	/** RX_PW_P1 register (payload width of pipe 1). */
+	static final byte RX_PW_P1 = 0x12;
+
+	/** FIFO_STATUS register. */
+	static final byte FIFO_STATUS = 0x17;
+
+	/** DYNPD register (dynamic payload length per pipe). */
+	static final byte DYNPD = 0x1C;
+
+	/** FEATURE register. */
+	static final byte FEATURE = 0x1D;
+
+	/** CONFIG: CRC enabled. */
+	static final byte CONFIG_EN_CRC = 0x08;
+
+	/** CONFIG: CRC encoding scheme (0 = 1 byte, 1 = 2 bytes). */
+	static final byte CONFIG_CRCO = 0x04;
+
+	/** CONFIG: power up. */
+	static final byte CONFIG_PWR_UP = 0x02;
+
+	/** CONFIG: RX/TX control (1 = PRX, 0 = PTX). */
+	static final byte CONFIG_PRIM_RX = 0x01;
+
+	/** RF_SETUP: 250 kbps data rate. */
+	static final byte RF_SETUP_RF_DR_LOW = 0x20;
+
+	/** RF_SETUP: 2 Mbps data rate (when RF_DR_LOW is not set). */
+	static final byte RF_SETUP_RF_DR_HIGH = 0x08;
+
+	/** FEATURE: dynamic payload length enabled. */
+	static final byte FEATURE_EN_DPL = 0x04;
+
+	/** FEATURE: W_TX_PAYLOAD_NO_ACK command enabled. */
+	static final byte FEATURE_EN_DYN_ACK = 0x01;
+
+	/** STATUS: data ready in RX FIFO. */
+	static final byte STATUS_RX_DR = 0x40;
+
+	/** STATUS: data sent. */
+	static final byte STATUS_TX_DS = 0x20;
+
+	/** STATUS: max number of retransmits. */
+	static final byte STATUS_MAX_RT = 0x10;
+
+	/** STATUS: data pipe number mask of the payload available in RX FIFO. */
+	static final byte STATUS_RX_P_NO_MASK = 0x0E;
+
+	/** STATUS: RX FIFO empty value of the data pipe number. */
+	static final byte STATUS_RX_P_NO_EMPTY = 0x0E;
+
+	/** STATUS: TX FIFO full. */
+	static final byte STATUS_TX_FULL = 0x01;
+
+	/** FIFO_STATUS: TX FIFO full. */
+	static final byte FIFO_STATUS_TX_FULL = 0x20;
+
+	/** FIFO_STATUS: TX FIFO empty. */
+	static final byte FIFO_STATUS_TX_EMPTY = 0x10;
+
+	/** FIFO_STATUS: RX FIFO full. */
+	static final byte FIFO_STATUS_RX_FULL = 0x02;
+
+	/** FIFO_STATUS: RX FIFO empty. */
+	static final byte FIFO_STATUS_RX_EMPTY = 0x01;
+
+	private RFShowControlRF24Commands() {
+		// Constants only
+	}
+
+}
@@ -0,0 +1,155 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import fr.jstessier.rf24.enums.DataRates;
+import fr.jstessier.rf24.enums.OutputPower;
+
+/**
+ * Radio settings of the RF24 module: data rate, output power and CRC length.
+ */
+public class RFShowControlRadioProfile {
+
+	/** Slowest and most reliable profile: 250 kbps, 0 dBm, 2 bytes CRC. */
+	public static final RFShowControlRadioProfile DEFAULT = new RFShowControlRadioProfile(
+			DataRates.DR_250_KBPS, OutputPower.RF_0_DBM, CrcLength.TWO_BYTES);
+
+	/** Address width configured by the driver (bytes). */
+	static final int ADDRESS_WIDTH = 5;
+
+	/** Preamble length (bytes). */
+	private static final int PREAMBLE_LENGTH = 1;
+
+	/** Packet control field length (bits). */
+	private static final int PACKET_CONTROL_FIELD_BITS = 9;
+
+	/** Data rate. */
+	private final DataRates dataRate;
+
+	/** Output power. */
+	private final OutputPower outputPower;
+
+	/** CRC length. */
+	private final CrcLength crcLength;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dataRate		Data rate.
+	 * @param outputPower	Output power.
+	 * @param crcLength		CRC length.
+	 */
+	public RFShowControlRadioProfile(final DataRates dataRate, final OutputPower outputPower, final CrcLength crcLength) {
+		if (dataRate == null) {
+			throw new IllegalArgumentException("dataRate is mandatory");
+		}
+		else if (outputPower == null) {
+			throw new IllegalArgumentException("outputPower is mandatory");
+		}
+		else if (crcLength == null) {
+			throw new IllegalArgumentException("crcLength is mandatory");
+		}
+		this.dataRate = dataRate;
+		this.outputPower = outputPower;
+		this.crcLength = crcLength;
+	}
+
+	/**
+	 * Return the data rate.
+	 * @return	The data rate.
+	 */
+	public DataRates getDataRate() {
+		return dataRate;
+	}
+
+	/**
+	 * Return the output power.
+	 * @return	The output power.
+	 */
+	public OutputPower getOutputPower() {
+		return outputPower;
+	}
+
+	/**
+	 * Return the CRC length.
+	 * @return	The CRC length.
+	 */
+	public CrcLength getCrcLength() {
+		return crcLength;
+	}
+
+	/**
+	 * Return the data rate in bits per second.
+	 * @return	The data rate.
+	 */
+	public long getBitsPerSecond() {
+		switch (dataRate) {
+			case DR_250_KBPS:
+				return 250000;
+			case DR_1_MBPS:
+				return 1000000;
+			default:
+				return 2000000;
+		}
+	}
+
+	/**
+	 * Return the air time of a RFShowControl packet: preamble, address, packet control field, payload and CRC.
+	 * @return	The air time in nanoseconds.
+	 */
+	public long getPacketAirNanos() {
+		final long bits = 8L * (PREAMBLE_LENGTH + ADDRESS_WIDTH + RFShowControlRF24Adapter.PACKET_SIZE + crcLength.getLength())
+				+ PACKET_CONTROL_FIELD_BITS;
+		return bits * 1000000000L / getBitsPerSecond();
+	}
+
+	@Override
+	public String toString() {
+		return dataRate + "/" + outputPower + "/" + crcLength;
+	}
+
+	/**
+	 * CRC length.
+	 */
+	public enum CrcLength {
+
+		/** 1 byte CRC. */
+		ONE_BYTE(1),
+
+		/** 2 bytes CRC. */
+		TWO_BYTES(2);
+
+		private final int length;
+
+		private CrcLength(final int length) {
+			this.length = length;
+		}
+
+		/**
+		 * Return the CRC length.
+		 * @return	The length in bytes.
+		 */
+		public int getLength() {
+			return length;
+		}
+
+	}
+
+}
@@ -0,0 +1,487 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.NUMBER_OF_CHANNEL_PER_PACKET;
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Receiver of RFShowControl packets, reassembling them into channel frames.
+ *
+ * The packets are copied into a single channel values buffer at the position given by their offset byte.
+ * A frame is complete when the last packet of the universe is received, when a packet offset goes back
+ * (the transmitter started a new frame) or when no packet is received during the frame timeout.
+ * Listeners receive the reassembled buffer itself: it is only valid during the notification.
+ *
+ * Packet loss is estimated per offset from the offsets skipped inside a frame. When the transmitter sends only
+ * changed packets between keyframes, the skipped offsets may simply be unchanged, so the loss is an upper bound.
+ *
+ * When the transmitter numbers its frames ({@link RFShowControlRF24Adapter#setSequenceNumbering(boolean)}),
+ * the packets of an older frame, already received or out of order are dropped, so only fresh packets are published.
+ * The loss is then exact: per offset from the keyframes (all their offsets are sent) and per frame from the gaps
+ * of the sequence numbers.
+ */
+public class RFShowControlReceiver {
+
+	/** Default time without packet after which a partial frame is complete. */
+	public static final long DEFAULT_FRAME_TIMEOUT_MICROS = 5000;
+
+	/** Default time between two polls of an empty RX FIFO. */
+	public static final long DEFAULT_POLL_INTERVAL_MICROS = 500;
+
+	/** The RF24 adapter configured in RX mode. */
+	private final RFShowControlRF24Adapter rf24;
+
+	/** Number of packets of a frame. */
+	private final int numberOfPacket;
+
+	/** The reassembled channel values. */
+	private final byte[] channelValues;
+
+	/** Reusable buffer receiving the packets. */
+	private final byte[] packet = new byte[PACKET_SIZE];
+
+	/** The frame listeners. */
+	private final CopyOnWriteArrayList<FrameListener> listeners = new CopyOnWriteArrayList<FrameListener>();
+
+	/** Number of packets received per offset. */
+	private final long[] receivedPackets;
+
+	/** Number of packets estimated lost per offset. */
+	private final long[] lostPackets;
+
+	/** Reception time of the last packet per offset, 0 if never received. */
+	private final long[] lastReceptionNanos;
+
+	/** Time without packet after which a partial frame is complete. */
+	private volatile long frameTimeoutNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_FRAME_TIMEOUT_MICROS);
+
+	/** Offset of the last packet of the current frame, -1 if no frame is pending. */
+	private int lastOffset = -1;
+
+	/** Reception time of the last packet. */
+	private long lastPacketNanos;
+
+	/** Number of frames completed. */
+	private volatile long frameCount;
+
+	/** Number of packets received with an invalid offset. */
+	private volatile long invalidPacketCount;
+
+	/** Sequence number of the current numbered frame, 0 if none. */
+	private int frameSequence;
+
+	/** The current numbered frame is a keyframe ? */
+	private boolean frameKeyframe;
+
+	/** Offsets received in the current numbered frame (bit per offset). */
+	private int frameOffsets;
+
+	/** Number of numbered packets dropped because already received. */
+	private volatile long duplicatePacketCount;
+
+	/** Number of numbered packets dropped because of an older frame or out of order. */
+	private volatile long stalePacketCount;
+
+	/** Number of numbered frames never received. */
+	private volatile long lostFrameCount;
+
+	/** Number of polls of the polling thread which ended with an error. */
+	private volatile long errorCount;
+
+	/** Error of the last poll which ended with an error, null if none. */
+	private volatile Exception lastError;
+
+	/** The polling thread. */
+	private Thread thread;
+
+	/** The polling thread is running ? */
+	private volatile boolean running;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rf24	The RF24 adapter, configured in RX mode before polling.
+	 */
+	public RFShowControlReceiver(final RFShowControlRF24Adapter rf24) {
+		if (rf24 == null) {
+			throw new IllegalArgumentException("rf24 is mandatory");
+		}
+		this.rf24 = rf24;
+		this.numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(rf24.getNumberOfChannel());
+		this.channelValues = new byte[rf24.getNumberOfChannel()];
+		this.receivedPackets = new long[numberOfPacket];
+		this.lostPackets = new long[numberOfPacket];
+		this.lastReceptionNanos = new long[numberOfPacket];
+	}
+
+	/**
+	 * Register a frame listener.
+	 *
+	 * @param listener	The listener.
+	 * @return	The current RFShowControlReceiver instance.
+	 */
+	public RFShowControlReceiver addListener(final FrameListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener is mandatory");
+		}
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Unregister a frame listener.
+	 *
+	 * @param listener	The listener.
+	 * @return	The current RFShowControlReceiver instance.
+	 */
+	public RFShowControlReceiver removeListener(final FrameListener listener) {
+		listeners.remove(listener);
+		return this;
+	}
+
+	/**
+	 * Set the time without packet after which a partial frame is complete.
+	 *
+	 * @param frameTimeoutMicros	The frame timeout in microseconds.
+	 * @return	The current RFShowControlReceiver instance.
+	 */
+	public RFShowControlReceiver setFrameTimeoutMicros(final long frameTimeoutMicros) {
+		if (frameTimeoutMicros < 1) {
+			throw new IllegalArgumentException("frameTimeoutMicros must be greater than 0");
+		}
+		this.frameTimeoutNanos = TimeUnit.MICROSECONDS.toNanos(frameTimeoutMicros);
+		return this;
+	}
+
+	/**
+	 * Start listening and polling the RX FIFO on a dedicated thread.
+	 *
+	 * @param pollIntervalMicros	Time between two polls of an empty RX FIFO.
+	 * @return	The current RFShowControlReceiver instance.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public synchronized RFShowControlReceiver start(final long pollIntervalMicros) throws RFShowControlException {
+		if (thread != null) {
+			throw new IllegalStateException("RFShowControlReceiver is already started");
+		}
+		final long pollIntervalNanos = TimeUnit.MICROSECONDS.toNanos(pollIntervalMicros);
+		rf24.startListening();
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running) {
+					try {
+						if (poll() == 0) {
+							LockSupport.parkNanos(this, pollIntervalNanos);
+						}
+					} catch (RFShowControlException | RuntimeException e) {
+						lastError = e;
+						errorCount++;
+						LockSupport.parkNanos(this, pollIntervalNanos);
+					}
+				}
+			}
+		}, "rfshowcontrol-receiver");
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * Stop the polling thread and stop listening.
+	 *
+	 * @return	The current RFShowControlReceiver instance.
+	 */
+	public synchronized RFShowControlReceiver stop() {
+		running = false;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+			boolean interrupted = false;
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			thread = null;
+			rf24.stopListening();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Drain the RX FIFO and reassemble the packets, to be called by a single thread.
+	 *
+	 * @return	The number of packets read.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public int poll() throws RFShowControlException {
+		int numberOfPacketRead = 0;
+		while (rf24.readPacket(packet)) {
+			processPacket(packet, System.nanoTime());
+			numberOfPacketRead++;
+		}
+		if (lastOffset >= 0 && System.nanoTime() - lastPacketNanos > frameTimeoutNanos) {
+			completeFrame();
+		}
+		return numberOfPacketRead;
+	}
+
+	/**
+	 * Reassemble a packet into the channel values.
+	 *
+	 * @param packet			The RFShowControl packet.
+	 * @param receptionNanos	The reception time of the packet.
+	 */
+	protected void processPacket(final byte[] packet, final long receptionNanos) {
+		final int offset = packet[RFShowControlPacketEncoder.OFFSET_INDEX] & 0xFF;
+		if (offset >= numberOfPacket) {
+			invalidPacketCount++;
+			return;
+		}
+		final int tag = packet[RFShowControlPacketEncoder.TBD_INDEX] & 0xFF;
+		if ((tag & RFShowControlPacketEncoder.SEQUENCE_MASK) != 0) {
+			processSequencedPacket(packet, offset, tag, receptionNanos);
+			return;
+		}
+		if (offset <= lastOffset) {
+			// The transmitter started a new frame
+			completeFrame();
+		}
+		// Offsets skipped since the previous packet of the frame
+		for (int skipped = lastOffset + 1; skipped < offset; skipped++) {
+			lostPackets[skipped]++;
+		}
+		final int from = offset * NUMBER_OF_CHANNEL_PER_PACKET;
+		System.arraycopy(packet, 0, channelValues, from, Math.min(NUMBER_OF_CHANNEL_PER_PACKET, channelValues.length - from));
+		receivedPackets[offset]++;
+		lastReceptionNanos[offset] = receptionNanos;
+		lastPacketNanos = receptionNanos;
+		lastOffset = offset;
+		if (offset == numberOfPacket - 1) {
+			completeFrame();
+		}
+	}
+
+	/**
+	 * Reassemble a packet of a numbered frame, dropping the duplicate and stale packets.
+	 *
+	 * @param packet			The RFShowControl packet.
+	 * @param offset			The packet offset.
+	 * @param tag				The TBD byte: sequence number and keyframe flag.
+	 * @param receptionNanos	The reception time of the packet.
+	 */
+	private void processSequencedPacket(final byte[] packet, final int offset, final int tag, final long receptionNanos) {
+		final int sequence = tag & RFShowControlPacketEncoder.SEQUENCE_MASK;
+		final int distance = frameSequence == 0 ? 1 : RFShowControlPacketEncoder.sequenceDistance(frameSequence, sequence);
+		if (distance == 0) {
+			if ((frameOffsets & (1 << offset)) != 0) {
+				duplicatePacketCount++;
+				return;
+			}
+			else if (offset < lastOffset) {
+				stalePacketCount++;
+				return;
+			}
+		}
+		else if (distance > RFShowControlPacketEncoder.SEQUENCE_MASK / 2) {
+			// Older than the current frame
+			stalePacketCount++;
+			return;
+		}
+		else {
+			if (lastOffset >= 0) {
+				completeFrame();
+			}
+			endSequencedFrame();
+			if (frameSequence != 0) {
+				lostFrameCount += distance - 1;
+			}
+			frameSequence = sequence;
+			frameKeyframe = (tag & RFShowControlPacketEncoder.KEYFRAME_FLAG) != 0;
+		}
+		final int from = offset * NUMBER_OF_CHANNEL_PER_PACKET;
+		System.arraycopy(packet, 0, channelValues, from, Math.min(NUMBER_OF_CHANNEL_PER_PACKET, channelValues.length - from));
+		frameOffsets |= 1 << offset;
+		receivedPackets[offset]++;
+		lastReceptionNanos[offset] = receptionNanos;
+		lastPacketNanos = receptionNanos;
+		lastOffset = offset;
+		if (offset == numberOfPacket - 1) {
+			completeFrame();
+		}
+	}
+
+	/**
+	 * Count the offsets missing from the numbered frame as lost if it is a keyframe.
+	 */
+	private void endSequencedFrame() {
+		if (frameKeyframe) {
+			for (int offset = 0; offset < numberOfPacket; offset++) {
+				if ((frameOffsets & (1 << offset)) == 0) {
+					lostPackets[offset]++;
+				}
+			}
+		}
+		frameOffsets = 0;
+	}
+
+	/**
+	 * Notify the listeners of the reassembled frame.
+	 */
+	private void completeFrame() {
+		lastOffset = -1;
+		frameCount++;
+		for (FrameListener listener : listeners) {
+			listener.onFrame(channelValues);
+		}
+	}
+
+	/**
+	 * Return the number of packets of a frame.
+	 * @return	The number of packets.
+	 */
+	public int getNumberOfPacket() {
+		return numberOfPacket;
+	}
+
+	/**
+	 * Return the number of frames completed.
+	 * @return	The number of frames.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Return the number of packets received with an invalid offset.
+	 * @return	The number of invalid packets.
+	 */
+	public long getInvalidPacketCount() {
+		return invalidPacketCount;
+	}
+
+	/**
+	 * Return the number of packets of numbered frames dropped because they were already received.
+	 * @return	The number of duplicate packets.
+	 */
+	public long getDuplicatePacketCount() {
+		return duplicatePacketCount;
+	}
+
+	/**
+	 * Return the number of packets of numbered frames dropped because they belong to an older frame or are out of order.
+	 * @return	The number of stale packets.
+	 */
+	public long getStalePacketCount() {
+		return stalePacketCount;
+	}
+
+	/**
+	 * Return the number of numbered frames never received, from the gaps of the sequence numbers.
+	 * @return	The number of lost frames.
+	 */
+	public long getLostFrameCount() {
+		return lostFrameCount;
+	}
+
+	/**
+	 * Return the number of polls of the polling thread which ended with an error.
+	 * @return	The number of errors.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Return the error of the last poll which ended with an error.
+	 * @return	The error, null if none.
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Return the number of packets received for an offset.
+	 *
+	 * @param offset	The packet offset.
+	 * @return	The number of packets received.
+	 */
+	public long getReceivedPacketCount(final int offset) {
+		return receivedPackets[offset];
+	}
+
+	/**
+	 * Return the number of packets estimated lost for an offset.
+	 *
+	 * @param offset	The packet offset.
+	 * @return	The number of packets lost.
+	 */
+	public long getLostPacketCount(final int offset) {
+		return lostPackets[offset];
+	}
+
+	/**
+	 * Return the estimated loss rate of an offset.
+	 *
+	 * @param offset	The packet offset.
+	 * @return	The loss rate [0-1].
+	 */
+	public double getLossRate(final int offset) {
+		final long expected = receivedPackets[offset] + lostPackets[offset];
+		return expected == 0 ? 0 : (double) lostPackets[offset] / expected;
+	}
+
+	/**
+	 * Return the time since the last packet received for an offset.
+	 *
+	 * @param offset	The packet offset.
+	 * @return	The age of the channel values of the packet in nanoseconds, -1 if never received.
+	 */
+	public long getPacketAgeNanos(final int offset) {
+		final long lastReception = lastReceptionNanos[offset];
+		return receivedPackets[offset] == 0 ? -1 : System.nanoTime() - lastReception;
+	}
+
+	/**
+	 * Listener of reassembled frames.
+	 */
+	public interface FrameListener {
+
+		/**
+		 * Called on the receiver thread each time a frame is complete.
+		 *
+		 * @param channelValues	The channel values, only valid during the call and must not be modified.
+		 */
+		void onFrame(byte[] channelValues);
+
+	}
+
+}
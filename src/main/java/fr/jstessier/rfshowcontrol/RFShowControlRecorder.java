@@ -0,0 +1,416 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Recorder of the packets sent over the air by a {@link RFShowControlRF24Adapter}, see {@link RFShowControlRecording}.
+ *
+ * The transmitting thread copies the packets of each transmission in a preallocated slot of a single producer /
+ * single consumer ring and publishes it with an ordered write: no lock, no allocation, no I/O. When the ring is
+ * full the transmission is not recorded (and counted), so the recording never delays a frame.
+ * A writer thread appends the transmissions to memory-mapped segment files of a fixed size, preallocated when
+ * they are created, and rotates them: only the last segments are kept.
+ *
+ * A segment file starts with a header of {@link #HEADER_SIZE} bytes (big endian):
+ * <pre>
+ * 0	int		magic "RFRL"
+ * 4	short	version
+ * 6	short	header size
+ * 8	int		reserved
+ * 12	long	segment number
+ * 20	long	recording start time (epoch nanoseconds)
+ * 28	int		reserved
+ * </pre>
+ * followed by the records, each made of:
+ * <pre>
+ * 0	long	transmission time (epoch nanoseconds)
+ * 8	short	number of packets (never 0)
+ * 10			the packets, 32 bytes each
+ * </pre>
+ * The number of packets is written last, a 0 ends the records of the segment.
+ */
+public class RFShowControlRecorder implements Closeable {
+
+	/** Magic number of a recording segment file ("RFRL"). */
+	public static final int MAGIC = 0x5246524C;
+
+	/** Version of the recording segment file format. */
+	public static final short VERSION = 1;
+
+	/** Size of the header. */
+	public static final int HEADER_SIZE = 32;
+
+	/** Size of the header of a record. */
+	public static final int RECORD_HEADER_SIZE = 10;
+
+	/** Extension of the segment files. */
+	public static final String EXTENSION = ".rfrl";
+
+	/** Default size of a segment file. */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	/** Default number of segment files kept. */
+	public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+	/** Default number of transmissions the ring holds. */
+	public static final int DEFAULT_RING_CAPACITY = 256;
+
+	/** Max number of packets of a recorded transmission (512 channels). */
+	static final int MAX_PACKETS_PER_RECORD = RFShowControlPacketEncoder.getNumberOfPacket(
+			RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL);
+
+	/** Time the writer thread sleeps when the ring is empty. */
+	private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/** Directory of the segment files. */
+	private final Path directory;
+
+	/** Name of the recording, prefix of the segment files. */
+	private final String name;
+
+	/** Size of a segment file. */
+	private final int segmentSize;
+
+	/** Number of segment files kept. */
+	private final int maxSegments;
+
+	/** Packets of each slot of the ring. */
+	private final byte[][] slotPackets;
+
+	/** Number of packets of each slot of the ring. */
+	private final int[] slotLengths;
+
+	/** Transmission time of each slot of the ring. */
+	private final long[] slotTimes;
+
+	/** Number of slots published by the transmitting thread. */
+	private final AtomicLong head = new AtomicLong();
+
+	/** Number of slots written by the writer thread. */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Recording start time, epoch nanoseconds. */
+	private final long startEpochNanos;
+
+	/** Recording start time, System.nanoTime(). */
+	private final long startNanos;
+
+	/** Slot filled by the transmitting thread, -1 if none (transmitting thread only). */
+	private int currentSlot = -1;
+
+	/** The writer thread. */
+	private final Thread writer;
+
+	private volatile boolean running = true;
+
+	/** Error stopping the writer thread, null if none. */
+	private volatile IOException writeError;
+
+	private volatile long recordedFrameCount;
+
+	private volatile long droppedFrameCount;
+
+	private volatile long truncatedFrameCount;
+
+	/** Current segment file (writer thread only). */
+	private FileChannel segmentChannel;
+
+	/** Current mapped segment (writer thread only). */
+	private MappedByteBuffer segment;
+
+	/** Number of the current segment (writer thread only). */
+	private long segmentNumber = -1;
+
+	/**
+	 * Create a recorder with the default segment size, number of segments and ring capacity.
+	 *
+	 * @param directory	Directory of the segment files.
+	 * @param name		Name of the recording, prefix of the segment files.
+	 * @throws IOException	If the first segment file can't be created.
+	 */
+	public RFShowControlRecorder(final Path directory, final String name) throws IOException {
+		this(directory, name, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS, DEFAULT_RING_CAPACITY);
+	}
+
+	/**
+	 * Create a recorder, the segment files of a previous recording with the same name are replaced.
+	 *
+	 * @param directory		Directory of the segment files.
+	 * @param name			Name of the recording, prefix of the segment files.
+	 * @param segmentSize	Size of a segment file.
+	 * @param maxSegments	Number of segment files kept.
+	 * @param ringCapacity	Number of transmissions waiting to be written before the next ones are dropped.
+	 * @throws IOException	If the first segment file can't be created.
+	 */
+	public RFShowControlRecorder(final Path directory, final String name, final int segmentSize, final int maxSegments,
+			final int ringCapacity) throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory is mandatory");
+		}
+		else if (name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("name is mandatory");
+		}
+		else if (segmentSize < HEADER_SIZE + RECORD_HEADER_SIZE + MAX_PACKETS_PER_RECORD * PACKET_SIZE) {
+			throw new IllegalArgumentException("segmentSize must be at least "
+					+ (HEADER_SIZE + RECORD_HEADER_SIZE + MAX_PACKETS_PER_RECORD * PACKET_SIZE));
+		}
+		else if (maxSegments < 1) {
+			throw new IllegalArgumentException("maxSegments must be greater than 0");
+		}
+		else if (ringCapacity < 1) {
+			throw new IllegalArgumentException("ringCapacity must be greater than 0");
+		}
+		this.directory = directory;
+		this.name = name;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		this.slotPackets = new byte[ringCapacity][MAX_PACKETS_PER_RECORD * PACKET_SIZE];
+		this.slotLengths = new int[ringCapacity];
+		this.slotTimes = new long[ringCapacity];
+		this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+		this.startNanos = System.nanoTime();
+		for (Path path : RFShowControlRecording.listSegments(directory, name)) {
+			Files.delete(path);
+		}
+		nextSegment();
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeRecords();
+			}
+		}, "rfshowcontrol-recorder");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Begin the record of a transmission, called by the transmitting thread.
+	 */
+	void beginFrame() {
+		final long index = head.get();
+		if (index - tail.get() >= slotLengths.length) {
+			// The writer is late, the transmission is not recorded
+			currentSlot = -1;
+			droppedFrameCount++;
+			return;
+		}
+		currentSlot = (int) (index % slotLengths.length);
+		slotLengths[currentSlot] = 0;
+		slotTimes[currentSlot] = startEpochNanos + (System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Record a packet sent, called by the transmitting thread.
+	 *
+	 * @param packet	The packet.
+	 */
+	void recordPacket(final byte[] packet) {
+		if (currentSlot < 0) {
+			return;
+		}
+		final int length = slotLengths[currentSlot];
+		if (length == MAX_PACKETS_PER_RECORD) {
+			slotLengths[currentSlot] = -1;
+			return;
+		}
+		else if (length >= 0) {
+			System.arraycopy(packet, 0, slotPackets[currentSlot], length * PACKET_SIZE, PACKET_SIZE);
+			slotLengths[currentSlot] = length + 1;
+		}
+	}
+
+	/**
+	 * End the record of a transmission and hand it off to the writer thread, called by the transmitting thread.
+	 */
+	void endFrame() {
+		if (currentSlot < 0) {
+			return;
+		}
+		if (slotLengths[currentSlot] < 0) {
+			truncatedFrameCount++;
+			slotLengths[currentSlot] = MAX_PACKETS_PER_RECORD;
+		}
+		if (slotLengths[currentSlot] > 0) {
+			// Ordered write: the slot is complete before the writer sees it
+			head.lazySet(head.get() + 1);
+		}
+		currentSlot = -1;
+	}
+
+	/**
+	 * Return the number of transmissions written.
+	 * @return	The number of transmissions.
+	 */
+	public long getRecordedFrameCount() {
+		return recordedFrameCount;
+	}
+
+	/**
+	 * Return the number of transmissions not recorded because the ring was full.
+	 * @return	The number of transmissions.
+	 */
+	public long getDroppedFrameCount() {
+		return droppedFrameCount;
+	}
+
+	/**
+	 * Return the number of transmissions recorded without their last packets.
+	 * @return	The number of transmissions.
+	 */
+	public long getTruncatedFrameCount() {
+		return truncatedFrameCount;
+	}
+
+	/**
+	 * Return the error which stopped the writer thread, the next transmissions are dropped.
+	 * @return	The error, null if none.
+	 */
+	public IOException getWriteError() {
+		return writeError;
+	}
+
+	/**
+	 * Stop the writer thread once the published transmissions are written, and close the segment.
+	 *
+	 * @throws IOException	If the writer thread failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+	/**
+	 * Loop of the writer thread.
+	 */
+	private void writeRecords() {
+		try {
+			while (true) {
+				// Read before the slots, so the last ones are written after close()
+				final boolean stopping = !running;
+				final long published = head.get();
+				long written = tail.get();
+				while (written < published) {
+					writeRecord((int) (written % slotLengths.length));
+					written++;
+					tail.lazySet(written);
+				}
+				if (stopping) {
+					break;
+				}
+				LockSupport.parkNanos(WRITER_PARK_NANOS);
+			}
+		} catch (IOException e) {
+			// Reported by getWriteError() and thrown by close()
+			writeError = e;
+		} finally {
+			try {
+				closeSegment();
+			} catch (IOException e) {
+				if (writeError == null) {
+					writeError = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Append a slot to the segment, rotating the segment when it is full.
+	 *
+	 * @param slot	The slot.
+	 * @throws IOException	If the segment can't be written.
+	 */
+	private void writeRecord(final int slot) throws IOException {
+		final int numberOfPacket = slotLengths[slot];
+		if (segment.remaining() < RECORD_HEADER_SIZE + numberOfPacket * PACKET_SIZE) {
+			nextSegment();
+		}
+		final int position = segment.position();
+		segment.position(position + RECORD_HEADER_SIZE);
+		segment.put(slotPackets[slot], 0, numberOfPacket * PACKET_SIZE);
+		segment.putLong(position, slotTimes[slot]);
+		// Written last: a record is complete once its number of packets is set
+		segment.putShort(position + 8, (short) numberOfPacket);
+		recordedFrameCount++;
+	}
+
+	/**
+	 * Close the current segment and create the next one, deleting the oldest segment beyond the max.
+	 *
+	 * @throws IOException	If the segment can't be created.
+	 */
+	private void nextSegment() throws IOException {
+		closeSegment();
+		segmentNumber++;
+		if (segmentNumber >= maxSegments) {
+			Files.deleteIfExists(RFShowControlRecording.getSegmentPath(directory, name, segmentNumber - maxSegments));
+		}
+		segmentChannel = FileChannel.open(RFShowControlRecording.getSegmentPath(directory, name, segmentNumber),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		// Mapping extends the file to its full size
+		segment = segmentChannel.map(MapMode.READ_WRITE, 0, segmentSize);
+		segment.putInt(MAGIC)
+				.putShort(VERSION)
+				.putShort((short) HEADER_SIZE)
+				.putInt(0)
+				.putLong(segmentNumber)
+				.putLong(startEpochNanos)
+				.putInt(0);
+	}
+
+	/**
+	 * Flush and close the current segment.
+	 *
+	 * @throws IOException	If the segment can't be closed.
+	 */
+	private void closeSegment() throws IOException {
+		if (segment != null) {
+			segment.force();
+			segment = null;
+		}
+		if (segmentChannel != null) {
+			segmentChannel.close();
+			segmentChannel = null;
+		}
+	}
+
+}
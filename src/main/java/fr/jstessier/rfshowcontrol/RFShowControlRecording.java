@@ -0,0 +1,246 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.NUMBER_OF_CHANNEL_PER_PACKET;
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.PACKET_SIZE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reader of the segment files written by a {@link RFShowControlRecorder}, from the oldest segment kept.
+ * The records are read directly from the mapped segments.
+ * An instance is not thread safe.
+ */
+public class RFShowControlRecording implements Closeable {
+
+	/** The segment files, oldest first. */
+	private final List<Path> segmentPaths;
+
+	/** Index of the mapped segment, -1 before the first one. */
+	private int segmentIndex = -1;
+
+	/** The mapped segment, null if none. */
+	private MappedByteBuffer segment;
+
+	/** Time of the current record. */
+	private long timeNanos;
+
+	/** Reusable view of the packets of the current record. */
+	private ByteBuffer packets;
+
+	/**
+	 * Open a recording.
+	 *
+	 * @param directory	Directory of the segment files.
+	 * @param name		Name of the recording.
+	 * @throws IOException	If the directory can't be read or has no segment of the recording.
+	 */
+	public RFShowControlRecording(final Path directory, final String name) throws IOException {
+		segmentPaths = listSegments(directory, name);
+		if (segmentPaths.isEmpty()) {
+			throw new IOException("No recording " + name + " in " + directory);
+		}
+	}
+
+	/**
+	 * Move to the next record.
+	 *
+	 * @return	false at the end of the recording.
+	 * @throws IOException	If a segment can't be read or is not a valid recording segment.
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (segment != null && segment.remaining() >= RFShowControlRecorder.RECORD_HEADER_SIZE) {
+				final int position = segment.position();
+				final int numberOfPacket = segment.getShort(position + 8);
+				if (numberOfPacket > 0 && numberOfPacket <= RFShowControlRecorder.MAX_PACKETS_PER_RECORD
+						&& segment.remaining() >= RFShowControlRecorder.RECORD_HEADER_SIZE + numberOfPacket * PACKET_SIZE) {
+					timeNanos = segment.getLong(position);
+					packets = segment.duplicate();
+					packets.position(position + RFShowControlRecorder.RECORD_HEADER_SIZE);
+					packets.limit(packets.position() + numberOfPacket * PACKET_SIZE);
+					segment.position(packets.limit());
+					return true;
+				}
+			}
+			// End of the records of the segment
+			if (segmentIndex + 1 >= segmentPaths.size()) {
+				segment = null;
+				packets = null;
+				return false;
+			}
+			segment = mapSegment(segmentPaths.get(++segmentIndex));
+		}
+	}
+
+	/**
+	 * Return the transmission time of the current record.
+	 * @return	The time, epoch nanoseconds.
+	 */
+	public long getTimeNanos() {
+		return timeNanos;
+	}
+
+	/**
+	 * Return the packets of the current record as a view of the mapped segment, without copy.
+	 * The returned buffer is only valid until the next call to {@link #next()}.
+	 *
+	 * @return	The packets, from the position to the limit of the buffer.
+	 */
+	public ByteBuffer getPackets() {
+		if (packets == null) {
+			throw new IllegalStateException("No current record");
+		}
+		return packets;
+	}
+
+	/**
+	 * Replay the remaining records through a controller at their recorded pace: the channels of the packets of
+	 * each record are updated, then flushed.
+	 * The packets were recorded after the output transform, the transform of the controller should be the identity
+	 * to replay the exact values.
+	 *
+	 * @param controller	The controller, started.
+	 * @param speed			Replay speed, 1 for the recorded pace.
+	 * @return	The number of records replayed.
+	 * @throws IOException	If a segment can't be read.
+	 * @throws RFShowControlException	In case of communication error with RF Module.
+	 */
+	public long replay(final RFShowControlController controller, final double speed) throws IOException, RFShowControlException {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("speed must be greater than 0");
+		}
+		final int numberOfChannel = controller.getChannelValues().length;
+		long numberOfRecord = 0;
+		long firstTimeNanos = 0;
+		final long startNanos = System.nanoTime();
+		while (next()) {
+			if (numberOfRecord == 0) {
+				firstTimeNanos = timeNanos;
+			}
+			final long dueNanos = startNanos + (long) ((timeNanos - firstTimeNanos) / speed);
+			long delay;
+			while ((delay = dueNanos - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(delay);
+			}
+			final int end = packets.limit();
+			for (int position = packets.position(); position < end; position += PACKET_SIZE) {
+				packets.limit(end);
+				final int from = (packets.get(position + RFShowControlPacketEncoder.OFFSET_INDEX) & 0xFF)
+						* NUMBER_OF_CHANNEL_PER_PACKET;
+				if (from < numberOfChannel) {
+					// The channels of the packet, without the padding beyond the last channel
+					packets.limit(position + Math.min(NUMBER_OF_CHANNEL_PER_PACKET, numberOfChannel - from));
+					packets.position(position);
+					controller.updateChannelValues(packets, from + 1);
+				}
+			}
+			packets.limit(end);
+			packets.position(end);
+			controller.flushChannelValues();
+			numberOfRecord++;
+		}
+		return numberOfRecord;
+	}
+
+	@Override
+	public void close() {
+		segment = null;
+		packets = null;
+		segmentIndex = segmentPaths.size();
+	}
+
+	/**
+	 * Map a segment and check its header.
+	 *
+	 * @param path	The segment file.
+	 * @return	The segment, positioned on its first record.
+	 * @throws IOException	If the segment can't be read or is not a valid recording segment.
+	 */
+	private static MappedByteBuffer mapSegment(final Path path) throws IOException {
+		try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (fileChannel.size() < RFShowControlRecorder.HEADER_SIZE) {
+				throw new IOException("Truncated recording header: " + path);
+			}
+			// The mapping stays valid once the channel is closed
+			final MappedByteBuffer segment = fileChannel.map(MapMode.READ_ONLY, 0, fileChannel.size());
+			if (segment.getInt() != RFShowControlRecorder.MAGIC) {
+				throw new IOException("Not a recording segment: " + path);
+			}
+			final short version = segment.getShort();
+			if (version != RFShowControlRecorder.VERSION) {
+				throw new IOException("Unsupported recording version " + version + ": " + path);
+			}
+			if (segment.getShort() != RFShowControlRecorder.HEADER_SIZE) {
+				throw new IOException("Invalid recording header: " + path);
+			}
+			segment.position(RFShowControlRecorder.HEADER_SIZE);
+			return segment;
+		}
+	}
+
+	/**
+	 * Return the path of a segment file.
+	 *
+	 * @param directory		Directory of the segment files.
+	 * @param name			Name of the recording.
+	 * @param segmentNumber	The segment number.
+	 * @return	The path.
+	 */
+	static Path getSegmentPath(final Path directory, final String name, final long segmentNumber) {
+		return directory.resolve(String.format("%s-%06d%s", name, segmentNumber, RFShowControlRecorder.EXTENSION));
+	}
+
+	/**
+	 * List the segment files of a recording, oldest first.
+	 *
+	 * @param directory	Directory of the segment files.
+	 * @param name		Name of the recording.
+	 * @return	The segment files.
+	 * @throws IOException	If the directory can't be read.
+	 */
+	static List<Path> listSegments(final Path directory, final String name) throws IOException {
+		final List<Path> segmentPaths = new ArrayList<Path>();
+		final String pattern = name + "-[0-9][0-9][0-9][0-9][0-9][0-9]*" + RFShowControlRecorder.EXTENSION;
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, pattern)) {
+			for (Path path : paths) {
+				segmentPaths.add(path);
+			}
+		}
+		// The segment numbers have a fixed width (up to a million segments), the names sort by number
+		Collections.sort(segmentPaths);
+		return segmentPaths;
+	}
+
+}
@@ -0,0 +1,187 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped sequence file of fixed-size channel frames.
+ *
+ * The file starts with a header of {@link #HEADER_SIZE} bytes (big endian):
+ * <pre>
+ * 0	int		magic "RFSQ"
+ * 4	short	version
+ * 6	short	header size
+ * 8	int		number of channel
+ * 12	int		frames per second
+ * 16	long	number of frame
+ * 24	long	reserved
+ * </pre>
+ * followed by the frames, each of number of channel bytes.
+ *
+ * The frames are mapped by segments of whole frames so multi-hour shows never reach the heap
+ * nor exhaust the address space of a 32 bits JVM. Frames are read directly from the mapped segment.
+ * An instance is not thread safe: it is meant to be read by a single player thread.
+ */
+public class RFShowControlSequence implements Closeable {
+
+	/** Magic number of a sequence file ("RFSQ"). */
+	public static final int MAGIC = 0x52465351;
+
+	/** Version of the sequence file format. */
+	public static final short VERSION = 1;
+
+	/** Size of the header. */
+	public static final int HEADER_SIZE = 32;
+
+	/** Maximum size of a mapped segment. */
+	private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/** The file channel. */
+	private final FileChannel fileChannel;
+
+	/** Number of channel of a frame. */
+	private final int numberOfChannel;
+
+	/** Frame rate of the sequence. */
+	private final int framesPerSecond;
+
+	/** Number of frames of the sequence. */
+	private final long numberOfFrame;
+
+	/** Number of frames of a mapped segment. */
+	private final long framesPerSegment;
+
+	/** The mapped segment, null until the first read. */
+	private MappedByteBuffer segment;
+
+	/** Index of the mapped segment. */
+	private long segmentIndex = -1;
+
+	/** Reusable view of the mapped segment returned by {@link #getFrame(long)}. */
+	private ByteBuffer frame;
+
+	/**
+	 * Open a sequence file.
+	 *
+	 * @param path	The sequence file.
+	 * @throws IOException	If the file can't be read or is not a valid sequence file.
+	 */
+	public RFShowControlSequence(final Path path) throws IOException {
+		fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (fileChannel.read(header, header.position()) < 0) {
+					throw new IOException("Truncated sequence header: " + path);
+				}
+			}
+			header.flip();
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not a sequence file: " + path);
+			}
+			final short version = header.getShort();
+			if (version != VERSION) {
+				throw new IOException("Unsupported sequence version " + version + ": " + path);
+			}
+			final short headerSize = header.getShort();
+			numberOfChannel = header.getInt();
+			framesPerSecond = header.getInt();
+			numberOfFrame = header.getLong();
+			if (headerSize != HEADER_SIZE || numberOfChannel < 1 || framesPerSecond < 1
+					|| framesPerSecond > RFShowControlFrameScheduler.MAX_FRAMES_PER_SECOND || numberOfFrame < 0) {
+				throw new IOException("Invalid sequence header: " + path);
+			}
+			if (fileChannel.size() < HEADER_SIZE + numberOfFrame * numberOfChannel) {
+				throw new IOException("Truncated sequence frames: " + path);
+			}
+			framesPerSegment = Math.max(1, MAX_SEGMENT_SIZE / numberOfChannel);
+		} catch (IOException | RuntimeException e) {
+			fileChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Return the number of channel of a frame.
+	 * @return	The number of channel.
+	 */
+	public int getNumberOfChannel() {
+		return numberOfChannel;
+	}
+
+	/**
+	 * Return the frame rate of the sequence.
+	 * @return	The number of frames per second.
+	 */
+	public int getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * Return the number of frames of the sequence.
+	 * @return	The number of frames.
+	 */
+	public long getNumberOfFrame() {
+		return numberOfFrame;
+	}
+
+	/**
+	 * Return a frame as a view of the mapped file, without copy.
+	 * The returned buffer is reused: it is only valid until the next call.
+	 *
+	 * @param frameIndex	The frame index [0-numberOfFrame[.
+	 * @return	The frame, positioned on its first channel and limited to its last channel.
+	 * @throws IOException	If the file can't be mapped.
+	 */
+	public ByteBuffer getFrame(final long frameIndex) throws IOException {
+		if (frameIndex < 0 || frameIndex >= numberOfFrame) {
+			throw new IllegalArgumentException("frameIndex must be in range [0-" + (numberOfFrame - 1) + "]");
+		}
+		final long index = frameIndex / framesPerSegment;
+		if (index != segmentIndex) {
+			final long firstFrame = index * framesPerSegment;
+			final long size = Math.min(framesPerSegment, numberOfFrame - firstFrame) * numberOfChannel;
+			segment = fileChannel.map(MapMode.READ_ONLY, HEADER_SIZE + firstFrame * numberOfChannel, size);
+			frame = segment.duplicate();
+			segmentIndex = index;
+		}
+		final int position = (int) (frameIndex - segmentIndex * framesPerSegment) * numberOfChannel;
+		frame.limit(position + numberOfChannel);
+		frame.position(position);
+		return frame;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segment = null;
+		frame = null;
+		segmentIndex = -1;
+		fileChannel.close();
+	}
+
+}
@@ -0,0 +1,70 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.io.IOException;
+
+/**
+ * Player of a {@link RFShowControlSequence}, streaming its frames into a controller at the sequence frame rate.
+ * Frames are copied from the mapped file straight into the controller channel buffer.
+ */
+public class RFShowControlSequencePlayer extends RFShowControlPlayer {
+
+	/** The controller receiving the frames. */
+	private final RFShowControlController controller;
+
+	/** The sequence. */
+	private final RFShowControlSequence sequence;
+
+	/** Channel number of the first channel of a frame. */
+	private final int startChannelNumber;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param controller			The controller, started.
+	 * @param sequence				The sequence.
+	 * @param startChannelNumber	Channel number of the first channel of a frame.
+	 */
+	public RFShowControlSequencePlayer(final RFShowControlController controller, final RFShowControlSequence sequence,
+			final int startChannelNumber) {
+		super("rfshowcontrol-player", sequence.getNumberOfFrame(), sequence.getFramesPerSecond());
+		if (controller == null) {
+			throw new IllegalArgumentException("controller is mandatory");
+		}
+		else if (startChannelNumber < 1) {
+			throw new IllegalArgumentException("startChannelNumber must be greater than 0");
+		}
+		this.controller = controller;
+		this.sequence = sequence;
+		this.startChannelNumber = startChannelNumber;
+	}
+
+	@Override
+	protected void playFrame(final long frameIndex) throws RFShowControlException {
+		try {
+			controller.updateChannelValues(sequence.getFrame(frameIndex), startChannelNumber);
+		} catch (IOException e) {
+			throw new RFShowControlException("An error occured during sequence reading", e);
+		}
+		controller.flushChannelValues();
+	}
+
+}
@@ -0,0 +1,154 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer of {@link RFShowControlSequence} files.
+ * The number of frames is written in the header on {@link #close()}.
+ */
+public class RFShowControlSequenceWriter implements Closeable {
+
+	/** Size of the write buffer. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The file channel. */
+	private final FileChannel fileChannel;
+
+	/** Number of channel of a frame. */
+	private final int numberOfChannel;
+
+	/** Frame rate of the sequence. */
+	private final int framesPerSecond;
+
+	/** The write buffer. */
+	private final ByteBuffer buffer;
+
+	/** Number of frames written. */
+	private long numberOfFrame;
+
+	/**
+	 * Create a sequence file, replacing an existing one.
+	 *
+	 * @param path				The sequence file.
+	 * @param numberOfChannel	Number of channel of a frame.
+	 * @param framesPerSecond	Frame rate of the sequence.
+	 * @throws IOException	If the file can't be written.
+	 */
+	public RFShowControlSequenceWriter(final Path path, final int numberOfChannel, final int framesPerSecond) throws IOException {
+		if (numberOfChannel < 1) {
+			throw new IllegalArgumentException("numberOfChannel must be greater than 0");
+		}
+		else if (framesPerSecond < 1 || framesPerSecond > RFShowControlFrameScheduler.MAX_FRAMES_PER_SECOND) {
+			throw new IllegalArgumentException("framesPerSecond must be in range [1-" + RFShowControlFrameScheduler.MAX_FRAMES_PER_SECOND + "]");
+		}
+		this.numberOfChannel = numberOfChannel;
+		this.framesPerSecond = framesPerSecond;
+		this.buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, numberOfChannel));
+		this.fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			writeHeader();
+		} catch (IOException e) {
+			fileChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Append a frame.
+	 *
+	 * @param channelValues	The channel values of the frame.
+	 * @return	The current RFShowControlSequenceWriter instance.
+	 * @throws IOException	If the file can't be written.
+	 */
+	public RFShowControlSequenceWriter writeFrame(final byte[] channelValues) throws IOException {
+		if (channelValues == null || channelValues.length != numberOfChannel) {
+			throw new IllegalArgumentException("channelValues must contain " + numberOfChannel + " values");
+		}
+		if (buffer.remaining() < numberOfChannel) {
+			flush();
+		}
+		buffer.put(channelValues);
+		numberOfFrame++;
+		return this;
+	}
+
+	/**
+	 * Return the number of frames written.
+	 * @return	The number of frames.
+	 */
+	public long getNumberOfFrame() {
+		return numberOfFrame;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			writeHeader();
+		} finally {
+			fileChannel.close();
+		}
+	}
+
+	/**
+	 * Write the buffered frames at the end of the file.
+	 *
+	 * @throws IOException	If the file can't be written.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			fileChannel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Write the header at the beginning of the file.
+	 *
+	 * @throws IOException	If the file can't be written.
+	 */
+	private void writeHeader() throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(RFShowControlSequence.HEADER_SIZE);
+		header.putInt(RFShowControlSequence.MAGIC)
+				.putShort(RFShowControlSequence.VERSION)
+				.putShort((short) RFShowControlSequence.HEADER_SIZE)
+				.putInt(numberOfChannel)
+				.putInt(framesPerSecond)
+				.putLong(numberOfFrame)
+				.putLong(0);
+		header.flip();
+		while (header.hasRemaining()) {
+			fileChannel.write(header, header.position());
+		}
+		if (fileChannel.position() < RFShowControlSequence.HEADER_SIZE) {
+			fileChannel.position(RFShowControlSequence.HEADER_SIZE);
+		}
+	}
+
+}
@@ -0,0 +1,289 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import static fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.NUMBER_OF_CHANNEL_PER_PACKET;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import sun.misc.Unsafe;
+
+/**
+ * Channel values shared with other local processes through a memory-mapped file (for example under /dev/shm).
+ *
+ * External processes write the channels in place in the file, added with
+ * {@link RFShowControlControllerImpl#addFrameRenderer(RFShowControlFrameRenderer)} the controller scheduler checks
+ * the header on each frame (a memory read, no system call) and copies the changed packets of channels only.
+ *
+ * The file starts with a header of {@link #HEADER_SIZE} bytes (little endian):
+ * <pre>
+ * 0	int		magic "RFSM"
+ * 4	short	version
+ * 6	short	header size
+ * 8	int		number of channel
+ * 12	int		reserved
+ * 16	long	sequence, odd while the values are written
+ * 24	long	dirty flags, bit n set when channels 30n+1 to 30n+30 changed
+ * 32	long	acknowledged sequence, written by the controller once it read the values
+ * 40			reserved
+ * </pre>
+ * followed by the channel values. A single writer updates the values with:
+ * <ol>
+ * <li>if the acknowledged sequence equals the sequence, clear the dirty flags,</li>
+ * <li>increment the sequence (odd), then a store barrier so the sequence is visible before the values,</li>
+ * <li>write the values,</li>
+ * <li>set the dirty flags of the packets written,</li>
+ * <li>a store barrier so the values are visible before the sequence, then increment the sequence (even).</li>
+ * </ol>
+ * The reader issues a load barrier after reading the sequence and another one before reading it again, values
+ * read while they are written are read again on the next frame, so no torn frame is sent.
+ *
+ * The barriers matter on weakly ordered processors such as the ARM of a Raspberry Pi. Java 8 has no public fence,
+ * {@code Unsafe.storeFence()} and {@code Unsafe.loadFence()} are used. A C writer uses the Linux {@code smp_wmb()}
+ * at the same two places (a {@code dmb ishst} on ARM). Python issues no barrier: a Python writer must do the writes
+ * through a small C helper (ctypes or cffi) issuing them.
+ */
+public class RFShowControlSharedChannelBuffer implements RFShowControlFrameRenderer, Closeable {
+
+	/** Access to the memory fences. */
+	private static final Unsafe UNSAFE = getUnsafe();
+
+	/** Magic number of a shared channel values file ("RFSM"). */
+	public static final int MAGIC = 0x5246534D;
+
+	/** Version of the shared channel values file format. */
+	public static final short VERSION = 1;
+
+	/** Size of the header. */
+	public static final int HEADER_SIZE = 64;
+
+	/** Index of the sequence in the header. */
+	public static final int SEQUENCE_INDEX = 16;
+
+	/** Index of the dirty flags in the header. */
+	public static final int DIRTY_FLAGS_INDEX = 24;
+
+	/** Index of the acknowledged sequence in the header. */
+	public static final int ACK_SEQUENCE_INDEX = 32;
+
+	/** The file channel. */
+	private final FileChannel fileChannel;
+
+	/** The mapped file. */
+	private final MappedByteBuffer buffer;
+
+	/** Reusable view of the mapped values. */
+	private final ByteBuffer values;
+
+	/** Number of channel. */
+	private final int numberOfChannel;
+
+	/** Number of packets of the channels. */
+	private final int numberOfPacket;
+
+	/** Values read, copied in the channel values once known consistent (scheduler thread only). */
+	private final byte[] readValues;
+
+	/** Last sequence read, -1 before the first frame (scheduler thread only). */
+	private long lastSequence = -1;
+
+	private volatile long frameCount;
+
+	private volatile long retryCount;
+
+	/**
+	 * Open a shared channel values file, created if it does not exist.
+	 *
+	 * @param path				The file.
+	 * @param numberOfChannel	Number of channel [1-512].
+	 * @throws IOException	If the file can't be mapped or is not a shared channel values file of this number of channel.
+	 */
+	public RFShowControlSharedChannelBuffer(final Path path, final int numberOfChannel) throws IOException {
+		if (numberOfChannel < 1 || numberOfChannel > RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL) {
+			throw new IllegalArgumentException("numberOfChannel must be in range [1-"
+					+ RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL + "]");
+		}
+		this.numberOfChannel = numberOfChannel;
+		this.numberOfPacket = RFShowControlPacketEncoder.getNumberOfPacket(numberOfChannel);
+		this.readValues = new byte[numberOfChannel];
+		fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			final boolean created = fileChannel.size() == 0;
+			if (!created && fileChannel.size() < HEADER_SIZE + numberOfChannel) {
+				throw new IOException("Truncated shared channel values: " + path);
+			}
+			buffer = fileChannel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + numberOfChannel);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (created) {
+				buffer.putInt(0, MAGIC)
+						.putShort(4, VERSION)
+						.putShort(6, (short) HEADER_SIZE)
+						.putInt(8, numberOfChannel);
+			}
+			else if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION || buffer.getShort(6) != HEADER_SIZE
+					|| buffer.getInt(8) != numberOfChannel) {
+				throw new IOException("Not a shared channel values file of " + numberOfChannel + " channels: " + path);
+			}
+		} catch (IOException | RuntimeException e) {
+			fileChannel.close();
+			throw e;
+		}
+		values = buffer.duplicate();
+	}
+
+	/**
+	 * Return the number of channel.
+	 * @return	The number of channel.
+	 */
+	public int getNumberOfChannel() {
+		return numberOfChannel;
+	}
+
+	/**
+	 * Update values in the file as an external writer would, for the writers of this JVM.
+	 * Not thread safe: there must be a single writer.
+	 *
+	 * @param newValues				The new values.
+	 * @param newValuesOffset		Index of the first new value.
+	 * @param startChannelNumber	Channel number of the first value.
+	 * @param length				Number of values.
+	 * @return	The current RFShowControlSharedChannelBuffer instance.
+	 */
+	public RFShowControlSharedChannelBuffer update(final byte[] newValues, final int newValuesOffset,
+			final int startChannelNumber, final int length) {
+		if (length < 1 || startChannelNumber < 1 || startChannelNumber - 1 > numberOfChannel - length) {
+			throw new IllegalArgumentException("channels must be in range [1-" + numberOfChannel + "]");
+		}
+		final long sequence = buffer.getLong(SEQUENCE_INDEX);
+		long dirtyFlags = buffer.getLong(ACK_SEQUENCE_INDEX) == sequence ? 0 : buffer.getLong(DIRTY_FLAGS_INDEX);
+		buffer.putLong(DIRTY_FLAGS_INDEX, dirtyFlags);
+		buffer.putLong(SEQUENCE_INDEX, sequence + 1);
+		// The odd sequence before the values
+		UNSAFE.storeFence();
+		for (int index = 0; index < length; index++) {
+			buffer.put(HEADER_SIZE + startChannelNumber - 1 + index, newValues[newValuesOffset + index]);
+		}
+		for (int packet = (startChannelNumber - 1) / NUMBER_OF_CHANNEL_PER_PACKET;
+				packet <= (startChannelNumber - 2 + length) / NUMBER_OF_CHANNEL_PER_PACKET; packet++) {
+			dirtyFlags |= 1L << packet;
+		}
+		buffer.putLong(DIRTY_FLAGS_INDEX, dirtyFlags);
+		// The values before the even sequence
+		UNSAFE.storeFence();
+		buffer.putLong(SEQUENCE_INDEX, sequence + 2);
+		return this;
+	}
+
+	/**
+	 * Copy the values changed since the last frame in the channel values, on the scheduler thread.
+	 */
+	@Override
+	public void renderFrame(final long frameNanos, final RFShowControlChannelBuffer channelValues) {
+		final long sequence = buffer.getLong(SEQUENCE_INDEX);
+		if (sequence == lastSequence) {
+			return;
+		}
+		else if ((sequence & 1) != 0) {
+			// Being written: read on the next frame
+			retryCount++;
+			return;
+		}
+		// The values are not read before the sequence
+		UNSAFE.loadFence();
+		// Everything on the first frame, the dirty flags of the writes not yet acknowledged otherwise
+		final long dirtyFlags = lastSequence < 0 ? -1L : buffer.getLong(DIRTY_FLAGS_INDEX);
+		for (int packet = 0; packet < numberOfPacket; packet++) {
+			if ((dirtyFlags & (1L << packet)) != 0) {
+				final int from = packet * NUMBER_OF_CHANNEL_PER_PACKET;
+				values.limit(HEADER_SIZE + Math.min(from + NUMBER_OF_CHANNEL_PER_PACKET, numberOfChannel));
+				values.position(HEADER_SIZE + from);
+				values.get(readValues, from, values.remaining());
+			}
+		}
+		// The sequence is read again after the values
+		UNSAFE.loadFence();
+		if (buffer.getLong(SEQUENCE_INDEX) != sequence) {
+			// Written while read: read again on the next frame
+			retryCount++;
+			return;
+		}
+		for (int packet = 0; packet < numberOfPacket; packet++) {
+			if ((dirtyFlags & (1L << packet)) != 0) {
+				final int from = packet * NUMBER_OF_CHANNEL_PER_PACKET;
+				channelValues.update(readValues, from, from, Math.min(NUMBER_OF_CHANNEL_PER_PACKET, numberOfChannel - from));
+			}
+		}
+		buffer.putLong(ACK_SEQUENCE_INDEX, sequence);
+		lastSequence = sequence;
+		frameCount++;
+	}
+
+	/**
+	 * Return the Unsafe instance, for its fences.
+	 *
+	 * @return	The Unsafe instance.
+	 */
+	private static Unsafe getUnsafe() {
+		try {
+			final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return (Unsafe) field.get(null);
+		} catch (NoSuchFieldException | IllegalAccessException e) {
+			throw new IllegalStateException("Memory fences are not available", e);
+		}
+	}
+
+	/**
+	 * Return the number of writes picked up by the scheduler.
+	 * @return	The number of frames.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Return the number of frames the values were read again because they were being written.
+	 * @return	The number of retries.
+	 */
+	public long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * Close the file, the values are kept for the other processes.
+	 * Remove the renderer from the controller first.
+	 *
+	 * @throws IOException	If the file can't be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		fileChannel.close();
+	}
+
+}
@@ -0,0 +1,340 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Supervisor of the frames sent by the scheduler of a {@link RFShowControlControllerImpl}.
+ *
+ * Errors are classified and never stop the transmission:
+ * <ul>
+ * <li>a renderer error is counted, the last published frame is sent anyway,</li>
+ * <li>after a radio error, the next transmissions back off exponentially (frames are skipped, up to the max backoff),</li>
+ * <li>the radio is configured again when it looks wedged: after consecutive radio errors, when the error budget
+ * of the window is exhausted or when it is not configured, then the published frame is sent as a keyframe.</li>
+ * </ul>
+ * A recovery lasts from the first error to the next successful transmission, so it is bounded by the backoffs
+ * before the re-initialisation plus the max backoff per failed re-initialisation, and it is measured.
+ * All the methods except the getters and setters are called by the scheduler thread only.
+ */
+public class RFShowControlTransmitSupervisor {
+
+	/** Default number of radio errors allowed in the error window. */
+	public static final int DEFAULT_ERROR_BUDGET = 10;
+
+	/** Default error window. */
+	public static final long DEFAULT_ERROR_WINDOW_MILLIS = 10000;
+
+	/** Default number of consecutive radio errors re-initialising the radio. */
+	public static final int DEFAULT_REINIT_THRESHOLD = 3;
+
+	/** Default max time between two attempts. */
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000;
+
+	/** Backoff after the first error. */
+	private static final long FIRST_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/** Classes of errors. */
+	public enum ErrorType {
+
+		/** Communication error with the RF module. */
+		RADIO,
+
+		/** The RF module is not configured. */
+		NOT_CONFIGURED,
+
+		/** Error of a frame renderer or unexpected error. */
+		SOFTWARE;
+
+	}
+
+	private static final ErrorType[] ERROR_TYPES = ErrorType.values();
+
+	/** The supervised controller. */
+	private final RFShowControlControllerImpl controller;
+
+	private volatile int errorBudget = DEFAULT_ERROR_BUDGET;
+
+	private volatile long errorWindowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_ERROR_WINDOW_MILLIS);
+
+	private volatile int reinitThreshold = DEFAULT_REINIT_THRESHOLD;
+
+	private volatile long maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF_MILLIS);
+
+	/** Number of errors of each type. */
+	private final long[] errorCounts = new long[ERROR_TYPES.length];
+
+	/** Start of the current error window. */
+	private long windowStartNanos;
+
+	/** Number of radio errors in the current window. */
+	private int windowErrors;
+
+	/** Number of consecutive failed transmissions. */
+	private int consecutiveFailures;
+
+	/** No transmission is attempted before this time while backing off. */
+	private long nextAttemptNanos;
+
+	/** The radio must be configured again before the next transmission ? */
+	private boolean reinitDue;
+
+	/** The next transmission must be a keyframe ? */
+	private boolean keyframeDue;
+
+	/** The transmissions fail since the last successful one ? */
+	private volatile boolean recovering;
+
+	/** Time of the first error of the current recovery. */
+	private long recoveryStartNanos;
+
+	private volatile long skippedFrameCount;
+
+	private volatile long reinitCount;
+
+	private volatile long recoveryCount;
+
+	private volatile long lastRecoveryNanos;
+
+	private volatile long maxRecoveryNanos;
+
+	/** The last error, null if none. */
+	private volatile Exception lastError;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param controller	The supervised controller.
+	 */
+	RFShowControlTransmitSupervisor(final RFShowControlControllerImpl controller) {
+		this.controller = controller;
+	}
+
+	/**
+	 * Set the error budget.
+	 *
+	 * @param errorBudget			Number of radio errors allowed in the window before re-initialising the radio.
+	 * @param errorWindowMillis		The window.
+	 * @return	The current RFShowControlTransmitSupervisor instance.
+	 */
+	public RFShowControlTransmitSupervisor setErrorBudget(final int errorBudget, final long errorWindowMillis) {
+		if (errorBudget < 0) {
+			throw new IllegalArgumentException("errorBudget must be positive");
+		}
+		else if (errorWindowMillis < 1) {
+			throw new IllegalArgumentException("errorWindowMillis must be greater than 0");
+		}
+		this.errorBudget = errorBudget;
+		this.errorWindowNanos = TimeUnit.MILLISECONDS.toNanos(errorWindowMillis);
+		return this;
+	}
+
+	/**
+	 * Set the number of consecutive radio errors re-initialising the radio.
+	 *
+	 * @param reinitThreshold	The number of errors (min 1).
+	 * @return	The current RFShowControlTransmitSupervisor instance.
+	 */
+	public RFShowControlTransmitSupervisor setReinitThreshold(final int reinitThreshold) {
+		if (reinitThreshold < 1) {
+			throw new IllegalArgumentException("reinitThreshold must be greater than 0");
+		}
+		this.reinitThreshold = reinitThreshold;
+		return this;
+	}
+
+	/**
+	 * Set the max time between two attempts while backing off.
+	 *
+	 * @param maxBackoffMillis	The max backoff.
+	 * @return	The current RFShowControlTransmitSupervisor instance.
+	 */
+	public RFShowControlTransmitSupervisor setMaxBackoffMillis(final long maxBackoffMillis) {
+		if (maxBackoffMillis < 0) {
+			throw new IllegalArgumentException("maxBackoffMillis must be positive");
+		}
+		this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+		return this;
+	}
+
+	/**
+	 * Render and send a frame of the scheduler, never throws.
+	 *
+	 * @param nowNanos	Time of the frame.
+	 */
+	void runFrame(final long nowNanos) {
+		try {
+			controller.renderFrame(nowNanos);
+		} catch (RuntimeException e) {
+			// The last published frame is still sent
+			lastError = e;
+			countError(ErrorType.SOFTWARE);
+		}
+		if (consecutiveFailures > 0 && nowNanos - nextAttemptNanos < 0) {
+			skippedFrameCount++;
+			return;
+		}
+		try {
+			if (reinitDue) {
+				reinitCount++;
+				controller.reconfigure();
+				reinitDue = false;
+				keyframeDue = true;
+			}
+			controller.sendChannelValues(keyframeDue);
+			succeeded(nowNanos);
+		} catch (RFShowControlException e) {
+			failed(ErrorType.RADIO, e, nowNanos);
+		} catch (RuntimeException e) {
+			// Any other failure of the code is not fixed by configuring the RF module again
+			failed(controller.isConfigured() ? ErrorType.SOFTWARE : ErrorType.NOT_CONFIGURED, e, nowNanos);
+		}
+	}
+
+	private void succeeded(final long nowNanos) {
+		keyframeDue = false;
+		consecutiveFailures = 0;
+		if (recovering) {
+			final long recoveryNanos = nowNanos - recoveryStartNanos;
+			lastRecoveryNanos = recoveryNanos;
+			maxRecoveryNanos = Math.max(maxRecoveryNanos, recoveryNanos);
+			recoveryCount++;
+			recovering = false;
+		}
+	}
+
+	private void failed(final ErrorType errorType, final Exception e, final long nowNanos) {
+		if (!recovering) {
+			recovering = true;
+			recoveryStartNanos = nowNanos;
+		}
+		lastError = e;
+		countError(errorType);
+		consecutiveFailures++;
+		if (ErrorType.NOT_CONFIGURED.equals(errorType)) {
+			reinitDue = true;
+		}
+		else if (ErrorType.RADIO.equals(errorType)) {
+			// The window starts with its first error
+			if (windowErrors == 0 || nowNanos - windowStartNanos > errorWindowNanos) {
+				windowStartNanos = nowNanos;
+				windowErrors = 0;
+			}
+			windowErrors++;
+			if (consecutiveFailures >= reinitThreshold || windowErrors > errorBudget) {
+				reinitDue = true;
+				windowErrors = 0;
+			}
+		}
+		// Exponential backoff, capped
+		final int shift = Math.min(consecutiveFailures - 1, 30);
+		nextAttemptNanos = nowNanos + Math.min(maxBackoffNanos, FIRST_BACKOFF_NANOS << shift);
+	}
+
+	private void countError(final ErrorType errorType) {
+		synchronized (errorCounts) {
+			errorCounts[errorType.ordinal()]++;
+		}
+	}
+
+	/**
+	 * Return the number of errors of a type.
+	 *
+	 * @param errorType	The type of error.
+	 * @return	The number of errors.
+	 */
+	public long getErrorCount(final ErrorType errorType) {
+		synchronized (errorCounts) {
+			return errorCounts[errorType.ordinal()];
+		}
+	}
+
+	/**
+	 * Return the number of errors of all types.
+	 * @return	The number of errors.
+	 */
+	public long getErrorCount() {
+		synchronized (errorCounts) {
+			long count = 0;
+			for (long errorCount : errorCounts) {
+				count += errorCount;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Return the last error, of any type.
+	 * @return	The error, null if none.
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Return true if the transmissions fail since the last recovery.
+	 * @return	true if recovering.
+	 */
+	public boolean isRecovering() {
+		return recovering;
+	}
+
+	/**
+	 * Return the number of frames not sent while backing off.
+	 * @return	The number of skipped frames.
+	 */
+	public long getSkippedFrameCount() {
+		return skippedFrameCount;
+	}
+
+	/**
+	 * Return the number of radio re-initialisations.
+	 * @return	The number of re-initialisations.
+	 */
+	public long getReinitCount() {
+		return reinitCount;
+	}
+
+	/**
+	 * Return the number of recoveries, from a first error to the next successful transmission.
+	 * @return	The number of recoveries.
+	 */
+	public long getRecoveryCount() {
+		return recoveryCount;
+	}
+
+	/**
+	 * Return the duration of the last recovery.
+	 * @return	The duration in nanoseconds, 0 if none.
+	 */
+	public long getLastRecoveryNanos() {
+		return lastRecoveryNanos;
+	}
+
+	/**
+	 * Return the duration of the longest recovery.
+	 * @return	The duration in nanoseconds, 0 if none.
+	 */
+	public long getMaxRecoveryNanos() {
+		return maxRecoveryNanos;
+	}
+
+}
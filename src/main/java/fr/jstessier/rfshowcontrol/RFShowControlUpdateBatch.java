@@ -0,0 +1,235 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Batch of channel updates applied by {@link #commit()} under a single acquisition of the channel values lock,
+ * so a frame contains either none or all of them.
+ *
+ * The ranges are validated when they are added and their sources are only read on commit: sources must not be
+ * modified in between. The batch is cleared by the commit and can be reused without allocation once its
+ * arrays are large enough. A batch is not thread safe.
+ */
+public class RFShowControlUpdateBatch {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The controller the batch is committed to. */
+	private final RFShowControlController controller;
+
+	/** Number of channel of the controller. */
+	private final int numberOfChannel;
+
+	/** Number of ranges. */
+	private int numberOfRange;
+
+	/** Index of the first channel of each range. */
+	private int[] rangeIndexes = new int[INITIAL_CAPACITY];
+
+	/** Array source of each range, null for a buffer source. */
+	private byte[][] arraySources = new byte[INITIAL_CAPACITY][];
+
+	/** Buffer source of each range, null for an array source. */
+	private ByteBuffer[] bufferSources = new ByteBuffer[INITIAL_CAPACITY];
+
+	/** Index of the first value in the source of each range. */
+	private int[] sourceOffsets = new int[INITIAL_CAPACITY];
+
+	/** Number of values of each range. */
+	private int[] lengths = new int[INITIAL_CAPACITY];
+
+	/** Number of single values. */
+	private int numberOfValue;
+
+	/** Channel index of each single value. */
+	private int[] valueIndexes = new int[INITIAL_CAPACITY];
+
+	/** The single values. */
+	private byte[] values = new byte[INITIAL_CAPACITY];
+
+	/**
+	 * Constructor, see {@link RFShowControlController#beginUpdate()}.
+	 *
+	 * @param controller		The controller.
+	 * @param numberOfChannel	Number of channel of the controller.
+	 */
+	RFShowControlUpdateBatch(final RFShowControlController controller, final int numberOfChannel) {
+		this.controller = controller;
+		this.numberOfChannel = numberOfChannel;
+	}
+
+	/**
+	 * Update one channel.
+	 *
+	 * @param channelNumber	The channel number.
+	 * @param value			The new value.
+	 * @return	The current RFShowControlUpdateBatch instance.
+	 */
+	public RFShowControlUpdateBatch set(final int channelNumber, final byte value) {
+		checkRange(channelNumber, 1);
+		if (numberOfValue == values.length) {
+			valueIndexes = Arrays.copyOf(valueIndexes, numberOfValue * 2);
+			values = Arrays.copyOf(values, numberOfValue * 2);
+		}
+		valueIndexes[numberOfValue] = channelNumber - 1;
+		values[numberOfValue] = value;
+		numberOfValue++;
+		return this;
+	}
+
+	/**
+	 * Update a range of channels from a part of an array.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param source				The new values.
+	 * @param sourceOffset			Index of the first value in the source.
+	 * @param length				Number of values.
+	 * @return	The current RFShowControlUpdateBatch instance.
+	 */
+	public RFShowControlUpdateBatch set(final int startChannelNumber, final byte[] source, final int sourceOffset, final int length) {
+		if (source == null) {
+			throw new IllegalArgumentException("source is mandatory");
+		}
+		else if (sourceOffset < 0 || length < 0 || sourceOffset > source.length - length) {
+			throw new IllegalArgumentException("sourceOffset + length must not exceed the source length");
+		}
+		if (length > 0) {
+			checkRange(startChannelNumber, length);
+			addRange(startChannelNumber - 1, source, null, sourceOffset, length);
+		}
+		return this;
+	}
+
+	/**
+	 * Update a range of channels from the remaining bytes of a buffer.
+	 * The buffer position is moved to its limit on commit.
+	 *
+	 * @param startChannelNumber	First channel number.
+	 * @param source				The new values.
+	 * @return	The current RFShowControlUpdateBatch instance.
+	 */
+	public RFShowControlUpdateBatch set(final int startChannelNumber, final ByteBuffer source) {
+		if (source == null) {
+			throw new IllegalArgumentException("source is mandatory");
+		}
+		if (source.hasRemaining()) {
+			checkRange(startChannelNumber, source.remaining());
+			addRange(startChannelNumber - 1, null, source, source.position(), source.remaining());
+		}
+		return this;
+	}
+
+	/**
+	 * Apply the updates to the controller under a single acquisition of its lock and clear the batch.
+	 * The updates are sent with the next frame.
+	 *
+	 * @return	The controller.
+	 */
+	public RFShowControlController commit() {
+		try {
+			return controller.commitUpdate(this);
+		} finally {
+			clear();
+		}
+	}
+
+	/**
+	 * Clear the batch without applying it.
+	 *
+	 * @return	The current RFShowControlUpdateBatch instance.
+	 */
+	public RFShowControlUpdateBatch clear() {
+		Arrays.fill(arraySources, 0, numberOfRange, null);
+		Arrays.fill(bufferSources, 0, numberOfRange, null);
+		numberOfRange = 0;
+		numberOfValue = 0;
+		return this;
+	}
+
+	/**
+	 * Return the number of updates of the batch.
+	 * @return	The number of ranges and single values.
+	 */
+	public int size() {
+		return numberOfRange + numberOfValue;
+	}
+
+	/**
+	 * Return the controller the batch is committed to.
+	 * @return	The controller.
+	 */
+	RFShowControlController getController() {
+		return controller;
+	}
+
+	/**
+	 * Apply the updates to the channel values: the ranges in the order they were added, then the single values.
+	 * Called under the channel values lock.
+	 *
+	 * @param channelValues	The channel values.
+	 */
+	void applyTo(final byte[] channelValues) {
+		for (int range = 0; range < numberOfRange; range++) {
+			final byte[] arraySource = arraySources[range];
+			if (arraySource != null) {
+				System.arraycopy(arraySource, sourceOffsets[range], channelValues, rangeIndexes[range], lengths[range]);
+			}
+			else {
+				final ByteBuffer bufferSource = bufferSources[range];
+				bufferSource.position(sourceOffsets[range]);
+				bufferSource.get(channelValues, rangeIndexes[range], lengths[range]);
+			}
+		}
+		for (int value = 0; value < numberOfValue; value++) {
+			channelValues[valueIndexes[value]] = values[value];
+		}
+	}
+
+	private void addRange(final int index, final byte[] arraySource, final ByteBuffer bufferSource,
+			final int sourceOffset, final int length) {
+		if (numberOfRange == lengths.length) {
+			final int capacity = numberOfRange * 2;
+			rangeIndexes = Arrays.copyOf(rangeIndexes, capacity);
+			arraySources = Arrays.copyOf(arraySources, capacity);
+			bufferSources = Arrays.copyOf(bufferSources, capacity);
+			sourceOffsets = Arrays.copyOf(sourceOffsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+		rangeIndexes[numberOfRange] = index;
+		arraySources[numberOfRange] = arraySource;
+		bufferSources[numberOfRange] = bufferSource;
+		sourceOffsets[numberOfRange] = sourceOffset;
+		lengths[numberOfRange] = length;
+		numberOfRange++;
+	}
+
+	private void checkRange(final int startChannelNumber, final int length) {
+		if (startChannelNumber < 1 || startChannelNumber > numberOfChannel) {
+			throw new IllegalArgumentException("startChannelNumber must be in range [1-" + numberOfChannel + "]");
+		}
+		else if ((startChannelNumber - 1) > (numberOfChannel - length)) {
+			throw new IllegalArgumentException("startChannelNumber + length must not exceed " + numberOfChannel);
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlAsyncFlushTest {
+
+	@Test
+	public void flushChannelValuesAsync_coalescesFrames() throws Exception {
+
+		final CountDownLatch sending = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final BlockingController controller = new BlockingController(sending, release);
+		try {
+			controller.updateChannelValue((byte) 1, 1);
+			final CompletableFuture<Void> first = controller.flushChannelValuesAsync();
+			Assert.assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+			// Published while the first frame is being sent: coalesced into one transmission
+			controller.updateChannelValue((byte) 2, 1);
+			final CompletableFuture<Void> second = controller.flushChannelValuesAsync();
+			controller.updateChannelValue((byte) 3, 1);
+			final CompletableFuture<Void> third = controller.flushChannelValuesAsync();
+			Assert.assertSame(second, third);
+			Assert.assertFalse(first.isDone());
+
+			release.countDown();
+			first.get(5, TimeUnit.SECONDS);
+			third.get(5, TimeUnit.SECONDS);
+			Assert.assertEquals(2, controller.sentValues.size());
+			Assert.assertEquals(1, controller.sentValues.get(0).byteValue());
+			Assert.assertEquals(3, controller.sentValues.get(1).byteValue());
+		} finally {
+			controller.close();
+		}
+	}
+
+	@Test
+	public void flushChannelValuesAsync_reportsError() throws RFShowControlException, InterruptedException, TimeoutException {
+
+		// Not configured: the transmission fails
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(new MockHardware(), 8);
+		try {
+			controller.flushChannelValuesAsync().get(5, TimeUnit.SECONDS);
+			Assert.fail("ExecutionException expected");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		} finally {
+			controller.close();
+		}
+	}
+
+	@Test
+	public void flushChannelValuesAsync_racingStop() throws Exception {
+
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(new MockHardware(), 8) {
+			@Override
+			RFShowControlController sendChannelValues(final boolean forceKeyframe) {
+				return this;
+			}
+		};
+		final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+		final Thread flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int index = 0; index < 20000; index++) {
+					futures.add(controller.flushChannelValuesAsync());
+				}
+			}
+		});
+		flusher.start();
+		while (flusher.isAlive()) {
+			controller.stop();
+		}
+		flusher.join();
+		controller.close();
+
+		// Every flush is sent before the flush thread exits
+		for (CompletableFuture<Void> future : futures) {
+			Assert.assertTrue(future.isDone());
+		}
+	}
+
+	/**
+	 * Controller recording the first sent channel value, the first transmission blocks until released.
+	 */
+	private static class BlockingController extends RFShowControlControllerImpl {
+
+		private final List<Byte> sentValues = new ArrayList<Byte>();
+
+		private final CountDownLatch sending;
+
+		private final CountDownLatch release;
+
+		public BlockingController(final CountDownLatch sending, final CountDownLatch release) throws RFShowControlException {
+			super(new MockHardware(), 8);
+			this.sending = sending;
+			this.release = release;
+		}
+
+		@Override
+		RFShowControlController sendChannelValues(final boolean forceKeyframe) {
+			// Only called by the flush thread
+			sentValues.add(getChannelBuffer().acquire()[0]);
+			sending.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return this;
+		}
+
+	}
+
+}
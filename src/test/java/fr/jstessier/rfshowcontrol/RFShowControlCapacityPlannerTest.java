@@ -0,0 +1,51 @@
+package fr.jstessier.rfshowcontrol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rf24.enums.DataRates;
+import fr.jstessier.rf24.enums.OutputPower;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.SendMode;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+import fr.jstessier.rfshowcontrol.RFShowControlRadioProfile.CrcLength;
+
+public class RFShowControlCapacityPlannerTest {
+
+	@Test
+	public void getMaxFramesPerSecond_byProfile() {
+
+		// (1 + 5 + 32 + 2) bytes + 9 bits = 329 bits: 1316 us at 250 kbps
+		Assert.assertEquals(1316000, RFShowControlRadioProfile.DEFAULT.getPacketAirNanos());
+
+		// 18 packets, TX settling for each one
+		final RFShowControlCapacityPlanner serial = new RFShowControlCapacityPlanner(RFShowControlRadioProfile.DEFAULT, SendMode.SERIAL);
+		Assert.assertEquals(18 * 1446000, serial.getFrameAirNanos(512));
+		Assert.assertEquals(38, serial.getMaxFramesPerSecond(512));
+		Assert.assertEquals(0.65, serial.getLinkUtilization(512, 25), 0.01);
+
+		// 321 bits at 2 Mbps, TX settling once
+		final RFShowControlCapacityPlanner pipelined = new RFShowControlCapacityPlanner(
+				new RFShowControlRadioProfile(DataRates.DR_2_MBPS, OutputPower.RF_MINUS_6_DBM, CrcLength.ONE_BYTE), SendMode.PIPELINED);
+		Assert.assertEquals(130000 + 18 * 160500, pipelined.getFrameAirNanos(512));
+		Assert.assertEquals(331, pipelined.getMaxFramesPerSecond(512));
+		pipelined.checkCapacity(512, 300);
+	}
+
+	@Test
+	public void start_rejectsFramesNotFitting() throws RFShowControlException {
+
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(new MockHardware(), 512);
+		try {
+			controller.start((byte) 2, new byte[5], Mode.TX, 40);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().endsWith("38 frames per second max"));
+		} finally {
+			controller.close();
+		}
+		Assert.assertNull(controller.getFrameScheduler());
+		Assert.assertEquals(38, controller.getMetrics().getMaxFramesPerSecond());
+	}
+
+}
@@ -0,0 +1,72 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RFShowControlChannelBufferTest {
+
+	@Test
+	public void acquire_returnsNewestPublishedFrame() {
+
+		final RFShowControlChannelBuffer buffer = new RFShowControlChannelBuffer(60);
+
+		Assert.assertEquals((byte) 0, buffer.acquire()[0]);
+
+		buffer.update((byte) 1, 0);
+		// Not published yet
+		Assert.assertEquals((byte) 0, buffer.acquire()[0]);
+
+		buffer.publish();
+		buffer.update((byte) 2, 0);
+		buffer.publish();
+		// Superseded frame is skipped
+		final byte[] frame = buffer.acquire();
+		Assert.assertEquals((byte) 2, frame[0]);
+
+		// Frame is kept by the transmitter until a new one is published
+		buffer.update((byte) 3, 0);
+		Assert.assertSame(frame, buffer.acquire());
+		Assert.assertEquals((byte) 2, frame[0]);
+
+		buffer.publish();
+		Assert.assertEquals((byte) 3, buffer.acquire()[0]);
+		Assert.assertEquals((byte) 2, frame[0]);
+	}
+
+	@Test
+	public void update_concurrentWritersAndPublisher() throws InterruptedException {
+
+		final RFShowControlChannelBuffer buffer = new RFShowControlChannelBuffer(512);
+		final Thread[] writers = new Thread[4];
+		for (int index = 0; index < writers.length; index++) {
+			final int writer = index;
+			writers[index] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					final byte[] values = new byte[128];
+					for (int loop = 0; loop < 10000; loop++) {
+						Arrays.fill(values, (byte) loop);
+						buffer.update(values, 0, writer * 128, values.length);
+					}
+				}
+			});
+			writers[index].start();
+		}
+		for (int loop = 0; loop < 1000; loop++) {
+			buffer.publish();
+			buffer.acquire();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		buffer.publish();
+
+		final byte[] frame = buffer.acquire();
+		for (int index = 0; index < frame.length; index++) {
+			Assert.assertEquals((byte) 9999, frame[index]);
+		}
+	}
+
+}
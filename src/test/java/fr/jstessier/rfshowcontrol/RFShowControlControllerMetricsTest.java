@@ -0,0 +1,54 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlControllerMetricsTest {
+
+	@Test
+	public void registerMBeans() throws Exception {
+
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(new MockHardware(), 60);
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName controllerName = new ObjectName("fr.jstessier.rfshowcontrol:type=Controller,name=\"test\"");
+		final ObjectName adapterName = new ObjectName("fr.jstessier.rfshowcontrol:type=Adapter,name=\"test\"");
+
+		controller.registerMBeans("test");
+		try {
+			Assert.assertEquals(0L, server.getAttribute(controllerName, "FramesFlushed"));
+			Assert.assertEquals(22, ((long[]) server.getAttribute(controllerName, "FlushLatencyHistogram")).length);
+			Assert.assertEquals(0L, server.getAttribute(controllerName, "SchedulerMissedFrames"));
+			Assert.assertEquals(0L, server.getAttribute(adapterName, "SpiErrors"));
+		} finally {
+			controller.close();
+		}
+		Assert.assertFalse(server.isRegistered(controllerName));
+		Assert.assertFalse(server.isRegistered(adapterName));
+	}
+
+	@Test
+	public void frameFlushed_histogram() throws RFShowControlException {
+
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(new MockHardware(), 60);
+		final RFShowControlControllerMetrics metrics = controller.getMetrics();
+
+		metrics.frameFlushed(500);
+		metrics.frameFlushed(3000);
+		metrics.frameFlushed(3500);
+		metrics.frameFlushed(10000000000L);
+
+		final long[] histogram = metrics.getFlushLatencyHistogram();
+		Assert.assertEquals(4, metrics.getFramesFlushed());
+		Assert.assertEquals(1, histogram[0]);
+		Assert.assertEquals(2, histogram[2]);
+		Assert.assertEquals(1, histogram[histogram.length - 1]);
+	}
+
+}
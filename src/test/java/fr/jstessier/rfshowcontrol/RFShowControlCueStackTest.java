@@ -0,0 +1,80 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlCueStackTest {
+
+	@Test
+	public void recallAndCrossfade() throws RFShowControlException {
+
+		final PacketsController controller = new PacketsController();
+		controller.configure((byte) 76, new byte[] { 1, 2, 3, 4, 5 }, Mode.TX);
+		final RFShowControlCueStack cueStack = new RFShowControlCueStack(controller, 2);
+
+		final byte[] first = new byte[40];
+		first[0] = (byte) 200;
+		first[39] = 100;
+		final byte[] second = new byte[40];
+		second[0] = 100;
+		second[39] = (byte) 200;
+		cueStack.store("first", first).store("second", second);
+
+		cueStack.recall("first");
+		Assert.assertArrayEquals(first, controller.getChannelValues());
+		Assert.assertEquals(2, controller.packets.size());
+		Assert.assertEquals((byte) 200, controller.packets.get(0)[0]);
+		Assert.assertEquals(100, controller.packets.get(1)[9]);
+		Assert.assertEquals(1, controller.packets.get(1)[RFShowControlPacketEncoder.OFFSET_INDEX]);
+
+		// "second" is the least recently used cue
+		cueStack.store("third", new byte[40]);
+		Assert.assertFalse(cueStack.contains("second"));
+		Assert.assertEquals(1, cueStack.getEvictionCount());
+
+		// The cached packets are encoded again with the new output transform
+		controller.getOutputTransform().setMasterLevel(0);
+		cueStack.recall("first");
+		Assert.assertEquals(0, controller.packets.get(2)[0]);
+		Assert.assertArrayEquals(first, controller.getChannelValues());
+		controller.getOutputTransform().reset();
+
+		cueStack.crossfade("first", "third", 64);
+		Assert.assertEquals(6, controller.packets.size());
+		Assert.assertEquals((byte) 150, controller.packets.get(4)[0]);
+		Assert.assertEquals(75, controller.packets.get(5)[9]);
+		Assert.assertEquals(0, controller.packets.get(5)[10]);
+		Assert.assertEquals((byte) 150, controller.getChannelValues()[0]);
+	}
+
+	/**
+	 * Controller keeping the pre-encoded packets sent.
+	 */
+	private static class PacketsController extends RFShowControlControllerImpl {
+
+		private final List<byte[]> packets = new ArrayList<byte[]>();
+
+		public PacketsController() throws RFShowControlException {
+			super(new MockHardware(), 40);
+		}
+
+		@Override
+		int sendPackets(final ByteBuffer packetBuffer, final boolean keyframe) throws RFShowControlException {
+			while (packetBuffer.hasRemaining()) {
+				final byte[] packet = new byte[RFShowControlRF24Adapter.PACKET_SIZE];
+				packetBuffer.get(packet);
+				packets.add(packet);
+			}
+			return packets.size();
+		}
+
+	}
+
+}
@@ -0,0 +1,63 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlEffectEngine.Easing;
+
+public class RFShowControlEffectEngineTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void renderFrame_fadeFromCurrentValue() {
+
+		final RFShowControlChannelBuffer channelValues = new RFShowControlChannelBuffer(4);
+		channelValues.update(new byte[] { 100, 100, 7, 7 }, 0, 0, 4);
+		final RFShowControlEffectEngine engine = new RFShowControlEffectEngine(4);
+		engine.fade(1, 2, 200, 100, Easing.LINEAR);
+		engine.fade(2, 1, 0, 100, Easing.EASE_IN);
+
+		final long start = 1000 * MS;
+		engine.renderFrame(start, channelValues);
+		Assert.assertArrayEquals(new byte[] { 100, 100, 7, 7 }, channelValues.copyValues());
+		engine.renderFrame(start + 50 * MS, channelValues);
+		Assert.assertEquals(150, channelValues.copyValues()[0] & 0xFF);
+		Assert.assertEquals(75, channelValues.copyValues()[1] & 0xFF);
+		Assert.assertEquals(2, engine.getNumberOfActiveChannel());
+
+		engine.renderFrame(start + 120 * MS, channelValues);
+		Assert.assertArrayEquals(new byte[] { (byte) 200, 0, 7, 7 }, channelValues.copyValues());
+		Assert.assertEquals(0, engine.getNumberOfActiveChannel());
+
+		// Values are left to the updates once the fades are complete
+		channelValues.update((byte) 1, 0);
+		engine.renderFrame(start + 130 * MS, channelValues);
+		Assert.assertEquals(1, channelValues.copyValues()[0]);
+	}
+
+	@Test
+	public void renderFrame_chaseAndPulse() {
+
+		final RFShowControlChannelBuffer channelValues = new RFShowControlChannelBuffer(6);
+		final RFShowControlEffectEngine engine = new RFShowControlEffectEngine(6);
+		engine.chase(1, 3, 0, 255, 10);
+		engine.pulse(5, 2, 10, 210, 100);
+
+		final long start = 5 * MS;
+		engine.renderFrame(start, channelValues);
+		Assert.assertArrayEquals(new byte[] { (byte) 255, 0, 0, 0, 10, 10 }, channelValues.copyValues());
+		engine.renderFrame(start + 25 * MS, channelValues);
+		Assert.assertArrayEquals(new byte[] { 0, 0, (byte) 255, 0, 110, 110 }, channelValues.copyValues());
+		engine.renderFrame(start + 50 * MS, channelValues);
+		Assert.assertArrayEquals(new byte[] { 0, 0, (byte) 255, 0, (byte) 210, (byte) 210 }, channelValues.copyValues());
+
+		engine.stop(1, 3);
+		Assert.assertFalse(engine.isActive(1));
+		Assert.assertTrue(engine.isActive(5));
+		Assert.assertEquals(2, engine.getNumberOfActiveChannel());
+	}
+
+}
@@ -0,0 +1,68 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RFShowControlFrameSchedulerTest {
+
+	@Test
+	public void start_runsFramesAtFixedRate() throws InterruptedException {
+
+		final AtomicLong lastFrameNumber = new AtomicLong(-1);
+		final RFShowControlFrameScheduler scheduler = new RFShowControlFrameScheduler("test", 100,
+				new RFShowControlFrameScheduler.FrameTask() {
+			@Override
+			public void onFrame(long frameNumber) {
+				lastFrameNumber.set(frameNumber);
+			}
+		});
+
+		scheduler.start();
+		Thread.sleep(500);
+		scheduler.stop();
+
+		Assert.assertFalse(scheduler.isRunning());
+		// 50 frames expected, wide margin for loaded build machines
+		Assert.assertTrue(scheduler.getFrameCount() >= 25);
+		Assert.assertTrue(scheduler.getFrameCount() <= 52);
+		Assert.assertEquals(scheduler.getFrameCount() + scheduler.getMissedFrameCount() - 1, lastFrameNumber.get());
+	}
+
+	@Test
+	public void start_skipsFramesWhenOverloaded() throws InterruptedException {
+
+		final RFShowControlFrameScheduler scheduler = new RFShowControlFrameScheduler("test", 100,
+				new RFShowControlFrameScheduler.FrameTask() {
+			@Override
+			public void onFrame(long frameNumber) {
+				if (frameNumber == 5) {
+					try {
+						Thread.sleep(55);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		});
+
+		scheduler.start();
+		Thread.sleep(300);
+		scheduler.stop();
+
+		Assert.assertTrue(scheduler.getMissedFrameCount() >= 4);
+		Assert.assertTrue(scheduler.getLateFrameCount() >= 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_invalidFramesPerSecond() {
+		new RFShowControlFrameScheduler("test", 0, new RFShowControlFrameScheduler.FrameTask() {
+			@Override
+			public void onFrame(long frameNumber) {
+				// NOP
+			}
+		});
+	}
+
+}
@@ -0,0 +1,42 @@
+package fr.jstessier.rfshowcontrol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlMerger.Policy;
+
+public class RFShowControlMergerTest {
+
+	@Test
+	public void renderFrame_mergesWithPolicies() {
+
+		final RFShowControlChannelBuffer channelValues = new RFShowControlChannelBuffer(5);
+		final RFShowControlMerger merger = new RFShowControlMerger(5, Policy.HTP);
+		merger.setPolicy(3, 1, Policy.LTP).setPolicy(4, 2, Policy.PRIORITY);
+		final RFShowControlMergeSource console = merger.addSource("console", 10);
+		final RFShowControlMergeSource network = merger.addSource("network", 1);
+
+		network.update(new byte[] { 50, 10, 20, 30, 40 }, 1);
+		console.update(new byte[] { 20, 60, 70, 80 }, 1);
+		merger.renderFrame(0, channelValues);
+		Assert.assertArrayEquals(new byte[] { 50, 60, 70, 80, 40 }, channelValues.copyValues());
+
+		// Latest wins on channel 3, priority still wins on channel 4
+		network.update(new byte[] { 21, 31 }, 3);
+		merger.renderFrame(1, channelValues);
+		Assert.assertArrayEquals(new byte[] { 50, 60, 21, 80, 40 }, channelValues.copyValues());
+
+		// Only the changed range is merged again
+		channelValues.update((byte) 99, 0);
+		console.release(4, 1);
+		merger.renderFrame(2, channelValues);
+		Assert.assertArrayEquals(new byte[] { 99, 60, 21, 31, 40 }, channelValues.copyValues());
+
+		// Channels claimed by no source are merged to 0
+		network.releaseAll();
+		console.releaseAll();
+		merger.renderFrame(3, channelValues);
+		Assert.assertArrayEquals(new byte[5], channelValues.copyValues());
+	}
+
+}
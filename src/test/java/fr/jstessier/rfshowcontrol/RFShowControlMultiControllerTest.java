@@ -0,0 +1,111 @@
+package fr.jstessier.rfshowcontrol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rf24.enums.DataRates;
+import fr.jstessier.rf24.enums.OutputPower;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+import fr.jstessier.rfshowcontrol.RFShowControlRadioProfile.CrcLength;
+
+public class RFShowControlMultiControllerTest {
+
+	@Test
+	public void updateChannelValues_spanningUniverses() throws RFShowControlException {
+
+		final RFShowControlMultiController controller = new RFShowControlMultiController()
+				.addUniverse(new MockHardware(), 10, (byte) 76, new byte[] { 1, 2, 3, 4, 5 })
+				.addUniverse(new MockHardware(), 5, (byte) 90, new byte[] { 1, 2, 3, 4, 6 })
+				.addUniverse(new MockHardware(), 20, (byte) 100, new byte[] { 1, 2, 3, 4, 7 });
+
+		Assert.assertEquals(35, controller.getNumberOfChannel());
+		Assert.assertEquals(3, controller.getNumberOfUniverse());
+
+		final byte[] values = new byte[12];
+		for (int index = 0; index < values.length; index++) {
+			values[index] = (byte) (index + 1);
+		}
+		controller.updateChannelValues(values, 8);
+		controller.updateChannelValue((byte) 99, 35);
+
+		final byte[] first = controller.getUniverse(0).getChannelValues();
+		Assert.assertEquals((byte) 0, first[6]);
+		Assert.assertEquals((byte) 1, first[7]);
+		Assert.assertEquals((byte) 3, first[9]);
+		final byte[] second = controller.getUniverse(1).getChannelValues();
+		Assert.assertEquals((byte) 4, second[0]);
+		Assert.assertEquals((byte) 8, second[4]);
+		final byte[] third = controller.getUniverse(2).getChannelValues();
+		Assert.assertEquals((byte) 9, third[0]);
+		Assert.assertEquals((byte) 12, third[3]);
+		Assert.assertEquals((byte) 0, third[4]);
+		Assert.assertEquals((byte) 99, third[19]);
+
+		final byte[] channelValues = controller.getChannelValues();
+		Assert.assertEquals(35, channelValues.length);
+		for (int index = 0; index < values.length; index++) {
+			Assert.assertEquals(values[index], channelValues[index + 7]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void updateChannelValues_outOfRange() throws RFShowControlException {
+
+		final RFShowControlMultiController controller = new RFShowControlMultiController()
+				.addUniverse(new MockHardware(), 10, (byte) 76, new byte[] { 1, 2, 3, 4, 5 });
+
+		controller.updateChannelValues(new byte[5], 7);
+	}
+
+	@Test
+	public void start_checksCapacityWithUniverseRadioProfile() throws RFShowControlException {
+
+		final RFShowControlRadioProfile fastProfile = new RFShowControlRadioProfile(DataRates.DR_2_MBPS,
+				OutputPower.RF_0_DBM, CrcLength.TWO_BYTES);
+		try (RFShowControlMultiController controller = new RFShowControlMultiController()
+				.addUniverse(new MockHardware(), 512, (byte) 76, new byte[] { 1, 2, 3, 4, 5 }, fastProfile)
+				.addUniverse(new MockHardware(), 512, (byte) 90, new byte[] { 1, 2, 3, 4, 6 }, fastProfile)) {
+			controller.start(100);
+		}
+
+		try (RFShowControlMultiController controller = new RFShowControlMultiController()
+				.addUniverse(new MockHardware(), 512, (byte) 76, new byte[] { 1, 2, 3, 4, 5 }, fastProfile)
+				.addUniverse(new MockHardware(), 512, (byte) 90, new byte[] { 1, 2, 3, 4, 6 })) {
+			controller.start(100);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// The second universe has the default 250 kbps profile
+		}
+	}
+
+	@Test
+	public void flushChannelValues_racingStop() throws Exception {
+
+		final RFShowControlMultiController controller = new RFShowControlMultiController()
+				.addUniverse(new MockHardware(), 10, (byte) 76, new byte[] { 1, 2, 3, 4, 5 })
+				.addUniverse(new MockHardware(), 10, (byte) 90, new byte[] { 1, 2, 3, 4, 6 });
+		controller.start();
+		final Throwable[] error = new Throwable[1];
+		final Thread flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						controller.flushChannelValues();
+					}
+				} catch (IllegalStateException e) {
+					// Stopped
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		});
+		flusher.start();
+		Thread.sleep(20);
+		controller.stop();
+		flusher.join(5000);
+		Assert.assertFalse(flusher.isAlive());
+		Assert.assertNull(error[0]);
+	}
+
+}
@@ -0,0 +1,179 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlNetworkBridge.Protocol;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlNetworkBridgeTest {
+
+	@Test
+	public void e131_syncAndPriority() throws IOException, RFShowControlException {
+
+		final RecordingController controller = new RecordingController(10);
+		try (RFShowControlNetworkBridge bridge = new RFShowControlNetworkBridge();
+				DatagramChannel sender = DatagramChannel.open()) {
+			bridge.mapUniverse(1, controller, 2, 4);
+			final InetSocketAddress address = bridge.bind(Protocol.E131, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+			// Flushed on reception, only the mapped slots are written
+			send(sender, address, e131Data(1, 100, 0, new byte[] { 1, 2, 3, 4, 5, 6 }));
+			receive(bridge, 1);
+			Assert.assertEquals(1, controller.frames.size());
+			Assert.assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 0, 0, 0, 0, 0 }, controller.frames.get(0));
+
+			// Synchronized: flushed on the sync packet
+			send(sender, address, e131Data(1, 100, 7, new byte[] { 9 }));
+			receive(bridge, 1);
+			Assert.assertEquals(1, controller.frames.size());
+			send(sender, address, e131Sync(7));
+			receive(bridge, 1);
+			Assert.assertEquals(2, controller.frames.size());
+			Assert.assertEquals(9, controller.frames.get(1)[1]);
+
+			// Lower priority dropped, unknown universe dropped
+			send(sender, address, e131Data(1, 50, 0, new byte[] { 8 }));
+			send(sender, address, e131Data(2, 100, 0, new byte[] { 8 }));
+			receive(bridge, 2);
+			Assert.assertEquals(2, controller.frames.size());
+			Assert.assertEquals(2, bridge.getDroppedPacketCount());
+			Assert.assertEquals(2, bridge.getPacketCount());
+		}
+	}
+
+	@Test
+	public void artNet_dmxAndSync() throws IOException, RFShowControlException {
+
+		final RecordingController controller = new RecordingController(3);
+		try (RFShowControlNetworkBridge bridge = new RFShowControlNetworkBridge();
+				DatagramChannel sender = DatagramChannel.open()) {
+			bridge.mapUniverse(0x0102, controller, 1, 3);
+			final InetSocketAddress address = bridge.bind(Protocol.ARTNET, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+			send(sender, address, artDmx(0x0102, new byte[] { 1, 2, 3, 4 }));
+			receive(bridge, 1);
+			Assert.assertEquals(1, controller.frames.size());
+			Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, controller.frames.get(0));
+
+			// After an ArtSync, universes wait for the next ArtSync
+			send(sender, address, artSync());
+			send(sender, address, artDmx(0x0102, new byte[] { 5, 6, 7 }));
+			receive(bridge, 2);
+			Assert.assertEquals(1, controller.frames.size());
+			send(sender, address, artSync());
+			receive(bridge, 1);
+			Assert.assertEquals(2, controller.frames.size());
+			Assert.assertArrayEquals(new byte[] { 5, 6, 7 }, controller.frames.get(1));
+		}
+	}
+
+	@Test
+	public void e131_syncTimeout() throws IOException, RFShowControlException {
+
+		final RecordingController controller = new RecordingController(10);
+		try (RFShowControlNetworkBridge bridge = new RFShowControlNetworkBridge()) {
+			bridge.mapUniverse(1, controller, 1, 10);
+			final long start = System.nanoTime();
+			bridge.processE131(e131Data(1, 100, 7, new byte[] { 1 }), start);
+			bridge.processE131(e131Sync(7), start + 20000000L);
+			Assert.assertEquals(1, controller.frames.size());
+
+			// No synchronization packet since: sent on reception
+			bridge.processE131(e131Data(1, 100, 7, new byte[] { 2 }), start + 3000000000L);
+			Assert.assertEquals(2, controller.frames.size());
+			Assert.assertEquals(2, controller.frames.get(1)[0]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mapUniverse_beyondControllerChannels() throws IOException, RFShowControlException {
+
+		try (RFShowControlNetworkBridge bridge = new RFShowControlNetworkBridge()) {
+			bridge.mapUniverse(1, new RecordingController(10), 2, 10);
+		}
+	}
+
+	private static void send(final DatagramChannel sender, final InetSocketAddress address, final ByteBuffer packet) throws IOException {
+		sender.send(packet, address);
+	}
+
+	private static void receive(final RFShowControlNetworkBridge bridge, final int numberOfDatagram) throws IOException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		int received = 0;
+		while (received < numberOfDatagram) {
+			Assert.assertTrue("Datagrams not received", System.currentTimeMillis() < deadline);
+			received += bridge.poll();
+		}
+	}
+
+	private static ByteBuffer e131Data(final int universe, final int priority, final int syncUniverse, final byte[] dmx) {
+		final ByteBuffer packet = ByteBuffer.allocate(126 + dmx.length);
+		packet.putShort((short) 0x0010).putShort((short) 0)
+				.put(new byte[] { 'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0, 0, 0 })
+				.putShort((short) (0x7000 | (packet.capacity() - 16))).putInt(0x00000004).put(new byte[16])
+				.putShort((short) (0x7000 | (packet.capacity() - 38))).putInt(0x00000002).put(new byte[64])
+				.put((byte) priority).putShort((short) syncUniverse).put((byte) 0).put((byte) 0).putShort((short) universe)
+				.putShort((short) (0x7000 | (packet.capacity() - 115))).put((byte) 0x02).put((byte) 0xA1)
+				.putShort((short) 0).putShort((short) 1).putShort((short) (dmx.length + 1))
+				.put((byte) 0).put(dmx);
+		packet.flip();
+		return packet;
+	}
+
+	private static ByteBuffer e131Sync(final int syncUniverse) {
+		final ByteBuffer packet = ByteBuffer.allocate(49);
+		packet.putShort((short) 0x0010).putShort((short) 0)
+				.put(new byte[] { 'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0, 0, 0 })
+				.putShort((short) (0x7000 | 33)).putInt(0x00000008).put(new byte[16])
+				.putShort((short) (0x7000 | 11)).putInt(0x00000001).put((byte) 0).putShort((short) syncUniverse)
+				.putShort((short) 0);
+		packet.flip();
+		return packet;
+	}
+
+	private static ByteBuffer artDmx(final int universe, final byte[] dmx) {
+		final ByteBuffer packet = ByteBuffer.allocate(18 + dmx.length);
+		packet.put(new byte[] { 'A', 'r', 't', '-', 'N', 'e', 't', 0 }).put((byte) 0x00).put((byte) 0x50)
+				.put((byte) 0).put((byte) 14).put((byte) 0).put((byte) 0)
+				.put((byte) universe).put((byte) (universe >> 8)).putShort((short) dmx.length).put(dmx);
+		packet.flip();
+		return packet;
+	}
+
+	private static ByteBuffer artSync() {
+		final ByteBuffer packet = ByteBuffer.allocate(14);
+		packet.put(new byte[] { 'A', 'r', 't', '-', 'N', 'e', 't', 0 }).put((byte) 0x00).put((byte) 0x52)
+				.put((byte) 0).put((byte) 14).put((byte) 0).put((byte) 0);
+		packet.flip();
+		return packet;
+	}
+
+	/**
+	 * Controller recording the flushed channel values instead of sending them.
+	 */
+	private static class RecordingController extends RFShowControlControllerImpl {
+
+		private final List<byte[]> frames = new ArrayList<byte[]>();
+
+		public RecordingController(final int numberOfChannel) throws RFShowControlException {
+			super(new MockHardware(), numberOfChannel);
+		}
+
+		@Override
+		public RFShowControlController flushChannelValues() {
+			frames.add(getChannelValues());
+			return this;
+		}
+
+	}
+
+}
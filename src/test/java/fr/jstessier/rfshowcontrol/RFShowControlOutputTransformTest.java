@@ -0,0 +1,56 @@
+package fr.jstessier.rfshowcontrol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RFShowControlOutputTransformTest {
+
+	@Test
+	public void encodePacket_appliesComposedTables() {
+
+		final RFShowControlOutputTransform transform = new RFShowControlOutputTransform(40);
+		Assert.assertNull(transform.getTables());
+
+		final byte[] inverse = new byte[256];
+		for (int value = 0; value < 256; value++) {
+			inverse[value] = (byte) (255 - value);
+		}
+		transform.setLookupTable(1, 2, inverse)
+				.setLimits(2, 2, 10, 200)
+				.setMasterLevel(128);
+		final byte[][] tables = transform.getTables();
+		Assert.assertNotSame(tables[0], tables[1]);
+		Assert.assertSame(tables[3], tables[39]);
+
+		final byte[] datas = new byte[40];
+		datas[0] = 0;
+		datas[1] = (byte) 255;
+		datas[2] = (byte) 255;
+		datas[3] = (byte) 200;
+		datas[31] = 100;
+		final RFShowControlPacketEncoder encoder = new RFShowControlPacketEncoder(40);
+		final byte[] first = encoder.encodePacket(datas, 0, tables);
+		Assert.assertEquals((byte) 128, first[0]);
+		Assert.assertEquals(10, first[1]);
+		Assert.assertEquals((byte) 128, first[2]);
+		Assert.assertEquals(100, first[3]);
+		Assert.assertEquals(0, first[RFShowControlPacketEncoder.OFFSET_INDEX]);
+		final byte[] second = encoder.encodePacket(datas, 1, tables);
+		Assert.assertEquals(50, second[1]);
+		Assert.assertEquals(1, second[RFShowControlPacketEncoder.OFFSET_INDEX]);
+
+		transform.reset();
+		Assert.assertNull(transform.getTables());
+		Assert.assertEquals((byte) 200, transform.transform((byte) 200, 3));
+	}
+
+	@Test
+	public void createGammaTable() {
+		final byte[] gamma = RFShowControlOutputTransform.createGammaTable(2.2);
+		Assert.assertEquals(0, gamma[0]);
+		Assert.assertEquals(3, gamma[32]);
+		Assert.assertEquals(56, gamma[128]);
+		Assert.assertEquals((byte) 255, gamma[255]);
+	}
+
+}
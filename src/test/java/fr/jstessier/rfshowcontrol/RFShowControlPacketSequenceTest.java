@@ -0,0 +1,89 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlPacketSequenceTest {
+
+	@Test
+	public void compileAndPlay_deltaFramesAndCatchUp() throws IOException, RFShowControlException {
+
+		final Path sequencePath = Files.createTempFile("rfshowcontrol", ".seq");
+		final Path packetsPath = Files.createTempFile("rfshowcontrol", ".rfsp");
+		try {
+			// Packet 0 changes on every frame, packet 1 every 3 frames
+			try (RFShowControlSequenceWriter writer = new RFShowControlSequenceWriter(sequencePath, 40, 25)) {
+				for (int frameIndex = 0; frameIndex < 10; frameIndex++) {
+					final byte[] frame = new byte[40];
+					frame[0] = (byte) frameIndex;
+					frame[35] = (byte) (frameIndex / 3);
+					writer.writeFrame(frame);
+				}
+			}
+			try (RFShowControlSequence sequence = new RFShowControlSequence(sequencePath)) {
+				Assert.assertEquals(16, RFShowControlPacketSequenceCompiler.compile(sequence, packetsPath, 4));
+			}
+
+			try (RFShowControlPacketSequence sequence = new RFShowControlPacketSequence(packetsPath)) {
+				Assert.assertEquals(40, sequence.getNumberOfChannel());
+				Assert.assertEquals(10, sequence.getNumberOfFrame());
+				Assert.assertEquals(4, sequence.getKeyframeInterval());
+				Assert.assertEquals(64, sequence.getFrame(0).remaining());
+				Assert.assertEquals(32, sequence.getFrame(1).remaining());
+				Assert.assertEquals(64, sequence.getFrame(3).remaining());
+
+				final RecordingAdapter adapter = new RecordingAdapter();
+				final RFShowControlPacketSequencePlayer player = new RFShowControlPacketSequencePlayer(adapter, sequence);
+				player.tick(0);
+				player.tick(1);
+				player.tick(2);
+				Assert.assertEquals(4, adapter.packets.size());
+
+				// Frames 3 and 4 skipped: the packets of keyframe 4 and frame 5 are merged
+				player.tick(5);
+				Assert.assertEquals(6, adapter.packets.size());
+				Assert.assertEquals(0, adapter.packets.get(4)[30]);
+				Assert.assertEquals(5, adapter.packets.get(4)[0]);
+				Assert.assertEquals(1, adapter.packets.get(5)[30]);
+				Assert.assertEquals(1, adapter.packets.get(5)[5]);
+			}
+		} finally {
+			Files.delete(sequencePath);
+			Files.delete(packetsPath);
+		}
+	}
+
+	/**
+	 * Adapter recording the packets instead of sending them.
+	 */
+	private static class RecordingAdapter extends RFShowControlRF24Adapter {
+
+		private final List<byte[]> packets = new ArrayList<byte[]>();
+
+		public RecordingAdapter() throws RFShowControlException {
+			super(new MockHardware(), 40);
+		}
+
+		@Override
+		public int sendPackets(final ByteBuffer buffer, final boolean keyframe) {
+			final int numberOfPacket = buffer.remaining() / RFShowControlRF24Adapter.PACKET_SIZE;
+			while (buffer.hasRemaining()) {
+				final byte[] packet = new byte[RFShowControlRF24Adapter.PACKET_SIZE];
+				buffer.get(packet);
+				packets.add(packet);
+			}
+			return numberOfPacket;
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+package fr.jstessier.rfshowcontrol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlPatch.ColorOrder;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlPatchTest {
+
+	@Test
+	public void writePixels_followsColorOrder() throws RFShowControlException {
+
+		final RFShowControlPatchTable patchTable = new RFShowControlPatch(16)
+				.addFixture("par", 1, "dimmer", "strobe")
+				.addPixels("strip", 3, 2, ColorOrder.GRB)
+				.addPixels("spot", 10, 1, ColorOrder.RGB)
+				.compile();
+		Assert.assertEquals(3, patchTable.getNumberOfPixel());
+		Assert.assertEquals(2, patchTable.getFirstPixel("spot"));
+		Assert.assertEquals(2, patchTable.getChannelNumber("par", "strobe"));
+		Assert.assertArrayEquals(new int[] { 3, 2, 4, 6, 5, 7, 9, 10, 11 }, patchTable.getPixelIndexes());
+
+		final RFShowControlController controller = new RFShowControlControllerImpl(new MockHardware(), 16);
+		patchTable.writePixels(controller, new int[] { 0, 0x010203, 0x040506, 0x070809 }, 1, 0, 3);
+		Assert.assertArrayEquals(new byte[] { 0, 0, 2, 1, 3, 5, 4, 6, 0, 7, 8, 9, 0, 0, 0, 0 },
+				controller.getChannelValues());
+
+		patchTable.writePixels(controller, new int[] { 0xFFFEFD }, 0, patchTable.getFirstPixel("spot"), 1);
+		Assert.assertArrayEquals(new byte[] { 0, 0, 2, 1, 3, 5, 4, 6, 0, -1, -2, -3, 0, 0, 0, 0 },
+				controller.getChannelValues());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void addPixels_overlappingChannels() {
+		new RFShowControlPatch(16).addFixture("par", 4, "dimmer", "strobe").addPixels("strip", 1, 2, ColorOrder.RGB);
+	}
+
+	@Test
+	public void writePixels_checksChannels() throws RFShowControlException {
+
+		final RFShowControlPatchTable patchTable = new RFShowControlPatch(16).addPixels("strip", 10, 2, ColorOrder.RGB)
+				.compile();
+		final RFShowControlController controller = new RFShowControlControllerImpl(new MockHardware(), 12);
+		try {
+			patchTable.writePixels(controller, new int[] { 0x010203, 0x040506 }, 0, 0, 2);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// The patch has 16 channels
+		}
+
+		// Out of range index after a valid pixel: nothing is written
+		try {
+			controller.updatePixelValues(new int[] { 0x010203, 0x040506 }, 0, new int[] { 0, 1, 2, 3, 4, 12 }, 0, 2);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			Assert.assertArrayEquals(new byte[12], controller.getChannelValues());
+		}
+	}
+
+}
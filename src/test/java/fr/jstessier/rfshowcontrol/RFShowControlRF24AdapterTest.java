@@ -1,5 +1,10 @@
 package fr.jstessier.rfshowcontrol;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -122,6 +127,258 @@ public class RFShowControlRF24AdapterTest {
 		}
 	}
 
+	@Test
+	public void encode_reusesPacketBuffers() {
+
+		final RFShowControlPacketEncoder encoder = new RFShowControlPacketEncoder(60);
+
+		byte[] datas = new byte[35];
+		for (int index = 0; index < datas.length; index++) {
+			datas[index] = (byte) (index % 255);
+		}
+
+		Assert.assertEquals(2, encoder.encode(datas));
+		final byte[] packet = encoder.getPacket(1);
+		Assert.assertEquals((byte) 34, packet[4]);
+		Assert.assertEquals((byte) 0, packet[5]);
+		Assert.assertEquals((byte) 1, packet[30]);
+
+		datas[34] = (byte) 99;
+		Assert.assertSame(packet, encoder.encodePacket(datas, 1));
+		Assert.assertEquals((byte) 99, packet[4]);
+	}
+
+	@Test
+	public void sendRFShowControlPackets_onlyChangedPackets() throws RFShowControlException {
+
+		final RecordingAdapter adapter = new RecordingAdapter(RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL);
+		adapter.setKeyframeInterval(4);
+
+		byte[] datas = new byte[RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL];
+
+		// First transmission is a keyframe
+		Assert.assertEquals(18, adapter.sendRFShowControlPackets(datas, false));
+
+		// Nothing changed
+		Assert.assertEquals(0, adapter.sendRFShowControlPackets(datas, false));
+
+		// Channels 1 and 61 changed
+		datas[0] = (byte) 1;
+		datas[60] = (byte) 2;
+		adapter.packets.clear();
+		Assert.assertEquals(2, adapter.sendRFShowControlPackets(datas, false));
+		Assert.assertEquals((byte) 0, adapter.packets.get(0)[30]);
+		Assert.assertEquals((byte) 1, adapter.packets.get(0)[0]);
+		Assert.assertEquals((byte) 2, adapter.packets.get(1)[30]);
+		Assert.assertEquals((byte) 2, adapter.packets.get(1)[0]);
+
+		Assert.assertEquals(0, adapter.sendRFShowControlPackets(datas, false));
+
+		// One keyframe every four transmissions
+		Assert.assertEquals(18, adapter.sendRFShowControlPackets(datas, false));
+
+		// Forced keyframe
+		Assert.assertEquals(18, adapter.sendRFShowControlPackets(datas, true));
+	}
+
+	@Test
+	public void sendRFShowControlPackets_keyframeIntervalOne() throws RFShowControlException {
+
+		final RecordingAdapter adapter = new RecordingAdapter(60);
+		adapter.setKeyframeInterval(1);
+
+		byte[] datas = new byte[60];
+		Assert.assertEquals(2, adapter.sendRFShowControlPackets(datas, false));
+		Assert.assertEquals(2, adapter.sendRFShowControlPackets(datas, false));
+	}
+
+	@Test
+	public void sendRFShowControlPackets_preEncodedNumbered() throws RFShowControlException {
+
+		final RecordingAdapter adapter = new RecordingAdapter(60);
+		adapter.setSequenceNumbering(true);
+
+		Assert.assertEquals(2, adapter.sendRFShowControlPackets(new byte[60], true));
+		Assert.assertEquals((byte) (1 | RFShowControlPacketEncoder.KEYFRAME_FLAG), adapter.packets.get(1)[31]);
+
+		// Pre-encoded packets are numbered as a keyframe, the buffer is kept
+		final byte[] packets = new byte[2 * RFShowControlRF24Adapter.PACKET_SIZE];
+		packets[RFShowControlRF24Adapter.PACKET_SIZE + 30] = 1;
+		adapter.packets.clear();
+		Assert.assertEquals(2, adapter.sendRFShowControlPackets(ByteBuffer.wrap(packets), true));
+		Assert.assertEquals((byte) (2 | RFShowControlPacketEncoder.KEYFRAME_FLAG), adapter.packets.get(0)[31]);
+		Assert.assertEquals((byte) (2 | RFShowControlPacketEncoder.KEYFRAME_FLAG), adapter.packets.get(1)[31]);
+		Assert.assertEquals((byte) 1, adapter.packets.get(1)[30]);
+		Assert.assertEquals((byte) 0, packets[RFShowControlRF24Adapter.PACKET_SIZE + 31]);
+	}
+
+	@Test(timeout = 10000)
+	public void sendRFShowControlPackets_pipelinedKeepsFifoFilled() throws RFShowControlException, RF24Exception {
+
+		// 1 MHz SPI, 250 kbps data rate: a payload is written well before the previous one is sent
+		final PipelineWatchHardware hardware = new PipelineWatchHardware();
+		final RFShowControlRF24Adapter adapter = new RFShowControlRF24Adapter(hardware,
+				RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL)
+				.configure((byte) 2, new byte[] { 1, 2, 3, 4, 5 }, RFShowControlRF24Adapter.Mode.TX);
+		setUpVirtualRegisters(hardware, RFShowControlRF24Commands.RF_SETUP_RF_DR_LOW);
+		adapter.setSendMode(RFShowControlRF24Adapter.SendMode.PIPELINED);
+		final byte[] datas = new byte[RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL];
+		final int numberOfFrame = 2;
+
+		for (int frame = 0; frame < numberOfFrame; frame++) {
+			Assert.assertEquals(18, adapter.sendRFShowControlPackets(datas, true));
+		}
+		hardware.drainTxFifo();
+
+		Assert.assertEquals(18 * numberOfFrame, hardware.getSentPacketCount());
+		Assert.assertEquals(0, hardware.getTxOverflowCount());
+		// CE raised once per frame and kept high, not pulsed for each payload
+		Assert.assertEquals(numberOfFrame, hardware.chipEnableHighCount);
+		Assert.assertEquals(0, hardware.chipEnableLowCount);
+		// The next payloads are written while one is on air
+		Assert.assertEquals(3, hardware.maxTxFifoCount);
+	}
+
+	@Test(timeout = 10000)
+	public void sendRFShowControlPackets_pipelinedFasterThanSerial() throws RFShowControlException, RF24Exception {
+
+		// 1 MHz SPI, 2 Mbps data rate: SPI transfer and air time of a packet are close
+		final long serialNanos = measureFrames(RFShowControlRF24Adapter.SendMode.SERIAL, 5);
+		final long pipelinedNanos = measureFrames(RFShowControlRF24Adapter.SendMode.PIPELINED, 5);
+
+		// Serial is close to SPI + settling + air time per packet, pipelined to the SPI time only
+		Assert.assertTrue("pipelined " + pipelinedNanos + " ns, serial " + serialNanos + " ns",
+				pipelinedNanos < serialNanos * 3 / 4);
+	}
+
+	/**
+	 * Send frames of 512 channels and return their duration on the simulated clock, until the last packet is sent.
+	 *
+	 * @param sendMode			The send mode.
+	 * @param numberOfFrame		Number of frames.
+	 * @return	The duration.
+	 */
+	private static long measureFrames(final RFShowControlRF24Adapter.SendMode sendMode, final int numberOfFrame)
+			throws RFShowControlException, RF24Exception {
+		final RFShowControlVirtualRF24Hardware hardware = new RFShowControlVirtualRF24Hardware();
+		final RFShowControlRF24Adapter adapter = new DriverSerialAdapter(hardware)
+				.configure((byte) 2, new byte[] { 1, 2, 3, 4, 5 }, RFShowControlRF24Adapter.Mode.TX);
+		setUpVirtualRegisters(hardware, RFShowControlRF24Commands.RF_SETUP_RF_DR_HIGH);
+		adapter.setSendMode(sendMode);
+		final byte[] datas = new byte[RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL];
+		// Power up
+		hardware.advanceNanos(5000000);
+
+		final long start = hardware.getNanoTime();
+		for (int frame = 0; frame < numberOfFrame; frame++) {
+			Assert.assertEquals(18, adapter.sendRFShowControlPackets(datas, true));
+		}
+		hardware.drainTxFifo();
+		Assert.assertEquals(18 * numberOfFrame, hardware.getSentPacketCount());
+		Assert.assertEquals(0, hardware.getTxOverflowCount());
+		return hardware.getNanoTime() - start;
+	}
+
+	/**
+	 * Write the registers of a simulated transmitter, the RF24 driver is not simulated.
+	 */
+	private static void setUpVirtualRegisters(final RFShowControlVirtualRF24Hardware hardware, final byte rfSetup)
+			throws RF24Exception {
+		hardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.RF_SETUP), rfSetup);
+		hardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.FEATURE),
+				RFShowControlRF24Commands.FEATURE_EN_DYN_ACK);
+		hardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.CONFIG),
+				(byte) (RFShowControlRF24Commands.CONFIG_EN_CRC | RFShowControlRF24Commands.CONFIG_PWR_UP));
+	}
+
+	/**
+	 * Adapter sending its SERIAL payloads with the SPI sequence of the RF24 driver, not simulated:
+	 * write the payload, pulse CE and wait for the end of the transmission.
+	 */
+	private static class DriverSerialAdapter extends RFShowControlRF24Adapter {
+
+		private final RFShowControlVirtualRF24Hardware hardware;
+
+		public DriverSerialAdapter(final RFShowControlVirtualRF24Hardware hardware) throws RFShowControlException {
+			super(hardware, RFShowControlRF24Adapter.MAX_MUNBER_OF_CHANNEL);
+			this.hardware = hardware;
+		}
+
+		@Override
+		protected void sendRFShowControlPacket(final byte[] packet) throws RFShowControlException {
+			if (SendMode.PIPELINED.equals(getSendMode())) {
+				super.sendRFShowControlPacket(packet);
+				return;
+			}
+			try {
+				final byte[] command = new byte[RFShowControlRF24Adapter.PACKET_SIZE + 1];
+				command[0] = RFShowControlRF24Commands.W_TX_PAYLOAD_NO_ACK;
+				System.arraycopy(packet, 0, command, 1, RFShowControlRF24Adapter.PACKET_SIZE);
+				hardware.spiWrite(command);
+				hardware.setPinChipEnableHigh();
+				hardware.advanceNanos(10000);
+				hardware.setPinChipEnableLow();
+				while ((hardware.spiWrite(RFShowControlRF24Commands.NOP)[0] & RFShowControlRF24Commands.STATUS_TX_DS) == 0) {
+					// Poll STATUS
+				}
+				hardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.STATUS),
+						RFShowControlRF24Commands.STATUS_TX_DS);
+			} catch (RF24Exception e) {
+				throw new RFShowControlException("An error occured during RF24 communication", e);
+			}
+		}
+
+	}
+
+	/**
+	 * Simulated module recording the CE changes and the fill of the TX FIFO.
+	 */
+	private static class PipelineWatchHardware extends RFShowControlVirtualRF24Hardware {
+
+		private int chipEnableHighCount;
+
+		private int chipEnableLowCount;
+
+		private int maxTxFifoCount;
+
+		@Override
+		public void setPinChipEnableHigh() {
+			chipEnableHighCount++;
+			super.setPinChipEnableHigh();
+		}
+
+		@Override
+		public void setPinChipEnableLow() {
+			chipEnableLowCount++;
+			super.setPinChipEnableLow();
+		}
+
+		@Override
+		public byte[] spiWrite(final byte... data) throws RF24Exception {
+			final byte[] status = super.spiWrite(data);
+			if (data[0] == RFShowControlRF24Commands.W_TX_PAYLOAD_NO_ACK) {
+				maxTxFifoCount = Math.max(maxTxFifoCount, getTxFifoCount());
+			}
+			return status;
+		}
+
+	}
+
+	public static class RecordingAdapter extends RFShowControlRF24Adapter {
+
+		final List<byte[]> packets = new ArrayList<byte[]>();
+
+		public RecordingAdapter(int numberOfChannel) throws RFShowControlException {
+			super(new MockHardware(), numberOfChannel);
+		}
+
+		@Override
+		protected void sendRFShowControlPacket(byte[] packet) throws RFShowControlException {
+			packets.add(Arrays.copyOf(packet, packet.length));
+		}
+
+	}
+
 	public static class MockHardware implements RF24Hardware {
 
 		@Override
@@ -0,0 +1,190 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlReceiverTest {
+
+	@Test
+	public void processPacket_reassemblesFrames() throws RFShowControlException {
+
+		final RFShowControlReceiver receiver = new RFShowControlReceiver(
+				new RFShowControlRF24Adapter(new MockHardware(), 65));
+		final List<byte[]> frames = new ArrayList<byte[]>();
+		receiver.addListener(new RFShowControlReceiver.FrameListener() {
+			@Override
+			public void onFrame(byte[] channelValues) {
+				frames.add(Arrays.copyOf(channelValues, channelValues.length));
+			}
+		});
+
+		final byte[] datas = new byte[65];
+		for (int index = 0; index < datas.length; index++) {
+			datas[index] = (byte) index;
+		}
+		final RFShowControlPacketEncoder encoder = new RFShowControlPacketEncoder(65);
+		Assert.assertEquals(3, receiver.getNumberOfPacket());
+
+		// Full frame
+		receiver.processPacket(encoder.encodePacket(datas, 0), 1);
+		receiver.processPacket(encoder.encodePacket(datas, 1), 2);
+		Assert.assertEquals(0, frames.size());
+		receiver.processPacket(encoder.encodePacket(datas, 2), 3);
+		Assert.assertEquals(1, frames.size());
+		Assert.assertArrayEquals(datas, frames.get(0));
+
+		// Partial frame, completed by the next frame
+		datas[31] = (byte) 100;
+		receiver.processPacket(encoder.encodePacket(datas, 1), 4);
+		Assert.assertEquals(1, frames.size());
+		receiver.processPacket(encoder.encodePacket(datas, 0), 5);
+		Assert.assertEquals(2, frames.size());
+		Assert.assertArrayEquals(datas, frames.get(1));
+
+		Assert.assertEquals(2, receiver.getReceivedPacketCount(0));
+		Assert.assertEquals(2, receiver.getReceivedPacketCount(1));
+		Assert.assertEquals(1, receiver.getReceivedPacketCount(2));
+		Assert.assertEquals(1, receiver.getLostPacketCount(0));
+		Assert.assertEquals(0, receiver.getLostPacketCount(1));
+		Assert.assertEquals(1.0 / 3, receiver.getLossRate(0), 0.0001);
+	}
+
+	@Test
+	public void processPacket_sequencedFrames() throws RFShowControlException {
+
+		final RFShowControlReceiver receiver = new RFShowControlReceiver(
+				new RFShowControlRF24Adapter(new MockHardware(), 65));
+		final List<byte[]> frames = new ArrayList<byte[]>();
+		receiver.addListener(new RFShowControlReceiver.FrameListener() {
+			@Override
+			public void onFrame(byte[] channelValues) {
+				frames.add(Arrays.copyOf(channelValues, channelValues.length));
+			}
+		});
+		final byte[] datas = new byte[65];
+		final RFShowControlPacketEncoder encoder = new RFShowControlPacketEncoder(65);
+
+		// Keyframe 127 without its packet 1
+		Arrays.fill(datas, (byte) 1);
+		receiver.processPacket(sequencedPacket(encoder, datas, 0, 127, true), 1);
+		receiver.processPacket(sequencedPacket(encoder, datas, 2, 127, true), 2);
+		Assert.assertEquals(1, frames.size());
+
+		// Delta frame 1 (wrapped), its packet duplicated then a stale packet of frame 127
+		Arrays.fill(datas, (byte) 2);
+		receiver.processPacket(sequencedPacket(encoder, datas, 1, 1, false), 3);
+		receiver.processPacket(sequencedPacket(encoder, datas, 1, 1, false), 4);
+		Arrays.fill(datas, (byte) 9);
+		receiver.processPacket(sequencedPacket(encoder, datas, 1, 127, true), 5);
+		Assert.assertEquals(1, receiver.getDuplicatePacketCount());
+		Assert.assertEquals(1, receiver.getStalePacketCount());
+		Assert.assertEquals(1, frames.size());
+
+		// Frame 2 lost, frame 3 completes frame 1
+		Arrays.fill(datas, (byte) 3);
+		receiver.processPacket(sequencedPacket(encoder, datas, 2, 3, false), 6);
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals(2, frames.get(1)[30]);
+		Assert.assertEquals(1, frames.get(1)[60]);
+		Assert.assertEquals(3, frames.get(2)[60]);
+		Assert.assertEquals(1, receiver.getLostFrameCount());
+
+		// Only the keyframe tells the packet 1 was lost
+		Assert.assertEquals(1, receiver.getLostPacketCount(1));
+		Assert.assertEquals(0, receiver.getLostPacketCount(0));
+		Assert.assertEquals(0, receiver.getLostPacketCount(2));
+		Assert.assertEquals(1, receiver.getReceivedPacketCount(1));
+	}
+
+	@Test
+	public void processPacket_playedDeltaFrames() throws IOException, RFShowControlException {
+
+		final Path sequencePath = Files.createTempFile("rfshowcontrol", ".seq");
+		final Path packetsPath = Files.createTempFile("rfshowcontrol", ".rfsp");
+		try {
+			// Packet 0 changes on every frame, packet 1 every 3 frames
+			try (RFShowControlSequenceWriter writer = new RFShowControlSequenceWriter(sequencePath, 40, 25)) {
+				for (int frameIndex = 0; frameIndex < 6; frameIndex++) {
+					final byte[] frame = new byte[40];
+					frame[0] = (byte) frameIndex;
+					frame[35] = (byte) (frameIndex / 3);
+					writer.writeFrame(frame);
+				}
+			}
+			try (RFShowControlSequence sequence = new RFShowControlSequence(sequencePath)) {
+				RFShowControlPacketSequenceCompiler.compile(sequence, packetsPath, 4);
+			}
+
+			final RFShowControlReceiver receiver = new RFShowControlReceiver(
+					new RFShowControlRF24Adapter(new MockHardware(), 40));
+			final List<byte[]> frames = new ArrayList<byte[]>();
+			receiver.addListener(new RFShowControlReceiver.FrameListener() {
+				@Override
+				public void onFrame(byte[] channelValues) {
+					frames.add(Arrays.copyOf(channelValues, channelValues.length));
+				}
+			});
+			// Every packet sent is received
+			final RFShowControlRF24Adapter transmitter = new RFShowControlRF24Adapter(new MockHardware(), 40) {
+				@Override
+				protected void sendRFShowControlPacket(final byte[] packet) {
+					receiver.processPacket(Arrays.copyOf(packet, packet.length), System.nanoTime());
+				}
+			};
+			transmitter.configure((byte) 76, new byte[] { 1, 2, 3, 4, 5 }, Mode.TX).setSequenceNumbering(true);
+
+			try (RFShowControlPacketSequence sequence = new RFShowControlPacketSequence(packetsPath)) {
+				final RFShowControlPacketSequencePlayer player = new RFShowControlPacketSequencePlayer(transmitter, sequence);
+				for (int frameIndex = 0; frameIndex < 6; frameIndex++) {
+					player.tick(frameIndex);
+				}
+			}
+
+			// The delta frames only hold packet 0: packet 1 is not lost
+			Assert.assertEquals(5, frames.size());
+			Assert.assertEquals(4, frames.get(4)[0]);
+			Assert.assertEquals(1, frames.get(4)[35]);
+			Assert.assertEquals(0, receiver.getLostFrameCount());
+			Assert.assertEquals(0, receiver.getLostPacketCount(0));
+			Assert.assertEquals(0, receiver.getLostPacketCount(1));
+			Assert.assertEquals(6, receiver.getReceivedPacketCount(0));
+			Assert.assertEquals(3, receiver.getReceivedPacketCount(1));
+		} finally {
+			Files.delete(sequencePath);
+			Files.delete(packetsPath);
+		}
+	}
+
+	private static byte[] sequencedPacket(final RFShowControlPacketEncoder encoder, final byte[] datas, final int offset,
+			final int sequence, final boolean keyframe) {
+		final byte[] packet = encoder.encodePacket(datas, offset);
+		packet[RFShowControlPacketEncoder.TBD_INDEX] = (byte) (sequence | (keyframe ? RFShowControlPacketEncoder.KEYFRAME_FLAG : 0));
+		return packet;
+	}
+
+	@Test
+	public void processPacket_invalidOffset() throws RFShowControlException {
+
+		final RFShowControlReceiver receiver = new RFShowControlReceiver(
+				new RFShowControlRF24Adapter(new MockHardware(), 30));
+
+		final byte[] packet = new byte[32];
+		packet[30] = 1;
+		receiver.processPacket(packet, 1);
+
+		Assert.assertEquals(1, receiver.getInvalidPacketCount());
+		Assert.assertEquals(0, receiver.getFrameCount());
+		Assert.assertEquals(-1, receiver.getPacketAgeNanos(0));
+	}
+
+}
@@ -0,0 +1,67 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlRecorderTest {
+
+	private static final byte[] PIPE_ADDRESS = new byte[] { 1, 2, 3, 4, 5 };
+
+	@Test
+	public void recordAndReplay() throws IOException, RFShowControlException {
+
+		final Path directory = Files.createTempDirectory("rfshowcontrol");
+		try {
+			final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(new MockHardware(), 40);
+			controller.configure((byte) 76, PIPE_ADDRESS, Mode.TX);
+			controller.setKeyframeInterval(1);
+			// 2 packets per keyframe: 74 bytes per record, 13 records per segment
+			final RFShowControlRecorder recorder = new RFShowControlRecorder(directory, "show", 1024, 2, 64);
+			controller.setRecorder(recorder);
+			controller.updateChannelValue((byte) 1, 1);
+			controller.updateChannelValue((byte) 2, 40);
+			controller.flushChannelValues();
+			for (int value = 1; value <= 39; value++) {
+				controller.updateChannelValue((byte) value, 35);
+				controller.flushChannelValues();
+			}
+			controller.setRecorder(null);
+			recorder.close();
+			Assert.assertEquals(40, recorder.getRecordedFrameCount());
+			Assert.assertEquals(0, recorder.getDroppedFrameCount());
+
+			// Segments 0 to 3 written, the last 2 kept
+			Assert.assertEquals(2, RFShowControlRecording.listSegments(directory, "show").size());
+			try (RFShowControlRecording recording = new RFShowControlRecording(directory, "show")) {
+				Assert.assertTrue(recording.next());
+				final long firstTimeNanos = recording.getTimeNanos();
+				int numberOfRecord = 1;
+				while (recording.next()) {
+					Assert.assertTrue(recording.getTimeNanos() >= firstTimeNanos);
+					numberOfRecord++;
+				}
+				Assert.assertEquals(40 - 2 * 13, numberOfRecord);
+			}
+
+			try (RFShowControlRecording recording = new RFShowControlRecording(directory, "show")) {
+				final RFShowControlControllerImpl replayController = new RFShowControlControllerImpl(new MockHardware(), 40);
+				replayController.configure((byte) 76, PIPE_ADDRESS, Mode.TX);
+				Assert.assertEquals(14, recording.replay(replayController, 100));
+				Assert.assertArrayEquals(controller.getChannelValues(), replayController.getChannelValues());
+			}
+		} finally {
+			for (Path path : RFShowControlRecording.listSegments(directory, "show")) {
+				Files.delete(path);
+			}
+			Files.delete(directory);
+		}
+	}
+
+}
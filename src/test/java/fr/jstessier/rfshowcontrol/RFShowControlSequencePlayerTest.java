@@ -0,0 +1,158 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlSequencePlayerTest {
+
+	@Test
+	public void sequence_writeAndMap() throws IOException {
+
+		final Path path = Files.createTempFile("rfshowcontrol", ".seq");
+		try {
+			writeSequence(path, 40, 10);
+			try (RFShowControlSequence sequence = new RFShowControlSequence(path)) {
+				Assert.assertEquals(40, sequence.getNumberOfChannel());
+				Assert.assertEquals(25, sequence.getFramesPerSecond());
+				Assert.assertEquals(10, sequence.getNumberOfFrame());
+				for (int frameIndex = 9; frameIndex >= 0; frameIndex--) {
+					final byte[] frame = new byte[sequence.getFrame(frameIndex).remaining()];
+					sequence.getFrame(frameIndex).get(frame);
+					Assert.assertArrayEquals(frame(40, frameIndex), frame);
+				}
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void tick_seekPauseAndLoop() throws IOException, RFShowControlException {
+
+		final Path path = Files.createTempFile("rfshowcontrol", ".seq");
+		try {
+			writeSequence(path, 40, 10);
+			try (RFShowControlSequence sequence = new RFShowControlSequence(path)) {
+				final RecordingController controller = new RecordingController(41);
+				final RFShowControlSequencePlayer player = new RFShowControlSequencePlayer(controller, sequence, 2);
+
+				// Frames follow the scheduler frame number, skipped frames included
+				player.tick(0);
+				player.tick(1);
+				player.tick(3);
+				Assert.assertEquals(3, controller.frames.size());
+				Assert.assertEquals(0, controller.frames.get(0)[0]);
+				Assert.assertArrayEquals(frame(40, 0), controller.frame(0));
+				Assert.assertArrayEquals(frame(40, 1), controller.frame(1));
+				Assert.assertArrayEquals(frame(40, 3), controller.frame(2));
+
+				// Pause keeps the position
+				player.pause();
+				player.tick(4);
+				player.tick(5);
+				player.resume();
+				player.tick(6);
+				Assert.assertArrayEquals(frame(40, 4), controller.frame(3));
+
+				// Seek
+				player.seek(8);
+				player.tick(7);
+				player.tick(8);
+				Assert.assertArrayEquals(frame(40, 8), controller.frame(4));
+				Assert.assertArrayEquals(frame(40, 9), controller.frame(5));
+
+				// End without loop
+				player.tick(9);
+				Assert.assertTrue(player.isEnded());
+				Assert.assertEquals(6, controller.frames.size());
+
+				// Loop
+				player.setLoop(true).seek(9);
+				player.tick(10);
+				player.tick(11);
+				Assert.assertFalse(player.isEnded());
+				Assert.assertArrayEquals(frame(40, 9), controller.frame(6));
+				Assert.assertArrayEquals(frame(40, 0), controller.frame(7));
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void stop_whileEnding() throws IOException, RFShowControlException, InterruptedException {
+
+		final Path path = Files.createTempFile("rfshowcontrol", ".seq");
+		try {
+			writeSequence(path, 40, 2);
+			try (RFShowControlSequence sequence = new RFShowControlSequence(path)) {
+				final RFShowControlSequencePlayer player = new RFShowControlSequencePlayer(new RecordingController(41),
+						sequence, 2);
+				// The player lock is held while the scheduler thread ends the sequence, then stop() joins it
+				synchronized (player) {
+					player.start();
+					while (!player.isEnded()) {
+						Thread.sleep(5);
+					}
+					player.stop();
+				}
+				player.awaitEnd();
+				Assert.assertEquals(2, player.getPosition());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	private static void writeSequence(final Path path, final int numberOfChannel, final int numberOfFrame) throws IOException {
+		try (RFShowControlSequenceWriter writer = new RFShowControlSequenceWriter(path, numberOfChannel, 25)) {
+			for (int frameIndex = 0; frameIndex < numberOfFrame; frameIndex++) {
+				writer.writeFrame(frame(numberOfChannel, frameIndex));
+			}
+		}
+	}
+
+	private static byte[] frame(final int numberOfChannel, final int frameIndex) {
+		final byte[] frame = new byte[numberOfChannel];
+		for (int index = 0; index < numberOfChannel; index++) {
+			frame[index] = (byte) (frameIndex * 16 + index);
+		}
+		return frame;
+	}
+
+	/**
+	 * Controller recording the flushed channel values instead of sending them.
+	 */
+	private static class RecordingController extends RFShowControlControllerImpl {
+
+		private final List<byte[]> frames = new ArrayList<byte[]>();
+
+		public RecordingController(final int numberOfChannel) throws RFShowControlException {
+			super(new MockHardware(), numberOfChannel);
+		}
+
+		@Override
+		public RFShowControlController flushChannelValues() {
+			frames.add(getChannelValues());
+			return this;
+		}
+
+		/** Return a flushed frame without the first channel. */
+		private byte[] frame(final int index) {
+			final byte[] values = frames.get(index);
+			final byte[] frame = new byte[values.length - 1];
+			System.arraycopy(values, 1, frame, 0, frame.length);
+			return frame;
+		}
+
+	}
+
+}
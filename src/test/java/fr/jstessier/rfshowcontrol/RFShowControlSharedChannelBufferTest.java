@@ -0,0 +1,83 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlSharedChannelBufferTest {
+
+	@Test
+	public void renderFrame_copiesDirtyPackets() throws IOException, RFShowControlException {
+
+		final Path path = Files.createTempFile("rfshowcontrol", ".shm");
+		Files.delete(path);
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(new MockHardware(), 40);
+		try (RFShowControlSharedChannelBuffer sharedValues = controller.shareChannelValues(path);
+				RFShowControlSharedChannelBuffer writer = new RFShowControlSharedChannelBuffer(path, 40)) {
+
+			writer.update(new byte[] { 1, 2 }, 0, 1, 2);
+			controller.renderFrame(0);
+			Assert.assertEquals(1, sharedValues.getFrameCount());
+			Assert.assertEquals(1, controller.getChannelValues()[0]);
+
+			// Nothing written: nothing read
+			controller.updateChannelValue((byte) 9, 40);
+			controller.renderFrame(1);
+			Assert.assertEquals(1, sharedValues.getFrameCount());
+			Assert.assertEquals(9, controller.getChannelValues()[39]);
+
+			// Only the second packet changed: the channels of the first one are not read
+			controller.updateChannelValue((byte) 8, 1);
+			writer.update(new byte[] { 7 }, 0, 31, 1);
+			controller.renderFrame(2);
+			Assert.assertEquals(2, sharedValues.getFrameCount());
+			Assert.assertEquals(8, controller.getChannelValues()[0]);
+			Assert.assertEquals(7, controller.getChannelValues()[30]);
+			Assert.assertEquals(0, controller.getChannelValues()[39]);
+
+			// A writer in the middle of an update: read on the next frame
+			try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				final MappedByteBuffer header = fileChannel.map(MapMode.READ_WRITE, 0, RFShowControlSharedChannelBuffer.HEADER_SIZE);
+				header.order(ByteOrder.LITTLE_ENDIAN);
+				final long sequence = header.getLong(RFShowControlSharedChannelBuffer.SEQUENCE_INDEX);
+				Assert.assertEquals(sequence, header.getLong(RFShowControlSharedChannelBuffer.ACK_SEQUENCE_INDEX));
+				header.putLong(RFShowControlSharedChannelBuffer.SEQUENCE_INDEX, sequence + 1);
+				controller.renderFrame(3);
+				Assert.assertEquals(1, sharedValues.getRetryCount());
+				Assert.assertEquals(2, sharedValues.getFrameCount());
+
+				header.putLong(RFShowControlSharedChannelBuffer.DIRTY_FLAGS_INDEX, 1);
+				header.putLong(RFShowControlSharedChannelBuffer.SEQUENCE_INDEX, sequence + 2);
+				controller.renderFrame(4);
+				Assert.assertEquals(3, sharedValues.getFrameCount());
+				Assert.assertEquals(1, controller.getChannelValues()[0]);
+			}
+		} finally {
+			controller.close();
+			Files.deleteIfExists(path);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void open_otherNumberOfChannel() throws IOException {
+		final Path path = Files.createTempFile("rfshowcontrol", ".shm");
+		Files.delete(path);
+		try {
+			new RFShowControlSharedChannelBuffer(path, 40).close();
+			new RFShowControlSharedChannelBuffer(path, 20).close();
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+}
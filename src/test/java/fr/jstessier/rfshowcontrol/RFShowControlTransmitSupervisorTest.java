@@ -0,0 +1,181 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rf24.enums.DataRates;
+import fr.jstessier.rf24.enums.OutputPower;
+import fr.jstessier.rf24.exceptions.RF24Exception;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+import fr.jstessier.rfshowcontrol.RFShowControlRadioProfile.CrcLength;
+import fr.jstessier.rfshowcontrol.RFShowControlTransmitSupervisor.ErrorType;
+
+public class RFShowControlTransmitSupervisorTest {
+
+	private static final long MILLIS = 1000000;
+
+	private static final byte[] PIPE_ADDRESS = new byte[] { 1, 2, 3, 4, 5 };
+
+	@Test
+	public void runFrame_backsOffAndReinitializes() throws RFShowControlException {
+
+		final FailingController controller = new FailingController(3);
+		final RFShowControlTransmitSupervisor supervisor = controller.getTransmitSupervisor();
+
+		supervisor.runFrame(0);
+		Assert.assertTrue(supervisor.isRecovering());
+		// Backing off 10 ms then 20 ms
+		supervisor.runFrame(5 * MILLIS);
+		supervisor.runFrame(10 * MILLIS);
+		supervisor.runFrame(20 * MILLIS);
+		Assert.assertEquals(2, supervisor.getSkippedFrameCount());
+		Assert.assertEquals(0, controller.reconfigureCount);
+
+		// Third consecutive error: the radio is configured again and the frame is sent as a keyframe
+		supervisor.runFrame(30 * MILLIS);
+		supervisor.runFrame(70 * MILLIS);
+		supervisor.runFrame(80 * MILLIS);
+		Assert.assertEquals(1, controller.reconfigureCount);
+		Assert.assertEquals(1, supervisor.getReinitCount());
+		Assert.assertEquals(3, supervisor.getErrorCount(ErrorType.RADIO));
+		Assert.assertEquals(5, controller.sentKeyframes.size());
+		Assert.assertEquals(Boolean.TRUE, controller.sentKeyframes.get(3));
+		Assert.assertEquals(Boolean.FALSE, controller.sentKeyframes.get(4));
+		Assert.assertFalse(supervisor.isRecovering());
+		Assert.assertEquals(1, supervisor.getRecoveryCount());
+		Assert.assertEquals(70 * MILLIS, supervisor.getMaxRecoveryNanos());
+		Assert.assertEquals(70 * MILLIS, controller.getMetrics().getMaxRecoveryTimeNanos());
+	}
+
+	@Test
+	public void runFrame_rendererErrorSendsLastFrame() throws RFShowControlException {
+
+		final FailingController controller = new FailingController(0);
+		controller.addFrameRenderer(new RFShowControlFrameRenderer() {
+			@Override
+			public void renderFrame(final long frameNanos, final RFShowControlChannelBuffer channelValues) {
+				throw new IllegalArgumentException("renderer failure");
+			}
+		});
+		final RFShowControlTransmitSupervisor supervisor = controller.getTransmitSupervisor();
+
+		supervisor.runFrame(0);
+		supervisor.runFrame(MILLIS);
+		Assert.assertEquals(2, supervisor.getErrorCount(ErrorType.SOFTWARE));
+		Assert.assertEquals(2, controller.sentKeyframes.size());
+		Assert.assertFalse(supervisor.isRecovering());
+		Assert.assertEquals(2, controller.getMetrics().getTransmitErrors());
+		Assert.assertEquals("java.lang.IllegalArgumentException: renderer failure",
+				controller.getMetrics().getLastTransmitError());
+	}
+
+	@Test
+	public void runFrame_illegalStateOfConfiguredController() throws RFShowControlException {
+
+		final FailingController controller = new FailingController(0);
+		controller.configure((byte) 76, PIPE_ADDRESS, Mode.TX);
+		controller.sentKeyframes.clear();
+		controller.illegalStates = 1;
+		final RFShowControlTransmitSupervisor supervisor = controller.getTransmitSupervisor();
+
+		// A bug of a configured controller: counted, the radio is not configured again
+		supervisor.runFrame(0);
+		supervisor.runFrame(20 * MILLIS);
+		Assert.assertEquals(1, supervisor.getErrorCount(ErrorType.SOFTWARE));
+		Assert.assertEquals(0, supervisor.getErrorCount(ErrorType.NOT_CONFIGURED));
+		Assert.assertEquals(0, controller.reconfigureCount);
+		Assert.assertFalse(supervisor.isRecovering());
+	}
+
+	@Test
+	public void runFrame_reconfiguresAfterFailedConfiguration() throws RFShowControlException {
+
+		final FailingHardware hardware = new FailingHardware();
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(hardware, 8);
+		// The 1 byte CRC is written directly to the module, after the driver powered it down
+		controller.configure((byte) 76, PIPE_ADDRESS, Mode.TX, new RFShowControlRadioProfile(DataRates.DR_2_MBPS,
+				OutputPower.RF_0_DBM, CrcLength.ONE_BYTE));
+		final RFShowControlTransmitSupervisor supervisor = controller.getTransmitSupervisor();
+
+		// The configuration fails partway: the adapter is no longer configured
+		hardware.failing = true;
+		try {
+			controller.reconfigure();
+			Assert.fail("RFShowControlException expected");
+		} catch (RFShowControlException e) {
+			Assert.assertFalse(controller.isConfigured());
+		}
+		supervisor.runFrame(0);
+		Assert.assertEquals(1, supervisor.getErrorCount(ErrorType.NOT_CONFIGURED));
+		Assert.assertTrue(supervisor.isRecovering());
+
+		// Configured again on the next attempt, then the frame is sent
+		hardware.failing = false;
+		supervisor.runFrame(20 * MILLIS);
+		Assert.assertEquals(1, supervisor.getReinitCount());
+		Assert.assertTrue(controller.isConfigured());
+		Assert.assertFalse(supervisor.isRecovering());
+		Assert.assertEquals(1, supervisor.getRecoveryCount());
+	}
+
+	/**
+	 * Hardware whose SPI transfers fail on demand.
+	 */
+	private static class FailingHardware extends MockHardware {
+
+		private boolean failing;
+
+		@Override
+		public byte[] spiWrite(final byte... data) throws RF24Exception {
+			if (failing) {
+				throw new RF24Exception("SPI transfer failed");
+			}
+			return new byte[data.length];
+		}
+
+	}
+
+	/**
+	 * Controller whose first transmissions fail, recording the transmissions.
+	 */
+	private static class FailingController extends RFShowControlControllerImpl {
+
+		private final List<Boolean> sentKeyframes = new ArrayList<Boolean>();
+
+		private int failures;
+
+		private int reconfigureCount;
+
+		private int illegalStates;
+
+		public FailingController(final int failures) throws RFShowControlException {
+			super(new MockHardware(), 8);
+			this.failures = failures;
+		}
+
+		@Override
+		RFShowControlController sendChannelValues(final boolean forceKeyframe) throws RFShowControlException {
+			sentKeyframes.add(forceKeyframe);
+			if (failures > 0) {
+				failures--;
+				throw new RFShowControlException("RF24 TX FIFO stays full");
+			}
+			else if (illegalStates > 0) {
+				illegalStates--;
+				throw new IllegalStateException("RFShowControlRF24Adapter is not configured");
+			}
+			return this;
+		}
+
+		@Override
+		void reconfigure() {
+			reconfigureCount++;
+		}
+
+	}
+
+}
@@ -0,0 +1,43 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rfshowcontrol.RFShowControlRF24AdapterTest.MockHardware;
+
+public class RFShowControlUpdateBatchTest {
+
+	@Test
+	public void commit_appliesAllRanges() throws RFShowControlException {
+
+		final RFShowControlController controller = new RFShowControlControllerImpl(new MockHardware(), 8);
+		final RFShowControlUpdateBatch batch = controller.beginUpdate();
+		final ByteBuffer source = ByteBuffer.wrap(new byte[] { 9, 5, 6, 9 });
+		source.position(1).limit(3);
+
+		batch.set(1, new byte[] { 0, 1, 2, 0 }, 1, 2)
+				.set(4, source)
+				.set(8, (byte) 8);
+		Assert.assertEquals(3, batch.size());
+		Assert.assertArrayEquals(new byte[8], controller.getChannelValues());
+
+		batch.commit();
+		Assert.assertArrayEquals(new byte[] { 1, 2, 0, 5, 6, 0, 0, 8 }, controller.getChannelValues());
+		Assert.assertEquals(3, source.position());
+		Assert.assertEquals(0, batch.size());
+
+		// Reused after commit
+		batch.set(3, (byte) 3).commit();
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3, 5, 6, 0, 0, 8 }, controller.getChannelValues());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void set_rangeOutOfChannels() throws RFShowControlException {
+
+		final RFShowControlController controller = new RFShowControlControllerImpl(new MockHardware(), 8);
+		controller.beginUpdate().set(7, new byte[3], 0, 3);
+	}
+
+}
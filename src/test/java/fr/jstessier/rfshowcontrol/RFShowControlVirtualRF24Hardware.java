@@ -0,0 +1,747 @@
+package fr.jstessier.rfshowcontrol;
+
+/*
+ * Copyright (C) 2015 J.S. TESSIER
+ *
+ * This file is part of rfshowcontrol.
+ *
+ * java-rf24 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * rfshowcontrol is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with rfshowcontrol. If not, see <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import fr.jstessier.rf24.exceptions.RF24Exception;
+import fr.jstessier.rf24.hardware.RF24Hardware;
+
+/**
+ * Simulated nRF24L01+ module, to run throughput and soak tests without the hardware.
+ *
+ * The simulation models the register file, the 3 payloads TX and RX FIFOs, the STATUS and FIFO_STATUS flags,
+ * the SPI transfer time, the power up and TX/RX settling times and the air time of the packets at 250 kbps, 1 Mbps
+ * and 2 Mbps, auto acknowledgment and retransmissions included.
+ *
+ * The simulation runs on a simulated clock, not in real time, so the results do not depend on the load of the host:
+ * each SPI transfer moves the clock forward by its transfer time at the SPI clock plus the time the host spends per
+ * transfer ({@link #TRANSFER_OVERHEAD_NANOS}), the time between transfers is stepped explicitly with
+ * {@link #advanceNanos(long)} or {@link #drainTxFifo()}.
+ *
+ * Radios created linked to another radio share its ether and its clock: a packet is received by the radios listening
+ * on the same frequency channel and data rate with a matching pipe address.
+ */
+public class RFShowControlVirtualRF24Hardware implements RF24Hardware {
+
+	/** Default SPI clock (Hz), the Pi4J default. */
+	public static final long DEFAULT_SPI_CLOCK = 1000000;
+
+	private static final int FIFO_SIZE = 3;
+
+	private static final int MAX_PAYLOAD_SIZE = 32;
+
+	private static final int NUMBER_OF_PIPE = 6;
+
+	private static final int NUMBER_OF_REGISTER = 0x20;
+
+	private static final byte OBSERVE_TX = 0x08;
+
+	private static final byte RX_ADDR_P1 = 0x0B;
+
+	private static final byte STATUS_IRQ_MASK = 0x70;
+
+	/** Time the host spends per SPI transfer: system call and driver. */
+	public static final long TRANSFER_OVERHEAD_NANOS = 20000;
+
+	private static final long POWER_UP_NANOS = 1500000;
+
+	private static final long SETTLING_NANOS = 130000;
+
+	/** Ether and clock shared with the linked radios, also used as lock of the simulation: never replaced. */
+	private final Ether ether;
+
+	/** SPI transfer time of one byte. */
+	private final long spiNanosPerByte;
+
+	/** Register file, the addresses registers hold 5 bytes. */
+	private final byte[][] registers = new byte[NUMBER_OF_REGISTER][];
+
+	private boolean chipEnable;
+
+	/** Time CE went high. */
+	private long chipEnableNanos;
+
+	/** Time the module reaches standby after the last power up. */
+	private long standbyNanos;
+
+	private final byte[][] txPayloads = new byte[FIFO_SIZE][MAX_PAYLOAD_SIZE];
+
+	private final int[] txWidths = new int[FIFO_SIZE];
+
+	private final boolean[] txAcks = new boolean[FIFO_SIZE];
+
+	private int txHead;
+
+	private int txCount;
+
+	private final byte[][] rxPayloads = new byte[FIFO_SIZE][MAX_PAYLOAD_SIZE];
+
+	private final int[] rxWidths = new int[FIFO_SIZE];
+
+	private final int[] rxPipes = new int[FIFO_SIZE];
+
+	private int rxHead;
+
+	private int rxCount;
+
+	/** true while the first payload of the TX FIFO is on air. */
+	private boolean transmitting;
+
+	/** End of the transmission on air, acknowledgment and retransmissions included. */
+	private long txEndNanos;
+
+	/** Receiver of the payload on air, null if none. */
+	private RFShowControlVirtualRF24Hardware txTarget;
+
+	private int txTargetPipe;
+
+	/** true if the transmission on air ends with MAX_RT. */
+	private boolean txFailed;
+
+	private double packetLossRate;
+
+	private Random random;
+
+	private long sentPacketCount;
+
+	private long receivedPacketCount;
+
+	private long lostPacketCount;
+
+	private long droppedPacketCount;
+
+	private long txOverflowCount;
+
+	/**
+	 * Constructor with the default SPI clock.
+	 */
+	public RFShowControlVirtualRF24Hardware() {
+		this(DEFAULT_SPI_CLOCK, null);
+	}
+
+	/**
+	 * Constructor with its own ether.
+	 *
+	 * @param spiClock	SPI clock (Hz).
+	 */
+	public RFShowControlVirtualRF24Hardware(final long spiClock) {
+		this(spiClock, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param spiClock	SPI clock (Hz).
+	 * @param linked	Radio whose ether is shared (with the radios already linked to it), null for a new ether.
+	 */
+	public RFShowControlVirtualRF24Hardware(final long spiClock, final RFShowControlVirtualRF24Hardware linked) {
+		if (spiClock < 1) {
+			throw new IllegalArgumentException("spiClock must be greater than 0");
+		}
+		this.spiNanosPerByte = 8000000000L / spiClock;
+		reset();
+		this.ether = linked == null ? new Ether() : linked.ether;
+		synchronized (ether) {
+			// Visible to the radios of the ether once they take the lock
+			ether.radios.add(this);
+		}
+	}
+
+	/**
+	 * Lose packets at random on air, each transmission attempt is lost with the given probability.
+	 *
+	 * @param packetLossRate	The probability [0 - 1].
+	 * @param seed				Seed of the random generator, for reproducible tests.
+	 * @return	The current RFShowControlVirtualRF24Hardware instance.
+	 */
+	public RFShowControlVirtualRF24Hardware setPacketLossRate(final double packetLossRate, final long seed) {
+		if (packetLossRate < 0 || packetLossRate > 1) {
+			throw new IllegalArgumentException("packetLossRate must be in range [0-1]");
+		}
+		synchronized (ether) {
+			this.packetLossRate = packetLossRate;
+			this.random = new Random(seed);
+		}
+		return this;
+	}
+
+	/**
+	 * Let time pass on the simulated clock of the ether, completing the transmissions ended meanwhile.
+	 *
+	 * @param nanos	The time to let pass.
+	 * @return	The current RFShowControlVirtualRF24Hardware instance.
+	 */
+	public RFShowControlVirtualRF24Hardware advanceNanos(final long nanos) {
+		if (nanos < 0) {
+			throw new IllegalArgumentException("nanos must be positive");
+		}
+		synchronized (ether) {
+			ether.nanos += nanos;
+			advance(ether.nanos);
+		}
+		return this;
+	}
+
+	/**
+	 * Let time pass on the simulated clock until the TX FIFO is empty, or until its transmissions stop
+	 * (CE low, or MAX_RT to clear).
+	 *
+	 * @return	The current RFShowControlVirtualRF24Hardware instance.
+	 */
+	public RFShowControlVirtualRF24Hardware drainTxFifo() {
+		synchronized (ether) {
+			advance(ether.nanos);
+			while (transmitting) {
+				if (txEndNanos - ether.nanos > 0) {
+					ether.nanos = txEndNanos;
+				}
+				advance(ether.nanos);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Return the time of the simulated clock of the ether.
+	 * @return	The time, 0 when the ether was created.
+	 */
+	public long getNanoTime() {
+		synchronized (ether) {
+			return ether.nanos;
+		}
+	}
+
+	@Override
+	public void setPinChipEnableHigh() {
+		synchronized (ether) {
+			final long now = ether.nanos;
+			advance(now);
+			if (!chipEnable) {
+				chipEnable = true;
+				chipEnableNanos = now;
+				startTransmission(now, true);
+			}
+		}
+	}
+
+	@Override
+	public void setPinChipEnableLow() {
+		synchronized (ether) {
+			// The payload on air is still sent
+			advance(ether.nanos);
+			chipEnable = false;
+		}
+	}
+
+	@Override
+	public byte[] spiWrite(final byte... data) throws RF24Exception {
+		if (data == null || data.length == 0) {
+			throw new IllegalArgumentException("data is mandatory");
+		}
+		synchronized (ether) {
+			// The transfers of the radios of an ether are serialized on its clock
+			ether.nanos += TRANSFER_OVERHEAD_NANOS + data.length * spiNanosPerByte;
+			final long now = ether.nanos;
+			advance(now);
+			final byte[] response = new byte[data.length];
+			// STATUS is shifted out with the command byte
+			response[0] = status();
+			execute(data, response, now);
+			return response;
+		}
+	}
+
+	/**
+	 * Execute a SPI command.
+	 *
+	 * @param data		The command and its datas.
+	 * @param response	The response.
+	 * @param now		Current time.
+	 */
+	private void execute(final byte[] data, final byte[] response, final long now) {
+		final byte command = data[0];
+		final int register = command & RFShowControlRF24Commands.REGISTER_MASK;
+		if ((command & 0xE0) == RFShowControlRF24Commands.R_REGISTER) {
+			final byte[] value = readRegister(register);
+			System.arraycopy(value, 0, response, 1, Math.min(value.length, data.length - 1));
+		}
+		else if ((command & 0xE0) == RFShowControlRF24Commands.W_REGISTER) {
+			writeRegister(register, data, now);
+		}
+		else if (command == RFShowControlRF24Commands.R_RX_PAYLOAD) {
+			if (rxCount > 0) {
+				System.arraycopy(rxPayloads[rxHead], 0, response, 1, Math.min(rxWidths[rxHead], data.length - 1));
+				rxHead = (rxHead + 1) % FIFO_SIZE;
+				rxCount--;
+			}
+		}
+		else if (command == RFShowControlRF24Commands.R_RX_PL_WID) {
+			if (data.length > 1) {
+				response[1] = (byte) (rxCount > 0 ? rxWidths[rxHead] : 0);
+			}
+		}
+		else if (command == RFShowControlRF24Commands.W_TX_PAYLOAD || command == RFShowControlRF24Commands.W_TX_PAYLOAD_NO_ACK) {
+			final boolean noAck = command == RFShowControlRF24Commands.W_TX_PAYLOAD_NO_ACK;
+			if (noAck && (registers[RFShowControlRF24Commands.FEATURE][0] & RFShowControlRF24Commands.FEATURE_EN_DYN_ACK) == 0) {
+				// Command not enabled, ignored by the module
+				return;
+			}
+			if (txCount == FIFO_SIZE) {
+				txOverflowCount++;
+				return;
+			}
+			final int tail = (txHead + txCount) % FIFO_SIZE;
+			final int width = Math.min(data.length - 1, MAX_PAYLOAD_SIZE);
+			System.arraycopy(data, 1, txPayloads[tail], 0, width);
+			txWidths[tail] = width;
+			txAcks[tail] = !noAck;
+			txCount++;
+			startTransmission(now, true);
+		}
+		else if (command == RFShowControlRF24Commands.FLUSH_TX) {
+			txCount = 0;
+			transmitting = false;
+			txTarget = null;
+		}
+		else if (command == RFShowControlRF24Commands.FLUSH_RX) {
+			rxCount = 0;
+		}
+	}
+
+	/**
+	 * Return the value of a register, the flags are computed from the FIFOs.
+	 *
+	 * @param register	The register address.
+	 * @return	The register value.
+	 */
+	private byte[] readRegister(final int register) {
+		if (register == RFShowControlRF24Commands.STATUS) {
+			return new byte[] { status() };
+		}
+		else if (register == RFShowControlRF24Commands.FIFO_STATUS) {
+			return new byte[] { (byte) ((txCount == FIFO_SIZE ? RFShowControlRF24Commands.FIFO_STATUS_TX_FULL : 0)
+					| (txCount == 0 ? RFShowControlRF24Commands.FIFO_STATUS_TX_EMPTY : 0)
+					| (rxCount == FIFO_SIZE ? RFShowControlRF24Commands.FIFO_STATUS_RX_FULL : 0)
+					| (rxCount == 0 ? RFShowControlRF24Commands.FIFO_STATUS_RX_EMPTY : 0)) };
+		}
+		return registers[register];
+	}
+
+	/**
+	 * Write a register, the read only registers are ignored.
+	 *
+	 * @param register	The register address.
+	 * @param data		The command and the register value.
+	 * @param now		Current time.
+	 */
+	private void writeRegister(final int register, final byte[] data, final long now) {
+		if (data.length < 2 || register == OBSERVE_TX || register == RFShowControlRF24Commands.FIFO_STATUS
+				|| register > RFShowControlRF24Commands.FEATURE || (register > RFShowControlRF24Commands.FIFO_STATUS
+						&& register < RFShowControlRF24Commands.DYNPD)) {
+			return;
+		}
+		final byte[] value = registers[register];
+		if (register == RFShowControlRF24Commands.STATUS) {
+			// Write 1 to clear the interrupt flags
+			value[0] &= ~(data[1] & STATUS_IRQ_MASK);
+			// MAX_RT cleared: the payload is sent again
+			startTransmission(now, true);
+			return;
+		}
+		if (register == RFShowControlRF24Commands.CONFIG) {
+			final boolean wasPoweredUp = (value[0] & RFShowControlRF24Commands.CONFIG_PWR_UP) != 0;
+			if (!wasPoweredUp && (data[1] & RFShowControlRF24Commands.CONFIG_PWR_UP) != 0) {
+				standbyNanos = now + POWER_UP_NANOS;
+			}
+		}
+		System.arraycopy(data, 1, value, 0, Math.min(value.length, data.length - 1));
+		if (register == RFShowControlRF24Commands.CONFIG) {
+			startTransmission(now, true);
+		}
+	}
+
+	/**
+	 * Return the STATUS register.
+	 * @return	The interrupt flags, the pipe of the first payload of the RX FIFO and TX_FULL.
+	 */
+	private byte status() {
+		return (byte) ((registers[RFShowControlRF24Commands.STATUS][0] & STATUS_IRQ_MASK)
+				| (rxCount == 0 ? RFShowControlRF24Commands.STATUS_RX_P_NO_EMPTY : rxPipes[rxHead] << 1)
+				| (txCount == FIFO_SIZE ? RFShowControlRF24Commands.STATUS_TX_FULL : 0));
+	}
+
+	/**
+	 * Complete the transmissions ended before a time, in time order over all the radios of the ether.
+	 *
+	 * @param now	Current time.
+	 */
+	private void advance(final long now) {
+		while (true) {
+			RFShowControlVirtualRF24Hardware next = null;
+			for (RFShowControlVirtualRF24Hardware radio : ether.radios) {
+				if (radio.transmitting && radio.txEndNanos - now <= 0
+						&& (next == null || radio.txEndNanos - next.txEndNanos < 0)) {
+					next = radio;
+				}
+			}
+			if (next == null) {
+				return;
+			}
+			next.completeTransmission();
+		}
+	}
+
+	/**
+	 * Start sending the first payload of the TX FIFO if the module is in TX mode.
+	 *
+	 * @param now		Current time.
+	 * @param settling	true if the module comes from standby and needs the TX settling time.
+	 */
+	private void startTransmission(final long now, final boolean settling) {
+		final byte config = registers[RFShowControlRF24Commands.CONFIG][0];
+		if (transmitting || txCount == 0 || !chipEnable || (config & RFShowControlRF24Commands.CONFIG_PWR_UP) == 0
+				|| (config & RFShowControlRF24Commands.CONFIG_PRIM_RX) != 0
+				|| (registers[RFShowControlRF24Commands.STATUS][0] & RFShowControlRF24Commands.STATUS_MAX_RT) != 0) {
+			return;
+		}
+		long start = now;
+		if (settling) {
+			start = (now - standbyNanos < 0 ? standbyNanos : now) + SETTLING_NANOS;
+		}
+		final int width = txWidths[txHead];
+		final long airNanos = airNanos(width);
+		txTarget = findReceiver(width, start + airNanos);
+		txTargetPipe = txTarget == null ? -1 : txTarget.matchPipe(txAddress(), width);
+		transmitting = true;
+		txFailed = false;
+		sentPacketCount++;
+		if (txTarget == null && !txAcks[txHead]) {
+			droppedPacketCount++;
+		}
+		if (!txAcks[txHead]) {
+			if (txTarget != null && isLost()) {
+				txTarget = null;
+				lostPacketCount++;
+			}
+			txEndNanos = start + airNanos;
+			return;
+		}
+
+		// Auto acknowledgment: sent again until acknowledged or ARC retransmissions
+		final int setupRetr = registers[RFShowControlRF24Commands.SETUP_RETR][0];
+		final int retransmits = setupRetr & 0x0F;
+		final long retransmitDelayNanos = (((setupRetr >> 4) & 0x0F) + 1) * 250000L;
+		final boolean acknowledging = txTarget != null
+				&& (txTarget.registers[RFShowControlRF24Commands.EN_AA][0] & (1 << txTargetPipe)) != 0;
+		boolean delivered = false;
+		int attempt = 0;
+		while (true) {
+			final boolean lost = isLost();
+			if (lost) {
+				lostPacketCount++;
+			}
+			else if (txTarget != null) {
+				delivered = true;
+				if (acknowledging) {
+					break;
+				}
+			}
+			if (attempt == retransmits) {
+				txFailed = true;
+				break;
+			}
+			attempt++;
+		}
+		if (!delivered) {
+			txTarget = null;
+		}
+		// Acknowledgment: RX settling then an empty packet, or ARD before giving up
+		txEndNanos = start + attempt * (airNanos + retransmitDelayNanos) + airNanos
+				+ (txFailed ? retransmitDelayNanos : SETTLING_NANOS + airNanos(0));
+		final int packetLossCount = Math.min(15, ((registers[OBSERVE_TX][0] >> 4) & 0x0F) + (txFailed ? 1 : 0));
+		registers[OBSERVE_TX][0] = (byte) (packetLossCount << 4 | attempt);
+	}
+
+	/**
+	 * End the transmission on air: deliver the payload, set the flags and send the next payload.
+	 */
+	private void completeTransmission() {
+		final long end = txEndNanos;
+		transmitting = false;
+		if (txTarget != null) {
+			txTarget.receive(txPayloads[txHead], txWidths[txHead], txTargetPipe);
+			txTarget = null;
+		}
+		if (txFailed) {
+			// The payload stays in the TX FIFO until MAX_RT is cleared
+			registers[RFShowControlRF24Commands.STATUS][0] |= RFShowControlRF24Commands.STATUS_MAX_RT;
+			return;
+		}
+		registers[RFShowControlRF24Commands.STATUS][0] |= RFShowControlRF24Commands.STATUS_TX_DS;
+		txHead = (txHead + 1) % FIFO_SIZE;
+		txCount--;
+		// CE still high: the next payload is sent without settling
+		startTransmission(end, false);
+	}
+
+	/**
+	 * Store a received payload in the RX FIFO.
+	 *
+	 * @param payload	The payload.
+	 * @param width		The payload width.
+	 * @param pipe		The pipe.
+	 */
+	private void receive(final byte[] payload, final int width, final int pipe) {
+		if (rxCount == FIFO_SIZE) {
+			droppedPacketCount++;
+			return;
+		}
+		final int tail = (rxHead + rxCount) % FIFO_SIZE;
+		System.arraycopy(payload, 0, rxPayloads[tail], 0, width);
+		rxWidths[tail] = width;
+		rxPipes[tail] = pipe;
+		rxCount++;
+		receivedPacketCount++;
+		registers[RFShowControlRF24Commands.STATUS][0] |= RFShowControlRF24Commands.STATUS_RX_DR;
+	}
+
+	/**
+	 * Find the radio of the ether receiving a payload.
+	 *
+	 * @param width		The payload width.
+	 * @param when		Time of the reception.
+	 * @return	The receiver, null if none.
+	 */
+	private RFShowControlVirtualRF24Hardware findReceiver(final int width, final long when) {
+		final byte[] address = txAddress();
+		for (RFShowControlVirtualRF24Hardware radio : ether.radios) {
+			if (radio != this && radio.isListening(when)
+					&& radio.registers[RFShowControlRF24Commands.RF_CH][0] == registers[RFShowControlRF24Commands.RF_CH][0]
+					&& radio.dataRate() == dataRate() && radio.crcLength() == crcLength()
+					&& radio.addressWidth() == addressWidth() && radio.matchPipe(address, width) >= 0) {
+				return radio;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Check if the radio is in RX mode.
+	 *
+	 * @param when	The time.
+	 * @return	true if the radio receives.
+	 */
+	private boolean isListening(final long when) {
+		final byte config = registers[RFShowControlRF24Commands.CONFIG][0];
+		return chipEnable && (config & RFShowControlRF24Commands.CONFIG_PWR_UP) != 0
+				&& (config & RFShowControlRF24Commands.CONFIG_PRIM_RX) != 0
+				&& when - Math.max(chipEnableNanos, standbyNanos) - SETTLING_NANOS >= 0;
+	}
+
+	/**
+	 * Return the pipe receiving a payload.
+	 *
+	 * @param address	The address of the payload.
+	 * @param width		The payload width.
+	 * @return	The pipe, -1 if none.
+	 */
+	private int matchPipe(final byte[] address, final int width) {
+		final int addressWidth = addressWidth();
+		final int enabledPipes = registers[RFShowControlRF24Commands.EN_RXADDR][0];
+		final boolean dynamicPayload = (registers[RFShowControlRF24Commands.FEATURE][0]
+				& RFShowControlRF24Commands.FEATURE_EN_DPL) != 0;
+		for (int pipe = 0; pipe < NUMBER_OF_PIPE; pipe++) {
+			if ((enabledPipes & (1 << pipe)) == 0) {
+				continue;
+			}
+			// Pipes 2 to 5 only have their own LSB, the other bytes are those of pipe 1
+			final byte[] pipeAddress = registers[pipe < 2 ? RFShowControlRF24Commands.RX_ADDR_P0 + pipe : RX_ADDR_P1];
+			if (address[0] != (pipe < 2 ? pipeAddress[0] : registers[RFShowControlRF24Commands.RX_ADDR_P0 + pipe][0])) {
+				continue;
+			}
+			boolean match = true;
+			for (int index = 1; index < addressWidth && match; index++) {
+				match = address[index] == pipeAddress[index];
+			}
+			if (!match) {
+				continue;
+			}
+			final boolean pipeDynamicPayload = dynamicPayload
+					&& (registers[RFShowControlRF24Commands.DYNPD][0] & (1 << pipe)) != 0;
+			if (pipeDynamicPayload || registers[RFShowControlRF24Commands.RX_PW_P0 + pipe][0] == width) {
+				return pipe;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the air time of a packet.
+	 *
+	 * @param width	The payload width.
+	 * @return	Preamble, address, payload, CRC and packet control field time.
+	 */
+	private long airNanos(final int width) {
+		final long bits = 8L * (1 + addressWidth() + width + crcLength()) + 9;
+		return bits * 1000000000L / dataRate();
+	}
+
+	/**
+	 * Return the data rate (RF_DR_LOW has precedence over RF_DR_HIGH).
+	 * @return	The data rate (bps).
+	 */
+	private long dataRate() {
+		final byte rfSetup = registers[RFShowControlRF24Commands.RF_SETUP][0];
+		if ((rfSetup & RFShowControlRF24Commands.RF_SETUP_RF_DR_LOW) != 0) {
+			return 250000;
+		}
+		return (rfSetup & RFShowControlRF24Commands.RF_SETUP_RF_DR_HIGH) != 0 ? 2000000 : 1000000;
+	}
+
+	private int crcLength() {
+		final byte config = registers[RFShowControlRF24Commands.CONFIG][0];
+		if ((config & RFShowControlRF24Commands.CONFIG_EN_CRC) == 0) {
+			return 0;
+		}
+		return (config & RFShowControlRF24Commands.CONFIG_CRCO) != 0 ? 2 : 1;
+	}
+
+	private int addressWidth() {
+		final int setupAw = registers[RFShowControlRF24Commands.SETUP_AW][0] & 0x03;
+		return setupAw == 0 ? 5 : setupAw + 2;
+	}
+
+	private byte[] txAddress() {
+		return registers[RFShowControlRF24Commands.TX_ADDR];
+	}
+
+	private boolean isLost() {
+		return packetLossRate > 0 && random.nextDouble() < packetLossRate;
+	}
+
+	/**
+	 * Reset the registers to their power on values.
+	 */
+	private void reset() {
+		for (int register = 0; register < NUMBER_OF_REGISTER; register++) {
+			registers[register] = new byte[1];
+		}
+		registers[RFShowControlRF24Commands.CONFIG][0] = 0x08;
+		registers[RFShowControlRF24Commands.EN_AA][0] = 0x3F;
+		registers[RFShowControlRF24Commands.EN_RXADDR][0] = 0x03;
+		registers[RFShowControlRF24Commands.SETUP_AW][0] = 0x03;
+		registers[RFShowControlRF24Commands.SETUP_RETR][0] = 0x03;
+		registers[RFShowControlRF24Commands.RF_CH][0] = 0x02;
+		registers[RFShowControlRF24Commands.RF_SETUP][0] = 0x0E;
+		registers[RFShowControlRF24Commands.STATUS][0] = 0x0E;
+		registers[RFShowControlRF24Commands.RX_ADDR_P0] = new byte[5];
+		registers[RX_ADDR_P1] = new byte[5];
+		registers[RFShowControlRF24Commands.TX_ADDR] = new byte[5];
+		Arrays.fill(registers[RFShowControlRF24Commands.RX_ADDR_P0], (byte) 0xE7);
+		Arrays.fill(registers[RX_ADDR_P1], (byte) 0xC2);
+		Arrays.fill(registers[RFShowControlRF24Commands.TX_ADDR], (byte) 0xE7);
+		for (int pipe = 2; pipe < NUMBER_OF_PIPE; pipe++) {
+			registers[RFShowControlRF24Commands.RX_ADDR_P0 + pipe][0] = (byte) (0xC1 + pipe);
+		}
+	}
+
+	/**
+	 * Return the number of packets sent on air, retransmissions excluded.
+	 * @return	The number of packets.
+	 */
+	public long getSentPacketCount() {
+		synchronized (ether) {
+			advance(ether.nanos);
+			return sentPacketCount;
+		}
+	}
+
+	/**
+	 * Return the number of packets stored in the RX FIFO.
+	 * @return	The number of packets.
+	 */
+	public long getReceivedPacketCount() {
+		synchronized (ether) {
+			advance(ether.nanos);
+			return receivedPacketCount;
+		}
+	}
+
+	/**
+	 * Return the number of transmission attempts lost with the simulated packet loss.
+	 * @return	The number of attempts.
+	 */
+	public long getLostPacketCount() {
+		synchronized (ether) {
+			advance(ether.nanos);
+			return lostPacketCount;
+		}
+	}
+
+	/**
+	 * Return the number of packets dropped: sent without acknowledgment to no receiver, or received with the RX FIFO full.
+	 * @return	The number of packets.
+	 */
+	public long getDroppedPacketCount() {
+		synchronized (ether) {
+			advance(ether.nanos);
+			return droppedPacketCount;
+		}
+	}
+
+	/**
+	 * Return the number of payloads written with the TX FIFO full, and so ignored.
+	 * @return	The number of payloads.
+	 */
+	public long getTxOverflowCount() {
+		synchronized (ether) {
+			advance(ether.nanos);
+			return txOverflowCount;
+		}
+	}
+
+	/**
+	 * Return the number of payloads in the TX FIFO.
+	 * @return	The number of payloads [0 - 3].
+	 */
+	public int getTxFifoCount() {
+		synchronized (ether) {
+			advance(ether.nanos);
+			return txCount;
+		}
+	}
+
+	/**
+	 * Radios sharing the air and the simulated clock.
+	 */
+	private static final class Ether {
+
+		private final List<RFShowControlVirtualRF24Hardware> radios = new ArrayList<RFShowControlVirtualRF24Hardware>();
+
+		/** The simulated clock. */
+		private long nanos;
+
+	}
+
+}
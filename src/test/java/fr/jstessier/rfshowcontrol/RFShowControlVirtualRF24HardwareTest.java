@@ -0,0 +1,202 @@
+package fr.jstessier.rfshowcontrol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.jstessier.rf24.exceptions.RF24Exception;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.Mode;
+import fr.jstessier.rfshowcontrol.RFShowControlRF24Adapter.SendMode;
+
+public class RFShowControlVirtualRF24HardwareTest {
+
+	private static final long MILLIS = 1000000;
+
+	private static final byte[] PIPE_ADDRESS = new byte[] { (byte) 0xC2, (byte) 0xC2, (byte) 0xC2, (byte) 0xC2, (byte) 0xC2 };
+
+	@Test
+	public void loopback_reassemblesFrames() throws RFShowControlException, RF24Exception {
+
+		final RFShowControlVirtualRF24Hardware txHardware = new RFShowControlVirtualRF24Hardware();
+		final RFShowControlVirtualRF24Hardware rxHardware = new RFShowControlVirtualRF24Hardware(RFShowControlVirtualRF24Hardware.DEFAULT_SPI_CLOCK, txHardware);
+		final RFShowControlRF24Adapter transmitter = createTransmitter(txHardware, RFShowControlRF24Commands.RF_SETUP_RF_DR_HIGH, 60);
+		final RFShowControlRF24Adapter rxAdapter = new RFShowControlRF24Adapter(rxHardware, 60)
+				.configure((byte) 2, PIPE_ADDRESS, Mode.RX);
+		setUpRegisters(rxHardware, RFShowControlRF24Commands.RF_SETUP_RF_DR_HIGH, (byte) 0);
+
+		final RFShowControlReceiver receiver = new RFShowControlReceiver(rxAdapter);
+		final List<byte[]> frames = new ArrayList<byte[]>();
+		receiver.addListener(new RFShowControlReceiver.FrameListener() {
+			@Override
+			public void onFrame(byte[] channelValues) {
+				frames.add(Arrays.copyOf(channelValues, channelValues.length));
+			}
+		});
+		rxAdapter.startListening();
+		// Power up and RX settling
+		txHardware.advanceNanos(5 * MILLIS);
+
+		final byte[] datas = new byte[60];
+		for (int frame = 0; frame < 3; frame++) {
+			Arrays.fill(datas, (byte) frame);
+			transmitter.sendChannelValues(datas, true);
+			txHardware.drainTxFifo();
+			receiver.poll();
+		}
+
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals(6, txHardware.getSentPacketCount());
+		Assert.assertEquals(6, rxHardware.getReceivedPacketCount());
+		Assert.assertEquals(0, txHardware.getDroppedPacketCount());
+		for (int frame = 0; frame < 3; frame++) {
+			Arrays.fill(datas, (byte) frame);
+			Assert.assertArrayEquals(datas, frames.get(frame));
+		}
+	}
+
+	@Test
+	public void sendChannelValues_airTimeByDataRate() throws RFShowControlException, RF24Exception {
+
+		final long slow = measureTransmission(DataRate.DR_250_KBPS);
+		final long fast = measureTransmission(DataRate.DR_2_MBPS);
+
+		// 16 packets: 21 ms on air at 250 kbps, SPI bound (4.2 ms at 1 MHz) at 2 Mbps
+		Assert.assertTrue("250 kbps: " + slow + " ns", slow > 16 * 1316000);
+		Assert.assertTrue("2 Mbps: " + fast + " ns", fast > 16 * 33 * 8000 && fast < slow / 2);
+	}
+
+	@Test
+	public void sendPayload_packetLossAndFullRxFifo() throws RF24Exception, RFShowControlException {
+
+		final RFShowControlVirtualRF24Hardware txHardware = new RFShowControlVirtualRF24Hardware(8000000)
+				.setPacketLossRate(0.5, 42);
+		final RFShowControlVirtualRF24Hardware rxHardware = new RFShowControlVirtualRF24Hardware(8000000, txHardware);
+		final RFShowControlRF24Adapter transmitter = createTransmitter(txHardware, RFShowControlRF24Commands.RF_SETUP_RF_DR_HIGH, 512);
+		setUpRegisters(rxHardware, RFShowControlRF24Commands.RF_SETUP_RF_DR_HIGH, RFShowControlRF24Commands.CONFIG_PRIM_RX);
+		rxHardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.RX_PW_P1), (byte) 32);
+		rxHardware.setPinChipEnableHigh();
+		rxHardware.advanceNanos(5 * MILLIS);
+
+		// Nobody reads the RX FIFO
+		transmitter.sendChannelValues(new byte[512], true);
+		txHardware.drainTxFifo();
+
+		Assert.assertEquals(18, txHardware.getSentPacketCount());
+		Assert.assertTrue(txHardware.getLostPacketCount() > 0);
+		Assert.assertEquals(3, rxHardware.getReceivedPacketCount());
+		Assert.assertEquals(18 - 3 - txHardware.getLostPacketCount(), rxHardware.getDroppedPacketCount());
+		Assert.assertEquals(0, txHardware.getTxOverflowCount());
+	}
+
+	@Test
+	public void controller_keepsUpWithPlannedFrameRate() throws RFShowControlException, RF24Exception {
+
+		// 512 channels at 250 kbps: every frame changes all the packets
+		Assert.assertEquals(0, countLateFrames(1, 20));
+		// Beyond the frame rate of the capacity planner, the frames fall behind
+		Assert.assertTrue(countLateFrames(1.25, 20) > 10);
+	}
+
+	/**
+	 * Send frames with the transmit supervisor of a pipelined controller, as its frame scheduler does.
+	 *
+	 * @param speed				Frame rate, relative to the highest frame rate of the capacity planner.
+	 * @param numberOfFrame		Number of frames.
+	 * @return	The number of frames started after their due time because the previous one was not sent.
+	 */
+	private static int countLateFrames(final double speed, final int numberOfFrame)
+			throws RFShowControlException, RF24Exception {
+		final RFShowControlVirtualRF24Hardware hardware = new RFShowControlVirtualRF24Hardware();
+		final RFShowControlControllerImpl controller = new RFShowControlControllerImpl(hardware, 512);
+		controller.configure((byte) 2, PIPE_ADDRESS, Mode.TX);
+		setUpTransmitterRegisters(hardware, RFShowControlRF24Commands.RF_SETUP_RF_DR_LOW);
+		controller.getAdapter().setSendMode(SendMode.PIPELINED);
+		final byte[] frame = new byte[512];
+		controller.addFrameRenderer(new RFShowControlFrameRenderer() {
+			@Override
+			public void renderFrame(final long frameNanos, final RFShowControlChannelBuffer channelValues) {
+				Arrays.fill(frame, (byte) (frame[0] + 1));
+				channelValues.update(frame, 0, 0, frame.length);
+			}
+		});
+		final RFShowControlTransmitSupervisor supervisor = controller.getTransmitSupervisor();
+		final long periodNanos = (long) (1000000000L / controller.getMaxFramesPerSecond() / speed);
+
+		// Power up
+		hardware.advanceNanos(5 * MILLIS);
+		final long startNanos = hardware.getNanoTime();
+		int lateFrames = 0;
+		for (int frameIndex = 0; frameIndex < numberOfFrame; frameIndex++) {
+			final long waitNanos = startNanos + frameIndex * periodNanos - hardware.getNanoTime();
+			if (waitNanos >= 0) {
+				hardware.advanceNanos(waitNanos);
+			}
+			else {
+				lateFrames++;
+			}
+			supervisor.runFrame(hardware.getNanoTime());
+		}
+		hardware.drainTxFifo();
+
+		Assert.assertEquals(18 * numberOfFrame, hardware.getSentPacketCount());
+		Assert.assertEquals(0, hardware.getTxOverflowCount());
+		Assert.assertFalse(supervisor.isRecovering());
+		Assert.assertEquals(0, controller.getMetrics().getTransmitErrors());
+		return lateFrames;
+	}
+
+	private enum DataRate {
+		DR_250_KBPS(RFShowControlRF24Commands.RF_SETUP_RF_DR_LOW), DR_2_MBPS(RFShowControlRF24Commands.RF_SETUP_RF_DR_HIGH);
+
+		private final byte rfSetup;
+
+		private DataRate(final byte rfSetup) {
+			this.rfSetup = rfSetup;
+		}
+	}
+
+	private static long measureTransmission(final DataRate dataRate) throws RFShowControlException, RF24Exception {
+		final RFShowControlVirtualRF24Hardware hardware = new RFShowControlVirtualRF24Hardware();
+		final RFShowControlRF24Adapter transmitter = createTransmitter(hardware, dataRate.rfSetup, 480);
+		hardware.advanceNanos(5 * MILLIS);
+		final long start = hardware.getNanoTime();
+		transmitter.sendChannelValues(new byte[480], true);
+		hardware.drainTxFifo();
+		Assert.assertEquals(16, hardware.getSentPacketCount());
+		return hardware.getNanoTime() - start;
+	}
+
+	/**
+	 * Create a pipelined transmitter, the registers are written directly as the RF24 driver is not simulated.
+	 */
+	private static RFShowControlRF24Adapter createTransmitter(final RFShowControlVirtualRF24Hardware hardware,
+			final byte rfSetup, final int numberOfChannel) throws RFShowControlException, RF24Exception {
+		final RFShowControlRF24Adapter adapter = new RFShowControlRF24Adapter(hardware, numberOfChannel)
+				.configure((byte) 2, PIPE_ADDRESS, Mode.TX);
+		setUpTransmitterRegisters(hardware, rfSetup);
+		return adapter.setSendMode(SendMode.PIPELINED);
+	}
+
+	private static void setUpTransmitterRegisters(final RFShowControlVirtualRF24Hardware hardware, final byte rfSetup)
+			throws RF24Exception {
+		setUpRegisters(hardware, rfSetup, (byte) 0);
+		final byte[] txAddress = new byte[6];
+		txAddress[0] = RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.TX_ADDR;
+		System.arraycopy(PIPE_ADDRESS, 0, txAddress, 1, PIPE_ADDRESS.length);
+		hardware.spiWrite(txAddress);
+	}
+
+	private static void setUpRegisters(final RFShowControlVirtualRF24Hardware hardware, final byte rfSetup,
+			final byte primRx) throws RF24Exception {
+		hardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.RF_SETUP), rfSetup);
+		hardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.FEATURE),
+				RFShowControlRF24Commands.FEATURE_EN_DYN_ACK);
+		hardware.spiWrite((byte) (RFShowControlRF24Commands.W_REGISTER | RFShowControlRF24Commands.CONFIG),
+				(byte) (RFShowControlRF24Commands.CONFIG_EN_CRC | RFShowControlRF24Commands.CONFIG_CRCO
+						| RFShowControlRF24Commands.CONFIG_PWR_UP | primRx));
+	}
+
+}